@@ -0,0 +1,131 @@
+package jpacman.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpacman.model.Board;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.SyntheticMaps;
+
+/**
+ * Benchmarks for the distance field the path finding monster mover shares
+ * among its monsters. A monster at a given distance from the player asks
+ * for its distance, either after every step of the player, which restarts
+ * the search, or while the player stays put, which answers from the
+ * search done already. The difference is the cost of a player step.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DistanceFieldBenchmark
+{
+
+    /**
+     * Width and height of the synthetic square map.
+     */
+    @Param({ "64", "1024" })
+    private int size;
+
+    /**
+     * How far the monster is away from the player, in rows and columns
+     * each, limited by the size of the map.
+     */
+    @Param({ "4", "32", "512" })
+    private int reach;
+
+    /**
+     * The field measuring distances from the player.
+     */
+    private DistanceField field;
+
+    /**
+     * Position of the player, and the empty position to its right.
+     */
+    private int player, right;
+
+    /**
+     * The position the monster asks the distance of.
+     */
+    private int monster;
+
+    /**
+     * Whether the player is at its right position now.
+     */
+    private boolean moved;
+
+    /**
+     * Generate the map with the player in the middle, and put the monster
+     * on the nearest open position up and left of the player at the given
+     * reach.
+     * @throws GameLoadException if the map is invalid.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws GameLoadException
+    {
+        String[] map = SyntheticMaps.generate(size, size, SyntheticMaps.SEED);
+        Engine engine = new Engine(new Game(map));
+        engine.initialize();
+        Board board = engine.getPlayer().getLocation().getBoard();
+        field = new DistanceField(board);
+        final int middle = size / 2;
+        player = board.position(middle, middle);
+        right = board.position(middle + 1, middle);
+        int offset = Math.min(reach, middle - 1);
+        monster = board.position(middle - offset, middle - offset);
+        field.setSource(player);
+        while (offset > 0 && (field.isWall(monster)
+                || field.distance(monster) == DistanceField.UNREACHABLE))
+        {
+            offset--;
+            monster = board.position(middle - offset, middle - offset);
+        }
+    }
+
+    /**
+     * Step the player back or forth, and ask the monster's distance.
+     * @return The distance.
+     */
+    @Benchmark
+    public int playerSteps()
+    {
+        moved = !moved;
+        if (moved)
+        {
+            field.setSource(right);
+        } else
+        {
+            field.setSource(player);
+        }
+        return field.distance(monster);
+    }
+
+    /**
+     * Ask the monster's distance while the player stays put.
+     * @return The distance.
+     */
+    @Benchmark
+    public int playerStays()
+    {
+        field.setSource(player);
+        return field.distance(monster);
+    }
+}
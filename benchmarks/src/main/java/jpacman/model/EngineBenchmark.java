@@ -0,0 +1,202 @@
+package jpacman.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for reading from the Engine while other threads change the
+ * game, as viewers do while the player and monster controllers move.
+ * <p>
+ * The "reads" group only has readers taking viewport snapshots, the
+ * "traffic" group has the same readers plus a thread moving the player
+ * back and forth. Comparing the readers' throughput in both groups shows
+ * how much move traffic holds up the viewers. The "polling" group has
+ * threads reading the engine's state while the player is being moved,
+ * as status bars and monitors do.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Group)
+public class EngineBenchmark
+{
+
+    /**
+     * Width and height of the viewport taken in snapshots.
+     */
+    private static final int VIEWPORT = 32;
+
+    /**
+     * The map used: the default world, or a synthetic square map.
+     */
+    @Param({ SyntheticMaps.DEFAULT_MAP, "256", "1024" })
+    private String map;
+
+    /**
+     * The engine shared by the threads of a group.
+     */
+    private Engine engine;
+
+    /**
+     * Size of the viewport, limited by the size of the board.
+     */
+    private int viewWidth, viewHeight;
+
+    /**
+     * Load and start the game.
+     * @throws GameLoadException if the map is invalid.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws GameLoadException
+    {
+        engine = new Engine(new Game(SyntheticMaps.forName(map)));
+        engine.initialize();
+        engine.start();
+        viewWidth = Math.min(VIEWPORT, engine.boardWidth());
+        viewHeight = Math.min(VIEWPORT, engine.boardHeight());
+    }
+
+    /**
+     * Buffers and positions of a single reading thread.
+     */
+    @State(Scope.Thread)
+    public static class Reader
+    {
+        /**
+         * Buffer receiving the snapshots.
+         */
+        private byte[] buffer;
+
+        /**
+         * Create the snapshot buffer.
+         * @param bench The benchmark with the viewport size.
+         */
+        @Setup(Level.Trial)
+        public void setUp(EngineBenchmark bench)
+        {
+            buffer = new byte[bench.viewWidth * bench.viewHeight];
+        }
+    }
+
+    /**
+     * Direction of the next player move, alternating between
+     * left and right.
+     */
+    @State(Scope.Thread)
+    public static class Writer
+    {
+        /**
+         * Horizontal offset of the next move.
+         */
+        private int dx = 1;
+    }
+
+    /**
+     * Take a viewport snapshot, without other traffic.
+     * @param r The reader's buffer.
+     * @return The buffer filled.
+     */
+    @Benchmark
+    @Group("reads")
+    @GroupThreads(3)
+    public byte[] readOnly(Reader r)
+    {
+        return snapshot(r);
+    }
+
+    /**
+     * Take a viewport snapshot, while the player is being moved.
+     * @param r The reader's buffer.
+     * @return The buffer filled.
+     */
+    @Benchmark
+    @Group("traffic")
+    @GroupThreads(3)
+    public byte[] readWhileMoving(Reader r)
+    {
+        return snapshot(r);
+    }
+
+    /**
+     * Move the player back and forth, restarting the game when it is over.
+     * @param w The direction of the move.
+     * @return The engine's version after the move.
+     */
+    @Benchmark
+    @Group("traffic")
+    @GroupThreads(1)
+    public long move(Writer w)
+    {
+        return moveBackAndForth(w);
+    }
+
+    /**
+     * Read the engine's state, while the player is being moved.
+     * @return The state read.
+     */
+    @Benchmark
+    @Group("polling")
+    @GroupThreads(3)
+    public Engine.State pollWhileMoving()
+    {
+        return engine.getState();
+    }
+
+    /**
+     * Move the player back and forth while others poll the state.
+     * @param w The direction of the move.
+     * @return The engine's version after the move.
+     */
+    @Benchmark
+    @Group("polling")
+    @GroupThreads(1)
+    public long moveWhilePolled(Writer w)
+    {
+        return moveBackAndForth(w);
+    }
+
+    /**
+     * Move the player back and forth, restarting the game when it is over.
+     * @param w The direction of the move.
+     * @return The engine's version after the move.
+     */
+    private long moveBackAndForth(Writer w)
+    {
+        w.dx = -w.dx;
+        engine.movePlayer(w.dx, 0);
+        if (engine.inGameOverState())
+        {
+            engine.start();
+            engine.start();
+        }
+        return engine.getVersion();
+    }
+
+    /**
+     * @param r The reader's buffer.
+     * @return The buffer, filled with a snapshot of the upper left corner.
+     */
+    private byte[] snapshot(Reader r)
+    {
+        engine.snapshot(r.buffer, 0, 0, viewWidth, viewHeight);
+        return r.buffer;
+    }
+}
@@ -0,0 +1,87 @@
+package jpacman.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for checking and loading (large) worlds.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class LoadBenchmark
+{
+
+    /**
+     * The map used: the default world, or a synthetic square map.
+     */
+    @Param({ SyntheticMaps.DEFAULT_MAP, "256", "1024", "4096" })
+    private String map;
+
+    /**
+     * The board implementation used.
+     */
+    @Param({ "regular", "compact" })
+    private String board;
+
+    /**
+     * The map's rows.
+     */
+    private String[] rows;
+
+    /**
+     * The game whose world is (re)loaded.
+     */
+    private Game game;
+
+    /**
+     * Generate the map, and load it once.
+     * @throws GameLoadException if the map is invalid.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws GameLoadException
+    {
+        rows = SyntheticMaps.forName(map);
+        game = new Game(rows);
+        game.setCompactBoard("compact".equals(board));
+        game.initialize();
+    }
+
+    /**
+     * Check the sanity of the map.
+     * @return null, since the map is correct.
+     */
+    @Benchmark
+    public String checkSanity()
+    {
+        return GameLoader.checkSanity(rows);
+    }
+
+    /**
+     * Load the map into a fresh board.
+     * @return The new board.
+     */
+    @Benchmark
+    public Board loadWorld()
+    {
+        game.reInitialize();
+        return game.getBoard();
+    }
+}
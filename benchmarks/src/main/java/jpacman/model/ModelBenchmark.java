@@ -0,0 +1,307 @@
+package jpacman.model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the hot paths of playing a game: moving guests around,
+ * undoing moves, and inspecting the board.
+ * <p>
+ * Moves are immediately undone again, so that the game's state (and the
+ * size of its undo history) is the same for every invocation. The cost of
+ * undoing alone is measured separately in undoLastMove.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class ModelBenchmark
+{
+
+    /**
+     * Number of precomputed board positions; must be a power of two.
+     */
+    private static final int POSITIONS = 1024;
+
+    /**
+     * The map used: the default world, or a synthetic square map.
+     */
+    @Param({ SyntheticMaps.DEFAULT_MAP, "256", "1024", "4096" })
+    private String map;
+
+    /**
+     * The board implementation used.
+     */
+    @Param({ "regular", "compact" })
+    private String board;
+
+    /**
+     * The game being played.
+     */
+    private Game game;
+
+    /**
+     * The monster being moved.
+     */
+    private Monster monster;
+
+    /**
+     * A monster next to a wall, and the direction of that wall.
+     */
+    private Monster blocked;
+
+    /**
+     * The direction in which the blocked monster runs into a wall.
+     */
+    private Direction wall;
+
+    /**
+     * Random positions on the board, used for inspecting it.
+     */
+    private int[] xs, ys;
+
+    /**
+     * The cells at the random positions.
+     */
+    private Cell[] cells;
+
+    /**
+     * Width and height of the viewport taken in snapshots.
+     */
+    private static final int VIEWPORT = 32;
+
+    /**
+     * Buffer receiving viewport snapshots.
+     */
+    private byte[] viewport;
+
+    /**
+     * Size of the viewport, limited by the size of the board.
+     */
+    private int viewWidth, viewHeight;
+
+    /**
+     * Index of the next position to be inspected.
+     */
+    private int next = 0;
+
+    /**
+     * Direction of the next move, alternating between left and right.
+     */
+    private int dx = 1;
+
+    /**
+     * Load the game and precompute the positions to be inspected.
+     * @throws GameLoadException if the map is invalid.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws GameLoadException
+    {
+        game = new Game(SyntheticMaps.forName(map));
+        game.setCompactBoard("compact".equals(board));
+        game.initialize();
+        monster = game.getMonsters().get(0);
+        findBlockedMonster();
+
+        Random random = new Random(SyntheticMaps.SEED);
+        Board b = game.getBoard();
+        xs = new int[POSITIONS];
+        ys = new int[POSITIONS];
+        cells = new Cell[POSITIONS];
+        viewWidth = Math.min(VIEWPORT, b.getWidth());
+        viewHeight = Math.min(VIEWPORT, b.getHeight());
+        viewport = new byte[viewWidth * viewHeight];
+        for (int i = 0; i < POSITIONS; i++)
+        {
+            xs[i] = random.nextInt(b.getWidth() - viewWidth + 1);
+            ys[i] = random.nextInt(b.getHeight() - viewHeight + 1);
+            cells[i] = b.getCell(xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Find a monster with a wall next to it.
+     */
+    private void findBlockedMonster()
+    {
+        for (Monster m : game.getMonsters())
+        {
+            for (Direction d : Direction.values())
+            {
+                Cell target =
+                    m.getLocation().cellAtOffset(d.getDx(), d.getDy());
+                if ((target.guestMask() & Guest.WALL_BIT) != 0)
+                {
+                    blocked = m;
+                    wall = d;
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException(
+                "No monster next to a wall in map " + map);
+    }
+
+    /**
+     * Make sure something can be undone before each undo invocation.
+     */
+    @State(Scope.Thread)
+    public static class UndoState
+    {
+        /**
+         * Do a player move, so that undoLastMove has work to do.
+         * @param bench The benchmark containing the game.
+         */
+        @Setup(Level.Invocation)
+        public void move(ModelBenchmark bench)
+        {
+            bench.game.movePlayer(bench.nextDx(), 0);
+        }
+    }
+
+    /**
+     * @return The next horizontal offset, alternating between 1 and -1.
+     */
+    private int nextDx()
+    {
+        dx = -dx;
+        return dx;
+    }
+
+    /**
+     * @return The next precomputed position.
+     */
+    private int nextPosition()
+    {
+        next = (next + 1) & (POSITIONS - 1);
+        return next;
+    }
+
+    /**
+     * Move the player, and undo the move unless it was rejected.
+     * @return The move made, if any.
+     */
+    @Benchmark
+    public Move movePlayer()
+    {
+        Move result = game.movePlayer(nextDx(), 0);
+        if (result != null)
+        {
+            game.undoLastMove();
+        }
+        return result;
+    }
+
+    /**
+     * Move a monster, and undo the move unless it was rejected.
+     * @return The move made, if any.
+     */
+    @Benchmark
+    public Move moveMonster()
+    {
+        Move result = game.moveMonster(monster, nextDx(), 0);
+        if (result != null)
+        {
+            game.undoLastMove();
+        }
+        return result;
+    }
+
+    /**
+     * Move a monster into a wall, which is rejected. Most moves of random
+     * monsters are like this, so run with "-prof gc" to see what rejected
+     * moves cost in allocation at high tick rates.
+     * @return The move made, if any.
+     */
+    @Benchmark
+    public Move moveIntoWall()
+    {
+        return game.moveMonster(blocked, wall.getDx(), wall.getDy());
+    }
+
+    /**
+     * Step the player through the outcome table, and undo the step.
+     * @return Whether the player moved.
+     */
+    @Benchmark
+    public boolean stepPlayer()
+    {
+        final boolean result = game.stepPlayer(nextDx(), 0);
+        game.undoLastMove();
+        return result;
+    }
+
+    /**
+     * Step a monster through the outcome table, and undo the step.
+     * @return Whether the monster moved.
+     */
+    @Benchmark
+    public boolean stepMonster()
+    {
+        final boolean result = game.stepMonster(monster, nextDx(), 0);
+        game.undoLastMove();
+        return result;
+    }
+
+    /**
+     * Undo a player move done just before.
+     * @param state Ensures a move has been done.
+     * @return Whether more moves can be undone.
+     */
+    @Benchmark
+    public boolean undoLastMove(UndoState state)
+    {
+        game.undoLastMove();
+        return game.canUndo();
+    }
+
+    /**
+     * Obtain the guest codes at a random position.
+     * @return The guest codes.
+     */
+    @Benchmark
+    public char[] guestCodes()
+    {
+        final int i = nextPosition();
+        return game.getBoard().guestCodes(xs[i], ys[i]);
+    }
+
+    /**
+     * Take a snapshot of a viewport at a random position.
+     * @return The buffer holding the snapshot.
+     */
+    @Benchmark
+    public byte[] snapshotViewport()
+    {
+        final int i = nextPosition();
+        game.getBoard().snapshot(viewport, xs[i], ys[i], viewWidth, viewHeight);
+        return viewport;
+    }
+
+    /**
+     * Obtain the neighbor of a random cell.
+     * @return The neighboring cell.
+     */
+    @Benchmark
+    public Cell cellAtOffset()
+    {
+        return cells[nextPosition()].cellAtOffset(dx, 0);
+    }
+}
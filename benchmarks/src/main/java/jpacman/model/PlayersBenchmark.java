@@ -0,0 +1,118 @@
+package jpacman.model;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for ticks in which every player of a game moves, with a
+ * listener following the changes as a viewer does. The players are moved
+ * one by one through Engine.movePlayer, or all at once through
+ * Engine.movePlayers, which takes the lock and calls back the listener
+ * once per tick rather than once per player.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PlayersBenchmark
+{
+
+    /**
+     * Number of players in the game.
+     */
+    @Param({ "1", "16", "256" })
+    private int players;
+
+    /**
+     * The engine running the game.
+     */
+    private Engine engine;
+
+    /**
+     * Horizontal offsets of the players in the next tick.
+     */
+    private int[] dxs;
+
+    /**
+     * Vertical offsets of the players in the next tick, all zero.
+     */
+    private int[] dys;
+
+    /**
+     * Load and start a game with the players side by side, followed by
+     * a listener for every change.
+     * @throws GameLoadException if the map is invalid.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws GameLoadException
+    {
+        engine = new Engine(new Game(SyntheticMaps.corridor(players)));
+        engine.initialize();
+        engine.addListener(new EngineAdapter() {
+            @Override
+            public void onChanges(ChangeEvent event)
+            {
+                // a viewer would redraw the players that moved.
+            }
+        }, EngineListener.CHANGES);
+        engine.start();
+        dxs = new int[players];
+        dys = new int[players];
+        Arrays.fill(dxs, -1);
+    }
+
+    /**
+     * Turn all players around for the next tick.
+     */
+    private void turn()
+    {
+        for (int i = 0; i < players; i++)
+        {
+            dxs[i] = -dxs[i];
+        }
+    }
+
+    /**
+     * Move every player back or forth, one by one.
+     * @return The engine's version after the tick.
+     */
+    @Benchmark
+    public long oneByOne()
+    {
+        turn();
+        for (int i = 0; i < players; i++)
+        {
+            engine.movePlayer(i, dxs[i], 0);
+        }
+        return engine.getVersion();
+    }
+
+    /**
+     * Move every player back or forth, all at once.
+     * @return The engine's version after the tick.
+     */
+    @Benchmark
+    public long allAtOnce()
+    {
+        turn();
+        engine.movePlayers(dxs, dys);
+        return engine.getVersion();
+    }
+}
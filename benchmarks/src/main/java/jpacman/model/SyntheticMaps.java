@@ -0,0 +1,174 @@
+package jpacman.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generator for (large) maps used in the benchmarks. Maps are generated
+ * from a fixed seed, so that every run benchmarks exactly the same worlds.
+ * Benchmarks of other packages can generate random maps as well.
+ *
+ * @version $Id$
+ */
+public final class SyntheticMaps
+{
+
+    /**
+     * Name of the map parameter value denoting the default 20x20 world.
+     */
+    static final String DEFAULT_MAP = "default";
+
+    /**
+     * Seed used for generating all maps.
+     */
+    public static final long SEED = 20031010L;
+
+    /**
+     * Percentage of interior cells containing a wall.
+     */
+    private static final int WALL_PERCENTAGE = 10;
+
+    /**
+     * Percentage of interior cells containing food.
+     */
+    private static final int FOOD_PERCENTAGE = 25;
+
+    /**
+     * Per mille of interior cells containing a monster.
+     */
+    private static final int MONSTER_PER_MILLE = 2;
+
+    /**
+     * Number of per mille steps in a whole.
+     */
+    private static final int MILLE = 1000;
+
+    /**
+     * Number of percentage steps in a whole.
+     */
+    private static final int CENT = 100;
+
+    /**
+     * Utility class, no instances.
+     */
+    private SyntheticMaps()
+    { }
+
+    /**
+     * Obtain the map belonging to a benchmark parameter: either the default
+     * world, or a square map with the given size.
+     * @param name "default", or the width (and height) of the map.
+     * @return The map.
+     */
+    static String[] forName(String name)
+    {
+        if (DEFAULT_MAP.equals(name))
+        {
+            return GameLoader.DEFAULT_WORLD_MAP.clone();
+        }
+        final int size = Integer.parseInt(name);
+        return generate(size, size, SEED);
+    }
+
+    /**
+     * Generate a map surrounded by walls, with walls, food and monsters
+     * scattered randomly inside, and the player in the middle. The player's
+     * immediate neighbors are kept empty, so that it can always move.
+     *
+     * @param width Width of the map, at least 5.
+     * @param height Height of the map, at least 5.
+     * @param seed Seed for the random generator.
+     * @return The generated map.
+     */
+    public static String[] generate(int width, int height, long seed)
+    {
+        final int minimumSize = 5;
+        assert width >= minimumSize && height >= minimumSize;
+        Random random = new Random(seed);
+        final int px = width / 2;
+        final int py = height / 2;
+        String[] map = new String[height];
+        char[] row = new char[width];
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                char code;
+                if (x == 0 || y == 0 || x == width - 1 || y == height - 1)
+                {
+                    code = Guest.WALL_TYPE;
+                } else if (x == px && y == py)
+                {
+                    code = Guest.PLAYER_TYPE;
+                } else if (Math.abs(x - px) + Math.abs(y - py) == 1)
+                {
+                    code = Guest.EMPTY_TYPE;
+                } else
+                {
+                    code = randomCode(random);
+                }
+                row[x] = code;
+            }
+            map[y] = new String(row);
+        }
+        assert GameLoader.checkSanity(map) == null;
+        return map;
+    }
+
+    /**
+     * Generate a map with the given number of players side by side in a
+     * corridor, each with an empty cell to its right, so that all of them
+     * can move back and forth at the same time. A single food item is put
+     * below the first player, out of the way, so that the game isn't won
+     * from the start.
+     *
+     * @param players Number of players, at least 1.
+     * @return The generated map.
+     */
+    static String[] corridor(int players)
+    {
+        assert players >= 1;
+        final int width = 2 * players + 2;
+        char[] walls = new char[width];
+        Arrays.fill(walls, Guest.WALL_TYPE);
+        char[] corridor = new char[width];
+        char[] below = walls.clone();
+        corridor[0] = Guest.WALL_TYPE;
+        corridor[width - 1] = Guest.WALL_TYPE;
+        for (int i = 0; i < players; i++)
+        {
+            corridor[2 * i + 1] = Guest.PLAYER_TYPE;
+            corridor[2 * i + 2] = Guest.EMPTY_TYPE;
+        }
+        below[1] = Guest.FOOD_TYPE;
+        String[] map = new String[] {
+            new String(walls), new String(corridor),
+            new String(below), new String(walls)
+        };
+        assert GameLoader.checkSanity(map) == null;
+        return map;
+    }
+
+    /**
+     * @param random The random generator to be used.
+     * @return The code for a random interior cell.
+     */
+    private static char randomCode(Random random)
+    {
+        final int draw = random.nextInt(MILLE);
+        final int permille = MILLE / CENT;
+        char code = Guest.EMPTY_TYPE;
+        if (draw < MONSTER_PER_MILLE)
+        {
+            code = Guest.MONSTER_TYPE;
+        } else if (draw < MONSTER_PER_MILLE + WALL_PERCENTAGE * permille)
+        {
+            code = Guest.WALL_TYPE;
+        } else if (draw < MONSTER_PER_MILLE
+                + (WALL_PERCENTAGE + FOOD_PERCENTAGE) * permille)
+        {
+            code = Guest.FOOD_TYPE;
+        }
+        return code;
+    }
+}
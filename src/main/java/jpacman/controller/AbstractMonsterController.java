@@ -28,13 +28,41 @@ IMonsterController
     /**
      * Randomizer used to pick, e.g., a monster at random.
      */
-    private static Random randomizer = new Random();
+    private final Random randomizer;
 
     /**
-     * Timer to be used to trigger monster moves.
+     * Timer to be used to trigger monster moves,
+     * or null if doTick is invoked by someone else.
      */
     private final Timer timer;
 
+    /**
+     * Game loop used to trigger monster moves instead of a timer,
+     * or null if not used.
+     */
+    private final GameLoop loop;
+
+    /**
+     * Submits a tick to the engine, on every tick of the game loop
+     * at which a monster should move.
+     */
+    private final Runnable loopTask = new Runnable() {
+        public void run()
+        {
+            submitTick();
+        }
+    };
+
+    /**
+     * Does a tick, submitted to the engine on every timer event.
+     */
+    private final Runnable tick = new Runnable() {
+        public void run()
+        {
+            doTick();
+        }
+    };
+
     /**
      * Vector of monsters that are to be moved.
      */
@@ -53,7 +81,8 @@ IMonsterController
 
     /**
      * Create a new monstercontroller using the default
-     * delay and the given game engine.
+     * delay and the given game engine, taking random decisions
+     * with the engine's randomizer.
      *
      * @param e
      *            The underlying model of the game.
@@ -61,7 +90,51 @@ IMonsterController
     public AbstractMonsterController(Engine e)
     {
         theEngine = e;
+        randomizer = e.getRandomizer();
         timer = new Timer(DELAY, this);
+        loop = null;
+        assert controllerInvariant();
+    }
+
+    /**
+     * Create a new monstercontroller driven by a game loop instead of
+     * a timer, so that monsters are moved off the event dispatch thread.
+     * Monsters are moved every DELAY milliseconds, or every tick of the
+     * loop if its ticks take longer. Random decisions are taken with the
+     * engine's randomizer.
+     *
+     * @param e
+     *            The underlying model of the game.
+     * @param gameLoop
+     *            The loop triggering the monster moves.
+     */
+    public AbstractMonsterController(Engine e, GameLoop gameLoop)
+    {
+        assert gameLoop != null;
+        theEngine = e;
+        randomizer = e.getRandomizer();
+        timer = null;
+        loop = gameLoop;
+        assert controllerInvariant();
+    }
+
+    /**
+     * Create a new monstercontroller without a timer, for situations
+     * in which doTick is invoked explicitly, such as when running games
+     * without a user interface. All random decisions are taken using the
+     * given randomizer, so that games can be reproduced.
+     *
+     * @param e
+     *            The underlying model of the game.
+     * @param r
+     *            The randomizer to be used.
+     */
+    public AbstractMonsterController(Engine e, Random r)
+    {
+        theEngine = e;
+        randomizer = r;
+        timer = null;
+        loop = null;
         assert controllerInvariant();
     }
 
@@ -71,7 +144,7 @@ IMonsterController
      */
     protected final boolean controllerInvariant()
     {
-        return timer != null && theEngine != null;
+        return randomizer != null && theEngine != null;
     }
 
     /**
@@ -81,13 +154,19 @@ IMonsterController
     public void actionPerformed(ActionEvent e)
     {
         assert controllerInvariant();
-        synchronized (getEngine())
-        {
-            doTick();
-        }
+        submitTick();
         assert controllerInvariant();
     }
 
+    /**
+     * Have the engine do a tick, holding its update lock, so that
+     * there are no moves in between choosing a monster move and doing it.
+     */
+    private void submitTick()
+    {
+        getEngine().submit(tick);
+    }
+
     /**
      * @see jpacman.controller.IMonsterController#start()
      */
@@ -96,12 +175,18 @@ IMonsterController
         assert controllerInvariant();
         // the game may have been restarted -- refresh the monster list
         // contained.
-        synchronized (getEngine())
+        monsters = getEngine().getMonsters();
+        if (timer != null)
         {
-            monsters = getEngine().getMonsters();
             timer.start();
-            assert monsters != null;
         }
+        if (loop != null)
+        {
+            loop.cancel(loopTask);
+            loop.schedule(loopTask,
+                    (int) Math.max(1, DELAY / loop.getTickMillis()));
+        }
+        assert monsters != null;
         assert controllerInvariant();
      }
 
@@ -111,7 +196,14 @@ IMonsterController
     public void stop()
     {
         assert controllerInvariant();
-        timer.stop();
+        if (timer != null)
+        {
+            timer.stop();
+        }
+        if (loop != null)
+        {
+            loop.cancel(loopTask);
+        }
         assert controllerInvariant();
     }
 
@@ -135,7 +227,7 @@ IMonsterController
      * Obtain the randomizer used for monster moves.
      * @return the randomizer.
      */
-    protected static Random getRandomizer()
+    protected Random getRandomizer()
     {
         return randomizer;
     }
@@ -3,6 +3,7 @@ package jpacman.controller;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 /**
@@ -24,10 +25,31 @@ public class Animator
     private final BoardViewer boardViewer;
 
     /**
-     * The timer used.
+     * The timer used, or null if a game loop is used.
      */
     private final Timer timer;
 
+    /**
+     * The game loop used instead of a timer, or null.
+     */
+    private final GameLoop loop;
+
+    /**
+     * Asks the viewer, on the event dispatch thread, to show the next
+     * animation, at every loop tick at which the animation is due.
+     */
+    private final Runnable loopTask = new Runnable() {
+        public void run()
+        {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    boardViewer.nextAnimation();
+                }
+            });
+        }
+    };
+
     /**
      * The delay between two animations.
      */
@@ -48,6 +70,21 @@ public class Animator
             }
         }
         );
+        loop = null;
+    }
+
+    /**
+     * Create an animator for a particular board viewer, driven by
+     * a game loop rather than a timer of its own.
+     * @param bv The view to be animated.
+     * @param gameLoop The loop triggering the animations.
+     */
+    public Animator(BoardViewer bv, GameLoop gameLoop)
+    {
+        assert gameLoop != null;
+        boardViewer = bv;
+        timer = null;
+        loop = gameLoop;
     }
 
     /**
@@ -55,7 +92,13 @@ public class Animator
      */
     public void stop()
     {
-        timer.stop();
+        if (timer != null)
+        {
+            timer.stop();
+        } else
+        {
+            loop.cancel(loopTask);
+        }
     }
 
     /**
@@ -63,6 +106,14 @@ public class Animator
      */
     public void start() 
     {
-        timer.start();
+        if (timer != null)
+        {
+            timer.start();
+        } else
+        {
+            loop.cancel(loopTask);
+            loop.schedule(loopTask,
+                    (int) Math.max(1, DELAY / loop.getTickMillis()));
+        }
     }
 }
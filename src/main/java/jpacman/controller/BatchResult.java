@@ -0,0 +1,136 @@
+package jpacman.controller;
+
+/**
+ * Aggregated outcome of a series of games played by the BatchRunner.
+ *
+ * @version $Id$
+ */
+public class BatchResult
+{
+
+    /**
+     * Number of games won, lost, and neither won nor lost
+     * within the maximum number of steps.
+     */
+    private int wins, deaths, unfinished;
+
+    /**
+     * Total number of points eaten in all games.
+     */
+    private long points;
+
+    /**
+     * Total number of player and monster moves attempted in all games.
+     */
+    private long playerMoves, monsterMoves;
+
+    /**
+     * Record the outcome of a single game.
+     *
+     * @param won True iff the player won.
+     * @param died True iff the player died.
+     * @param pointsEaten Points eaten by the player.
+     * @param playerMoveCount Number of player moves attempted.
+     * @param monsterMoveCount Number of monster moves attempted.
+     */
+    void addGame(boolean won, boolean died, int pointsEaten,
+            long playerMoveCount, long monsterMoveCount)
+    {
+        assert !(won && died);
+        if (won)
+        {
+            wins++;
+        } else if (died)
+        {
+            deaths++;
+        } else
+        {
+            unfinished++;
+        }
+        points += pointsEaten;
+        playerMoves += playerMoveCount;
+        monsterMoves += monsterMoveCount;
+    }
+
+    /**
+     * Add the outcomes of another batch to this one.
+     * @param other The results to be added.
+     */
+    void add(BatchResult other)
+    {
+        wins += other.wins;
+        deaths += other.deaths;
+        unfinished += other.unfinished;
+        points += other.points;
+        playerMoves += other.playerMoves;
+        monsterMoves += other.monsterMoves;
+    }
+
+    /**
+     * @return Number of games played.
+     */
+    public int getGames()
+    {
+        return wins + deaths + unfinished;
+    }
+
+    /**
+     * @return Number of games won.
+     */
+    public int getWins()
+    {
+        return wins;
+    }
+
+    /**
+     * @return Number of games in which the player died.
+     */
+    public int getDeaths()
+    {
+        return deaths;
+    }
+
+    /**
+     * @return Number of games that were still on after the maximum
+     *         number of steps.
+     */
+    public int getUnfinished()
+    {
+        return unfinished;
+    }
+
+    /**
+     * @return Total number of points eaten.
+     */
+    public long getPoints()
+    {
+        return points;
+    }
+
+    /**
+     * @return Total number of player moves attempted.
+     */
+    public long getPlayerMoves()
+    {
+        return playerMoves;
+    }
+
+    /**
+     * @return Total number of monster moves attempted.
+     */
+    public long getMonsterMoves()
+    {
+        return monsterMoves;
+    }
+
+    /**
+     * @return Summary of the results.
+     */
+    @Override
+    public String toString()
+    {
+        return getGames() + " games: " + wins + " won, " + deaths + " lost, "
+            + unfinished + " unfinished; " + points + " points, "
+            + playerMoves + " player moves, " + monsterMoves + " monster moves";
+    }
+}
@@ -0,0 +1,253 @@
+package jpacman.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jpacman.model.Direction;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.GameLoader;
+
+/**
+ * Play many independent games without a user interface, spread over all
+ * available processors, and aggregate their outcomes. Each game has its
+ * own Game, Engine and monster controller, as well as its own randomizer
+ * seeded from the batch seed and the game's number, so that a batch played
+ * twice with the same seed yields the same results, regardless of the
+ * number of threads used.
+ * <p>
+ * The player makes random moves by default; subclasses can refine
+ * nextPlayerMove to try out other player strategies.
+ *
+ * @version $Id$
+ */
+public class BatchRunner
+{
+
+    /**
+     * Factory for the monster controllers used in each game.
+     */
+    public interface ControllerFactory
+    {
+        /**
+         * Create a monster controller without timer: the batch runner
+         * invokes doTick itself.
+         *
+         * @param e The engine of the game to be controlled.
+         * @param r The randomizer of the game.
+         * @return A new monster controller.
+         */
+        IMonsterController create(Engine e, Random r);
+    }
+
+    /**
+     * Multiplier used to derive well spread seeds for individual games.
+     */
+    private static final long SEED_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The map on which all games are played.
+     */
+    private final String[] map;
+
+    /**
+     * Creates the monster controller for each game.
+     */
+    private final ControllerFactory factory;
+
+    /**
+     * Maximum number of steps (one player move and one monster tick)
+     * after which a game is abandoned.
+     */
+    private final int maxSteps;
+
+    /**
+     * Number of games to be played at the same time.
+     */
+    private final int threads;
+
+    /**
+     * Create a batch runner using one thread per available processor.
+     *
+     * @param theMap The map on which all games are played.
+     * @param f Creates the monster controller for each game.
+     * @param steps Maximum number of steps per game.
+     */
+    public BatchRunner(String[] theMap, ControllerFactory f, int steps)
+    {
+        this(theMap, f, steps, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a batch runner using the given number of threads.
+     *
+     * @param theMap The map on which all games are played.
+     * @param f Creates the monster controller for each game.
+     * @param steps Maximum number of steps per game.
+     * @param nrOfThreads Number of games played simultaneously.
+     */
+    public BatchRunner(String[] theMap, ControllerFactory f, int steps,
+            int nrOfThreads)
+    {
+        assert theMap != null;
+        assert f != null;
+        assert steps >= 0;
+        assert nrOfThreads > 0;
+        map = theMap.clone();
+        factory = f;
+        maxSteps = steps;
+        threads = nrOfThreads;
+    }
+
+    /**
+     * Play a series of games, and wait until all of them are done.
+     *
+     * @param games Number of games to be played.
+     * @param seed Seed from which the randomizers of all games are derived.
+     * @return The aggregated results of all games.
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    public BatchResult run(int games, final long seed)
+        throws InterruptedException, GameLoadException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<BatchResult>> futures =
+            new ArrayList<Future<BatchResult>>(games);
+        try
+        {
+            for (int i = 0; i < games; i++)
+            {
+                final int gameNr = i;
+                futures.add(pool.submit(new Callable<BatchResult>() {
+                    public BatchResult call() throws GameLoadException
+                    {
+                        return play(gameSeed(seed, gameNr));
+                    }
+                }));
+            }
+            BatchResult result = new BatchResult();
+            for (Future<BatchResult> f : futures)
+            {
+                result.add(f.get());
+            }
+            return result;
+        } catch (ExecutionException ee)
+        {
+            if (ee.getCause() instanceof GameLoadException)
+            {
+                throw (GameLoadException) ee.getCause();
+            }
+            throw new IllegalStateException("Game failed", ee.getCause());
+        } finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Play a single game until it is over, or until the maximum
+     * number of steps has been taken.
+     *
+     * @param seed Seed for the game's randomizer, which is the engine's.
+     * @return The results of this game only.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    BatchResult play(long seed) throws GameLoadException
+    {
+        Engine engine = new Engine(new Game(map), seed);
+        Random random = engine.getRandomizer();
+        engine.initialize();
+        engine.start();
+        IMonsterController monsters = factory.create(engine, random);
+        monsters.start();
+
+        long playerMoves = 0;
+        long monsterMoves = 0;
+        for (int step = 0; step < maxSteps && engine.inPlayingState(); step++)
+        {
+            Direction dir = nextPlayerMove(engine, random);
+            engine.movePlayer(dir.getDx(), dir.getDy());
+            playerMoves++;
+            if (engine.inPlayingState())
+            {
+                monsters.doTick();
+                monsterMoves++;
+            }
+        }
+        monsters.stop();
+
+        BatchResult result = new BatchResult();
+        result.addGame(engine.inWonState(), engine.inDiedState(),
+                engine.getFoodEaten(), playerMoves, monsterMoves);
+        return result;
+    }
+
+    /**
+     * Decide on the next player move. By default, a random direction
+     * is chosen.
+     *
+     * @param engine The engine of the game being played.
+     * @param random The randomizer of the game being played.
+     * @return The direction for the next player move.
+     */
+    protected Direction nextPlayerMove(Engine engine, Random random)
+    {
+        Direction[] dirs = Direction.values();
+        return dirs[random.nextInt(dirs.length)];
+    }
+
+    /**
+     * @param seed The seed of the batch.
+     * @param gameNr The number of the game in the batch.
+     * @return The seed for that game.
+     */
+    static long gameSeed(long seed, int gameNr)
+    {
+        return seed + (gameNr + 1) * SEED_MULTIPLIER;
+    }
+
+    /**
+     * Play a batch of games on the map from the property file, with
+     * player searching monsters, and report the results.
+     *
+     * @param args Optionally the number of games, the maximum number of
+     *            steps per game, and the seed.
+     * @throws GameLoadException If the map can't be loaded.
+     * @throws InterruptedException If interrupted while playing.
+     */
+    public static void main(String[] args)
+        throws GameLoadException, InterruptedException
+    {
+        final int defaultGames = 1000;
+        final int defaultSteps = 10000;
+        final int games = args.length > 0
+            ? Integer.parseInt(args[0]) : defaultGames;
+        final int steps = args.length > 1
+            ? Integer.parseInt(args[1]) : defaultSteps;
+        final long seed = args.length > 2
+            ? Long.parseLong(args[2]) : System.currentTimeMillis();
+        final double millisPerSecond = 1000.0;
+
+        BatchRunner runner = new BatchRunner(new GameLoader().obtainMap(),
+                new ControllerFactory() {
+                    public IMonsterController create(Engine e, Random r)
+                    {
+                        return new PlayerSearchingMonsterMover(e, r);
+                    }
+                }, steps);
+        long start = System.currentTimeMillis();
+        BatchResult result = runner.run(games, seed);
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(result); // NOPMD
+        System.out.println("Seed " + seed + ", " // NOPMD
+                + (games * millisPerSecond / elapsed) + " games/second.");
+    }
+}
@@ -5,16 +5,18 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.BitSet;
 
 import javax.swing.JPanel;
 
 import jpacman.model.Engine;
+import jpacman.model.Frame;
+import jpacman.model.FrameReader;
 import jpacman.model.Guest;
 
 /**
@@ -45,19 +47,113 @@ public class BoardViewer extends JPanel
     private final Engine engine;
 
     /**
-     * Buffered image used for drawing cells.
+     * Buffered image used for drawing cells. It is kept between repaints,
+     * so that only the cells that changed need to be redrawn.
      */
     private BufferedImage bimg = null;
 
     /**
-     * Width of an individual cell, in pixels.
+     * The board generation drawn in the buffered image.
      */
-    private static final int CELL_WIDTH = 20;
+    private int drawnGeneration = -1;
 
     /**
-     * Height of an individual cell, in pixels.
+     * Positions (y * width + x) of the cells drawn with an animated image,
+     * which must be redrawn for every next animation.
      */
-    private static final int CELL_HEIGHT = 20;
+    private final BitSet animatedCells = new BitSet();
+
+    /**
+     * Cells to be redrawn during the next repaint.
+     */
+    private final BitSet dirtyCells = new BitSet();
+
+    /**
+     * True iff the animation count changed since the last repaint.
+     */
+    private boolean animationDue = false;
+
+    /**
+     * Guest masks of the cells being drawn, reused between repaints.
+     */
+    private byte[] masks = new byte[0];
+
+    /**
+     * Positions of the cells being redrawn, reused between repaints.
+     */
+    private int[] dirtyList = new int[0];
+
+    /**
+     * Number of cells in dirtyList to be redrawn in the current repaint.
+     */
+    private int dirtyCount;
+
+    /**
+     * True iff all visible cells are to be drawn in the current repaint,
+     * rather than just the dirty ones.
+     */
+    private boolean fullRedraw;
+
+    /**
+     * Width of the board, obtained once per repaint.
+     */
+    private int boardWidth;
+
+    /**
+     * Size of the viewer in the current repaint.
+     */
+    private Dimension paintSize;
+
+    /**
+     * Reads what is to be drawn from the engine, under a single lock.
+     */
+    private final FrameReader frameReader = new FrameReader() {
+        public void readFrame(Frame frame)
+        {
+            prepareFrame(frame);
+        }
+    };
+
+    /**
+     * Most recent player direction, obtained once per repaint.
+     */
+    private int playerDx, playerDy;
+
+    /**
+     * The part of the board shown, following the player.
+     */
+    private final Viewport viewport = new Viewport();
+
+    /**
+     * True iff the viewport changed since the last repaint, so that all
+     * visible cells must be drawn.
+     */
+    private boolean viewChanged = true;
+
+    /**
+     * The guest types in the order in which they are drawn.
+     */
+    private static final char[] DRAW_ORDER = {
+        Guest.WALL_TYPE, Guest.FOOD_TYPE, Guest.PLAYER_TYPE, Guest.MONSTER_TYPE
+    };
+
+    /**
+     * The snapshot bits of the guest types in DRAW_ORDER.
+     */
+    private static final byte[] DRAW_BITS = {
+        Guest.WALL_BIT, Guest.FOOD_BIT, Guest.PLAYER_BIT, Guest.MONSTER_BIT
+    };
+
+    /**
+     * Maximum number of columns the window is initially sized for.
+     * Larger boards scroll.
+     */
+    private static final int MAX_COLUMNS = 40;
+
+    /**
+     * Maximum number of rows the window is initially sized for.
+     */
+    private static final int MAX_ROWS = 30;
 
     /**
      * The horizontal gap between cells, in pixels.
@@ -93,9 +189,10 @@ public class BoardViewer extends JPanel
     public BoardViewer(Engine theEngine)
     {
         engine = theEngine;
+        engine.setTrackChanges(true);
         setBackground(Color.white);
         animationCount = 0;
-        imageFactory = new ImageFactory(CELL_WIDTH, CELL_HEIGHT);
+        imageFactory = new ImageFactory(cellWidth(), cellHeight());
         try
         {
             imageFactory.loadImages();
@@ -125,58 +222,160 @@ public class BoardViewer extends JPanel
     }
 
     /**
-     * The width of the board viewer in pixels.
+     * The width of the board viewer in pixels: wide enough for the
+     * whole board, unless it has more than MAX_COLUMNS columns.
      *
      * @return The width of the board viewer.
      */
     public int windowWidth()
     {
-        return (cellWidth() + CELL_HGAP) * (worldWidth() + 1);
+        return (cellWidth() + CELL_HGAP)
+            * (Math.min(worldWidth(), MAX_COLUMNS) + 1);
     }
 
     /**
-     * The height of the board viewer in pixels.
+     * The height of the board viewer in pixels: high enough for the
+     * whole board, unless it has more than MAX_ROWS rows.
      *
      * @return The height of the board viewer.
      */
     public int windowHeight()
     {
         return
-        (cellHeight() + CELL_VGAP) * (worldHeight() + 1);
+        (cellHeight() + CELL_VGAP) * (Math.min(worldHeight(), MAX_ROWS) + 1);
     }
 
     /**
-     * The height of a cell (in pixels).
+     * The height of a cell (in pixels), at the current zoom level.
      * @return Cell height in pixels
      */
     public int cellHeight()
     {
-        return CELL_HEIGHT;
+        return viewport.cellSize();
     }
 
     /**
-     * Width of cell.
+     * Width of cell, at the current zoom level.
      * @return Cell width in pixels.
      */
     public int cellWidth()
     {
-        return CELL_WIDTH;
+        return viewport.cellSize();
+    }
+
+    /**
+     * Show larger cells, and thus fewer of them.
+     */
+    public void zoomIn()
+    {
+        if (viewport.zoomIn())
+        {
+            viewChanged = true;
+            repaint();
+        }
+    }
+
+    /**
+     * Show smaller cells, and thus more of them.
+     */
+    public void zoomOut()
+    {
+        if (viewport.zoomOut())
+        {
+            viewChanged = true;
+            repaint();
+        }
+    }
+
+    /**
+     * @param x Horizontal position of a visible cell on the board.
+     * @return The horizontal pixel position of the cell in the viewer.
+     */
+    private int cellLeft(int x)
+    {
+        return 2 * CELL_HGAP + (cellWidth() + CELL_HGAP)
+            * (x - viewport.getLeft());
+    }
+
+    /**
+     * @param y Vertical position of a visible cell on the board.
+     * @return The vertical pixel position of the cell in the viewer.
+     */
+    private int cellTop(int y)
+    {
+        return 2 * CELL_VGAP + (cellHeight() + CELL_VGAP)
+            * (y - viewport.getTop());
     }
 
     /**
      * JComponent method invoked when the board needs to be drawn.
+     * Only the visible cells that changed since the previous time are
+     * redrawn into the buffered image, unless the board was replaced,
+     * the window resized, or the viewport scrolled or zoomed, in which
+     * case all visible cells are drawn. The cost of drawing thus depends
+     * on the size of the window, not on the size of the board.
+     *
      * @param g The graphics to paint the board on.
      */
     @Override
     public void paint(Graphics g)
     {
-        Dimension d = getSize();
-        Graphics2D g2 = createGraphics2D(d.width, d.height);
-        drawCells(g2);
-        g2.dispose();
+        paintSize = getSize();
+        engine.readFrame(frameReader);
+        if (fullRedraw)
+        {
+            Graphics2D g2 =
+                createGraphics2D(paintSize.width, paintSize.height);
+            animatedCells.clear();
+            drawCells(g2);
+            g2.dispose();
+            viewChanged = false;
+        } else
+        {
+            Graphics2D g2 = bimg.createGraphics();
+            prepareGraphics(g2);
+            drawChangedCells(g2);
+            g2.dispose();
+        }
+        animationDue = false;
         g.drawImage(bimg, 0, 0, this);
     }
 
+    /**
+     * Move the viewport along with the player, decide whether all visible
+     * cells or just the changed ones are to be drawn, and take a snapshot
+     * of those cells. Since all of this is read from a single frame, the
+     * viewport and the snapshot belong to the same version of the game.
+     *
+     * @param frame The frame read from the engine.
+     */
+    private void prepareFrame(Frame frame)
+    {
+        playerDx = frame.getPlayerLastDx();
+        playerDy = frame.getPlayerLastDy();
+        boardWidth = frame.getWidth();
+        final int player = frame.getPlayerPosition();
+        viewChanged |= viewport.resize(paintSize.width - 2 * CELL_HGAP,
+                paintSize.height - 2 * CELL_VGAP, cellWidth() + CELL_HGAP,
+                boardWidth, frame.getHeight());
+        viewChanged |= viewport.follow(player % boardWidth,
+                player / boardWidth);
+        final int generation = frame.getGeneration();
+        fullRedraw = bimg == null
+                || bimg.getWidth() != paintSize.width
+                || bimg.getHeight() != paintSize.height
+                || generation != drawnGeneration
+                || viewChanged;
+        if (fullRedraw)
+        {
+            snapshotVisibleCells(frame);
+            drawnGeneration = generation;
+        } else
+        {
+            snapshotDirtyCells(frame);
+        }
+    }
+
     /**
      * Create a piece of graphics to display the board on.
      * @param w desired width in pixels
@@ -193,54 +392,85 @@ public class BoardViewer extends JPanel
             bimg = (BufferedImage) createImage(w, h);
         }
         g2 = bimg.createGraphics();
-        g2.setBackground(getBackground());
+        prepareGraphics(g2);
         g2.clearRect(0, 0, w, h);
+        return g2;
+    }
+
+    /**
+     * Set the background and rendering hints for drawing on the board.
+     * @param g2 The graphics to draw the board on.
+     */
+    private void prepareGraphics(Graphics2D g2)
+    {
+        g2.setBackground(getBackground());
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
-        return g2;
     }
 
     /**
      * Draw an individual cell.
      * @param x x-coordinate
      * @param y y-coordinate
+     * @param mask the guest mask of the cell, from a board snapshot
      * @param g2 Graphics to draw on
      */
-    private void drawCell(int x, int y, Graphics2D g2)
+    private void drawCell(int x, int y, byte mask, Graphics2D g2)
     {
         Dimension dim = new Dimension(cellWidth(), cellHeight());
-        Point loc = new Point(
-                2 * CELL_HGAP + (cellWidth() + CELL_HGAP) * x,
-                2 * CELL_VGAP + (cellHeight() + CELL_VGAP) * y);
+        Point loc = new Point(cellLeft(x), cellTop(y));
         Rectangle rect = new Rectangle(loc, dim);
         g2.setColor(Color.blue);
         g2.draw(rect);
         
-        char[] guestCodes = engine.getGuestCodes(x, y);
+        boolean animated = false;
+        if (mask == 0)
+        {
+            drawGuest(Guest.EMPTY_TYPE, x, y, rect, g2);
+        }
+        for (int i = 0; i < DRAW_ORDER.length; i++)
+        {
+            if ((mask & DRAW_BITS[i]) != 0)
+            {
+                animated = drawGuest(DRAW_ORDER[i], x, y, rect, g2) || animated;
+            }
+        }
+        animatedCells.set(y * boardWidth + x, animated);
+    }
 
-        for (char gc : guestCodes)
+    /**
+     * Draw a guest in its cell.
+     * @param gc the code of the guest
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param rect the area of the cell
+     * @param g2 Graphics to draw on
+     * @return True iff the guest was drawn using an animated image.
+     */
+    private boolean drawGuest(char gc, int x, int y, Rectangle rect,
+            Graphics2D g2)
+    {
+        final int sprite = guestSprite(gc);
+        if (sprite < 0)
         {
             Color fillColor = guestColor(gc);
-            Image img = guestImage(gc);
-
-            if (img == null)
+            assert fillColor != null;
+            g2.setColor(fillColor);
+            Rectangle area = rect;
+            if (gc == Guest.FOOD_TYPE)
             {
-                assert fillColor != null;
-                g2.setColor(fillColor);
-                if (gc == Guest.FOOD_TYPE)
-                {
-                    g2.setColor(Color.black);
-                    g2.fill(rect);
-                    g2.setColor(Color.orange);
-                    rect = centeredRectangle(x, y, 2);
-                }
+                g2.setColor(Color.black);
                 g2.fill(rect);
-            } else
-            {
-                g2.drawImage(img, loc.x, loc.y, this);            
+                g2.setColor(Color.orange);
+                area = centeredRectangle(x, y, 2);
             }
+            g2.fill(area);
+        } else
+        {
+            imageFactory.drawSprite(g2, sprite, rect.x, rect.y,
+                    cellWidth(), cellHeight());
         }
-
+        return sprite >= 0;
     }
     
     /**
@@ -255,8 +485,8 @@ public class BoardViewer extends JPanel
     {
         assert delta <= cellWidth() / 2;
         Rectangle result = null;
-        int startx = 2 * CELL_HGAP + (cellWidth() + CELL_HGAP) * x;
-        int starty = 2 * CELL_VGAP + (cellHeight() + CELL_VGAP) * y;
+        int startx = cellLeft(x);
+        int starty = cellTop(y);
         Point loc = new Point(
                 startx + (cellWidth() / 2 - delta),
                 starty + (cellHeight() / 2 - delta)
@@ -267,28 +497,28 @@ public class BoardViewer extends JPanel
     }
     
     /**
-     * @param guestCode the code of the guest to get the image for
-     * @return the appropriate image for the content
-     * of the cell at (x,y).
+     * @param guestCode the code of the guest to get the sprite for
+     * @return the index of the appropriate sprite in the image factory's
+     * atlas, or -1 if the guest is drawn as a colored area.
      */
-    Image guestImage(char guestCode)
+    int guestSprite(char guestCode)
     {
-        Image img = null;
+        int sprite = -1;
         if (imageFactory != null)
         {
             if (guestCode == Guest.PLAYER_TYPE)
             {
-                img = imageFactory.player(
-                        engine.getPlayerLastDx(),
-                        engine.getPlayerLastDy(),
+                sprite = imageFactory.playerSprite(
+                        playerDx,
+                        playerDy,
                         animationCount);
             } 
             if (guestCode == Guest.MONSTER_TYPE)
             {
-                img = imageFactory.monster(animationCount);
+                sprite = imageFactory.monsterSprite(animationCount);
             }
         }
-        return img;
+        return sprite;
     }
     
     /**
@@ -324,7 +554,23 @@ public class BoardViewer extends JPanel
     }
 
     /**
-     * Draw all cells on the board.
+     * Take a snapshot of all visible cells.
+     * @param frame The frame to take the snapshot from.
+     */
+    private void snapshotVisibleCells(Frame frame)
+    {
+        final int width = viewport.getColumns();
+        final int height = viewport.getRows();
+        if (masks.length < width * height)
+        {
+            masks = new byte[width * height];
+        }
+        frame.snapshot(masks, viewport.getLeft(), viewport.getTop(),
+                width, height);
+    }
+
+    /**
+     * Draw all visible cells, from the snapshot taken of them.
      * @param g2 The graphics to draw the cells on.
      */
     private void drawCells(Graphics2D g2)
@@ -332,13 +578,76 @@ public class BoardViewer extends JPanel
         final float strokeWidth = 5.0f;
         g2.setStroke(new BasicStroke(strokeWidth));
 
-        for (int x = 0; x < worldWidth(); x++)
+        final int left = viewport.getLeft();
+        final int top = viewport.getTop();
+        final int width = viewport.getColumns();
+        final int height = viewport.getRows();
+        for (int x = 0; x < width; x++)
+        {
+            for (int y = 0; y < height; y++)
+            {
+                drawCell(left + x, top + y, masks[y * width + x], g2);
+            }
+        }
+    }
+
+    /**
+     * Take a snapshot of the visible cells that changed, as well as the
+     * animated cells if the animation has moved on.
+     * @param frame The frame with the changed cells.
+     */
+    private void snapshotDirtyCells(Frame frame)
+    {
+        final int width = boardWidth;
+        dirtyCells.clear();
+        for (int pos : frame.getChangedCells())
         {
-            for (int y = 0; y < worldHeight(); y++)
+            if (viewport.contains(pos % width, pos / width))
             {
-                drawCell(x, y, g2);
+                dirtyCells.set(pos);
             }
         }
+        if (animationDue)
+        {
+            dirtyCells.or(animatedCells);
+        }
+        final int count = dirtyCells.cardinality();
+        if (dirtyList.length < count)
+        {
+            dirtyList = new int[count];
+        }
+        if (masks.length < count)
+        {
+            masks = new byte[count];
+        }
+        int i = 0;
+        for (int pos = dirtyCells.nextSetBit(0); pos >= 0;
+                pos = dirtyCells.nextSetBit(pos + 1))
+        {
+            dirtyList[i++] = pos;
+        }
+        frame.snapshot(dirtyList, count, masks);
+        dirtyCount = count;
+    }
+
+    /**
+     * Redraw the cells in the snapshot taken of the dirty cells.
+     * @param g2 The graphics to draw the cells on.
+     */
+    private void drawChangedCells(Graphics2D g2)
+    {
+        final float strokeWidth = 5.0f;
+        g2.setStroke(new BasicStroke(strokeWidth));
+
+        final int width = boardWidth;
+        for (int i = 0; i < dirtyCount; i++)
+        {
+            final int x = dirtyList[i] % width;
+            final int y = dirtyList[i] / width;
+            g2.clearRect(cellLeft(x), cellTop(y),
+                    cellWidth() + 1, cellHeight() + 1);
+            drawCell(x, y, masks[i], g2);
+        }
     }
 
     /**
@@ -352,6 +661,7 @@ public class BoardViewer extends JPanel
             animationCount = (animationCount + 1)
             % (imageFactory.monsterAnimationCount()
                     * imageFactory.playerAnimationCount());
+            animationDue = true;
             repaint();
         }
     }
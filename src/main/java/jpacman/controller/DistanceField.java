@@ -0,0 +1,287 @@
+package jpacman.controller;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jpacman.model.Board;
+import jpacman.model.Direction;
+import jpacman.model.Guest;
+
+/**
+ * Shortest path distances from a set of source positions (typically the
+ * living players) to all other positions of a board, taking walls and the
+ * wrap-around at the borders into account. The distance of a position is
+ * the distance to the nearest source.
+ * <p>
+ * Distances are computed by a breadth first search that is resumed lazily:
+ * it only proceeds as far as needed to answer the distances asked for. Since
+ * monsters chasing the sources tend to stay close to them, a field shared by
+ * all monsters typically only covers a small part of a large board, and it
+ * is only restarted when a source moves.
+ * <p>
+ * A restart costs as much as the search it throws away: up to the distance
+ * of the farthest monster asking, and the whole board in the worst case.
+ * Repairing the old distances instead would not be cheaper: a step of the
+ * source changes the distance of nearly every position covered, so a repair
+ * touches the same positions the restarted search visits again.
+ * <p>
+ * The walls are read from the board row by row when the field is created,
+ * and kept as one bit per position, so a new field is needed if the board
+ * is replaced. Together with the distance and the search queue a field
+ * takes about 8 bytes per position.
+ *
+ * @version $Id$
+ */
+class DistanceField
+{
+
+    /**
+     * Distance of positions that can't be reached from any source.
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * All directions, in the order of their ordinals.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The board the distances apply to.
+     */
+    private final Board board;
+
+    /**
+     * Number of bits in a word of the wall bit set.
+     */
+    private static final int WORD_BITS = 64;
+
+    /**
+     * Shift turning a position into the index of its wall word.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * Positions with a wall, one bit per position, taken from the board
+     * when the field was created.
+     */
+    private final long[] walls;
+
+    /**
+     * Distance from the nearest source for every position reached by the
+     * current search, and UNREACHABLE for all others.
+     */
+    private final int[] distance;
+
+    /**
+     * Positions reached by the current search, in the order reached.
+     * Positions in queue[0..head) have been expanded, those in
+     * queue[head..tail) not yet.
+     */
+    private final int[] queue;
+
+    /**
+     * Bounds of the part of the queue still to be expanded.
+     */
+    private int head, tail;
+
+    /**
+     * The positions distances are measured from, in sources[0..sourceCount).
+     */
+    private int[] sources = new int[1];
+
+    /**
+     * The number of sources, or -1 if none have been set yet.
+     */
+    private int sourceCount = -1;
+
+    /**
+     * Create a distance field for the given board.
+     * @param b The board, whose walls are remembered.
+     */
+    DistanceField(Board b)
+    {
+        board = b;
+        final int width = b.getWidth();
+        final int size = width * b.getHeight();
+        walls = new long[(size + WORD_BITS - 1) / WORD_BITS];
+        final byte[] row = new byte[width];
+        for (int y = 0; y < b.getHeight(); y++)
+        {
+            b.snapshot(row, 0, y, width, 1);
+            for (int x = 0; x < width; x++)
+            {
+                if ((row[x] & Guest.WALL_BIT) != 0)
+                {
+                    final int pos = y * width + x;
+                    walls[pos >>> WORD_SHIFT] |= 1L << pos;
+                }
+            }
+        }
+        distance = new int[size];
+        Arrays.fill(distance, UNREACHABLE);
+        queue = new int[size];
+    }
+
+    /**
+     * @param b A board.
+     * @return True iff this field measures distances on the given board.
+     */
+    boolean isFor(Board b)
+    {
+        return board == b;
+    }
+
+    /**
+     * Measure distances from the given position only.
+     * @see #setSources(int[], int)
+     * @param pos The new source position.
+     */
+    void setSource(int pos)
+    {
+        setSources(new int[] {pos}, 1);
+    }
+
+    /**
+     * Measure distances from the nearest of the given positions. Distances
+     * computed earlier are kept if the positions are the same as before,
+     * in the same order.
+     * @param positions The new source positions.
+     * @param count The number of sources, possibly 0.
+     */
+    void setSources(int[] positions, int count)
+    {
+        assert count >= 0 && count <= positions.length;
+        if (!sameSources(positions, count))
+        {
+            if (sources.length < count)
+            {
+                sources = new int[count];
+            }
+            System.arraycopy(positions, 0, sources, 0, count);
+            sourceCount = count;
+            // forget exactly the positions the previous search reached.
+            for (int i = 0; i < tail; i++)
+            {
+                distance[queue[i]] = UNREACHABLE;
+            }
+            head = 0;
+            tail = 0;
+            for (int i = 0; i < count; i++)
+            {
+                if (distance[positions[i]] == UNREACHABLE)
+                {
+                    reach(positions[i], 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param positions Source positions.
+     * @param count The number of sources.
+     * @return True iff these are the sources distances are measured from.
+     */
+    private boolean sameSources(int[] positions, int count)
+    {
+        boolean same = count == sourceCount;
+        for (int i = 0; same && i < count; i++)
+        {
+            same = positions[i] == sources[i];
+        }
+        return same;
+    }
+
+    /**
+     * @param pos A position on the board.
+     * @return True iff there is a wall at that position.
+     */
+    boolean isWall(int pos)
+    {
+        return (walls[pos >>> WORD_SHIFT] & (1L << pos)) != 0;
+    }
+
+    /**
+     * Return the length of the shortest path from the nearest source to
+     * the given position, continuing the search as far as needed.
+     * Precondition: the sources have been set.
+     *
+     * @param pos A position on the board.
+     * @return The distance, or UNREACHABLE.
+     */
+    int distance(int pos)
+    {
+        assert sourceCount >= 0;
+        while (distance[pos] == UNREACHABLE && head < tail)
+        {
+            expand(queue[head++]);
+        }
+        return distance[pos];
+    }
+
+    /**
+     * Determine the first step on a shortest path from the given
+     * position to the nearest source. Ties are broken by the given
+     * randomizer.
+     *
+     * @param pos The position to start from.
+     * @param random Randomizer for breaking ties.
+     * @return The direction to go, or null if no source can be reached.
+     */
+    Direction stepTowardsSource(int pos, Random random)
+    {
+        Direction best = null;
+        int bestDistance = UNREACHABLE;
+        int ties = 0;
+        for (Direction d : DIRECTIONS)
+        {
+            final int next = board.neighbour(pos, d);
+            if (!isWall(next))
+            {
+                final int dist = distance(next);
+                if (dist < bestDistance)
+                {
+                    best = d;
+                    bestDistance = dist;
+                    ties = 1;
+                } else if (dist == bestDistance && dist != UNREACHABLE)
+                {
+                    // choose uniformly among equally good directions.
+                    ties++;
+                    if (random.nextInt(ties) == 0)
+                    {
+                        best = d;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reach the neighbours of a position that haven't been reached yet.
+     * @param pos The position to be expanded.
+     */
+    private void expand(int pos)
+    {
+        final int next = distance[pos] + 1;
+        for (Direction d : DIRECTIONS)
+        {
+            final int n = board.neighbour(pos, d);
+            if (distance[n] == UNREACHABLE && !isWall(n))
+            {
+                reach(n, next);
+            }
+        }
+    }
+
+    /**
+     * Record the distance of a newly reached position.
+     * @param pos The position reached.
+     * @param dist Its distance from the nearest source.
+     */
+    private void reach(int pos, int dist)
+    {
+        distance[pos] = dist;
+        queue[tail++] = pos;
+    }
+}
@@ -0,0 +1,401 @@
+package jpacman.controller;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed timestep loop driving the game logic on a dedicated thread,
+ * instead of timers on the Swing event dispatch thread.
+ * <p>
+ * The loop ticks at a fixed rate. Tasks, such as monster controllers and
+ * animators, are scheduled to run every given number of ticks. If the loop
+ * falls behind, for example because a task or the garbage collector took
+ * long, the missed ticks are caught up with by ticking back to back, up to
+ * a maximum number of ticks; ticks missed beyond that are skipped, so that
+ * the game doesn't race after a long pause.
+ * <p>
+ * The loop keeps track of how late ticks start (latency) and how long they
+ * take, so that jitter can be observed.
+ *
+ * @version $Id$
+ */
+public class GameLoop implements Runnable
+{
+
+    /**
+     * The default duration of a tick in milliseconds.
+     */
+    public static final int DEFAULT_TICK_MILLIS =
+        AbstractMonsterController.DELAY;
+
+    /**
+     * The default maximum number of ticks caught up with back to back.
+     */
+    public static final int DEFAULT_MAX_CATCH_UP = 5;
+
+    /**
+     * A task scheduled on the loop.
+     */
+    private static final class Task
+    {
+        /**
+         * What should be done.
+         */
+        private final Runnable action;
+
+        /**
+         * Number of ticks between two runs.
+         */
+        private final int period;
+
+        /**
+         * Number of ticks until the next run.
+         */
+        private int countdown;
+
+        /**
+         * @param r What should be done.
+         * @param ticks Number of ticks between two runs.
+         */
+        private Task(Runnable r, int ticks)
+        {
+            action = r;
+            period = ticks;
+            countdown = ticks;
+        }
+    }
+
+    /**
+     * Duration of a tick in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * Maximum number of ticks caught up with back to back.
+     */
+    private final int maxCatchUp;
+
+    /**
+     * The tasks scheduled.
+     */
+    private final List<Task> tasks = new CopyOnWriteArrayList<Task>();
+
+    /**
+     * Actions run at the end of every tick, after the tasks.
+     */
+    private final List<Runnable> tickEnds =
+        new CopyOnWriteArrayList<Runnable>();
+
+    /**
+     * The thread running the loop, or null if not started. A loop thread
+     * keeps ticking only as long as it is this thread, so a thread that
+     * has been asked to stop never runs beside its successor.
+     */
+    private volatile Thread thread = null;
+
+    /**
+     * The thread most recently asked to stop, which may still be
+     * completing its last tick, or null. Guarded by this loop's monitor.
+     */
+    private Thread stopping = null;
+
+    /**
+     * Number of ticks done and skipped.
+     */
+    private volatile long ticks, skippedTicks;
+
+    /**
+     * Sum and maximum of the delays between the moments ticks were due
+     * and the moments they started, in nanoseconds.
+     */
+    private volatile long totalLatency, maxLatency;
+
+    /**
+     * Sum and maximum of the durations of the ticks, in nanoseconds.
+     */
+    private volatile long totalTickTime, maxTickTime;
+
+    /**
+     * Create a loop with the default tick duration and catch up policy.
+     */
+    public GameLoop()
+    {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_MAX_CATCH_UP);
+    }
+
+    /**
+     * Create a loop.
+     * @param tickMillis Duration of a tick in milliseconds.
+     * @param catchUp Maximum number of missed ticks done back to back,
+     *            beyond which missed ticks are skipped.
+     */
+    public GameLoop(int tickMillis, int catchUp)
+    {
+        assert tickMillis > 0;
+        assert catchUp >= 0;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        maxCatchUp = catchUp;
+    }
+
+    /**
+     * @return Duration of a tick in milliseconds.
+     */
+    public long getTickMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    /**
+     * Schedule a task to be run on the loop's thread, every given number
+     * of ticks, starting that many ticks from now.
+     * @param action The task to be run.
+     * @param period Number of ticks between two runs.
+     */
+    public void schedule(Runnable action, int period)
+    {
+        assert action != null;
+        assert period > 0;
+        tasks.add(new Task(action, period));
+    }
+
+    /**
+     * Run an action at the end of every tick, after the tasks due in that
+     * tick, for example to publish the changes they made all at once.
+     * @param action The action to be run.
+     */
+    public void runAfterEachTick(Runnable action)
+    {
+        assert action != null;
+        tickEnds.add(action);
+    }
+
+    /**
+     * Stop running a task, or an action run after each tick.
+     * @param action The task, as scheduled earlier.
+     */
+    public void cancel(Runnable action)
+    {
+        for (Task t : tasks)
+        {
+            if (t.action == action)
+            {
+                tasks.remove(t);
+            }
+        }
+        tickEnds.remove(action);
+    }
+
+    /**
+     * Start ticking, on a thread of its own. If the loop was stopped but
+     * its previous thread is still completing a tick, the new thread waits
+     * for that one to end before ticking, so that tasks never run on two
+     * threads at once.
+     */
+    public synchronized void start()
+    {
+        if (thread == null)
+        {
+            final Thread previous = stopping;
+            stopping = null;
+            thread = new Thread(new Runnable() {
+                public void run()
+                {
+                    if (awaitEnd(previous))
+                    {
+                        GameLoop.this.run();
+                    }
+                }
+            }, "jpacman-loop");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Wait for a thread to end.
+     * @param previous The thread, or null.
+     * @return False iff interrupted while waiting.
+     */
+    private static boolean awaitEnd(Thread previous)
+    {
+        boolean ended = true;
+        if (previous != null)
+        {
+            try
+            {
+                previous.join();
+            } catch (InterruptedException e)
+            {
+                ended = false;
+            }
+        }
+        return ended;
+    }
+
+    /**
+     * Stop ticking, and wait for the current tick to be completed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void stop() throws InterruptedException
+    {
+        Thread t;
+        synchronized (this)
+        {
+            t = thread;
+            thread = null;
+            if (t != null)
+            {
+                stopping = t;
+            }
+        }
+        if (t != null && t != Thread.currentThread())
+        {
+            LockSupport.unpark(t);
+            t.join();
+        }
+    }
+
+    /**
+     * Tick at a fixed rate until stopped. Only ticks on the thread
+     * started by start, and returns at once on any other thread.
+     */
+    public void run()
+    {
+        final Thread self = Thread.currentThread();
+        long due = System.nanoTime() + tickNanos;
+        while (thread == self)
+        {
+            final long now = System.nanoTime();
+            if (now < due)
+            {
+                LockSupport.parkNanos(this, due - now);
+            } else
+            {
+                final long missed = (now - due) / tickNanos;
+                if (missed > maxCatchUp)
+                {
+                    // too far behind: skip rather than race.
+                    final long skip = missed - maxCatchUp;
+                    skippedTicks += skip;
+                    due += skip * tickNanos;
+                }
+                tick(now - due);
+                due += tickNanos;
+            }
+        }
+    }
+
+    /**
+     * Run the tasks due in this tick, and record its metrics.
+     * @param latency How late the tick started, in nanoseconds.
+     */
+    private void tick(long latency)
+    {
+        final long start = System.nanoTime();
+        for (Task t : tasks)
+        {
+            t.countdown--;
+            if (t.countdown <= 0)
+            {
+                t.countdown = t.period;
+                runSafely(t.action);
+            }
+        }
+        for (Runnable r : tickEnds)
+        {
+            runSafely(r);
+        }
+        final long duration = System.nanoTime() - start;
+        ticks++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalTickTime += duration;
+        maxTickTime = Math.max(maxTickTime, duration);
+    }
+
+    /**
+     * Run an action, reporting rather than propagating its failure.
+     * @param action The action to be run.
+     */
+    private static void runSafely(Runnable action)
+    {
+        try
+        {
+            action.run();
+        } catch (RuntimeException e)
+        {
+            // one failing task shouldn't stop the game.
+            Thread thisThread = Thread.currentThread();
+            thisThread.getUncaughtExceptionHandler()
+                .uncaughtException(thisThread, e);
+        }
+    }
+
+    /**
+     * @return Number of ticks done so far.
+     */
+    public long getTicks()
+    {
+        return ticks;
+    }
+
+    /**
+     * @return Number of ticks skipped because the loop was too far behind.
+     */
+    public long getSkippedTicks()
+    {
+        return skippedTicks;
+    }
+
+    /**
+     * @return Mean delay between the moment a tick was due and the moment
+     *         it started, in nanoseconds.
+     */
+    public long getMeanLatencyNanos()
+    {
+        final long n = ticks;
+        return n == 0 ? 0 : totalLatency / n;
+    }
+
+    /**
+     * @return Maximum delay between the moment a tick was due and the
+     *         moment it started, in nanoseconds.
+     */
+    public long getMaxLatencyNanos()
+    {
+        return maxLatency;
+    }
+
+    /**
+     * @return Mean time taken by the tasks of a tick, in nanoseconds.
+     */
+    public long getMeanTickNanos()
+    {
+        final long n = ticks;
+        return n == 0 ? 0 : totalTickTime / n;
+    }
+
+    /**
+     * @return Maximum time taken by the tasks of a tick, in nanoseconds.
+     */
+    public long getMaxTickNanos()
+    {
+        return maxTickTime;
+    }
+
+    /**
+     * @return Summary of the loop's metrics.
+     */
+    @Override
+    public String toString()
+    {
+        final double nanosPerMilli = 1e6;
+        return ticks + " ticks, " + skippedTicks + " skipped; latency mean "
+            + getMeanLatencyNanos() / nanosPerMilli + " ms, max "
+            + maxLatency / nanosPerMilli + " ms; tick time mean "
+            + getMeanTickNanos() / nanosPerMilli + " ms, max "
+            + maxTickTime / nanosPerMilli + " ms";
+    }
+}
@@ -1,14 +1,28 @@
 package jpacman.controller;
 
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
-import javax.swing.ImageIcon;
+import javax.imageio.ImageIO;
 
 /**
  * The responsibilities of this class include obtaining images from file,
  * that can be used for animations of the player and the monsters in Pacman.
+ * <p>
+ * All images are kept as sprites in a single atlas image per cell size,
+ * scaled once when the atlas is built, so that drawing a sprite is a plain
+ * copy from one (accelerated) image. Sprites are identified by their index
+ * in the atlas: the monsters and scared monsters on the first row, followed
+ * by a row of player images for every direction.
  *
  * @author Arie van Deursen, Delft University of Technology, May 2007
  * @version $Id: ImageFactory.java 4916 2011-10-17 19:10:17Z arievandeursen $
@@ -19,15 +33,62 @@ public class ImageFactory
 {
 
     /**
-     * Animation sequence of images for monsters.
+     * Number of bits used for the height in an atlas cache key.
      */
-    private Image[] monsterImage;
+    private static final int KEY_SHIFT = 16;
 
     /**
-     * Animation sequence of images for the player.
+     * Names of the images of the monster animation.
      */
-    private Image[][] playerImage;  
-    
+    private static final String[] MONSTER_NAMES = {
+        "Ghost1.gif", "Ghost2.gif" };
+
+    /**
+     * Names of the images of the scared monster animation.
+     */
+    private static final String[] SCARED_NAMES = {
+        "GhostScared1.gif", "GhostScared2.gif" };
+
+    /**
+     * Animation sequence of the player, following PacMan1.gif.
+     */
+    private static final String[] SEQUENCE = {"2", "3", "4", "3", "2"};
+
+    /**
+     * Directions of the player images, in the order of the atlas rows.
+     */
+    private static final String[] DIRECTION = {
+        "right", "left", "down", "up" };
+
+    /**
+     * Number of sprites on a row of the atlas: the longest animation.
+     */
+    private static final int COLUMNS = Math.max(SEQUENCE.length + 1,
+            MONSTER_NAMES.length + SCARED_NAMES.length);
+
+    /**
+     * Number of rows in the atlas: monsters, and the player directions.
+     */
+    private static final int ROWS = 1 + DIRECTION.length;
+
+    /**
+     * The images as loaded from file, by sprite index.
+     * Slots not used in the atlas are null.
+     */
+    private BufferedImage[] sources;
+
+    /**
+     * The images at the requested size, cut from the atlas, or the
+     * loaded images if no size was requested. By sprite index.
+     */
+    private Image[] images;
+
+    /**
+     * Atlases built so far, by cell size (width << 16 | height).
+     */
+    private final Map<Integer, BufferedImage> atlases =
+        new HashMap<Integer, BufferedImage>();
+
     /**
      * Width of the images.
      */
@@ -47,6 +108,7 @@ public class ImageFactory
     /**
      * Create an empty (non intialized) image factory
      * requiring that all images are of the given (width, height).
+     * The atlas for that size is built when the images are loaded.
      * @param w requested image width
      * @param h requested image height
      */
@@ -64,23 +126,43 @@ public class ImageFactory
      */
     public void loadImages() throws IOException
     {
-        monsterImage = new Image[]{
-                getImage("Ghost1.gif"),
-                getImage("Ghost2.gif") };
+        sources = new BufferedImage[ROWS * COLUMNS];
+        for (int i = 0; i < MONSTER_NAMES.length; i++)
+        {
+            sources[monsterSprite(i)] = getImage(MONSTER_NAMES[i]);
+        }
+        for (int i = 0; i < SCARED_NAMES.length; i++)
+        {
+            sources[scaredSprite(i)] = getImage(SCARED_NAMES[i]);
+        }
+        BufferedImage closed = getImage("PacMan1.gif");
+        for (int dir = 0; dir < DIRECTION.length; dir++)
+        {
+            final int row = (1 + dir) * COLUMNS;
+            sources[row] = closed;
+            for (int seq = 0; seq < SEQUENCE.length; seq++)
+            {
+                String name = "PacMan" + SEQUENCE[seq]
+                                 + DIRECTION[dir] + ".gif";
+                sources[row + seq + 1] = getImage(name);
+            }
+        }
 
-        String[] sequence = new String[]{"2", "3", "4", "3", "2"};
-        String[] direction = new String[]{
-                "right", "left", "down", "up" };
-        playerImage = new Image[direction.length][sequence.length + 1];
-        for (int dir = 0; dir < direction.length; dir++)
+        images = new Image[sources.length];
+        if (width > 0 && height > 0)
         {
-            playerImage[dir][0] = getImage("PacMan1.gif");
-            for (int seq = 0; seq < sequence.length; seq++)
+            BufferedImage atlas = atlas(width, height);
+            for (int i = 0; i < sources.length; i++)
             {
-                String name = "PacMan" + sequence[seq]
-                                 + direction[dir] + ".gif";
-                playerImage[dir][seq + 1] = getImage(name);
+                if (sources[i] != null)
+                {
+                    images[i] = atlas.getSubimage(spriteX(i, width),
+                            spriteY(i, height), width, height);
+                }
             }
+        } else
+        {
+            System.arraycopy(sources, 0, images, 0, sources.length);
         }
         assert intialized();
     }
@@ -90,10 +172,7 @@ public class ImageFactory
      */
     public int monsterAnimationCount()
     {
-        assert monsterImage != null;
-        int result = monsterImage.length;
-        assert result >= 0;
-        return result;
+        return MONSTER_NAMES.length;
     }
 
     /**
@@ -101,9 +180,7 @@ public class ImageFactory
      */
     public int playerAnimationCount()
     {
-        assert playerImage != null;
-        assert playerImage[0] != null;
-        return playerImage[0].length;
+        return SEQUENCE.length + 1;
     }
 
     /**
@@ -113,27 +190,26 @@ public class ImageFactory
      */
     public boolean intialized()
     {
-        boolean result = monsterImage != null;
-        result = result && monsterImage.length > 0;
-        for (int i = 0; i < monsterImage.length; i++)
+        boolean result = sources != null && images != null;
+        for (int i = 0; result && i < monsterAnimationCount(); i++)
         {
-            result = result && monsterImage[i] != null;
+            result = images[monsterSprite(i)] != null
+                && images[scaredSprite(i)] != null;
         }
-        result = result && playerImage != null;
-        result = result && playerImage[0] != null;
-        for (int i = 0; i < playerImage.length; i++)
+        for (int dir = 0; result && dir < DIRECTION.length; dir++)
         {
-            for (int j = 0; j < playerImage[i].length; j++)
+            for (int anim = 0; anim < playerAnimationCount(); anim++)
             {
-                result = result && playerImage[i][j] != null;
+                result = result
+                    && images[(1 + dir) * COLUMNS + anim] != null;
             }
         }
         return result;
     }
 
     /**
-     * Get a player (pizza slice) in the appropriate direction at the
-     * given animation sequence.
+     * Get the sprite of the player (pizza slice) in the appropriate
+     * direction at the given animation sequence.
      * 
      * TODO Refactor this so that enums are used -- will be cleaner,
      * and will resolve the checkstyle warning.
@@ -141,12 +217,11 @@ public class ImageFactory
      * @param dx x direction
      * @param dy y direction
      * @param anim Animation step
-     * @return Player image in appropriate direction.
+     * @return Index of the player sprite in appropriate direction.
      */
-    public Image player(int dx, int dy, int anim)
+    public int playerSprite(int dx, int dy, int anim)
     {
         assert anim >= 0;
-        Image img = null;
         int dirIndex = 0;
         if (dx > 0)
         {
@@ -167,7 +242,41 @@ public class ImageFactory
             assert dy == 0;
             // stick to default name.
         }
-        img = playerImage[dirIndex][anim % playerAnimationCount()];
+        return (1 + dirIndex) * COLUMNS + anim % playerAnimationCount();
+    }
+
+    /**
+     * @param animationIndex counter indicating which animation to use.
+     * @return Index of the monster sprite at the given animation index.
+     */
+    public int monsterSprite(int animationIndex)
+    {
+        assert animationIndex >= 0;
+        return animationIndex % MONSTER_NAMES.length;
+    }
+
+    /**
+     * @param animationIndex counter indicating which animation to use.
+     * @return Index of the scared monster sprite at the given
+     *         animation index.
+     */
+    public int scaredSprite(int animationIndex)
+    {
+        assert animationIndex >= 0;
+        return MONSTER_NAMES.length + animationIndex % SCARED_NAMES.length;
+    }
+
+    /**
+     * Get a player (pizza slice) in the appropriate direction at the
+     * given animation sequence.
+     * @param dx x direction
+     * @param dy y direction
+     * @param anim Animation step
+     * @return Player image in appropriate direction.
+     */
+    public Image player(int dx, int dy, int anim)
+    {
+        Image img = images[playerSprite(dx, dy, anim)];
         assert img != null;
         return img;
     }
@@ -179,18 +288,135 @@ public class ImageFactory
      */
     public Image monster(int animationIndex)
     {
-        assert animationIndex >= 0;
-        return monsterImage[animationIndex % monsterAnimationCount()];
+        return images[monsterSprite(animationIndex)];
+    }
+
+    /**
+     * Obtain a picture of a scared monster.
+     * @param animationIndex counter indicating which animation to use.
+     * @return The scared monster image at the given animation index.
+     */
+    public Image scaredMonster(int animationIndex)
+    {
+        return images[scaredSprite(animationIndex)];
+    }
+
+    /**
+     * Draw a sprite, scaled to the given cell size, by copying it from
+     * the atlas of that size.
+     * @param g The graphics to draw on.
+     * @param sprite The index of the sprite.
+     * @param x x-coordinate of the upper left corner, in pixels.
+     * @param y y-coordinate of the upper left corner, in pixels.
+     * @param w cell width, in pixels.
+     * @param h cell height, in pixels.
+     */
+    public void drawSprite(Graphics g, int sprite, int x, int y,
+            int w, int h)
+    {
+        assert sprite >= 0 && sprite < sources.length;
+        final int sx = spriteX(sprite, w);
+        final int sy = spriteY(sprite, h);
+        g.drawImage(atlas(w, h), x, y, x + w, y + h,
+                sx, sy, sx + w, sy + h, null);
+    }
+
+    /**
+     * Obtain the atlas holding all sprites at the given cell size,
+     * building it the first time it's asked for. Precondition:
+     * the images have been loaded.
+     * @param w cell width, in pixels.
+     * @param h cell height, in pixels.
+     * @return The atlas, COLUMNS cells wide and ROWS cells high.
+     */
+    public BufferedImage atlas(int w, int h)
+    {
+        assert sources != null : "images must be loaded first";
+        assert w > 0 && h > 0 && h < 1 << KEY_SHIFT;
+        final Integer key = w << KEY_SHIFT | h;
+        BufferedImage result = atlases.get(key);
+        if (result == null)
+        {
+            result = buildAtlas(w, h);
+            atlases.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Draw all loaded images, scaled to the given cell size,
+     * into a new atlas.
+     * @param w cell width, in pixels.
+     * @param h cell height, in pixels.
+     * @return The new atlas.
+     */
+    private BufferedImage buildAtlas(int w, int h)
+    {
+        BufferedImage result = createCompatibleImage(COLUMNS * w, ROWS * h);
+        Graphics2D g2 = result.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                RenderingHints.VALUE_RENDER_QUALITY);
+        for (int i = 0; i < sources.length; i++)
+        {
+            if (sources[i] != null)
+            {
+                g2.drawImage(sources[i], spriteX(i, w), spriteY(i, h),
+                        w, h, null);
+            }
+        }
+        g2.dispose();
+        return result;
+    }
+
+    /**
+     * Create a transparent image in the format of the screen, if any,
+     * so that copying from it can be accelerated.
+     * @param w width in pixels.
+     * @param h height in pixels.
+     * @return The new image.
+     */
+    private static BufferedImage createCompatibleImage(int w, int h)
+    {
+        if (GraphicsEnvironment.isHeadless())
+        {
+            return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration()
+            .createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * @param sprite The index of a sprite.
+     * @param w cell width, in pixels.
+     * @return The x-coordinate of the sprite in the atlas.
+     */
+    private static int spriteX(int sprite, int w)
+    {
+        return sprite % COLUMNS * w;
+    }
+
+    /**
+     * @param sprite The index of a sprite.
+     * @param h cell height, in pixels.
+     * @return The y-coordinate of the sprite in the atlas.
+     */
+    private static int spriteY(int sprite, int h)
+    {
+        return sprite / COLUMNS * h;
     }
 
     /**
      * Obtain an image from a file / resource that can
-     * be found on the classpath.
+     * be found on the classpath. The image is decoded completely
+     * before it is returned.
      * @param name The file containg, e.g., a .gif picture.
      * @return The corresponding Image.
      * @throws IOException If file can't be found.
      */
-    private Image getImage(String name) throws IOException
+    private BufferedImage getImage(String name) throws IOException
     {
         assert name != null;
         
@@ -200,32 +426,11 @@ public class ImageFactory
         {
             throw new IOException("Can't load image: "  + name);
         }
-        Image result = new ImageIcon(picfile).getImage();
-        assert result != null;
- 
-        return resize(result);
-    }
-    
-     
-    /**
-     * Resize a given image to the required dimension.
-     * @param im The image
-     * @return The resized image.
-     */
-    Image resize(Image im)
-    {
-        assert im != null;
-        Image result = im;
-        if (width > 0 && height > 0)
+        BufferedImage result = ImageIO.read(picfile);
+        if (result == null)
         {
-            int w = im.getWidth(null);        
-            int h = im.getHeight(null);
-            if (w != width || h != height)
-            {
-                result = im.getScaledInstance(width, height, java.awt.Image.SCALE_DEFAULT);
-            }
+            throw new IOException("Can't decode image: "  + name);
         }
-        assert result != null;
         return result;
     }
 }
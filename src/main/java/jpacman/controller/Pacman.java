@@ -1,6 +1,12 @@
 package jpacman.controller;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 import jpacman.model.Engine;
+import jpacman.model.Game;
 import jpacman.model.GameLoadException;
 
 /**
@@ -34,6 +40,17 @@ public class Pacman
      */
     private Animator theAnimator;
 
+    /**
+     * The loop driving the monsters and the animations,
+     * off the event dispatch thread.
+     */
+    private GameLoop theLoop;
+
+    /**
+     * The stream the game is being recorded to, or null if not recorded.
+     */
+    private OutputStream recording = null;
+
     /**
      * Create a default new game, containing an egnine, a gui, and a monster
      * driver.
@@ -53,7 +70,22 @@ public class Pacman
      */
     public Pacman(Engine e)
     {
-        this(e, new PlayerSearchingMonsterMover(e));
+        this(e, new GameLoop());
+        assert invariant();
+    }
+
+    /**
+     * Create a new game around a given engine, with monsters
+     * moved by the given game loop.
+     *
+     * @param e
+     *                The Engine to be used.
+     * @param loop
+     *                The loop driving the monsters and animations.
+     */
+    private Pacman(Engine e, GameLoop loop)
+    {
+        this(e, new PlayerSearchingMonsterMover(e, loop), loop);
         assert invariant();
     }
 
@@ -66,15 +98,45 @@ public class Pacman
      *                The monster mover to be used, not null.
      */
     public Pacman(Engine e, IMonsterController m) 
+    {
+        this(e, m, new GameLoop());
+        assert invariant();
+    }
+
+    /**
+     * Create a new game from a given engine and monster mover, with
+     * animations driven by the given game loop, which is started.
+     * The viewer is notified of the changes once per tick of the loop.
+     *
+     * @param e
+     *                The Engine to be used, not null.
+     * @param m
+     *                The monster mover to be used, not null.
+     * @param loop
+     *                The loop driving the animations, and possibly
+     *                the monster mover, not null.
+     */
+    public Pacman(Engine e, IMonsterController m, GameLoop loop) 
     {
         assert e != null;
         assert m != null;
+        assert loop != null;
         theEngine = e;
         initEngine();
         monsterTicker = m;
+        theLoop = loop;
         theViewer = new PacmanUI(theEngine, this);
-        theAnimator = new Animator(theViewer.getBoardViewer());
+        theAnimator = new Animator(theViewer.getBoardViewer(), theLoop);
+        // show all changes made during a tick at once.
+        theEngine.setNotifyPerTick(true);
+        theLoop.runAfterEachTick(new Runnable() {
+            public void run()
+            {
+                theEngine.endTick();
+            }
+        });
         theViewer.display();
+        theLoop.start();
         assert invariant();
     }
     
@@ -98,7 +160,8 @@ public class Pacman
      */
     protected final boolean invariant()
     {
-        return theEngine != null && monsterTicker != null && theViewer != null;
+        return theEngine != null && monsterTicker != null && theViewer != null
+            && theLoop != null;
     }
 
     /**
@@ -142,6 +205,15 @@ public class Pacman
     {
         assert invariant();
         quit();
+        try
+        {
+            theLoop.stop();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        theEngine.setNotifyPerTick(false);
+        stopRecording();
         theViewer.dispose();
         // No need for a hard exit using, e.g., System.exit(0):
         // we'd like to be able to run a series of pacman's in a single
@@ -149,6 +221,53 @@ public class Pacman
         assert invariant();
     }
 
+    /**
+     * Record the game to a file, from which it can be replayed using
+     * GameReplay. Should be invoked before the game is started.
+     *
+     * @param file The file to be written.
+     * @throws IOException If the file can't be written.
+     * @throws GameLoadException If the game's world can't be read anymore.
+     */
+    public void record(File file) throws IOException, GameLoadException
+    {
+        assert invariant();
+        assert recording == null;
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            theEngine.startRecording(out);
+            recording = out;
+        } finally
+        {
+            if (recording == null)
+            {
+                out.close();
+            }
+        }
+        assert invariant();
+    }
+
+    /**
+     * Stop recording the game, if it is being recorded.
+     */
+    private void stopRecording()
+    {
+        if (recording != null)
+        {
+            try
+            {
+                theEngine.stopRecording();
+                recording.close();
+            } catch (IOException e)
+            {
+                System.err.println(// NOPMD
+                        "Could not write recording: " + e);
+            }
+            recording = null;
+        }
+    }
+
     /**
      * Respond to an up request from the GUI.
      */
@@ -190,6 +309,14 @@ public class Pacman
         assert invariant();
     }
 
+    /**
+     * @return the loop driving this pacman game, offering tick metrics.
+     */
+    public GameLoop getGameLoop()
+    {
+        return theLoop;
+    }
+
     /**
      * @return the Engine of this pacman game
      */
@@ -202,17 +329,33 @@ public class Pacman
      * Start me up.
      *
      * @param args
-     *                Are ignored.
+     *                Optionally the file with the map to be played,
+     *                and the file to which the game is recorded;
+     *                further arguments are ignored.
      * @throws GameLoadException 
      *                  If images can't be found.
+     * @throws IOException
+     *                  If the recording can't be written.
      */
-    public static void main(String[] args) throws GameLoadException
+    public static void main(String[] args)
+        throws GameLoadException, IOException
     {
-        if (args.length > 0)
+        if (args.length > 2)
         {
             System.err.println(// NOPMD by Arie on 1/16/11 2:41 PM
-                    "Ignoring command line arguments."); 
+                    "Ignoring extra command line arguments."); 
+        }
+        Pacman pacman;
+        if (args.length > 0)
+        {
+            pacman = new Pacman(new Engine(new Game(new File(args[0]))));
+        } else
+        {
+            pacman = new Pacman();
+        }
+        if (args.length > 1)
+        {
+            pacman.record(new File(args[1]));
         }
-        new Pacman();
     }
 }
@@ -10,16 +10,19 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
+import jpacman.model.ChangeEvent;
 import jpacman.model.Engine;
+import jpacman.model.EngineAdapter;
+import jpacman.model.EngineListener;
 
 /**
  * Construct the top level GUI.
@@ -27,7 +30,7 @@ import jpacman.model.Engine;
  * @author Arie van Deursen; Aug 17, 2003
  * @version $Id: PacmanUI.java 4250 2011-01-27 20:51:40Z arievandeursen $
  */
-public class PacmanUI extends JFrame implements KeyListener, Observer
+public class PacmanUI extends JFrame implements KeyListener
 {
 
     /**
@@ -64,6 +67,14 @@ public class PacmanUI extends JFrame implements KeyListener, Observer
      * The undo button.
      */
     private JButton undoButton;
+
+    /**
+     * The changes made by other threads for which a refresh has been
+     * requested on the event dispatch thread, but hasn't been done yet,
+     * merged into a single event; null if there are none.
+     */
+    private final AtomicReference<ChangeEvent> unshown =
+        new AtomicReference<ChangeEvent>();
     
     /**
      * The actual text that is shown in the status field.
@@ -102,7 +113,12 @@ public class PacmanUI extends JFrame implements KeyListener, Observer
         engine = theEngine;
         this.controller = p;
         boardViewer = new BoardViewer(engine);
-        engine.addObserver(this);
+        engine.addListener(new EngineAdapter() {
+            public void onChanges(ChangeEvent event)
+            {
+                showChanges(event);
+            }
+        }, EngineListener.CHANGES);
 
         JButton startButton = new JButton("Start");
         startButton.addActionListener(new ActionListener() {
@@ -177,7 +193,7 @@ public class PacmanUI extends JFrame implements KeyListener, Observer
         contentPane.add(topDown);
 
         attachListeners();
-        update(engine, null);
+        showChanges(null);
         
         setName("UIFrame");
         setTitle("JPacman");
@@ -275,64 +291,142 @@ public class PacmanUI extends JFrame implements KeyListener, Observer
         case KeyEvent.VK_S:
             getController().start(); 
             break;
+        case KeyEvent.VK_PLUS: // or
+        case KeyEvent.VK_EQUALS: // or
+        case KeyEvent.VK_ADD:
+            boardViewer.zoomIn();
+            break;
+        case KeyEvent.VK_MINUS: // or
+        case KeyEvent.VK_SUBTRACT:
+            boardViewer.zoomOut();
+            break;
         default:
             // do nothing
         }
     }
 
     /**
-     * Redraw the board and refresh status related information.
-     * @see java.util.Observable
-     * @param observable the one being watched
-     * @param rest remaining info
+     * Redraw the board and refresh status related information, as far
+     * as affected by the changes reported.
+     * @param event the ChangeEvent describing what changed, or null
+     *        if everything should be refreshed.
+     */
+    private void showChanges(ChangeEvent event)
+    {
+        if (SwingUtilities.isEventDispatchThread())
+        {
+            refresh(event);
+        } else if (event == null)
+        {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    refresh(null);
+                }
+            });
+        } else if (addUnshown(event))
+        {
+            // changed by the game loop: refresh on the event dispatch
+            // thread, once for all changes made until then.
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    refresh(unshown.getAndSet(null));
+                }
+            });
+        }
+    }
+
+    /**
+     * Merge an event with the changes not shown yet.
+     * @param event The changes reported.
+     * @return True iff there were no changes waiting to be shown,
+     *         so that a refresh must be requested.
      */
-    public final void update(Observable observable, Object rest)
+    private boolean addUnshown(ChangeEvent event)
     {
-        boardViewer.repaint();
-        updateStatus();
-        updateFood();
+        ChangeEvent previous;
+        ChangeEvent merged;
+        do
+        {
+            previous = unshown.get();
+            merged = event;
+            if (previous != null)
+            {
+                merged = previous.merge(event);
+            }
+        } while (!unshown.compareAndSet(previous, merged));
+        return previous == null;
+    }
+
+    /**
+     * Redraw the board and refresh status related information, as far
+     * as needed. To be invoked on the event dispatch thread.
+     * @param event The changes to be shown, or null to refresh everything.
+     */
+    private void refresh(ChangeEvent event)
+    {
+        if (event == null || event.boardChanged())
+        {
+            boardViewer.repaint();
+        }
+        if (event == null)
+        {
+            updateStatus(engine.getState());
+            updateFood(engine.getFoodEaten());
+        } else
+        {
+            if (event.stateChanged())
+            {
+                updateStatus(event.getState());
+            }
+            if (event.getScoreDelta() != 0)
+            {
+                updateFood(event.getScore());
+            }
+        }
     }
 
     /**
      * Update the display of the total amount of food eaten.
+     * @param amount The amount of food eaten.
      */
-    private void updateFood()
+    private void updateFood(int amount)
     {
-        int amount = engine.getFoodEaten();
         eatenField.setText(Integer.toString(amount));
     }
 
     /**
      * Set the status in the GUI depending on the game's state.
+     * @param state The state of the engine.
      */
-    private void updateStatus()
+    private void updateStatus(Engine.State state)
     {
         String text = null;
-        undoButton.setEnabled(false);
-        if (engine.inStartingState())
+        boolean undoable = true;
+        switch (state)
         {
+        case STARTING:
             text = Status.STARTING.statusText();
-        }
-        if (engine.inPlayingState())
-        {
+            undoable = false;
+            break;
+        case PLAYING:
             text = Status.PLAYING.statusText();
-        }
-        if (engine.inDiedState())
-        {
+            undoable = false;
+            break;
+        case DIED:
             text = Status.LOST.statusText();
-            undoButton.setEnabled(true);
-        }
-        if (engine.inWonState())
-        {
+            break;
+        case WON:
             text = Status.WON.statusText();
-            undoButton.setEnabled(true);
-        }
-        if (engine.inHaltedState())
-        {
+            break;
+        case HALTED:
             text = Status.HALTED.statusText();
-            undoButton.setEnabled(true);
+            break;
+        default:
+            assert false : "Illegal state";
         }
-        assert text != null : "Illegal state";
+        undoButton.setEnabled(undoable);
         statusField.setText(text);
     }
 
@@ -0,0 +1,107 @@
+package jpacman.controller;
+
+import java.util.Random;
+
+import jpacman.model.Board;
+import jpacman.model.Direction;
+import jpacman.model.Engine;
+import jpacman.model.Monster;
+
+/**
+ * Monster controller moving monsters along shortest paths towards the
+ * nearest living player, avoiding walls and using the tunnels at the borders
+ * of the board.
+ * <p>
+ * All monsters share a single distance field from the positions of the
+ * living players, which is only recomputed when a player moves or dies,
+ * and only as far as the monsters asking for it are away from the players.
+ * The cost of a tick therefore doesn't depend on the number of monsters.
+ * Players that died are no longer chased; they just stand in the way.
+ *
+ * @version $Id$
+ */
+public class PathFindingMonsterMover extends AbstractMonsterController
+{
+
+    /**
+     * Distances from the living players, or null if not computed yet.
+     */
+    private DistanceField field = null;
+
+    /**
+     * Buffer for the positions of the living players.
+     */
+    private int[] players = new int[0];
+
+    /**
+     * Create a new path finding monster mover.
+     * @param e the underlying engine.
+     */
+    public PathFindingMonsterMover(Engine e)
+    {
+        super(e);
+    }
+
+    /**
+     * Create a new path finding monster mover driven by a game loop.
+     * @param e the underlying engine.
+     * @param loop the loop triggering the monster moves.
+     */
+    public PathFindingMonsterMover(Engine e, GameLoop loop)
+    {
+        super(e, loop);
+    }
+
+    /**
+     * Create a new path finding monster mover without timer.
+     * @param e the underlying engine.
+     * @param r the randomizer used for choosing monsters and breaking ties.
+     */
+    public PathFindingMonsterMover(Engine e, Random r)
+    {
+        super(e, r);
+    }
+
+    /**
+     * Move a random monster one step closer to the nearest living player.
+     * @see jpacman.controller.IMonsterController#doTick()
+     */
+    public void doTick()
+    {
+        Monster m = getRandomMonster();
+        if (m != null)
+        {
+            Direction dir = nextStep(m);
+            if (dir != null)
+            {
+                getEngine().moveMonster(m, dir.getDx(), dir.getDy());
+            }
+        }
+    }
+
+    /**
+     * Determine the first step on a shortest path from a monster
+     * to the nearest living player.
+     * @param m The monster to be moved.
+     * @return The direction to go, or null if no living player can be
+     *         reached.
+     */
+    Direction nextStep(Monster m)
+    {
+        Board board = m.getLocation().getBoard();
+        if (field == null || !field.isFor(board))
+        {
+            // new game or new world: pick up its walls.
+            field = new DistanceField(board);
+        }
+        final int playerCount = getEngine().getPlayerCount();
+        if (players.length < playerCount)
+        {
+            players = new int[playerCount];
+        }
+        final int living = getEngine().getLivingPlayerPositions(players);
+        field.setSources(players, living);
+        return field.stepTowardsSource(m.getLocation().getPosition(),
+                getRandomizer());
+    }
+}
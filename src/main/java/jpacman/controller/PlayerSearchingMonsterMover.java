@@ -1,5 +1,7 @@
 package jpacman.controller;
 
+import java.util.Random;
+
 import jpacman.model.Engine;
 import jpacman.model.Monster;
 
@@ -11,6 +13,10 @@ import jpacman.model.Monster;
 public class PlayerSearchingMonsterMover extends AbstractMonsterController
 {
 
+    /**
+     * Buffer for the positions of the living players.
+     */
+    private int[] players = new int[0];
 
     /**
      * Create a new player searching monster.
@@ -21,16 +27,38 @@ public class PlayerSearchingMonsterMover extends AbstractMonsterController
         super(e);
     }
 
+    /**
+     * Create a new player searching monster mover driven by a game loop.
+     * @param e the underlying engine.
+     * @param loop the loop triggering the monster moves.
+     */
+    public PlayerSearchingMonsterMover(Engine e, GameLoop loop)
+    {
+        super(e, loop);
+    }
+
+    /**
+     * Create a new player searching monster without timer.
+     * @param e the underlying engine.
+     * @param r the randomizer used for deviating from the best move.
+     */
+    public PlayerSearchingMonsterMover(Engine e, Random r)
+    {
+        super(e, r);
+    }
+
     /**
      * @see jpacman.controller.IMonsterController#doTick()
      */
     public void doTick()
     {
         Monster m = getRandomMonster();
-        if (m != null)
+        final int target = nearestLivingPlayer(m);
+        if (m != null && target >= 0)
         {
-            int px = getEngine().getPlayer().getLocation().getX();
-            int py = getEngine().getPlayer().getLocation().getY();
+            final int width = m.getLocation().getBoard().getWidth();
+            int px = target % width;
+            int py = target / width;
             int mx = m.getLocation().getX();
             int my = m.getLocation().getY();
             int dx = closer(mx, px);
@@ -53,6 +81,42 @@ public class PlayerSearchingMonsterMover extends AbstractMonsterController
         }
     }
     
+    /**
+     * Find the living player closest to a monster, counting the horizontal
+     * and vertical steps between them.
+     * @param m The monster, or null.
+     * @return The position (y * width + x) of the nearest living player,
+     *         or -1 if there is no monster or no living player.
+     */
+    private int nearestLivingPlayer(Monster m)
+    {
+        int nearest = -1;
+        if (m != null)
+        {
+            final int playerCount = getEngine().getPlayerCount();
+            if (players.length < playerCount)
+            {
+                players = new int[playerCount];
+            }
+            final int living = getEngine().getLivingPlayerPositions(players);
+            final int width = m.getLocation().getBoard().getWidth();
+            final int mx = m.getLocation().getX();
+            final int my = m.getLocation().getY();
+            int best = Integer.MAX_VALUE;
+            for (int i = 0; i < living; i++)
+            {
+                final int steps = Math.abs(players[i] % width - mx)
+                    + Math.abs(players[i] / width - my);
+                if (steps < best)
+                {
+                    best = steps;
+                    nearest = players[i];
+                }
+            }
+        }
+        return nearest;
+    }
+
     /**
      * Go into the given direction with a given probability.
      * @param dir The direction where you can find the player: 
@@ -1,6 +1,8 @@
 package jpacman.controller;
 
 
+import java.util.Random;
+
 import jpacman.model.Engine;
 import jpacman.model.Monster;
 
@@ -23,6 +25,27 @@ public class RandomMonsterMover extends AbstractMonsterController
         super(theEngine);
     }
 
+    /**
+     * Create a new random monster mover driven by a game loop.
+     * @param theEngine the underlying engine.
+     * @param loop the loop triggering the monster moves.
+     */
+    public RandomMonsterMover(final Engine theEngine, GameLoop loop)
+    {
+        super(theEngine, loop);
+    }
+
+    /**
+     * Start a new mover without timer, using the given randomizer.
+     *
+     * @param theEngine Engine used.
+     * @param randomizer Source of all random moves.
+     */
+    public RandomMonsterMover(final Engine theEngine, Random randomizer)
+    {
+        super(theEngine, randomizer);
+    }
+
     /**
      * Local enum for directions.
      */
@@ -36,44 +59,42 @@ public class RandomMonsterMover extends AbstractMonsterController
      */
     public void doTick()
     {
-        synchronized (getEngine())
+        // the move itself is atomic, nothing else needs to be locked.
+        Monster theMonster = getRandomMonster();
+        if (theMonster == null)
         {
-            Monster theMonster = getRandomMonster();
-            if (theMonster == null)
-            {
-                return;
-            }
+            return;
+        }
 
-            int dx = 0;
-            int dy = 0;
+        int dx = 0;
+        int dy = 0;
 
-            final int dirIndex = getRandomizer().nextInt(Direction.values().length);
-            final Direction dir = Direction.values()[dirIndex];
-            switch(dir)
-            {
-            case UP:
-                dy = -1;
-                break;
-            case DOWN:
-                dy = 1;
-                break;
-            case LEFT:
-                dx = -1;
-                break;
-            case RIGHT:
-                dx = 1;
-                break;
-            default:
-                assert false;
-            }
+        final int dirIndex = getRandomizer().nextInt(Direction.values().length);
+        final Direction dir = Direction.values()[dirIndex];
+        switch(dir)
+        {
+        case UP:
+            dy = -1;
+            break;
+        case DOWN:
+            dy = 1;
+            break;
+        case LEFT:
+            dx = -1;
+            break;
+        case RIGHT:
+            dx = 1;
+            break;
+        default:
+            assert false;
+        }
 
-            assert dy >= -1 && dy <= 1;
-            assert
-            Math.abs(dx) == 1 && dy == 0
-            ||
-            Math.abs(dy) == 1 && dx == 0;
+        assert dy >= -1 && dy <= 1;
+        assert
+        Math.abs(dx) == 1 && dy == 0
+        ||
+        Math.abs(dy) == 1 && dx == 0;
 
-            getEngine().moveMonster(theMonster, dx, dy);
-        }
+        getEngine().moveMonster(theMonster, dx, dy);
     }
 }
@@ -0,0 +1,224 @@
+package jpacman.controller;
+
+/**
+ * The part of the board that is visible in a viewer, measured in cells,
+ * for boards larger than the window. The viewport scrolls to follow the
+ * player, and can be zoomed through a fixed series of cell sizes.
+ * <p>
+ * To avoid redrawing everything at every step of the player, the viewport
+ * doesn't scroll along with every move: only when the followed cell comes
+ * within a margin of the edge, the viewport jumps to center it again.
+ *
+ * @version $Id$
+ */
+class Viewport
+{
+
+    /**
+     * The cell sizes, in pixels, of the zoom levels.
+     */
+    static final int[] CELL_SIZES = {4, 8, 12, 20, 32};
+
+    /**
+     * The zoom level used initially: cells of 20 pixels.
+     */
+    static final int DEFAULT_ZOOM = 3;
+
+    /**
+     * Number of cells kept between the followed cell and the edge
+     * of the viewport, if the viewport is large enough.
+     */
+    static final int MARGIN = 3;
+
+    /**
+     * The current zoom level, an index in CELL_SIZES.
+     */
+    private int zoom = DEFAULT_ZOOM;
+
+    /**
+     * Size of the board, in cells.
+     */
+    private int worldWidth, worldHeight;
+
+    /**
+     * Number of (partially) visible columns and rows.
+     */
+    private int columns, rows;
+
+    /**
+     * Position on the board of the upper left visible cell.
+     */
+    private int left, top;
+
+    /**
+     * @return The size of a cell at the current zoom level, in pixels.
+     */
+    int cellSize()
+    {
+        return CELL_SIZES[zoom];
+    }
+
+    /**
+     * @return The current zoom level.
+     */
+    int getZoom()
+    {
+        return zoom;
+    }
+
+    /**
+     * Show larger cells, if possible. The viewport should be resized
+     * afterwards.
+     * @return True iff the zoom level changed.
+     */
+    boolean zoomIn()
+    {
+        if (zoom == CELL_SIZES.length - 1)
+        {
+            return false;
+        }
+        zoom++;
+        return true;
+    }
+
+    /**
+     * Show smaller cells, if possible. The viewport should be resized
+     * afterwards.
+     * @return True iff the zoom level changed.
+     */
+    boolean zoomOut()
+    {
+        if (zoom == 0)
+        {
+            return false;
+        }
+        zoom--;
+        return true;
+    }
+
+    /**
+     * Fit the viewport to the area available on the screen, and to
+     * the size of the board. Cells only partially visible at the right
+     * and bottom edge are part of the viewport.
+     * @param pixelWidth Width of the area in pixels.
+     * @param pixelHeight Height of the area in pixels.
+     * @param pitch Distance between the start of two cells, in pixels.
+     * @param width Width of the board, in cells.
+     * @param height Height of the board, in cells.
+     * @return True iff the visible cells changed.
+     */
+    boolean resize(int pixelWidth, int pixelHeight, int pitch,
+            int width, int height)
+    {
+        assert pitch > 0;
+        final int newColumns = fit(pixelWidth, pitch, width);
+        final int newRows = fit(pixelHeight, pitch, height);
+        final boolean changed = newColumns != columns || newRows != rows
+            || width != worldWidth || height != worldHeight;
+        columns = newColumns;
+        rows = newRows;
+        worldWidth = width;
+        worldHeight = height;
+        left = clamp(left, worldWidth - columns);
+        top = clamp(top, worldHeight - rows);
+        return changed;
+    }
+
+    /**
+     * @param pixels Available length in pixels.
+     * @param pitch Distance between the start of two cells, in pixels.
+     * @param cells Number of cells on the board.
+     * @return Number of cells that are (partially) visible.
+     */
+    private static int fit(int pixels, int pitch, int cells)
+    {
+        return Math.min(cells, Math.max(1, (pixels + pitch - 1) / pitch));
+    }
+
+    /**
+     * @param value A position.
+     * @param max The largest allowed position.
+     * @return The position, limited to 0..max.
+     */
+    private static int clamp(int value, int max)
+    {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    /**
+     * Make sure the given cell is visible, and away from the edges if the
+     * viewport is large enough, by centering it once it gets too close.
+     * @param x Horizontal position of the cell on the board.
+     * @param y Vertical position of the cell on the board.
+     * @return True iff the viewport scrolled.
+     */
+    boolean follow(int x, int y)
+    {
+        final int oldLeft = left;
+        final int oldTop = top;
+        left = follow(x, left, columns, worldWidth);
+        top = follow(y, top, rows, worldHeight);
+        return left != oldLeft || top != oldTop;
+    }
+
+    /**
+     * @param pos Position of the followed cell along one axis.
+     * @param start Current start of the viewport along that axis.
+     * @param length Visible number of cells along that axis.
+     * @param size Number of cells on the board along that axis.
+     * @return The new start of the viewport.
+     */
+    private static int follow(int pos, int start, int length, int size)
+    {
+        final int margin = Math.min(MARGIN, (length - 1) / 2);
+        int result = start;
+        if (pos < start + margin || pos >= start + length - margin)
+        {
+            result = pos - length / 2;
+        }
+        return clamp(result, size - length);
+    }
+
+    /**
+     * @param x Horizontal position on the board.
+     * @param y Vertical position on the board.
+     * @return True iff the cell is (partially) visible.
+     */
+    boolean contains(int x, int y)
+    {
+        return x >= left && x < left + columns
+            && y >= top && y < top + rows;
+    }
+
+    /**
+     * @return Horizontal position of the upper left visible cell.
+     */
+    int getLeft()
+    {
+        return left;
+    }
+
+    /**
+     * @return Vertical position of the upper left visible cell.
+     */
+    int getTop()
+    {
+        return top;
+    }
+
+    /**
+     * @return Number of (partially) visible columns.
+     */
+    int getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * @return Number of (partially) visible rows.
+     */
+    int getRows()
+    {
+        return rows;
+    }
+}
@@ -0,0 +1,718 @@
+package jpacman.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A level in a compact binary format, which can be loaded without
+ * parsing text or creating strings.
+ * <p>
+ * A binary level consists of a header of seven big-endian ints: the magic
+ * number, the format version, the width and height of the board, and the
+ * number of players, monsters and food. The header is followed by the cells
+ * in row-major order, run-length encoded as a guest code byte followed by
+ * the length of the run as an unsigned varint (seven bits per byte, least
+ * significant group first, high bit set if more bytes follow). The level
+ * ends with the CRC32 checksum of everything before it, as an int.
+ * <p>
+ * Levels in this format can be created from text maps by the main method,
+ * and are recognized by their magic number by the GameLoader and by
+ * Game(File). Levels are encoded by an Encoder, which streams the cells of
+ * any world source to the output as they are read, so that even the largest
+ * maps are encoded without being held in memory.
+ *
+ * @version $Id$
+ */
+public class BinaryLevel implements WorldSource
+{
+
+    /**
+     * The first four bytes of every binary level: "JPLV".
+     */
+    public static final int MAGIC = 0x4A504C56;
+
+    /**
+     * The version of the format written.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Number of bytes in the header.
+     */
+    static final int HEADER_SIZE = 28;
+
+    /**
+     * Number of bytes in the checksum.
+     */
+    static final int CHECKSUM_SIZE = 4;
+
+    /**
+     * Number of payload bits in a varint byte.
+     */
+    private static final int VARINT_BITS = 7;
+
+    /**
+     * Mask selecting the payload bits of a varint byte.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Flag set in varint bytes that are followed by more bytes.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Mask turning a checksum into an unsigned value.
+     */
+    private static final long UNSIGNED_INT = 0xFFFFFFFFL;
+
+    /**
+     * Size of the buffer used to checksum levels that aren't
+     * backed by an array.
+     */
+    private static final int CHECKSUM_BUFFER = 1 << 13;
+
+    /**
+     * The encoded level.
+     */
+    private final byte[] data;
+
+    /**
+     * Create a level from its encoding. The encoding is only
+     * checked when the level is loaded.
+     * @param encoded The encoded level, which is not copied.
+     */
+    BinaryLevel(byte[] encoded)
+    {
+        assert encoded != null;
+        data = encoded;
+    }
+
+    /**
+     * Decode the level, and pass its cells to the builder.
+     * @param builder Receiver of the world's content.
+     * @throws GameLoadException If the encoding is incorrect.
+     * @see jpacman.model.WorldSource#load(WorldBuilder)
+     */
+    public void load(WorldBuilder builder) throws GameLoadException
+    {
+        decode(ByteBuffer.wrap(data), builder);
+    }
+
+    /**
+     * @param buf Buffer positioned at the start of a level.
+     * @return True iff the buffer starts with the magic number.
+     */
+    static boolean isBinary(ByteBuffer buf)
+    {
+        return buf.remaining() >= HEADER_SIZE
+            && buf.getInt(buf.position()) == MAGIC;
+    }
+
+    /**
+     * Encode a map as a binary level.
+     * @param map A correct map, one string per row.
+     * @return The encoded level.
+     */
+    public static byte[] encode(String[] map)
+    {
+        assert map != null;
+        assert GameLoader.checkSanity(map) == null;
+        try
+        {
+            Encoder encoder = new Encoder(new TextWorld(map));
+            ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream((int) encoder.size());
+            encoder.writeTo(bytes);
+            return bytes.toByteArray();
+        } catch (GameLoadException e)
+        {
+            throw new IllegalArgumentException("Incorrect map", e);
+        } catch (IOException e)
+        {
+            // can't happen for byte array streams.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode a level, and pass its cells to the builder. The checksum
+     * is verified before the builder gets to see anything.
+     *
+     * @param buf Buffer holding exactly the level from its position
+     *            up to its limit.
+     * @param builder Receiver of the world's content.
+     * @throws GameLoadException If the encoding is incorrect.
+     */
+    static void decode(ByteBuffer buf, WorldBuilder builder)
+        throws GameLoadException
+    {
+        final int start = buf.position();
+        final int end = buf.limit() - CHECKSUM_SIZE;
+        if (end - start < HEADER_SIZE || !isBinary(buf))
+        {
+            throw new GameLoadException("Not a binary level.");
+        }
+        if (checksum(buf, start, end)
+                != (buf.getInt(end) & UNSIGNED_INT))
+        {
+            throw new GameLoadException("Checksum mismatch in binary level.");
+        }
+        buf.getInt(); // the magic number
+        final int version = buf.getInt();
+        if (version != VERSION)
+        {
+            throw new GameLoadException(
+                    "Unsupported binary level version: " + version);
+        }
+        final int width = buf.getInt();
+        final int height = buf.getInt();
+        final int players = buf.getInt();
+        final int monsters = buf.getInt();
+        final int food = buf.getInt();
+        if (width <= 0 || height <= 0)
+        {
+            throw new GameLoadException("Empty board not allowed");
+        }
+        if (height > Integer.MAX_VALUE / width)
+        {
+            throw new GameLoadException("Binary level too large.");
+        }
+        if (players <= 0)
+        {
+            throw new GameLoadException("No player defined.");
+        }
+
+        builder.startWorld(width, height);
+        int playersFound = 0;
+        int monstersFound = 0;
+        int foodFound = 0;
+        final int cells = width * height;
+        int cell = 0;
+        while (cell < cells)
+        {
+            if (buf.position() >= end)
+            {
+                throw new GameLoadException("Truncated binary level.");
+            }
+            final char code = (char) buf.get();
+            if (!GameLoader.permittedChar(code))
+            {
+                throw new GameLoadException("Incorrect game character: "
+                        + code);
+            }
+            final int run = readRun(buf, end);
+            if (run > cells - cell)
+            {
+                throw new GameLoadException("Binary level runs too long.");
+            }
+            switch (code)
+            {
+            case Guest.PLAYER_TYPE:
+                playersFound += run;
+                break;
+            case Guest.MONSTER_TYPE:
+                monstersFound += run;
+                break;
+            case Guest.FOOD_TYPE:
+                foodFound += run;
+                break;
+            default:
+                break;
+            }
+            if (code == Guest.EMPTY_TYPE)
+            {
+                cell += run;
+            } else
+            {
+                for (int i = 0; i < run; i++, cell++)
+                {
+                    builder.addGuest(code, cell % width, cell / width);
+                }
+            }
+        }
+        if (buf.position() != end)
+        {
+            throw new GameLoadException("Binary level runs too long.");
+        }
+        if (playersFound != players || monstersFound != monsters
+                || foodFound != food)
+        {
+            throw new GameLoadException(
+                    "Guest counts don't match binary level header.");
+        }
+        buf.position(buf.limit());
+        builder.finishWorld();
+    }
+
+    /**
+     * Write a run of equal cells.
+     * @param out The stream to write to.
+     * @param code The guest code of the cells.
+     * @param run The number of cells, at least 1.
+     * @throws IOException If writing fails.
+     */
+    private static void writeRun(DataOutputStream out, char code, int run)
+        throws IOException
+    {
+        assert run > 0;
+        out.writeByte(code);
+        int rest = run;
+        while (rest > VARINT_MASK)
+        {
+            out.writeByte((rest & VARINT_MASK) | VARINT_MORE);
+            rest >>>= VARINT_BITS;
+        }
+        out.writeByte(rest);
+    }
+
+    /**
+     * Read the length of a run.
+     * @param buf The buffer to read from.
+     * @param end The end of the runs in the buffer.
+     * @return The length of the run, at least 1.
+     * @throws GameLoadException If the length is incorrect.
+     */
+    private static int readRun(ByteBuffer buf, int end)
+        throws GameLoadException
+    {
+        long run = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            if (buf.position() >= end || shift >= Integer.SIZE)
+            {
+                throw new GameLoadException("Incorrect run in binary level.");
+            }
+            b = buf.get();
+            run |= (long) (b & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        } while ((b & VARINT_MORE) != 0);
+        if (run <= 0 || run > Integer.MAX_VALUE)
+        {
+            throw new GameLoadException("Incorrect run in binary level.");
+        }
+        return (int) run;
+    }
+
+    /**
+     * Compute the checksum of part of a buffer, without
+     * changing its position.
+     * @param buf The buffer.
+     * @param start Start of the part to be checked.
+     * @param end End of the part to be checked.
+     * @return The CRC32 checksum of that part.
+     */
+    private static long checksum(ByteBuffer buf, int start, int end)
+    {
+        CRC32 crc = new CRC32();
+        if (buf.hasArray())
+        {
+            crc.update(buf.array(), buf.arrayOffset() + start, end - start);
+        } else
+        {
+            ByteBuffer part = buf.duplicate();
+            part.position(start);
+            part.limit(end);
+            byte[] chunk = new byte[Math.min(CHECKSUM_BUFFER, end - start)];
+            while (part.hasRemaining())
+            {
+                final int n = Math.min(chunk.length, part.remaining());
+                part.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Convert a text map into a binary level. The map is read from a
+     * memory mapped file and encoded straight into the level file, so
+     * neither is ever held in memory as a whole.
+     *
+     * @param args The text map file to be read,
+     *            and the binary level file to be written.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println(// NOPMD
+                    "Usage: BinaryLevel <text map> <binary level>");
+            return;
+        }
+        Encoder encoder;
+        try
+        {
+            encoder = new Encoder(new MappedWorld(new File(args[0])));
+        } catch (GameLoadException e)
+        {
+            System.err.println(args[0] + ": " + e.getMessage()); // NOPMD
+            return;
+        }
+        OutputStream out = new FileOutputStream(new File(args[1]));
+        try
+        {
+            encoder.writeTo(out);
+        } catch (GameLoadException e)
+        {
+            throw new IOException(args[0] + " changed while converting", e);
+        } finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes a world as a binary level, streaming its cells to the
+     * output as they are read from the source. Since the header holds
+     * the number of guests, the source is read twice: once when the
+     * encoder is created, to count the guests and measure the level, and
+     * once more when the level is written. A world that is a binary level
+     * already is written as it is.
+     */
+    static final class Encoder
+    {
+
+        /**
+         * The world to be encoded.
+         */
+        private final WorldSource source;
+
+        /**
+         * The encoding of a world that is a binary level already,
+         * or null if the world is to be encoded.
+         */
+        private final byte[] encoded;
+
+        /**
+         * The runs and guests of the world, as counted when measuring,
+         * or null if the world is encoded already.
+         */
+        private final RunWriter measured;
+
+        /**
+         * The number of bytes of the encoded runs.
+         */
+        private final long runBytes;
+
+        /**
+         * Measure the encoding of a world.
+         * @param world The world to be encoded.
+         * @throws GameLoadException If the world can't be read.
+         */
+        Encoder(WorldSource world) throws GameLoadException
+        {
+            assert world != null;
+            source = world;
+            if (world instanceof BinaryLevel)
+            {
+                encoded = ((BinaryLevel) world).data;
+                measured = null;
+                runBytes = encoded.length - HEADER_SIZE - CHECKSUM_SIZE;
+            } else
+            {
+                encoded = null;
+                CountingStream counter = new CountingStream(null);
+                measured = new RunWriter(new DataOutputStream(counter));
+                load(measured);
+                runBytes = counter.count;
+            }
+        }
+
+        /**
+         * @return The number of bytes of the encoded level, including its
+         *         header and checksum.
+         */
+        long size()
+        {
+            return HEADER_SIZE + runBytes + CHECKSUM_SIZE;
+        }
+
+        /**
+         * Write the encoded level, reading the world once more. The
+         * stream is flushed, but not closed.
+         * @param stream The stream to write to.
+         * @throws IOException If writing fails.
+         * @throws GameLoadException If the world can't be read anymore,
+         *             or has changed since it was measured.
+         */
+        void writeTo(OutputStream stream) throws IOException, GameLoadException
+        {
+            if (encoded != null)
+            {
+                stream.write(encoded);
+                stream.flush();
+                return;
+            }
+            CheckedOutputStream checked =
+                new CheckedOutputStream(stream, new CRC32());
+            CountingStream counter = new CountingStream(checked);
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(counter));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(measured.width);
+            out.writeInt(measured.height);
+            out.writeInt(measured.players);
+            out.writeInt(measured.monsters);
+            out.writeInt(measured.food);
+            RunWriter runs = new RunWriter(out);
+            load(runs);
+            out.flush();
+            if (!runs.sameCounts(measured)
+                    || counter.count != HEADER_SIZE + runBytes)
+            {
+                throw new GameLoadException(
+                        "World changed while being encoded.");
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+        }
+
+        /**
+         * Pass the world to a run writer.
+         * @param runs The run writer.
+         * @throws GameLoadException If the world can't be read.
+         */
+        private void load(RunWriter runs) throws GameLoadException
+        {
+            source.load(runs);
+            if (runs.failure != null)
+            {
+                throw new GameLoadException("Can't write binary level",
+                        runs.failure);
+            }
+        }
+    }
+
+    /**
+     * Builder writing the cells of a world as runs, while counting the
+     * guests. Cells not passed to the builder are empty.
+     */
+    private static final class RunWriter implements WorldBuilder
+    {
+
+        /**
+         * The stream the runs are written to.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * The first problem writing the runs, if any, after which nothing
+         * more is written.
+         */
+        private IOException failure = null;
+
+        /**
+         * Width and height of the world.
+         */
+        private int width, height;
+
+        /**
+         * Number of players, monsters and food in the world.
+         */
+        private int players, monsters, food;
+
+        /**
+         * The position (y * width + x) of the next cell to be encoded.
+         */
+        private int next = 0;
+
+        /**
+         * The guest code of the current run.
+         */
+        private char code;
+
+        /**
+         * The length of the current run, 0 if there is none yet.
+         */
+        private int run = 0;
+
+        /**
+         * @param stream The stream to write the runs to.
+         */
+        RunWriter(DataOutputStream stream)
+        {
+            out = stream;
+        }
+
+        /**
+         * @param other Another run writer.
+         * @return True iff both saw the same world size and guests.
+         */
+        boolean sameCounts(RunWriter other)
+        {
+            return width == other.width && height == other.height
+                && players == other.players && monsters == other.monsters
+                && food == other.food;
+        }
+
+        /**
+         * @see jpacman.model.WorldBuilder#startWorld(int, int)
+         * @param w Width of the world
+         * @param h Height of the world
+         */
+        public void startWorld(int w, int h)
+        {
+            width = w;
+            height = h;
+        }
+
+        /**
+         * @see jpacman.model.WorldBuilder#addGuest(char, int, int)
+         * @param guest The guest's type code.
+         * @param x Horizontal position
+         * @param y Vertical position
+         */
+        public void addGuest(char guest, int x, int y)
+        {
+            final int pos = y * width + x;
+            assert pos >= next : "cells must be passed in row-major order";
+            cells(Guest.EMPTY_TYPE, pos - next);
+            cells(guest, 1);
+            next = pos + 1;
+            switch (guest)
+            {
+            case Guest.PLAYER_TYPE:
+                players++;
+                break;
+            case Guest.MONSTER_TYPE:
+                monsters++;
+                break;
+            case Guest.FOOD_TYPE:
+                food++;
+                break;
+            default:
+                break;
+            }
+        }
+
+        /**
+         * @see jpacman.model.WorldBuilder#finishWorld()
+         */
+        public void finishWorld()
+        {
+            cells(Guest.EMPTY_TYPE, width * height - next);
+            next = width * height;
+            if (run > 0)
+            {
+                endRun();
+            }
+        }
+
+        /**
+         * Add a number of cells with the same guest code to the runs,
+         * writing the current run if the code differs.
+         * @param guest The guest code of the cells.
+         * @param count The number of cells, possibly 0.
+         */
+        private void cells(char guest, int count)
+        {
+            if (count > 0)
+            {
+                if (run > 0 && guest != code)
+                {
+                    endRun();
+                    run = 0;
+                }
+                code = guest;
+                run += count;
+            }
+        }
+
+        /**
+         * Write the current run, unless writing failed before.
+         */
+        private void endRun()
+        {
+            if (failure == null)
+            {
+                try
+                {
+                    writeRun(out, code, run);
+                } catch (IOException e)
+                {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream counting the bytes written through it.
+     */
+    private static final class CountingStream extends FilterOutputStream
+    {
+
+        /**
+         * The number of bytes written so far.
+         */
+        private long count = 0;
+
+        /**
+         * @param target The stream to pass the bytes on to, or null if
+         *            they are only counted.
+         */
+        CountingStream(OutputStream target)
+        {
+            super(target);
+        }
+
+        /**
+         * @see java.io.FilterOutputStream#write(int)
+         * @param b The byte.
+         * @throws IOException If passing it on fails.
+         */
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (out != null)
+            {
+                out.write(b);
+            }
+            count++;
+        }
+
+        /**
+         * @see java.io.FilterOutputStream#write(byte[], int, int)
+         * @param b The bytes.
+         * @param off The offset of the bytes.
+         * @param len The number of bytes.
+         * @throws IOException If passing them on fails.
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (out != null)
+            {
+                out.write(b, off, len);
+            }
+            count += len;
+        }
+
+        /**
+         * @see java.io.FilterOutputStream#flush()
+         * @throws IOException If flushing fails.
+         */
+        @Override
+        public void flush() throws IOException
+        {
+            if (out != null)
+            {
+                out.flush();
+            }
+        }
+    }
+}
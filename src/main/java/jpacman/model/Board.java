@@ -1,6 +1,8 @@
 package jpacman.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Maintain a rectangular board of cells, potentially occupied by guests. After
@@ -19,9 +21,38 @@ public class Board
     private final int width, height;
 
     /**
-     * The array of cells constituting the board.
+     * Number of directions in the neighbour table.
      */
-    private final Cell[][] cellAt;
+    static final int DIRECTIONS = 4;
+
+    /**
+     * The cells constituting the board, row by row:
+     * the cell at (x,y) is at position y * width + x.
+     */
+    private final Cell[] cells;
+
+    /**
+     * Precomputed neighbour positions, wrapping around the borders:
+     * the neighbour of position p in direction d is at
+     * neighbours[p * DIRECTIONS + d.ordinal()].
+     */
+    private final int[] neighbours;
+
+    /**
+     * Positions (y * width + x) of the cells whose guests changed since
+     * the changes were last taken, or null if changes aren't tracked.
+     */
+    private BitSet changed = null;
+
+    /**
+     * The positions in changed, in the order in which they changed.
+     */
+    private int[] changedCells = null;
+
+    /**
+     * Number of positions in changedCells.
+     */
+    private int changedCount = 0;
 
     /**
      * Create a new board given a width and a height.
@@ -37,18 +68,48 @@ public class Board
         assert h >= 0;
         width = w;
         height = h;
-        cellAt = new Cell[w][h];
-        for (int x = 0; x < w; x++)
+        cells = new Cell[w * h];
+        neighbours = new int[w * h * DIRECTIONS];
+        for (int y = 0; y < h; y++)
         {
-            for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
             {
-                cellAt[x][y] = new Cell(x, y, this);
+                final int pos = y * w + x;
+                cells[pos] = new Cell(x, y, this);
+                for (int d = 0; d < DIRECTIONS; d++)
+                {
+                    neighbours[pos * DIRECTIONS + d] = wrappedNeighbour(pos, d);
+                }
             }
         }
         assert invariant();
         assert consistentBoardCellAssociation();
     }
 
+    /**
+     * Create a board of the given dimensions without allocating its cells.
+     * Intended for subclasses that keep track of the board's content
+     * themselves, and create cells only when they are actually needed.
+     *
+     * @param w
+     *            Width of the board
+     * @param h
+     *            Height of the board
+     * @param allocateCells
+     *            Must be false: cells are left to the subclass.
+     */
+    protected Board(int w, int h, boolean allocateCells)
+    {
+        assert w >= 0;
+        assert h >= 0;
+        assert !allocateCells;
+        width = w;
+        height = h;
+        cells = null;
+        neighbours = null;
+        assert invariant();
+    }
+
     /**
      * A board's invariant is simply that both the width and the height are not
      * negative.
@@ -61,25 +122,51 @@ public class Board
     }
 
     /**
-     * Check that each cell has a correct link to this board. This function
-     * could be part of the invariant, but checking it each time is considered
-     * too expensive, which is why it is offered as a separate function.
+     * Check that each cell has a correct link to this board, and satisfies
+     * its own invariant. This function could be part of the invariant, but
+     * checking it each time is considered too expensive, which is why it
+     * is offered as a separate function, checked as part of the game's
+     * full invariant (see Invariants).
      *
      * @return True iff the cell/board association is consistent
      */
-    protected final boolean consistentBoardCellAssociation()
+    protected boolean consistentBoardCellAssociation()
+    {
+        return consistentBoardCellAssociation(0, width * height);
+    }
+
+    /**
+     * Check the cell/board association for a number of consecutive
+     * positions, wrapping around at the end of the board, so that checking
+     * the whole board can be spread over several calls.
+     *
+     * @param first The position of the first cell to be checked.
+     * @param count The number of positions to be checked.
+     * @return True iff the cells checked are consistent.
+     */
+    protected boolean consistentBoardCellAssociation(int first, int count)
     {
+        final int size = width * height;
         boolean result = true;
-        for (Cell[] row : cellAt)
+        for (int i = 0; i < count && i < size; i++)
         {
-            for (Cell c : row)
-            {
-                result = result && c.getBoard().equals(this);
-            }
+            result = result && consistentCell((first + i) % size);
         }
         return result;
     }
 
+    /**
+     * @param pos The position of a cell.
+     * @return True iff the cell there links to this board, is at that
+     *         position, and satisfies its own invariant.
+     */
+    protected boolean consistentCell(int pos)
+    {
+        final Cell c = cells[pos];
+        return c.getBoard() == this && c.getPosition() == pos
+            && c.invariant();
+    }
+
     /**
      * Return the cell at position (x,y). Precondition: (x,y) falls wihtin the
      * borders of the board. Postcondition: returned cell exists and is not
@@ -93,13 +180,121 @@ public class Board
      */
     public Cell getCell(int x, int y)
     {
-        assert invariant();
         assert withinBorders(x, y)
         : "Cell requested (" + x + "," + y + ") out of borders "
         + width + " * " + height;
-        Cell result = cellAt[x][y];
+        Cell result = cells[y * width + x];
         assert result != null;
-        assert invariant();
+        return result;
+    }
+
+    /**
+     * Return the position of (x,y), as used for changed cells,
+     * snapshots, and neighbours.
+     *
+     * @param x
+     *            Horizontal coordinate
+     * @param y
+     *            Vertical coordinate
+     * @return The position y * width + x.
+     */
+    public final int position(int x, int y)
+    {
+        assert withinBorders(x, y);
+        return y * width + x;
+    }
+
+    /**
+     * Return the position next to a given one, wrapping around the
+     * borders of the board, in a single table lookup.
+     *
+     * @param pos
+     *            The position to start from.
+     * @param dir
+     *            The direction to go.
+     * @return The neighbouring position.
+     */
+    public int neighbour(int pos, Direction dir)
+    {
+        return neighbour(pos, dir.ordinal());
+    }
+
+    /**
+     * Return the position next to a given one, wrapping around the
+     * borders of the board.
+     *
+     * @param pos
+     *            The position to start from.
+     * @param dir
+     *            The ordinal of the direction to go.
+     * @return The neighbouring position.
+     */
+    int neighbour(int pos, int dir)
+    {
+        return neighbours[pos * DIRECTIONS + dir];
+    }
+
+    /**
+     * Return the cell next to the cell at a given position,
+     * wrapping around the borders of the board.
+     *
+     * @param pos
+     *            The position to start from.
+     * @param dir
+     *            The ordinal of the direction to go.
+     * @return The neighbouring cell.
+     */
+    Cell neighbourCell(int pos, int dir)
+    {
+        return cells[neighbours[pos * DIRECTIONS + dir]];
+    }
+
+    /**
+     * Compute the position next to a given one, wrapping around the
+     * borders of the board, without using the neighbour table.
+     *
+     * @param pos
+     *            The position to start from.
+     * @param dir
+     *            The ordinal of the direction to go.
+     * @return The neighbouring position.
+     */
+    final int wrappedNeighbour(int pos, int dir)
+    {
+        assert pos >= 0 && pos < width * height;
+        final int x = pos % width;
+        final int y = pos / width;
+        int result;
+        if (dir == Direction.UP.ordinal())
+        {
+            result = pos - width;
+            if (y == 0)
+            {
+                result += width * height;
+            }
+        } else if (dir == Direction.DOWN.ordinal())
+        {
+            result = pos + width;
+            if (y == height - 1)
+            {
+                result = x;
+            }
+        } else if (dir == Direction.LEFT.ordinal())
+        {
+            result = pos - 1;
+            if (x == 0)
+            {
+                result += width;
+            }
+        } else
+        {
+            assert dir == Direction.RIGHT.ordinal();
+            result = pos + 1;
+            if (x == width - 1)
+            {
+                result -= width;
+            }
+        }
         return result;
     }
 
@@ -119,7 +314,7 @@ public class Board
     {
         assert invariant();
         assert withinBorders(x, y);
-        return cellAt[x][y].getGuests();
+        return cells[y * width + x].getGuests();
     }
 
     /**
@@ -136,8 +331,21 @@ public class Board
         assert invariant();
         assert withinBorders(x, y);
 
-        ArrayList<Guest> guests = getGuests(x, y);
+        char[] result = guestCodes(getGuests(x, y));
         
+        assert invariant();
+        return result;
+    }
+
+    /**
+     * Convert a list of guests into their guest codes.
+     *
+     * @param guests
+     *            The guests occupying a cell.
+     * @return The codes of the guests, or the empty code if there are none.
+     */
+    static char[] guestCodes(ArrayList<Guest> guests)
+    {
         char[] result;
         
         if (guests.isEmpty())
@@ -153,8 +361,177 @@ public class Board
                 result[i] = guests.get(i).guestType();
             }
         }
-        
-        assert invariant();
+        return result;
+    }
+
+    /**
+     * Fill the buffer with the guest masks of a rectangular part of the
+     * board, row by row: the mask of (x0 + i, y0 + j) ends up at
+     * buffer[j * w + i]. A mask is the combination of the guestBits of
+     * all guests at a position, and 0 for an empty position.
+     * No objects are allocated, so viewers can use this to inspect
+     * (part of) the board for every frame.
+     *
+     * @param buffer
+     *            Buffer of at least w * h bytes.
+     * @param x0
+     *            Horizontal position of the upper left corner
+     * @param y0
+     *            Vertical position of the upper left corner
+     * @param w
+     *            Width of the rectangle
+     * @param h
+     *            Height of the rectangle
+     */
+    public void snapshot(byte[] buffer, int x0, int y0, int w, int h)
+    {
+        assert w >= 0 && h >= 0;
+        assert w == 0 || h == 0
+            || withinBorders(x0, y0) && withinBorders(x0 + w - 1, y0 + h - 1);
+        assert buffer.length >= w * h;
+        int i = 0;
+        for (int y = y0; y < y0 + h; y++)
+        {
+            final int row = y * width;
+            for (int x = x0; x < x0 + w; x++)
+            {
+                buffer[i++] = cells[row + x].guestMask();
+            }
+        }
+    }
+
+    /**
+     * Fill the buffer with the guest masks of the given positions:
+     * the mask of positions[i] ends up at buffer[i]. Positions are
+     * encoded as y * width + x, as with changed cells.
+     *
+     * @param positions
+     *            The positions to be inspected.
+     * @param count
+     *            The number of positions to be inspected.
+     * @param buffer
+     *            Buffer of at least count bytes.
+     */
+    public void snapshot(int[] positions, int count, byte[] buffer)
+    {
+        assert count <= positions.length && count <= buffer.length;
+        for (int i = 0; i < count; i++)
+        {
+            final int pos = positions[i];
+            buffer[i] = guestMask(pos % width, pos / width);
+        }
+    }
+
+    /**
+     * Return the combined guest bits of the guests at (x,y).
+     *
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return The guest mask of (x,y).
+     */
+    byte guestMask(int x, int y)
+    {
+        assert withinBorders(x, y);
+        return cells[y * width + x].guestMask();
+    }
+
+    /**
+     * Put a wall or food element at (x,y) without creating a separate guest
+     * object for it. Boards keeping track of static content themselves can
+     * use this to avoid creating cells while a world is being loaded; this
+     * board always uses guest objects, so nothing is done.
+     *
+     * @param code
+     *            Either the wall or the food type code.
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return True iff the board has taken care of the static guest itself.
+     */
+    boolean placeStatic(char code, int x, int y)
+    {
+        assert code == Guest.WALL_TYPE || code == Guest.FOOD_TYPE;
+        assert withinBorders(x, y);
+        return false;
+    }
+
+    /**
+     * Indicate whether the board should keep track of the cells whose
+     * guests change, so that viewers can redraw just those cells.
+     * Switching tracking on or off forgets earlier changes.
+     *
+     * @param track True iff changes should be tracked.
+     */
+    public void setTrackChanges(boolean track)
+    {
+        if (track)
+        {
+            final int initialSize = 16;
+            changed = new BitSet();
+            changedCells = new int[initialSize];
+        } else
+        {
+            changed = null;
+            changedCells = null;
+        }
+        changedCount = 0;
+    }
+
+    /**
+     * @return True iff the board keeps track of changed cells.
+     */
+    public boolean tracksChanges()
+    {
+        return changed != null;
+    }
+
+    /**
+     * Record that the guests of the cell at (x,y) have changed.
+     * Each cell is recorded at most once until the changes are taken.
+     *
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     */
+    void cellChanged(int x, int y)
+    {
+        assert withinBorders(x, y);
+        if (changed != null)
+        {
+            final int pos = y * width + x;
+            if (!changed.get(pos))
+            {
+                changed.set(pos);
+                if (changedCount == changedCells.length)
+                {
+                    changedCells =
+                        Arrays.copyOf(changedCells, 2 * changedCount);
+                }
+                changedCells[changedCount++] = pos;
+            }
+        }
+    }
+
+    /**
+     * Obtain the cells whose guests changed since the previous call, and
+     * start collecting changes afresh. Positions are encoded as
+     * y * width + x. Precondition: changes are tracked.
+     *
+     * @return The positions of the changed cells.
+     */
+    public int[] takeChangedCells()
+    {
+        assert tracksChanges();
+        int[] result = Arrays.copyOf(changedCells, changedCount);
+        for (int pos : result)
+        {
+            changed.clear(pos);
+        }
+        changedCount = 0;
         return result;
     }
 
@@ -182,7 +559,6 @@ public class Board
      */
     public int getWidth()
     {
-        assert invariant();
         return width;
     }
 
@@ -193,7 +569,6 @@ public class Board
      */
     public int getHeight()
     {
-        assert invariant();
         return height;
     }
 
@@ -21,6 +21,11 @@ public class Cell
      */
     private final int x, y;
 
+    /**
+     * The position of the cell on its board (y * width + x).
+     */
+    private final int position;
+
     /**
      * The board the cell lives on.
      */
@@ -31,6 +36,29 @@ public class Cell
      */
     private final ArrayList<Guest> guests = new ArrayList<Guest>();
 
+    /**
+     * Number of bits in the counter of a single guest type.
+     */
+    private static final int COUNTER_BITS = 8;
+
+    /**
+     * Mask selecting a single counter, once shifted into place.
+     */
+    private static final int COUNTER_MASK = (1 << COUNTER_BITS) - 1;
+
+    /**
+     * The number of guests of each type occupying the cell, packed into
+     * counters of COUNTER_BITS bits. The counter of the guests with guest
+     * bit 1 &lt;&lt; i is found at bit i * COUNTER_BITS.
+     */
+    private int occupancy = 0;
+
+    /**
+     * The combined guest bits of the guests occupying the cell,
+     * kept up to date along with the counters.
+     */
+    private byte mask = 0;
+
     /**
      * Create a new cell at a given position on the board.
      *
@@ -46,11 +74,14 @@ public class Cell
         x = xCoordinate;
         y = yCoordinate;
         this.board = b;
+        position = b.position(x, y);
         assert invariant();
     }
 
     /**
-     * Conjunction of all invariants.
+     * Conjunction of all invariants. Not checked by the getters, which are
+     * too heavily used for that, but as part of the game's full invariant
+     * (see Invariants).
      *
      * @return true iff all invariants hold.
      */
@@ -113,9 +144,17 @@ public class Cell
     protected void addGuest(Guest aGuest)
     {
         assert aGuest.getLocation() == this;
-        
-        if (!guests.contains(aGuest))
-            guests.add(aGuest);
+        // a guest only gets here while taking a new location,
+        // so it can't be in the list already.
+        assert !guests.contains(aGuest);
+        final byte bit = aGuest.guestBit();
+        final int shift = counterShift(bit);
+        assert (occupancy >>> shift & COUNTER_MASK) < COUNTER_MASK
+            : "too many guests of one type in " + this;
+        guests.add(aGuest);
+        occupancy += 1 << shift;
+        mask |= bit;
+        board.cellChanged(x, y);
     }
 
     
@@ -133,9 +172,81 @@ public class Cell
     {
         assert aGuest != null;
         assert aGuest.getLocation() == null;
-        
-        if (guests.contains(aGuest))
-            guests.remove(aGuest);
+        // the guest leaving is most likely the one that arrived last.
+        for (int i = guests.size() - 1; i >= 0; i--)
+        {
+            if (guests.get(i) == aGuest)
+            {
+                guests.remove(i);
+                final byte bit = aGuest.guestBit();
+                final int shift = counterShift(bit);
+                occupancy -= 1 << shift;
+                if ((occupancy >>> shift & COUNTER_MASK) == 0)
+                {
+                    mask &= ~bit;
+                }
+                board.cellChanged(x, y);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param bit The guest bit of a guest type.
+     * @return The position of the counter for that type in occupancy.
+     */
+    private static int counterShift(byte bit)
+    {
+        assert Integer.bitCount(bit) == 1;
+        final int shift = Integer.numberOfTrailingZeros(bit) * COUNTER_BITS;
+        assert shift < Integer.SIZE : "no counter for guest bit " + bit;
+        return shift;
+    }
+
+    /**
+     * The combined guest bits of all guests occupying this cell, 0 if it
+     * is free. Takes constant time, whatever the number of guests, so that
+     * moves can be checked without visiting the guests.
+     *
+     * @return The guest mask of this cell.
+     */
+    public byte guestMask()
+    {
+        return mask;
+    }
+
+    /**
+     * Find a guest of a given type occupying this cell.
+     *
+     * @param bit The guest bit of the type.
+     * @return The guest that arrived last among those of that type,
+     *         or null if there are none.
+     */
+    Guest findGuest(byte bit)
+    {
+        if ((mask & bit) != 0)
+        {
+            for (int i = guests.size() - 1; i >= 0; i--)
+            {
+                if (guests.get(i).guestBit() == bit)
+                {
+                    return guests.get(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count the guests of a given type occupying this cell,
+     * in constant time.
+     *
+     * @param bit The guest bit of the type, such as Guest.MONSTER_BIT.
+     * @return The number of guests of that type.
+     */
+    public int guestCount(byte bit)
+    {
+        return occupancy >>> counterShift(bit) & COUNTER_MASK;
     }
 
     
@@ -162,7 +273,6 @@ public class Cell
      */
     public int getX()
     {
-        assert invariant();
         return x;
     }
 
@@ -173,7 +283,6 @@ public class Cell
      */
     public int getY()
     {
-        assert invariant();
         return y;
     }
 
@@ -191,7 +300,12 @@ public class Cell
      */
     public Cell cellAtOffset(int dx, int dy)
     {
-        assert invariant();
+        final int dir = Direction.ordinalOf(dx, dy);
+        if (dir >= 0)
+        {
+            // single steps are looked up in the board's neighbour table.
+            return board.neighbourCell(position, dir);
+        }
         Cell result = null;
         int newx = (x + dx) % board.getWidth();
         int newy = (y + dy) % board.getHeight();
@@ -204,12 +318,18 @@ public class Cell
         assert getBoard().withinBorders(newx, newy);
         
         result = getBoard().getCell(newx, newy);
-        
-        assert invariant();
         return result;
     }
     
 
+    /**
+     * @return The position of this cell on its board (y * width + x).
+     */
+    public int getPosition()
+    {
+        return position;
+    }
+
     /**
      * Return the board this cell is part of.
      *
@@ -217,7 +337,6 @@ public class Cell
      */
     public Board getBoard()
     {
-        assert invariant();
         return board;
     }
     
@@ -250,7 +369,6 @@ public class Cell
     */
     public boolean adjacent(Cell otherCell)
     {
-        assert invariant();
         assert otherCell != null;
         
         int dx = Math.abs(otherCell.getX() - getX());
@@ -0,0 +1,350 @@
+package jpacman.model;
+
+import java.util.BitSet;
+
+/**
+ * The changes made to a game by a series of consecutive moves, starts,
+ * quits and undos, coalesced into a single event. Engine listeners
+ * subscribed to EngineListener.CHANGES receive such an event, so that
+ * they can do work proportional to what changed, rather than re-inspect
+ * the whole engine after every move.
+ * <p>
+ * Events are filled in by the engine while changes are made, and are
+ * not changed anymore once they have been delivered to the listeners.
+ *
+ * @version $Id$
+ */
+public final class ChangeEvent
+{
+
+    /**
+     * The engine's version before the first change.
+     */
+    private final long firstVersion;
+
+    /**
+     * The engine's version after the last change.
+     */
+    private long lastVersion;
+
+    /**
+     * The engine's state before the first change.
+     */
+    private final Engine.State stateBefore;
+
+    /**
+     * The engine's state after the last change.
+     */
+    private Engine.State stateAfter;
+
+    /**
+     * The points eaten by the players before the first change.
+     */
+    private final int scoreBefore;
+
+    /**
+     * The points eaten by the players after the last change.
+     */
+    private int scoreAfter;
+
+    /**
+     * The number of players, whose mover ids precede those of the
+     * monsters.
+     */
+    private final int players;
+
+    /**
+     * Number of moves attempted, including rejected ones.
+     */
+    private int moves = 0;
+
+    /**
+     * Number of moves undone.
+     */
+    private int undos = 0;
+
+    /**
+     * Number of food items eaten, minus those restored by undoing.
+     */
+    private int foodEaten = 0;
+
+    /**
+     * True iff the world was reloaded, and should be inspected anew.
+     */
+    private boolean reloaded = false;
+
+    /**
+     * Mover ids (i for player i, players + i for monster i) of the guests
+     * that actually moved.
+     */
+    private final BitSet moved = new BitSet();
+
+    /**
+     * Start collecting the changes made from the current situation.
+     * @param version The engine's version.
+     * @param state The engine's state.
+     * @param score The points eaten by the players together.
+     * @param playerCount The number of players in the game.
+     */
+    ChangeEvent(long version, Engine.State state, int score,
+            int playerCount)
+    {
+        assert playerCount > 0;
+        players = playerCount;
+        firstVersion = version;
+        lastVersion = version;
+        stateBefore = state;
+        stateAfter = state;
+        scoreBefore = score;
+        scoreAfter = score;
+    }
+
+    /**
+     * Register a move.
+     * @param moverId The mover id of the guest moved.
+     * @param done True iff the guest actually moved.
+     * @param food True iff food was eaten.
+     */
+    void moveMade(int moverId, boolean done, boolean food)
+    {
+        moves++;
+        if (done)
+        {
+            moved.set(moverId);
+        }
+        if (food)
+        {
+            foodEaten++;
+        }
+    }
+
+    /**
+     * Register an undo.
+     * @param foodRestored True iff food eaten by the undone move
+     *            has been put back.
+     */
+    void moveUndone(boolean foodRestored)
+    {
+        undos++;
+        if (foodRestored)
+        {
+            foodEaten--;
+        }
+    }
+
+    /**
+     * Register that the world was reloaded.
+     */
+    void worldReloaded()
+    {
+        reloaded = true;
+        moved.clear();
+    }
+
+    /**
+     * Register the situation after a change.
+     * @param version The engine's version.
+     * @param state The engine's state.
+     * @param score The points eaten by the players together.
+     */
+    void changed(long version, Engine.State state, int score)
+    {
+        lastVersion = version;
+        stateAfter = state;
+        scoreAfter = score;
+    }
+
+    /**
+     * Combine this event with an event following it, for listeners that
+     * handle events later than they are delivered.
+     * @param later An event delivered after this one.
+     * @return A new event covering the changes of both.
+     */
+    public ChangeEvent merge(ChangeEvent later)
+    {
+        assert later != null;
+        ChangeEvent result = new ChangeEvent(
+                Math.min(firstVersion, later.firstVersion),
+                stateBefore, scoreBefore, later.players);
+        result.changed(Math.max(lastVersion, later.lastVersion),
+                later.stateAfter, later.scoreAfter);
+        result.moves = moves + later.moves;
+        result.undos = undos + later.undos;
+        result.foodEaten = foodEaten + later.foodEaten;
+        result.reloaded = reloaded || later.reloaded;
+        if (!later.reloaded)
+        {
+            result.moved.or(moved);
+        }
+        result.moved.or(later.moved);
+        return result;
+    }
+
+    /**
+     * @return The number of changes covered by this event.
+     */
+    public long getChangeCount()
+    {
+        return lastVersion - firstVersion;
+    }
+
+    /**
+     * @return The engine's version after the last change.
+     */
+    public long getVersion()
+    {
+        return lastVersion;
+    }
+
+    /**
+     * @return The number of moves attempted, including those that were
+     *         rejected.
+     */
+    public int getMoveCount()
+    {
+        return moves;
+    }
+
+    /**
+     * @return The number of moves undone.
+     */
+    public int getUndoCount()
+    {
+        return undos;
+    }
+
+    /**
+     * @return True iff the world was reloaded, so that everything
+     *         should be inspected anew.
+     */
+    public boolean isReloaded()
+    {
+        return reloaded;
+    }
+
+    /**
+     * @return True iff the board may have changed: something was moved,
+     *         undone or reloaded.
+     */
+    public boolean boardChanged()
+    {
+        return moves > 0 || undos > 0 || reloaded;
+    }
+
+    /**
+     * @return True iff the (first) player actually moved, since the last
+     *         reload if any.
+     */
+    public boolean playerMoved()
+    {
+        return moved.get(0);
+    }
+
+    /**
+     * @param index The index of a player in the engine's list of players.
+     * @return True iff that player actually moved, since the last reload
+     *         if any.
+     */
+    public boolean playerMoved(int index)
+    {
+        assert index >= 0 && index < players;
+        return moved.get(index);
+    }
+
+    /**
+     * @return The number of players that actually moved.
+     */
+    public int getMovedPlayerCount()
+    {
+        int result = 0;
+        for (int i = moved.nextSetBit(0); i >= 0 && i < players;
+                i = moved.nextSetBit(i + 1))
+        {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * @param index The index of a monster in the engine's list of
+     *            monsters.
+     * @return True iff that monster actually moved, since the last
+     *         reload if any.
+     */
+    public boolean monsterMoved(int index)
+    {
+        assert index >= 0;
+        return moved.get(players + index);
+    }
+
+    /**
+     * @return The number of monsters that actually moved.
+     */
+    public int getMovedMonsterCount()
+    {
+        return moved.cardinality() - getMovedPlayerCount();
+    }
+
+    /**
+     * @return The number of food items eaten, minus the number restored
+     *         by undoing moves.
+     */
+    public int getFoodEaten()
+    {
+        return foodEaten;
+    }
+
+    /**
+     * @return The points eaten by the players together after the
+     *         changes.
+     */
+    public int getScore()
+    {
+        return scoreAfter;
+    }
+
+    /**
+     * @return The change in points eaten by the players, which is negative
+     *         if moves were undone or the world was reloaded.
+     */
+    public int getScoreDelta()
+    {
+        return scoreAfter - scoreBefore;
+    }
+
+    /**
+     * @return The engine's state before the changes.
+     */
+    public Engine.State getPreviousState()
+    {
+        return stateBefore;
+    }
+
+    /**
+     * @return The engine's state after the changes.
+     */
+    public Engine.State getState()
+    {
+        return stateAfter;
+    }
+
+    /**
+     * @return True iff the engine ended up in another state.
+     */
+    public boolean stateChanged()
+    {
+        return stateBefore != stateAfter;
+    }
+
+    /**
+     * @return Summary of the changes.
+     */
+    @Override
+    public String toString()
+    {
+        return "ChangeEvent[" + getChangeCount() + " changes, "
+            + moves + " moves, " + undos + " undos, "
+            + getScoreDelta() + " points, " + stateBefore + " -> "
+            + stateAfter + (reloaded ? ", reloaded" : "") + "]";
+    }
+}
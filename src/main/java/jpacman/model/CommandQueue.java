@@ -0,0 +1,246 @@
+package jpacman.model;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Queue of changes to a game, submitted by any thread and applied by a
+ * single game thread, in the order in which they were submitted.
+ * <p>
+ * Submitting never blocks: commands are put in a lock-free queue, and the
+ * game thread is woken up if it was waiting. The game thread applies all
+ * commands available, up to a maximum batch size, while holding the
+ * engine's update lock once, and then calls back the engine's listeners once
+ * for the whole batch. Under load, batches grow, so that the lock and the
+ * listeners are involved far less often than there are commands.
+ *
+ * @version $Id$
+ */
+class CommandQueue implements Runnable
+{
+
+    /**
+     * Maximum number of commands applied while holding the lock once,
+     * so that readers get a chance in between batches.
+     */
+    static final int MAX_BATCH = 256;
+
+    /**
+     * The engine whose game is changed.
+     */
+    private final Engine engine;
+
+    /**
+     * The commands submitted but not yet applied.
+     */
+    private final Queue<Runnable> pending =
+        new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Number of commands submitted so far.
+     */
+    private final AtomicLong submitted = new AtomicLong();
+
+    /**
+     * Number of commands applied so far, only changed by the game thread
+     * while holding the monitor of this queue.
+     */
+    private long applied = 0;
+
+    /**
+     * The first problem raised by a command, if any.
+     */
+    private volatile Throwable failure = null;
+
+    /**
+     * False once the queue has been asked to stop.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The thread applying the commands.
+     */
+    private final Thread gameThread;
+
+    /**
+     * Create a queue for the given engine, and start its game thread.
+     * @param e The engine whose game is changed.
+     */
+    CommandQueue(Engine e)
+    {
+        assert e != null;
+        engine = e;
+        gameThread = new Thread(this, "jpacman-game");
+        gameThread.setDaemon(true);
+        gameThread.start();
+    }
+
+    /**
+     * @return True iff the current thread is the game thread.
+     */
+    boolean onGameThread()
+    {
+        return Thread.currentThread() == gameThread;
+    }
+
+    /**
+     * Submit a command, to be applied on the game thread.
+     * @param command The command.
+     */
+    void submit(Runnable command)
+    {
+        assert command != null;
+        pending.offer(command);
+        submitted.incrementAndGet();
+        LockSupport.unpark(gameThread);
+    }
+
+    /**
+     * Wait until all commands submitted so far have been applied.
+     * Must not be invoked from the game thread.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void awaitIdle() throws InterruptedException
+    {
+        assert !onGameThread() : "the game thread would wait for itself";
+        final long target = submitted.get();
+        synchronized (this)
+        {
+            while (applied < target && gameThread.isAlive())
+            {
+                wait();
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Apply the remaining commands, and stop the game thread.
+     * Must not be invoked from the game thread.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void stop() throws InterruptedException
+    {
+        assert !onGameThread() : "the game thread would wait for itself";
+        running = false;
+        LockSupport.unpark(gameThread);
+        gameThread.join();
+        // commands that came in while the thread was finishing.
+        while (!pending.isEmpty())
+        {
+            applyBatch();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Apply batches of commands as they come in, until stopped.
+     */
+    public void run()
+    {
+        try
+        {
+            while (running || !pending.isEmpty())
+            {
+                if (pending.isEmpty())
+                {
+                    LockSupport.park(this);
+                } else
+                {
+                    applyBatch();
+                }
+            }
+        } finally
+        {
+            synchronized (this)
+            {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Apply the commands available, up to the maximum batch size, under
+     * the update lock, and let the engine publish the result afterwards.
+     * Problems raised by the listeners are recorded like those of the
+     * commands, so that the game thread goes on, and the commands are
+     * counted as applied in any case.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void applyBatch()
+    {
+        int count = 0;
+        try
+        {
+            engine.updateLock().lock();
+            try
+            {
+                Runnable command = pending.poll();
+                while (command != null)
+                {
+                    apply(command);
+                    count++;
+                    command = count < MAX_BATCH ? pending.poll() : null;
+                }
+            } finally
+            {
+                engine.updateLock().unlock();
+            }
+            engine.publishBatch();
+        } catch (Throwable t)
+        {
+            recordFailure(t);
+        } finally
+        {
+            synchronized (this)
+            {
+                applied += count;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Apply a single command, recording rather than propagating its
+     * problems, so that later commands still get applied.
+     * @param command The command to be applied.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void apply(Runnable command)
+    {
+        try
+        {
+            command.run();
+        } catch (Throwable t)
+        {
+            recordFailure(t);
+        }
+    }
+
+    /**
+     * Record a problem, unless an earlier one is still to be reported.
+     * @param problem The problem raised.
+     */
+    private void recordFailure(Throwable problem)
+    {
+        if (failure == null)
+        {
+            failure = problem;
+        }
+    }
+
+    /**
+     * Report a problem raised by a command, if any, once.
+     */
+    private void checkFailure()
+    {
+        final Throwable problem = failure;
+        if (problem != null)
+        {
+            failure = null;
+            throw new IllegalStateException("Command failed", problem);
+        }
+    }
+}
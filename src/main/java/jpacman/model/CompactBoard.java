@@ -0,0 +1,455 @@
+package jpacman.model;
+
+import java.util.ArrayList;
+
+/**
+ * A board keeping its static content (walls and food) in a flat byte array,
+ * rather than in a Cell object per position. Cells are only created for
+ * positions that are actually visited or inspected, which in practice means
+ * the positions occupied by, or adjacent to, moving guests. The static content
+ * of such a position is then handed over to guest objects in the new cell.
+ * <p>
+ * This keeps the memory footprint and the time needed to load very large
+ * worlds proportional to the number of cells in use, instead of the total
+ * number of cells on the board.
+ *
+ * @version $Id$
+ */
+public class CompactBoard extends Board
+{
+
+    /**
+     * Content code for a position without static guests.
+     */
+    static final byte EMPTY = 0;
+
+    /**
+     * Content code for a position containing a wall.
+     */
+    static final byte WALL = 1;
+
+    /**
+     * Content code for a position containing food.
+     */
+    static final byte FOOD = 2;
+
+    /**
+     * Content code for a position whose content has been moved to a cell.
+     */
+    static final byte IN_CELL = 3;
+
+    /**
+     * Initial capacity of the cell index; must be a power of two.
+     */
+    private static final int INITIAL_INDEX_SIZE = 64;
+
+    /**
+     * The static content of each position, stored row by row.
+     */
+    private final byte[] content;
+
+    /**
+     * Open addressing hash index from position to cell, containing
+     * all cells created so far. Positions are offset by one,
+     * so that 0 can be used to indicate a free slot.
+     */
+    private int[] indexKeys = new int[INITIAL_INDEX_SIZE];
+
+    /**
+     * The cells belonging to the keys in the index.
+     */
+    private Cell[] indexCells = new Cell[INITIAL_INDEX_SIZE];
+
+    /**
+     * Number of cells created so far.
+     */
+    private int cellCount = 0;
+
+    /**
+     * Create a new compact board given a width and a height.
+     *
+     * @param w
+     *            Width of the board
+     * @param h
+     *            Height of the board
+     */
+    public CompactBoard(int w, int h)
+    {
+        super(w, h, false);
+        content = new byte[w * h];
+        assert invariant();
+    }
+
+    /**
+     * Check that each cell created has a correct link to this board,
+     * satisfies its own invariant, and that its static content has been
+     * handed over to it.
+     *
+     * @return True iff the cell/board association is consistent
+     */
+    @Override
+    protected boolean consistentBoardCellAssociation()
+    {
+        boolean result = true;
+        for (Cell c : indexCells)
+        {
+            if (c != null)
+            {
+                result = result && c.getBoard().equals(this)
+                    && content[position(c.getX(), c.getY())] == IN_CELL
+                    && c.invariant();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cells that haven't been created yet are consistent by definition.
+     *
+     * @param pos The position of a cell.
+     * @return True iff the cell there hasn't been created, or links to
+     *         this board, is at that position, and satisfies its own
+     *         invariant.
+     */
+    @Override
+    protected boolean consistentCell(int pos)
+    {
+        if (content[pos] != IN_CELL)
+        {
+            return true;
+        }
+        final Cell c = lookup(pos);
+        return c.getBoard() == this && c.getPosition() == pos
+            && c.invariant();
+    }
+
+    /**
+     * Return the cell at position (x,y), creating it if it doesn't exist yet.
+     *
+     * @param x
+     *            Horizontal coordinate of the requested cell
+     * @param y
+     *            Vertical coordinate of the requested cell
+     * @return The cell at (x,y).
+     */
+    @Override
+    public Cell getCell(int x, int y)
+    {
+        assert withinBorders(x, y)
+        : "Cell requested (" + x + "," + y + ") out of borders "
+        + getWidth() + " * " + getHeight();
+        final int pos = position(x, y);
+        Cell result;
+        if (content[pos] == IN_CELL)
+        {
+            result = lookup(pos);
+        } else
+        {
+            result = createCell(x, y);
+        }
+        assert result != null;
+        return result;
+    }
+
+    /**
+     * Return the Guests occupying position (x,y), or an empty list
+     * if the cell is emtpy. The cell is created if necessary.
+     *
+     * @param x
+     *            Horizontal coordinate of the requested cell
+     * @param y
+     *            Vertical coordinate of the requested cell
+     * @return The guest at (x,y).
+     */
+    @Override
+    public ArrayList<Guest> getGuests(int x, int y)
+    {
+        return getCell(x, y).getGuests();
+    }
+
+    /**
+     * Returns the Guest codes of the position at (x,y),
+     * without creating a cell for it.
+     *
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return Code representing guest type
+     */
+    @Override
+    public char[] guestCodes(int x, int y)
+    {
+        assert withinBorders(x, y);
+        final int pos = position(x, y);
+        char[] result;
+        switch (content[pos])
+        {
+        case IN_CELL:
+            result = guestCodes(lookup(pos).getGuests());
+            break;
+        case WALL:
+            result = new char[] {Guest.WALL_TYPE};
+            break;
+        case FOOD:
+            result = new char[] {Guest.FOOD_TYPE};
+            break;
+        default:
+            result = new char[] {Guest.EMPTY_TYPE};
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Fill the buffer with the guest masks of a rectangular part of the
+     * board, without creating cells.
+     *
+     * @see Board#snapshot(byte[], int, int, int, int)
+     * @param buffer
+     *            Buffer of at least w * h bytes.
+     * @param x0
+     *            Horizontal position of the upper left corner
+     * @param y0
+     *            Vertical position of the upper left corner
+     * @param w
+     *            Width of the rectangle
+     * @param h
+     *            Height of the rectangle
+     */
+    @Override
+    public void snapshot(byte[] buffer, int x0, int y0, int w, int h)
+    {
+        assert w >= 0 && h >= 0;
+        assert w == 0 || h == 0
+            || withinBorders(x0, y0) && withinBorders(x0 + w - 1, y0 + h - 1);
+        assert buffer.length >= w * h;
+        int i = 0;
+        for (int y = y0; y < y0 + h; y++)
+        {
+            for (int x = x0; x < x0 + w; x++)
+            {
+                buffer[i++] = guestMask(x, y);
+            }
+        }
+    }
+
+    /**
+     * Return the combined guest bits of the guests at (x,y),
+     * without creating a cell for it.
+     *
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return The guest mask of (x,y).
+     */
+    @Override
+    byte guestMask(int x, int y)
+    {
+        final int pos = position(x, y);
+        byte result;
+        switch (content[pos])
+        {
+        case IN_CELL:
+            result = lookup(pos).guestMask();
+            break;
+        case WALL:
+            result = Guest.WALL_BIT;
+            break;
+        case FOOD:
+            result = Guest.FOOD_BIT;
+            break;
+        default:
+            result = 0;
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Record a wall or food element at (x,y) in the content array,
+     * unless a cell has been created for that position already.
+     *
+     * @param code
+     *            Either the wall or the food type code.
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return True iff the content could be recorded.
+     */
+    @Override
+    boolean placeStatic(char code, int x, int y)
+    {
+        assert code == Guest.WALL_TYPE || code == Guest.FOOD_TYPE;
+        assert withinBorders(x, y);
+        final int pos = position(x, y);
+        if (content[pos] != EMPTY)
+        {
+            return false;
+        }
+        if (code == Guest.WALL_TYPE)
+        {
+            content[pos] = WALL;
+        } else
+        {
+            content[pos] = FOOD;
+        }
+        return true;
+    }
+
+    /**
+     * Compute the neighbouring position, rather than keeping a
+     * neighbour table for every position of the board.
+     *
+     * @param pos
+     *            The position to start from.
+     * @param dir
+     *            The ordinal of the direction to go.
+     * @return The neighbouring position.
+     */
+    @Override
+    int neighbour(int pos, int dir)
+    {
+        return wrappedNeighbour(pos, dir);
+    }
+
+    /**
+     * Return the cell next to the cell at a given position,
+     * creating it if it doesn't exist yet.
+     *
+     * @param pos
+     *            The position to start from.
+     * @param dir
+     *            The ordinal of the direction to go.
+     * @return The neighbouring cell.
+     */
+    @Override
+    Cell neighbourCell(int pos, int dir)
+    {
+        final int target = wrappedNeighbour(pos, dir);
+        final int width = getWidth();
+        return getCell(target % width, target / width);
+    }
+
+    /**
+     * @return The number of cells that have been created so far.
+     */
+    public int cellsInUse()
+    {
+        return cellCount;
+    }
+
+    /**
+     * Create the cell at (x,y), and move its static content
+     * into guests occupying that cell.
+     *
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return The new cell.
+     */
+    private Cell createCell(int x, int y)
+    {
+        final int pos = position(x, y);
+        assert content[pos] != IN_CELL;
+        Cell cell = new Cell(x, y, this);
+        store(pos, cell);
+        final byte old = content[pos];
+        content[pos] = IN_CELL;
+        if (old == WALL)
+        {
+            new Wall().occupy(cell);
+        } else if (old == FOOD)
+        {
+            new Food().occupy(cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Find the cell created earlier for a given position.
+     *
+     * @param pos
+     *            The position in the content array.
+     * @return The cell at that position.
+     */
+    private Cell lookup(int pos)
+    {
+        final int mask = indexKeys.length - 1;
+        int slot = hash(pos) & mask;
+        while (indexKeys[slot] != pos + 1)
+        {
+            assert indexKeys[slot] != 0 : "cell must have been created";
+            slot = (slot + 1) & mask;
+        }
+        return indexCells[slot];
+    }
+
+    /**
+     * Add a newly created cell to the index, growing the index if
+     * it becomes more than half full.
+     *
+     * @param pos
+     *            The position in the content array.
+     * @param cell
+     *            The cell at that position.
+     */
+    private void store(int pos, Cell cell)
+    {
+        if (2 * (cellCount + 1) > indexKeys.length)
+        {
+            int[] oldKeys = indexKeys;
+            Cell[] oldCells = indexCells;
+            indexKeys = new int[2 * oldKeys.length];
+            indexCells = new Cell[2 * oldCells.length];
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != 0)
+                {
+                    insert(oldKeys[i], oldCells[i]);
+                }
+            }
+        }
+        insert(pos + 1, cell);
+        cellCount++;
+    }
+
+    /**
+     * Put a key and its cell in the first free slot of the index.
+     *
+     * @param key
+     *            Position plus one.
+     * @param cell
+     *            The cell to be stored.
+     */
+    private void insert(int key, Cell cell)
+    {
+        final int mask = indexKeys.length - 1;
+        int slot = hash(key - 1) & mask;
+        while (indexKeys[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        indexKeys[slot] = key;
+        indexCells[slot] = cell;
+    }
+
+    /**
+     * Spread the bits of a position, so that neighboring positions
+     * end up in different parts of the index.
+     *
+     * @param pos
+     *            The position to be hashed.
+     * @return The hash code.
+     */
+    private static int hash(int pos)
+    {
+        final int golden = 0x9E3779B9;
+        final int shift = 16;
+        int h = pos * golden;
+        return h ^ (h >>> shift);
+    }
+}
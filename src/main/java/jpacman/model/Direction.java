@@ -0,0 +1,79 @@
+package jpacman.model;
+
+/**
+ * The four directions in which moving guests can make a single step.
+ *
+ * @version $Id$
+ */
+public enum Direction
+{
+    UP(0, -1),
+    DOWN(0, 1),
+    LEFT(-1, 0),
+    RIGHT(1, 0);
+
+    /**
+     * Horizontal and vertical offset of a step in this direction.
+     */
+    private final int dx, dy;
+
+    /**
+     * @param horizontal Horizontal offset
+     * @param vertical Vertical offset
+     */
+    private Direction(int horizontal, int vertical)
+    {
+        dx = horizontal;
+        dy = vertical;
+    }
+
+    /**
+     * @return The horizontal offset of a step in this direction.
+     */
+    public int getDx()
+    {
+        return dx;
+    }
+
+    /**
+     * @return The vertical offset of a step in this direction.
+     */
+    public int getDy()
+    {
+        return dy;
+    }
+
+    /**
+     * Determine the direction of a single step, without allocating
+     * or searching, for use in neighbour tables indexed by ordinal.
+     *
+     * @param dx Horizontal offset
+     * @param dy Vertical offset
+     * @return The ordinal of the direction of (dx, dy),
+     *         or -1 if it isn't a single step.
+     */
+    static int ordinalOf(int dx, int dy)
+    {
+        int result = -1;
+        if (dy == 0)
+        {
+            if (dx == 1)
+            {
+                result = RIGHT.ordinal();
+            } else if (dx == -1)
+            {
+                result = LEFT.ordinal();
+            }
+        } else if (dx == 0)
+        {
+            if (dy == 1)
+            {
+                result = DOWN.ordinal();
+            } else if (dy == -1)
+            {
+                result = UP.ordinal();
+            }
+        }
+        return result;
+    }
+}
@@ -1,19 +1,48 @@
 package jpacman.model;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
-import java.util.Observable;
+import java.util.Random;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The top level state machine, which also acts as interface to the viewer
  * (which observes the state machine) and the controller (which triggers the
  * state machine events).
+ * <p>
+ * Listeners subscribe to the kinds of changes they want to hear about (see
+ * EngineListener). By default they are called back after every change;
+ * when driven by a game loop, once per tick (see setNotifyPerTick).
+ * <p>
+ * Games can have several players, identified by their index. The methods
+ * without a player index concern the first player; movePlayers moves
+ * many players within a single change.
  *
  * @author Arie van Deursen; Aug 1, 2003
  * @version $Id: Engine.java 4914 2011-10-17 10:44:32Z arievandeursen $
  */
-public class Engine extends Observable
+public class Engine
 {
 
+    /**
+     * The states the engine can be in.
+     */
+    public enum State
+    {
+        /** The game has been set up, and waits to be started. */
+        STARTING,
+        /** The game is being played. */
+        PLAYING,
+        /** The game has been suspended. */
+        HALTED,
+        /** The player died, or all players did. */
+        DIED,
+        /** The player ate all food, or the players together did. */
+        WON
+    }
+
     /**
      * The underlying pacman game, on top of which this engine runs.
      */
@@ -32,17 +61,82 @@ public class Engine extends Observable
      */
     private boolean halted = false;
 
+    /**
+     * Guards the game and the engine's state. Inspections of the game
+     * share the read lock, so that viewers don't block each other, while
+     * changes take the write lock, so that they are applied atomically.
+     * Listeners are called back after the write lock has been released.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Number of changes made to the game, only incremented while
+     * holding the write lock.
+     */
+    private volatile long version = 0;
+
+    /**
+     * The queue through which all changes are applied by a single game
+     * thread, or null if changes are applied by the threads requesting them.
+     */
+    private volatile CommandQueue commands = null;
+
+    /**
+     * The listeners subscribed to the changes.
+     */
+    private final ListenerRegistry listeners = new ListenerRegistry();
+
+    /**
+     * The changes made since the listeners were last called back,
+     * or null if there are none. Guarded by the write lock.
+     */
+    private ChangeEvent pending = null;
+
+    /**
+     * The detailed changes made since the listeners were last called
+     * back, or null if none were logged because no listener wants them.
+     * Guarded by the write lock.
+     */
+    private EventLog pendingLog = null;
+
+    /**
+     * True iff listeners are called back once per tick, rather than
+     * after every change.
+     */
+    private volatile boolean notifyPerTick = false;
+
+    /**
+     * The seed from which the randomizer of this game is created.
+     */
+    private final long seed;
+
+    /**
+     * The randomizer to be used for all random decisions in this game,
+     * such as monster moves, so that games can be reproduced.
+     */
+    private final Random randomizer;
+
+    /**
+     * The recorder to which all changes are reported, or null if the
+     * game isn't being recorded. Guarded by the write lock.
+     */
+    private GameRecorder recorder = null;
+
+    /**
+     * The state the engine is in, or null if the game hasn't been
+     * initialized yet. Only updated holding the write lock, after the
+     * flags and the game it is derived from changed, but read without
+     * taking any lock.
+     */
+    private volatile State state = null;
+
     /**
      * The game has been set up, and is just waiting to get started.
      * @return true iff game is starting.
      */
     public boolean inStartingState()
     {
-        synchronized (this)
-        {
-            return starting && !(theGame.playerDied() 
-                    || theGame.playerWon());
-        }
+        return state == State.STARTING;
     }
 
     /**
@@ -51,11 +145,7 @@ public class Engine extends Observable
      */
     public boolean inPlayingState()
     {
-        synchronized (this)
-        {
-            return !starting && !halted && theGame.initialized()
-            && !theGame.playerDied() && !theGame.playerWon();
-        }
+        return state == State.PLAYING;
     }
 
     /**
@@ -64,10 +154,7 @@ public class Engine extends Observable
      */
     public boolean inDiedState()
     {
-        synchronized (this)
-        {
-            return !starting && theGame.playerDied();
-        }
+        return state == State.DIED;
     }
 
     /**
@@ -76,10 +163,7 @@ public class Engine extends Observable
      */
     public boolean inWonState()
     {
-        synchronized (this)
-        {
-            return !starting && theGame.playerWon();
-        }
+        return state == State.WON;
     }
 
     /**
@@ -88,10 +172,7 @@ public class Engine extends Observable
      */
     public boolean inHaltedState()
     {
-        synchronized (this)
-        {
-            return halted;
-        }
+        return state == State.HALTED;
     }
 
     /**
@@ -100,30 +181,86 @@ public class Engine extends Observable
      */
     public boolean inGameOverState()
     {
-        synchronized (this)
+        final State current = state;
+        return current == State.DIED || current == State.WON;
+    }
+
+    /**
+     * The state the engine is in. Reading it takes no lock, so it can
+     * be polled cheaply by viewers and monitors on other threads.
+     *
+     * @return The state the engine is in, or null if the game hasn't
+     *         been initialized yet.
+     */
+    public State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Derive the state from the flags and the game. Invoked holding
+     * the lock.
+     *
+     * @return The state the engine should be in.
+     */
+    private State deriveState()
+    {
+        State result = null;
+        if (halted)
+        {
+            result = State.HALTED;
+        } else if (theGame.initialized())
         {
-            return inDiedState() || inWonState();
+            final boolean died = theGame.playerDied();
+            final boolean won = theGame.playerWon();
+            if (starting)
+            {
+                assert !died && !won;
+                result = State.STARTING;
+            } else if (died)
+            {
+                result = State.DIED;
+            } else if (won)
+            {
+                result = State.WON;
+            } else
+            {
+                result = State.PLAYING;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bring the cached state up to date after a change that may have
+     * caused a transition. Invoked holding the write lock.
+     */
+    private void updateState()
+    {
+        assert lock.isWriteLockedByCurrentThread();
+        final State derived = deriveState();
+        if (derived != state)
+        {
+            state = derived;
         }
     }
 
     /**
-     * We can be in at most one of the Engine's states.
+     * The cached state must be the one derived from the flags and
+     * the game.
      *
-     * @return True if we in exactly one state.
+     * @return True if the cached state is up to date.
      */
     protected boolean invariant()
     {
-        // beware of the xor:
-        // xor on odd nr of args also permits all args to be true.
-        // (see in3420 exam in 2003)
-        final boolean oneStateOnly = inStartingState()
-        ^ inPlayingState()
-        ^ inHaltedState()
-        ^ inDiedState()
-        ^ inWonState()
-        && !(inStartingState() && inPlayingState() && inHaltedState()
-                && inDiedState() && inWonState());
-        return oneStateOnly && theGame != null;
+        lock.readLock().lock();
+        try
+        {
+            return theGame != null && state == deriveState();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -136,14 +273,49 @@ public class Engine extends Observable
      }
 
     /**
-     * Start a new engine with a specific game.
+     * Start a new engine with a specific game, and a seed
+     * that differs from game to game.
      *
      * @param game The Game to be used.
      */
     public Engine(Game game)
+    {
+        this(game, System.nanoTime());
+    }
+
+    /**
+     * Start a new engine with a specific game, whose random decisions
+     * are all derived from the given seed.
+     *
+     * @param game The Game to be used.
+     * @param gameSeed The seed of the game's randomizer.
+     */
+    public Engine(Game game, long gameSeed)
     {
         assert game != null;
         theGame = game;
+        seed = gameSeed;
+        randomizer = new Random(gameSeed);
+    }
+
+    /**
+     * @return The seed from which the game's randomizer was created.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * The randomizer to be used by controllers for all their random
+     * decisions, so that a game with the same seed and the same input
+     * makes the same decisions.
+     *
+     * @return The game's randomizer.
+     */
+    public Random getRandomizer()
+    {
+        return randomizer;
     }
 
     /**
@@ -153,13 +325,22 @@ public class Engine extends Observable
     public void initialize() throws GameLoadException
     {
         assert theGame != null;
-        if (!theGame.initialized())
+        lock.writeLock().lock();
+        try
+        {
+            version++;
+            if (!theGame.initialized())
+            {
+                theGame.initialize();
+            }
+            starting = true;
+            updateState();
+            assert inStartingState();
+            assert invariant();
+        } finally
         {
-            theGame.initialize();
+            lock.writeLock().unlock();
         }
-        starting = true;
-        assert inStartingState();
-        assert invariant();
     }
 
     /**
@@ -167,16 +348,42 @@ public class Engine extends Observable
      */
     public void quit()
     {
-        synchronized (this)
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            queue.submit(new Runnable() {
+                public void run()
+                {
+                    quit();
+                }
+            });
+            return;
+        }
+        boolean changed = false;
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
         {
             assert invariant();
             if (inPlayingState())
             {
+                final ChangeEvent event = pendingEvent();
                 halted = true;
-                notifyViewers();
+                version++;
+                changed = true;
+                endChange(event);
+                if (recorder != null)
+                {
+                    recorder.halted();
+                }
             }
             assert invariant();
+            delivery = takeChanges(changed);
+        } finally
+        {
+            lock.writeLock().unlock();
         }
+        deliver(delivery);
     }
 
     /**
@@ -184,9 +391,23 @@ public class Engine extends Observable
      */
     public void start()
     {
-        synchronized (this)
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            queue.submit(new Runnable() {
+                public void run()
+                {
+                    start();
+                }
+            });
+            return;
+        }
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
         {
             assert invariant();
+            final ChangeEvent event = pendingEvent();
             if (inHaltedState())
             {
                 assert halted;
@@ -204,34 +425,194 @@ public class Engine extends Observable
                         assert !starting;
                         theGame.reInitialize();
                         starting = true;
+                        event.worldReloaded();
                     }
                 }
             }
-            notifyViewers();
-            assert invariant() : "Invariant invalid after updating the viewers";
+            version++;
+            endChange(event);
+            if (recorder != null)
+            {
+                recorder.started();
+            }
+            assert invariant();
+            delivery = takeChanges(true);
+        } finally
+        {
+            lock.writeLock().unlock();
         }
+        deliver(delivery);
     }
 
     /**
-     * Try to move the player along a given offset.
+     * Try to move the (first) player along a given offset.
      *
      * @param dx
      *            Horizontal offset
      * @param dy
      *            Vertical offset.
      */
-    public void movePlayer(int dx, int dy)
+    public void movePlayer(final int dx, final int dy)
     {
-        synchronized (this)
+        movePlayer(0, dx, dy);
+    }
+
+    /**
+     * Try to move one of the players along a given offset. Moves of
+     * players that died already are ignored.
+     *
+     * @param player
+     *            The index of the player, from 0 to getPlayerCount()
+     * @param dx
+     *            Horizontal offset
+     * @param dy
+     *            Vertical offset.
+     */
+    public void movePlayer(final int player, final int dx, final int dy)
+    {
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            queue.submit(new Runnable() {
+                public void run()
+                {
+                    movePlayer(player, dx, dy);
+                }
+            });
+            return;
+        }
+        boolean moved = false;
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
         {
             assert invariant();
             if (inPlayingState())
             {
-                theGame.movePlayer(dx, dy);
-                notifyViewers();
+                final ChangeEvent event = pendingEvent();
+                moved = applyPlayerMove(event, player, dx, dy, false);
+                endChange(event);
             }
             assert invariant();
+            delivery = takeChanges(moved);
+        } finally
+        {
+            lock.writeLock().unlock();
         }
+        deliver(delivery);
+    }
+
+    /**
+     * Try to move many players at once, as a single change: player i
+     * moves along offset (dxs[i], dys[i]), in the order of the indexes,
+     * until the game is over. The lock is taken, the state brought up to
+     * date and the listeners called back once for all these moves, and
+     * the moves are resolved by looking up their outcomes in the
+     * MoveResolver's table, so that the cost per player stays low when
+     * many players act in the same tick. Moves of players that died
+     * already are ignored.
+     *
+     * @param dxs
+     *            Horizontal offsets, by player index. Can be shorter than
+     *            the number of players, to keep the others in place.
+     * @param dys
+     *            Vertical offsets, by player index, as many as dxs.
+     */
+    public void movePlayers(int[] dxs, int[] dys)
+    {
+        assert dxs != null && dys != null && dxs.length == dys.length;
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            // the caller may reuse its arrays for the next tick.
+            final int[] xs = dxs.clone();
+            final int[] ys = dys.clone();
+            queue.submit(new Runnable() {
+                public void run()
+                {
+                    movePlayers(xs, ys);
+                }
+            });
+            return;
+        }
+        boolean moved = false;
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
+        {
+            assert invariant();
+            assert dxs.length <= theGame.playerCount();
+            if (inPlayingState())
+            {
+                final ChangeEvent event = pendingEvent();
+                for (int i = 0; i < dxs.length && !theGame.gameOver(); i++)
+                {
+                    if (applyPlayerMove(event, i, dxs[i], dys[i], true))
+                    {
+                        moved = true;
+                    }
+                }
+                endChange(event);
+            }
+            assert invariant();
+            delivery = takeChanges(moved);
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        deliver(delivery);
+    }
+
+    /**
+     * Move one of the players, unless it died already, and register the
+     * move in the pending event, the listeners' log, and the recording.
+     * Invoked holding the write lock, while playing.
+     *
+     * @param event The pending event.
+     * @param index The index of the player.
+     * @param dx Horizontal offset.
+     * @param dy Vertical offset.
+     * @param step True iff the move should be resolved by the
+     *            MoveResolver's table, rather than by a move object.
+     * @return True iff the player was alive, so the move was made.
+     */
+    private boolean applyPlayerMove(ChangeEvent event, int index, int dx,
+            int dy, boolean step)
+    {
+        assert lock.isWriteLockedByCurrentThread();
+        final Player player = theGame.getPlayer(index);
+        if (!player.living())
+        {
+            return false;
+        }
+        final Cell from = player.getLocation();
+        final int points = player.getPointsEaten();
+        if (step)
+        {
+            theGame.stepPlayer(player, dx, dy);
+        } else
+        {
+            theGame.movePlayer(player, dx, dy);
+        }
+        version++;
+        final Cell to = player.getLocation();
+        final int eaten = player.getPointsEaten() - points;
+        event.moveMade(player.getMoverId(), to != from, eaten > 0);
+        if (to != from)
+        {
+            log(EngineListener.MOVES, player.getMoverId(),
+                    from.getPosition(), to.getPosition(), 0);
+        }
+        if (eaten > 0)
+        {
+            log(EngineListener.FOOD, to.getPosition(), eaten,
+                    player.getPointsEaten(), 0);
+        }
+        if (recorder != null)
+        {
+            recorder.playerMoved(index, dx, dy);
+        }
+        return true;
     }
 
     /**
@@ -244,18 +625,53 @@ public class Engine extends Observable
      * @param dy
      *            Vertical offset
      */
-    public void moveMonster(Monster monster, int dx, int dy) 
+    public void moveMonster(final Monster monster, final int dx,
+            final int dy)
     {
-        synchronized (this)
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            queue.submit(new Runnable() {
+                public void run()
+                {
+                    moveMonster(monster, dx, dy);
+                }
+            });
+            return;
+        }
+        boolean moved = false;
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
         {
             assert invariant();
             if (inPlayingState())
             {
+                final ChangeEvent event = pendingEvent();
+                final Cell from = monster.getLocation();
                 theGame.moveMonster(monster, dx, dy);
-                notifyViewers();
+                version++;
+                moved = true;
+                final Cell to = monster.getLocation();
+                event.moveMade(monster.getMoverId(), to != from, false);
+                if (to != from)
+                {
+                    log(EngineListener.MOVES, monster.getMoverId(),
+                            from.getPosition(), to.getPosition(), 0);
+                }
+                endChange(event);
+                if (recorder != null)
+                {
+                    recorder.monsterMoved(monster, dx, dy);
+                }
             }
             assert invariant();
+            delivery = takeChanges(moved);
+        } finally
+        {
+            lock.writeLock().unlock();
         }
+        deliver(delivery);
     }
 
 
@@ -265,30 +681,480 @@ public class Engine extends Observable
      */
     public void undoLastMove()
     {
-        synchronized (this)
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            queue.submit(new Runnable() {
+                public void run()
+                {
+                    undoLastMove();
+                }
+            });
+            return;
+        }
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
         {
             assert invariant();
             assert inHaltedState() || inGameOverState();
             
+            final ChangeEvent event = pendingEvent();
+            final int points = theGame.getPointsEaten();
+            final boolean undoing = theGame.canUndo();
             theGame.undoLastMove();
+            version++;
+            final int score = theGame.getPointsEaten();
+            event.moveUndone(score < points);
+            if (undoing)
+            {
+                logUndo(score);
+            }
+            endChange(event);
+            if (recorder != null)
+            {
+                recorder.undone();
+            }
             
             //to make sure we stay in halted state:
             quit();
             
-            notifyViewers();
-            
             assert invariant();
+            delivery = takeChanges(true);
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        deliver(delivery);
+    }
+
+    /**
+     * Reload the game from scratch, and wait for it to be started,
+     * whatever state it was in. Used to replay a game from its start.
+     */
+    void reset()
+    {
+        Delivery delivery = null;
+        lock.writeLock().lock();
+        try
+        {
+            final ChangeEvent event = pendingEvent();
+            theGame.reInitialize();
+            starting = true;
+            halted = false;
+            version++;
+            event.worldReloaded();
+            endChange(event);
+            assert inStartingState();
+            delivery = takeChanges(true);
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        deliver(delivery);
+    }
+
+    /**
+     * Start recording all changes made to the game from now on, so that
+     * the game can be replayed by a GameReplay. The recording starts with
+     * the seed and the game's world, so the game must just have been
+     * (re)initialized and not have been started yet.
+     *
+     * @param out The stream to write the recording to, which is flushed
+     *            but not closed when the recording stops.
+     * @throws IOException If the recording can't be started.
+     * @throws GameLoadException If the game's world can't be read anymore.
+     */
+    public void startRecording(OutputStream out)
+        throws IOException, GameLoadException
+    {
+        assert out != null;
+        lock.writeLock().lock();
+        try
+        {
+            assert recorder == null : "already recording";
+            assert inStartingState() : "recording must start from scratch";
+            recorder = new GameRecorder(out, seed, theGame.encodeWorld());
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop recording, and write out everything recorded.
+     *
+     * @throws IOException If (part of) the recording couldn't be written.
+     */
+    public void stopRecording() throws IOException
+    {
+        GameRecorder stopped;
+        lock.writeLock().lock();
+        try
+        {
+            stopped = recorder;
+            recorder = null;
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        assert stopped != null : "not recording";
+        stopped.finish();
+    }
+
+    /**
+     * @return True iff the changes to the game are being recorded.
+     */
+    public boolean isRecording()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return recorder != null;
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The lock to be held by clients that need to inspect the game and
+     * then change it, without other changes coming in between, such as
+     * monster controllers choosing a move. Holding it excludes all
+     * other readers and writers, so it should only be held briefly.
+     * Engine methods can be invoked while holding it.
+     *
+     * @return The engine's write lock.
+     */
+    public Lock updateLock()
+    {
+        return lock.writeLock();
+    }
+
+    /**
+     * Apply an action holding the update lock, for clients that need to
+     * inspect the game and change it in one go, such as monster controllers.
+     * If a command queue is used, the action is applied on the game thread,
+     * in the order of submission; otherwise it is applied right away.
+     *
+     * @param action The action to be applied.
+     */
+    public void submit(Runnable action)
+    {
+        assert action != null;
+        final CommandQueue queue = commands;
+        if (queue != null && !queue.onGameThread())
+        {
+            queue.submit(action);
+        } else
+        {
+            Delivery delivery = null;
+            lock.writeLock().lock();
+            try
+            {
+                action.run();
+                delivery = takeChanges(true);
+            } finally
+            {
+                lock.writeLock().unlock();
+            }
+            deliver(delivery);
+        }
+    }
+
+    /**
+     * Switch to applying all changes on a single game thread: from now on,
+     * moves, starts, quits and undos are submitted to a lock-free queue,
+     * and return immediately. The game thread applies them in batches in
+     * the order of submission, and calls back the listeners once per batch,
+     * on the game thread. Use awaitIdle to wait for the changes to be done.
+     */
+    public void startCommandQueue()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            assert commands == null;
+            commands = new CommandQueue(this);
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Apply the changes still queued, stop the game thread, and apply
+     * changes directly again.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void stopCommandQueue() throws InterruptedException
+    {
+        final CommandQueue queue = commands;
+        assert queue != null;
+        commands = null;
+        queue.stop();
+    }
+
+    /**
+     * @return True iff changes are applied through a command queue.
+     */
+    public boolean hasCommandQueue()
+    {
+        return commands != null;
+    }
+
+    /**
+     * Wait until all changes submitted so far have been applied.
+     * Returns immediately if no command queue is used.
+     * Must not be invoked from the game thread itself.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitIdle() throws InterruptedException
+    {
+        final CommandQueue queue = commands;
+        if (queue != null)
+        {
+            queue.awaitIdle();
+        }
+    }
+
+    /**
+     * Subscribe a listener to the given kinds of changes, replacing the
+     * kinds it subscribed to before, if any. Listeners are only called
+     * back for changes made after they subscribed.
+     *
+     * @param listener The listener to be called back.
+     * @param kinds Mask of the EngineListener kinds, such as
+     *            EngineListener.MOVES | EngineListener.FOOD.
+     */
+    public void addListener(EngineListener listener, int kinds)
+    {
+        listeners.add(listener, kinds);
+    }
+
+    /**
+     * Unsubscribe a listener from all changes.
+     *
+     * @param listener The listener to be removed.
+     * @return True iff the listener was subscribed.
+     */
+    public boolean removeListener(EngineListener listener)
+    {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * @return The number of listeners subscribed.
+     */
+    public int countListeners()
+    {
+        return listeners.size();
+    }
+
+    /**
+     * Call back the listeners once if the batch of commands just applied
+     * changed the game. Invoked by the game thread after each batch.
+     */
+    void publishBatch()
+    {
+        notifyViewers();
+    }
+
+    /**
+     * Deliver changes to the listeners once per tick, rather than after
+     * every change: from now on, all changes are collected until endTick
+     * is invoked. Meant for engines driven by a game
+     * loop, which should invoke endTick at the end of every tick.
+     *
+     * @param perTick True iff notifications should wait for endTick.
+     */
+    public void setNotifyPerTick(boolean perTick)
+    {
+        notifyPerTick = perTick;
+        if (!perTick)
+        {
+            notifyViewers();
         }
     }
+
+    /**
+     * Call back the listeners once for all changes made since the
+     * previous tick, if any.
+     */
+    public void endTick()
+    {
+        notifyViewers();
+    }
+
+    /**
+     * Take the changes to be reported right after a change, if any:
+     * unless listeners are called back once per tick, the changes are
+     * made on the game thread within a batch of commands, or the caller
+     * holds the write lock for an outer change, such as the undo doing
+     * a quit. Invoked at the end of the change, still holding the write
+     * lock, so that reporting needs no second turn on the lock.
+     *
+     * @param changed True iff the game was changed.
+     * @return The changes to be delivered once unlocked, or null.
+     */
+    private Delivery takeChanges(boolean changed)
+    {
+        assert lock.isWriteLockedByCurrentThread();
+        final CommandQueue queue = commands;
+        if (!changed || notifyPerTick || lock.getWriteHoldCount() > 1
+                || (queue != null && queue.onGameThread()))
+        {
+            return null;
+        }
+        return takePending();
+    }
+
+    /**
+     * The event collecting the changes made since the listeners were
+     * last called back, started if there is none. Invoked holding the write
+     * lock, before the game is changed.
+     *
+     * @return The pending event.
+     */
+    private ChangeEvent pendingEvent()
+    {
+        assert lock.isWriteLockedByCurrentThread();
+        if (pending == null)
+        {
+            pending = new ChangeEvent(version, getState(),
+                    theGame.getPointsEaten(), theGame.playerCount());
+        }
+        return pending;
+    }
+
+    /**
+     * Bring the state up to date after a change, and register the
+     * situation in its event. Invoked holding the write lock.
+     *
+     * @param event The pending event.
+     */
+    private void endChange(ChangeEvent event)
+    {
+        updateState();
+        final State previous = event.getState();
+        final State current = state;
+        if (current != previous && previous != null)
+        {
+            log(EngineListener.STATES, previous.ordinal(),
+                    current.ordinal(), 0, 0);
+        }
+        event.changed(version, current, theGame.getPointsEaten());
+    }
+
+    /**
+     * Log a detailed change for the listeners, if any of them wants it.
+     * Invoked holding the write lock.
+     *
+     * @param kind The kind of change, one of the EngineListener kinds.
+     * @param a The first argument of the callback.
+     * @param b The second argument of the callback.
+     * @param c The third argument of the callback.
+     * @param d The fourth argument of the callback.
+     */
+    private void log(int kind, int a, int b, int c, int d)
+    {
+        assert lock.isWriteLockedByCurrentThread();
+        if (listeners.wants(kind))
+        {
+            if (pendingLog == null)
+            {
+                pendingLog = new EventLog();
+            }
+            pendingLog.add(kind, a, b, c, d);
+        }
+    }
+
+    /**
+     * Log the move just undone for the listeners.
+     * Invoked holding the write lock.
+     *
+     * @param score The points eaten by the players after the undo.
+     */
+    private void logUndo(int score)
+    {
+        final UndoJournal journal = theGame.getJournal();
+        if (journal.poppedApplied())
+        {
+            log(EngineListener.UNDOS, journal.poppedMoverId(),
+                    journal.poppedTo(), journal.poppedFrom(), score);
+        } else
+        {
+            log(EngineListener.UNDOS, -1, -1, -1, score);
+        }
+    }
+
+    /**
+     * The number of changes made to the game so far. Reading it never
+     * blocks, so clients can cheaply find out whether anything changed
+     * since they last looked.
+     *
+     * @return The engine's version.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
     
 
     /**
-     * Warn the observers that the state has changed.
+     * Call back the listeners for the changes made since they were
+     * last called back, if any. Used once per batch or tick; after single
+     * changes, the mutators take their changes themselves.
      */
     private void notifyViewers()
     {
-        setChanged();
-        notifyObservers();
+        Delivery delivery;
+        lock.writeLock().lock();
+        try
+        {
+            delivery = takePending();
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        deliver(delivery);
+    }
+
+    /**
+     * Take the changes made since the listeners were last called back,
+     * so that the next change starts a new event. Invoked holding the
+     * write lock.
+     *
+     * @return The changes taken, or null if there are none.
+     */
+    private Delivery takePending()
+    {
+        assert lock.isWriteLockedByCurrentThread();
+        if (pending == null)
+        {
+            return null;
+        }
+        final Delivery delivery = new Delivery(pending, pendingLog);
+        pending = null;
+        pendingLog = null;
+        return delivery;
+    }
+
+    /**
+     * Call back the listeners for changes taken from the engine.
+     * Invoked without holding the lock, so that listeners can read the
+     * game.
+     *
+     * @param delivery The changes taken, or null if there are none.
+     */
+    private void deliver(Delivery delivery)
+    {
+        if (delivery != null)
+        {
+            listeners.dispatch(delivery.log, delivery.event);
+        }
     }
 
     /**
@@ -313,9 +1179,148 @@ public class Engine extends Observable
      */
     public char[] getGuestCodes(int x, int y)
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
             return getGame().getGuestCodes(x, y);
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fill the buffer with the guest masks of a rectangular part of the
+     * board, under a single lock: the mask of (x0 + i, y0 + j) ends up at
+     * buffer[j * w + i]. Offered for viewers that draw the whole board
+     * or a viewport on it.
+     *
+     * @see Board#snapshot(byte[], int, int, int, int)
+     * @param buffer Buffer of at least w * h bytes.
+     * @param x0 Horizontal position of the upper left corner
+     * @param y0 Vertical position of the upper left corner
+     * @param w Width of the rectangle
+     * @param h Height of the rectangle
+     */
+    public void snapshot(byte[] buffer, int x0, int y0, int w, int h)
+    {
+        lock.readLock().lock();
+        try
+        {
+            getGame().getBoard().snapshot(buffer, x0, y0, w, h);
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fill the buffer with the guest masks of the given positions
+     * (y * width + x), under a single lock. Offered for viewers that
+     * only redraw the cells that changed.
+     *
+     * @see Board#snapshot(int[], int, byte[])
+     * @param positions The positions to be inspected.
+     * @param count The number of positions to be inspected.
+     * @param buffer Buffer of at least count bytes.
+     */
+    public void snapshot(int[] positions, int count, byte[] buffer)
+    {
+        lock.readLock().lock();
+        try
+        {
+            getGame().getBoard().snapshot(positions, count, buffer);
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indicate whether the cells that change should be tracked,
+     * for viewers that only redraw what changed.
+     *
+     * @param track True iff changes should be tracked.
+     */
+    public void setTrackChanges(boolean track)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            getGame().setTrackChanges(track);
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Obtain the positions (y * width + x) of the cells whose guests
+     * changed since the previous call. Precondition: changes are tracked.
+     * Since changes are only handed out once, there should be a single
+     * client taking them.
+     *
+     * @return The positions of the changed cells.
+     */
+    public int[] takeChangedCells()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            return getGame().takeChangedCells();
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hand everything needed for drawing a frame to the reader under a
+     * single lock: the changed cells (taken as with takeChangedCells), the
+     * board's generation and size, the player's position and direction,
+     * and snapshots of the board. Precondition: changes are tracked.
+     * Since changes are only handed out once, there should be a single
+     * client reading frames.
+     *
+     * @param reader The reader, called back while the lock is held.
+     */
+    public void readFrame(FrameReader reader)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            final Frame frame =
+                new Frame(getGame(), getGame().takeChangedCells());
+            try
+            {
+                reader.readFrame(frame);
+            } finally
+            {
+                frame.close();
+            }
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The number of times the board has been (re)loaded. If this changes,
+     * the board has been replaced, and should be redrawn completely.
+     * To avoid missing a reload, take the changed cells first, and then
+     * obtain the generation.
+     *
+     * @return The board's generation.
+     */
+    public int boardGeneration()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return getGame().getGeneration();
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
@@ -326,9 +1331,13 @@ public class Engine extends Observable
      */
     public int boardWidth()
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
             return getGame().boardWidth();
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
@@ -339,24 +1348,31 @@ public class Engine extends Observable
      */
     public int boardHeight()
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
-            assert invariant();
             return getGame().boardHeight();
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
     /**
-     * The amount of food eaten so far.
+     * The amount of food eaten so far, by all players together. The
+     * score of a single player is kept by the player itself.
      *
      * @return Amount of food eaten.
      */
     public int getFoodEaten()
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
-            assert invariant();
-            return getPlayer().getPointsEaten();
+            return theGame.getPointsEaten();
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
@@ -367,26 +1383,114 @@ public class Engine extends Observable
      */
     public List<Monster> getMonsters()
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
-            assert invariant();
             List<Monster> result = theGame.getMonsters();
             assert result != null;
             return result;
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
     /**
      * Return the player of the game.
      *
-     * @return The game's player.
+     * @return The game's (first) player.
      */
     public Player getPlayer() 
    {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
-            assert invariant();
             return theGame.getPlayer();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return one of the players of the game.
+     *
+     * @param index The index of the player, from 0 to getPlayerCount().
+     * @return The player with that index.
+     */
+    public Player getPlayer(int index)
+    {
+        lock.readLock().lock();
+        try
+        {
+            return theGame.getPlayer(index);
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of players in the game.
+     */
+    public int getPlayerCount()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return theGame.playerCount();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The position (y * width + x) of the cell the player is on,
+     * offered for viewers following the player.
+     *
+     * @return The player's position on the board.
+     */
+    public int getPlayerPosition()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return getGame().getPlayer().getLocation().getPosition();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fill the buffer with the positions (y * width + x) of the players
+     * still alive, in the order of the players, under a single lock.
+     * Offered for monster controllers chasing the living players.
+     *
+     * @param positions Buffer of at least getPlayerCount() positions.
+     * @return The number of living players.
+     */
+    public int getLivingPlayerPositions(int[] positions)
+    {
+        lock.readLock().lock();
+        try
+        {
+            final Game game = getGame();
+            assert positions.length >= game.playerCount();
+            int count = 0;
+            for (int i = 0; i < game.playerCount(); i++)
+            {
+                final Player p = game.getPlayer(i);
+                if (p.living())
+                {
+                    positions[count++] = p.getLocation().getPosition();
+                }
+            }
+            return count;
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
@@ -396,9 +1500,13 @@ public class Engine extends Observable
      */
     public int getPlayerLastDx()
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
             return getGame().getPlayerLastDx();
+        } finally
+        {
+            lock.readLock().unlock();
         }
     }
 
@@ -408,9 +1516,41 @@ public class Engine extends Observable
      */
     public int getPlayerLastDy()
     {
-        synchronized (this)
+        lock.readLock().lock();
+        try
         {
             return getGame().getPlayerLastDy();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The changes taken from the engine to be reported to the listeners:
+     * the event, together with its detailed log.
+     */
+    private static final class Delivery
+    {
+
+        /**
+         * The changes made.
+         */
+        private final ChangeEvent event;
+
+        /**
+         * The detailed changes, or null if none were logged.
+         */
+        private final EventLog log;
+
+        /**
+         * @param event The changes made.
+         * @param log The detailed changes, or null if none were logged.
+         */
+        Delivery(ChangeEvent event, EventLog log)
+        {
+            this.event = event;
+            this.log = log;
         }
     }
 }
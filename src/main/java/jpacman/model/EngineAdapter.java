@@ -0,0 +1,54 @@
+package jpacman.model;
+
+/**
+ * Engine listener ignoring all changes, to be extended by listeners
+ * that implement only the callbacks they subscribe to.
+ *
+ * @version $Id$
+ */
+public abstract class EngineAdapter implements EngineListener
+{
+
+    /**
+     * Ignore a move.
+     * @param moverId The mover id of the guest.
+     * @param from The position the guest moved from.
+     * @param to The position the guest moved to.
+     */
+    public void onMove(int moverId, int from, int to)
+    { }
+
+    /**
+     * Ignore food being eaten.
+     * @param position The position of the food eaten.
+     * @param points The points the food was worth.
+     * @param score The points eaten by the player in total.
+     */
+    public void onFoodEaten(int position, int points, int score)
+    { }
+
+    /**
+     * Ignore a change of state.
+     * @param previous The state the engine was in.
+     * @param state The state the engine is in now.
+     */
+    public void onStateChange(Engine.State previous, Engine.State state)
+    { }
+
+    /**
+     * Ignore an undo.
+     * @param moverId The mover id of the guest moved back, or -1.
+     * @param from The position the guest was moved back from.
+     * @param to The position the guest was moved back to.
+     * @param score The points eaten by the player in total.
+     */
+    public void onUndo(int moverId, int from, int to, int score)
+    { }
+
+    /**
+     * Ignore the summary of the changes.
+     * @param event The changes made.
+     */
+    public void onChanges(ChangeEvent event)
+    { }
+}
@@ -0,0 +1,102 @@
+package jpacman.model;
+
+/**
+ * Listener to the changes made to an Engine. Listeners subscribe to the
+ * kinds of changes they are interested in, given as a mask of the kind
+ * constants below, and are only called back for those. Extend
+ * EngineAdapter to implement just the callbacks subscribed to.
+ * <p>
+ * Callbacks are made after the engine's lock has been released: after
+ * every change, or once per batch of commands or per tick (see
+ * Engine.setNotifyPerTick). Each listener first gets the detailed
+ * callbacks, in the order in which the changes were made, and then a
+ * single ChangeEvent summarizing them.
+ * <p>
+ * Guests are identified by their mover id: i for player i, and the
+ * number of players plus i for monster i in the engine's list of
+ * monsters, so 0 for the player and i + 1 for monster i in games with
+ * a single player. Cells are identified by their position on the board,
+ * y * width + x.
+ *
+ * @version $Id$
+ */
+public interface EngineListener
+{
+
+    /**
+     * Kind of change: a guest moved to another cell.
+     */
+    int MOVES = 1;
+
+    /**
+     * Kind of change: a player ate food.
+     */
+    int FOOD = 2;
+
+    /**
+     * Kind of change: the engine went to another state.
+     */
+    int STATES = 4;
+
+    /**
+     * Kind of change: a move was undone.
+     */
+    int UNDOS = 8;
+
+    /**
+     * Kind of change: the summary of all changes reported at once.
+     */
+    int CHANGES = 16;
+
+    /**
+     * All kinds of changes.
+     */
+    int ALL = MOVES | FOOD | STATES | UNDOS | CHANGES;
+
+    /**
+     * A guest moved to another cell. Moves that were rejected, or in
+     * which the player died, are not reported.
+     *
+     * @param moverId The mover id of the guest.
+     * @param from The position the guest moved from.
+     * @param to The position the guest moved to.
+     */
+    void onMove(int moverId, int from, int to);
+
+    /**
+     * A player ate food.
+     *
+     * @param position The position of the food eaten, where the player
+     *            now is.
+     * @param points The points the food was worth.
+     * @param score The points eaten by that player in total.
+     */
+    void onFoodEaten(int position, int points, int score);
+
+    /**
+     * The engine went to another state.
+     *
+     * @param previous The state the engine was in.
+     * @param state The state the engine is in now.
+     */
+    void onStateChange(Engine.State previous, Engine.State state);
+
+    /**
+     * A move was undone, putting back any food eaten by it.
+     *
+     * @param moverId The mover id of the guest moved back, or -1 if the
+     *            undone move didn't move a guest.
+     * @param from The position the guest was moved back from.
+     * @param to The position the guest was moved back to.
+     * @param score The points eaten by all players together.
+     */
+    void onUndo(int moverId, int from, int to, int score);
+
+    /**
+     * A summary of all changes reported at once, delivered after the
+     * detailed callbacks for them.
+     *
+     * @param event The changes made.
+     */
+    void onChanges(ChangeEvent event);
+}
@@ -0,0 +1,100 @@
+package jpacman.model;
+
+/**
+ * The detailed changes made to an engine since its listeners were last
+ * called back, kept as records of ints in a single growing array, so that
+ * logging a change allocates nothing. Filled in by the engine holding its
+ * write lock, and replayed to the listeners once the lock is released.
+ *
+ * @version $Id$
+ */
+final class EventLog
+{
+
+    /**
+     * Number of ints per record: the kind of change and four arguments.
+     */
+    private static final int RECORD = 5;
+
+    /**
+     * Number of records room is made for initially.
+     */
+    private static final int INITIAL_RECORDS = 16;
+
+    /**
+     * The engine states, by ordinal.
+     */
+    private static final Engine.State[] STATES = Engine.State.values();
+
+    /**
+     * The records logged so far.
+     */
+    private int[] records = new int[INITIAL_RECORDS * RECORD];
+
+    /**
+     * Number of ints of the records array in use.
+     */
+    private int size = 0;
+
+    /**
+     * Log a change.
+     * @param kind The kind of change, one of the EngineListener kinds.
+     * @param a The first argument of the callback.
+     * @param b The second argument of the callback.
+     * @param c The third argument of the callback.
+     * @param d The fourth argument of the callback.
+     */
+    void add(int kind, int a, int b, int c, int d)
+    {
+        if (size == records.length)
+        {
+            int[] grown = new int[records.length * 2];
+            System.arraycopy(records, 0, grown, 0, size);
+            records = grown;
+        }
+        records[size] = kind;
+        records[size + 1] = a;
+        records[size + 2] = b;
+        records[size + 3] = c;
+        records[size + 4] = d;
+        size += RECORD;
+    }
+
+    /**
+     * Call back a listener for the changes of the kinds it subscribed to,
+     * in the order in which they were logged.
+     * @param listener The listener to be called back.
+     * @param kinds The kinds of changes it subscribed to.
+     */
+    void replay(EngineListener listener, int kinds)
+    {
+        for (int i = 0; i < size; i += RECORD)
+        {
+            final int kind = records[i];
+            if ((kind & kinds) == 0)
+            {
+                continue;
+            }
+            final int a = records[i + 1];
+            final int b = records[i + 2];
+            final int c = records[i + 3];
+            switch (kind)
+            {
+            case EngineListener.MOVES:
+                listener.onMove(a, b, c);
+                break;
+            case EngineListener.FOOD:
+                listener.onFoodEaten(a, b, c);
+                break;
+            case EngineListener.STATES:
+                listener.onStateChange(STATES[a], STATES[b]);
+                break;
+            case EngineListener.UNDOS:
+                listener.onUndo(a, b, c, records[i + 4]);
+                break;
+            default:
+                assert false : "unknown kind " + kind;
+            }
+        }
+    }
+}
@@ -105,4 +105,14 @@ public class Food extends Guest
         return Guest.FOOD_TYPE;
     }
 
+    /**
+     * @see jpacman.model.Guest#guestBit()
+     * @return Snapshot bit for food guests.
+     */
+    @Override
+    public byte guestBit()
+    {
+        return Guest.FOOD_BIT;
+    }
+
 }
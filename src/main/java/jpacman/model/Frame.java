@@ -0,0 +1,146 @@
+package jpacman.model;
+
+/**
+ * The state of a game a viewer needs for drawing it, handed to a
+ * FrameReader by Engine.readFrame. All values are taken under the same
+ * lock, and the board can be inspected through the snapshot methods as
+ * long as the reader is being called back.
+ *
+ * @version $Id$
+ */
+public final class Frame
+{
+
+    /**
+     * The game the frame is taken from, or null once the reader returned.
+     */
+    private Game game;
+
+    /**
+     * Positions (y * width + x) of the cells changed since the previous
+     * frame.
+     */
+    private final int[] changes;
+
+    /**
+     * Create a frame of the given game. Precondition: the engine's lock is
+     * held until the frame is closed.
+     *
+     * @param g The game.
+     * @param changedCells The positions of the cells changed since the
+     *        previous frame.
+     */
+    Frame(Game g, int[] changedCells)
+    {
+        assert g != null && changedCells != null;
+        game = g;
+        changes = changedCells;
+    }
+
+    /**
+     * Make the frame unusable, once the engine's lock is released.
+     */
+    void close()
+    {
+        game = null;
+    }
+
+    /**
+     * @return The game, after checking the frame is still being read.
+     */
+    private Game game()
+    {
+        assert game != null : "Frame used after Engine.readFrame returned";
+        return game;
+    }
+
+    /**
+     * @return The positions (y * width + x) of the cells changed since the
+     *         previous frame.
+     */
+    public int[] getChangedCells()
+    {
+        return changes;
+    }
+
+    /**
+     * @return The number of times the board has been (re)loaded; if it
+     *         differs from the previous frame, the board should be redrawn
+     *         completely.
+     */
+    public int getGeneration()
+    {
+        return game().getGeneration();
+    }
+
+    /**
+     * @return The board's width.
+     */
+    public int getWidth()
+    {
+        return game().boardWidth();
+    }
+
+    /**
+     * @return The board's height.
+     */
+    public int getHeight()
+    {
+        return game().boardHeight();
+    }
+
+    /**
+     * @return The position (y * width + x) of the cell player 0 is on.
+     */
+    public int getPlayerPosition()
+    {
+        return game().getPlayer().getLocation().getPosition();
+    }
+
+    /**
+     * @return The most recent advancement of player 0 in the horizontal
+     *         direction.
+     */
+    public int getPlayerLastDx()
+    {
+        return game().getPlayerLastDx();
+    }
+
+    /**
+     * @return The most recent advancement of player 0 in the vertical
+     *         direction.
+     */
+    public int getPlayerLastDy()
+    {
+        return game().getPlayerLastDy();
+    }
+
+    /**
+     * Fill the buffer with the guest masks of a rectangular part of the
+     * board.
+     *
+     * @see Board#snapshot(byte[], int, int, int, int)
+     * @param buffer Buffer of at least w * h bytes.
+     * @param x0 Horizontal position of the upper left corner
+     * @param y0 Vertical position of the upper left corner
+     * @param w Width of the rectangle
+     * @param h Height of the rectangle
+     */
+    public void snapshot(byte[] buffer, int x0, int y0, int w, int h)
+    {
+        game().getBoard().snapshot(buffer, x0, y0, w, h);
+    }
+
+    /**
+     * Fill the buffer with the guest masks of the given positions.
+     *
+     * @see Board#snapshot(int[], int, byte[])
+     * @param positions The positions to be inspected.
+     * @param count The number of positions to be inspected.
+     * @param buffer Buffer of at least count bytes.
+     */
+    public void snapshot(int[] positions, int count, byte[] buffer)
+    {
+        game().getBoard().snapshot(positions, count, buffer);
+    }
+}
@@ -0,0 +1,23 @@
+package jpacman.model;
+
+/**
+ * Reader of everything a viewer needs for drawing one frame of the game:
+ * the cells that changed, the board's generation and size, and where the
+ * player is and is heading, together with snapshots of the board. Since
+ * Engine.readFrame hands all of this out under a single lock, it belongs
+ * to one and the same version of the game.
+ *
+ * @version $Id$
+ */
+public interface FrameReader
+{
+
+    /**
+     * Read a frame. Called by Engine.readFrame while it holds the engine's
+     * lock, so implementations should be quick, and not call back into the
+     * engine. The frame can only be used during the call.
+     *
+     * @param frame The state of the game to be drawn.
+     */
+    void readFrame(Frame frame);
+}
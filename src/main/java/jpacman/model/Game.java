@@ -1,8 +1,8 @@
 package jpacman.model;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 
 /**
@@ -11,6 +11,13 @@ import java.util.Stack;
  * of the game (whether the player died, or whether everything has been eaten,
  * for example)
  * <p>
+ * A world can have several players, one for every player cell in its map,
+ * in the order in which they are read. Each player keeps its own score,
+ * and stays on its cell once caught by a monster, standing in the way of
+ * the others. The players win together once they have eaten all food, and
+ * lose once all of them have died. The methods without a player argument
+ * concern the first player.
+ * <p>
  *
  * @author Arie van Deursen; Aug 24, 2003
  * @version $Id: Game.java 4234 2011-01-24 21:01:15Z arievandeursen $
@@ -24,9 +31,9 @@ public class Game
     private Board theBoard = null;
 
     /**
-     * The player of the game.
+     * The players of the game.
      */
-    private Player thePlayer = null;
+    private Team team = null;
 
     /**
      * All monsters active in this game.
@@ -39,14 +46,64 @@ public class Game
     private int totalPoints = 0;
 
     /**
-     * The initial map / layout on the board.
+     * Where the initial map / layout on the board is read from,
+     * or null if not determined yet.
+     */
+    private WorldSource world = null;
+
+    /**
+     * The moves the monster or the player has done,
+     * as far as they can still be undone.
+     */
+    private UndoJournal journal = new UndoJournal(UndoJournal.DEFAULT_CAPACITY);
+
+    /**
+     * The number of moves and undos made, counted for sampling the
+     * invariant checks.
+     */
+    private long movesMade = 0;
+
+    /**
+     * The position of the first cell to be checked by the next sampled
+     * invariant check.
+     */
+    private int sampleCursor = 0;
+
+    /**
+     * Whether the world should be loaded into a compact board.
+     */
+    private boolean compactBoard = false;
+
+    /**
+     * Whether the board should keep track of the cells that changed.
+     */
+    private boolean trackChanges = false;
+
+    /**
+     * Number of times a world has been loaded, so that viewers can
+     * tell that the board has been replaced altogether.
      */
-    private String[] theMap = null;
+    private int generation = 0;
 
     /**
-     * The moves the monster or the player has done.
+     * Builds the world in this game while it is being read.
      */
-    private final Stack<Move> moves = new Stack<Move>();
+    private final WorldBuilder builder = new WorldBuilder() {
+        public void startWorld(int width, int height)
+        {
+            Game.this.startWorld(width, height);
+        }
+
+        public void addGuest(char code, int x, int y)
+        {
+            addGuestFromCode(code, x, y);
+        }
+
+        public void finishWorld()
+        {
+            Game.this.finishWorld();
+        }
+    };
     
 
     /**
@@ -61,7 +118,30 @@ public class Game
      */
     public Game(String[] map)
     {
-        theMap = map.clone();
+        world = new TextWorld(map);
+    }
+
+    /**
+     * Create a new Game whose world is read from a text or binary level
+     * file. The file is memory mapped and checked while the board is built,
+     * so that even very large worlds are read without keeping the map in
+     * memory. Problems with the file are reported upon initialization.
+     *
+     * @param mapFile The file containing the world's map.
+     */
+    public Game(File mapFile)
+    {
+        this(new MappedWorld(mapFile));
+    }
+
+    /**
+     * Create a new Game whose world is read from the given source.
+     * @param source Where the world is read from.
+     */
+    Game(WorldSource source)
+    {
+        assert source != null;
+        world = source;
     }
 
     /**
@@ -71,22 +151,22 @@ public class Game
      */
     void initialize() throws GameLoadException
     {
-        if (theMap == null)
+        try
         {
-            try
-            {
-                theMap = new GameLoader().obtainMap();
-            } catch (GameLoadException gle)
+            if (world == null)
             {
-                // switch to default world map
-                // (which should always load correctly).
-                theMap = GameLoader.DEFAULT_WORLD_MAP;
-                loadWorld(theMap);
-                // inform outside world of switch to new map.
-                throw gle;
+                world = new GameLoader().obtainWorld();
             }
+            world.load(builder);
+        } catch (GameLoadException gle)
+        {
+            // switch to default world map
+            // (which should always load correctly).
+            world = new TextWorld(GameLoader.DEFAULT_WORLD_MAP);
+            world.load(builder);
+            // inform outside world of switch to new map.
+            throw gle;
         }
-        loadWorld(theMap);
         assert invariant();
     }
     
@@ -95,12 +175,112 @@ public class Game
      */
     void reInitialize()
     {
-        assert theMap != null;
+        assert world != null;
         assert invariant();
-        loadWorld(theMap);
+        try
+        {
+            world.load(builder);
+        } catch (GameLoadException gle)
+        {
+            // it could be loaded before, so it was changed meanwhile.
+            throw new IllegalStateException("Can't reload the world", gle);
+        }
         assert invariant();
     }
 
+    /**
+     * Prepare encoding the world of this game, as it is when (re)loaded,
+     * as a binary level. The world is streamed from its source into the
+     * encoding, or copied as it is if it is a binary level already.
+     * Precondition: initialized.
+     *
+     * @return The encoder of the world.
+     * @throws GameLoadException If the world can't be read anymore.
+     */
+    BinaryLevel.Encoder encodeWorld() throws GameLoadException
+    {
+        assert world != null;
+        return new BinaryLevel.Encoder(world);
+    }
+
+    /**
+     * Indicate whether the world should be loaded into a CompactBoard,
+     * which only creates cells for positions that are actually used.
+     * This saves memory and loading time for very large worlds.
+     * Takes effect the next time the world is (re)loaded.
+     *
+     * @param compact True iff a compact board should be used.
+     */
+    public void setCompactBoard(boolean compact)
+    {
+        compactBoard = compact;
+    }
+
+    /**
+     * Indicate whether the board should keep track of the cells whose
+     * guests change, for viewers that only redraw what changed.
+     * Applies to the current board, and to boards of reloaded worlds.
+     *
+     * @param track True iff changes should be tracked.
+     */
+    public void setTrackChanges(boolean track)
+    {
+        trackChanges = track;
+        if (theBoard != null)
+        {
+            theBoard.setTrackChanges(track);
+        }
+    }
+
+    /**
+     * Obtain the positions (y * width + x) of the cells whose guests
+     * changed since the previous call. Precondition: changes are tracked.
+     *
+     * @return The positions of the changed cells.
+     */
+    public int[] takeChangedCells()
+    {
+        assert trackChanges;
+        return theBoard.takeChangedCells();
+    }
+
+    /**
+     * @return The number of times a world has been loaded; changed cells
+     *         only concern the board of the current generation.
+     */
+    public int getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Use the given journal for keeping track of the moves that can be
+     * undone, for example to change the number of moves kept, or to
+     * keep older moves on disk. Moves done so far are forgotten, and the
+     * previous journal is closed, releasing its spill file, if any.
+     *
+     * @param undoJournal The journal to be used.
+     */
+    public void setUndoJournal(UndoJournal undoJournal)
+    {
+        assert undoJournal != null;
+        if (journal != undoJournal)
+        {
+            journal.close();
+        }
+        journal = undoJournal;
+        journal.clear();
+    }
+
+    /**
+     * @return The journal of the moves that can be undone, from which the
+     *         engine learns what the last undo did.
+     */
+    UndoJournal getJournal()
+    {
+        return journal;
+    }
+
     /**
      * Check whether all relevant fields have been initialized.
      *
@@ -109,21 +289,22 @@ public class Game
     public boolean initialized()
     {
         return theBoard != null 
-            && thePlayer != null 
+            && team != null
+            && team.size() > 0
             && monsters != null
             && totalPoints >= 0;
     }
 
     /**
      * The game should always be in a consistent state,
-     * in particular, a player cannot win and die at the same time.
+     * in particular, the players cannot win and die at the same time.
      *
      * @return True iff the above holds.
      */
     private boolean consistent()
     {
         return !(playerDied() && playerWon())
-        && thePlayer.getPointsEaten() <= totalPoints;
+        && team.getPointsEaten() <= totalPoints;
     }
 
     /**
@@ -136,6 +317,75 @@ public class Game
         return initialized() && consistent();
     }
 
+    /**
+     * The invariant, plus the consistency of every cell on the board, of
+     * the guests moving around, and of the team's totals. Walks the whole
+     * board, so it is only checked after every move in full mode (see
+     * Invariants).
+     *
+     * @return True iff the game and its board are consistent.
+     */
+    boolean fullInvariant()
+    {
+        return invariant() && moversConsistent() && team.invariant()
+            && theBoard.consistentBoardCellAssociation();
+    }
+
+    /**
+     * The invariant, plus the consistency of the first player's cell and
+     * of the next slice of the board. Each sample checks a bounded number
+     * of cells, and the samples cover the whole board in turn.
+     *
+     * @return True iff the game and the cells checked are consistent.
+     */
+    boolean sampledInvariant()
+    {
+        final int size = boardWidth() * boardHeight();
+        final int first = sampleCursor;
+        sampleCursor = (int) ((first + (long) Invariants.CELLS_PER_SAMPLE)
+                % Math.max(1, size));
+        return invariant() && getPlayer().getLocation().invariant()
+            && theBoard.consistentBoardCellAssociation(first,
+                    Invariants.CELLS_PER_SAMPLE);
+    }
+
+    /**
+     * @return True iff the cells of the players and the monsters are
+     *         consistent.
+     */
+    private boolean moversConsistent()
+    {
+        boolean result = true;
+        for (int i = 0; i < team.size(); i++)
+        {
+            result = result && team.get(i).getLocation().invariant();
+        }
+        for (Monster monster : monsters)
+        {
+            result = result && monster.getLocation().invariant();
+        }
+        return result;
+    }
+
+    /**
+     * Count a move or undo just made, and check the invariant if a check
+     * is due according to the invariant mode: fully, or a sample.
+     */
+    private void checkInvariants()
+    {
+        movesMade++;
+        if (Invariants.due(movesMade))
+        {
+            if (Invariants.getMode() == Invariants.Mode.FULL)
+            {
+                Invariants.check(fullInvariant(), "game");
+            } else
+            {
+                Invariants.check(sampledInvariant(), "game sample");
+            }
+        }
+    }
+
 
 
     /**
@@ -150,14 +400,14 @@ public class Game
     }
 
     /**
-     * Precondition: the player doesn't exist yet.
+     * Create player, and add it to the team.
      * @return a new Player.
      */
     private Player createPlayer()
     {
-        assert thePlayer == null : "Player exists already";
-        thePlayer = new Player();
-        return thePlayer;
+        Player p = new Player();
+        team.add(p);
+        return p;
     }
 
     /**
@@ -182,14 +432,63 @@ public class Game
     }
 
     /**
-     * Return the current player, which can be null if the game has not yet been
+     * Return the first player, which can be null if the game has not yet been
      * initialized.
      *
-     * @return the player of the game.
+     * @return the (first) player of the game.
      */
     public Player getPlayer()
     {
-        return thePlayer;
+        if (team == null || team.size() == 0)
+        {
+            return null;
+        }
+        return team.get(0);
+    }
+
+    /**
+     * Return one of the players. Precondition: initialized.
+     *
+     * @param index The index of the player, from 0 to playerCount().
+     * @return The player with that index.
+     */
+    public Player getPlayer(int index)
+    {
+        assert initialized();
+        assert index >= 0 && index < team.size();
+        return team.get(index);
+    }
+
+    /**
+     * Precondition: initialized.
+     * @return The number of players in the game.
+     */
+    public int playerCount()
+    {
+        assert initialized();
+        return team.size();
+    }
+
+    /**
+     * Return a fresh list containing all the players, in the order of
+     * their indexes. Precondition: initialized.
+     *
+     * @return All the players.
+     */
+    public List<Player> getPlayers()
+    {
+        assert initialized();
+        return team.getPlayers();
+    }
+
+    /**
+     * Precondition: initialized.
+     * @return The points eaten by all players together.
+     */
+    public int getPointsEaten()
+    {
+        assert initialized();
+        return team.getPointsEaten();
     }
 
     /**
@@ -216,6 +515,16 @@ public class Game
     {
         assert getBoard() != null : "Board should exist";
         assert getBoard().withinBorders(x, y);
+        if ((code == Guest.WALL_TYPE || code == Guest.FOOD_TYPE)
+                && getBoard().placeStatic(code, x, y))
+        {
+            // the board keeps track of the guest itself.
+            if (code == Guest.FOOD_TYPE)
+            {
+                totalPoints += Food.DEFAULT_POINTS;
+            }
+            return;
+        }
         Guest theGuest = null;
         switch (code)
         {
@@ -248,70 +557,119 @@ public class Game
     }
 
     /**
-     * Load a custom map. Postcondition: the invariant holds.
-     *
-     * @param map
-     *            String array for a customized world map.
-     */
-    private void loadWorld(String[] map)
-    {
-        assert map != null;
-        assert GameLoader.checkSanity(map) == null;
-        int height = map.length;
-        assert height > 0 : "at least one cell with one player required.";
-        int width = map[0].length();
-        assert width > 0 : "empty rows not permitted.";
-        
-        // initialize Game fields.
+     * Reset the fields of the game, and create an empty board.
+     * @param width Width of the board
+     * @param height Height of the board
+     */
+    private void startWorld(int width, int height)
+    {
         monsters = new ArrayList<Monster>();
         totalPoints = 0;
-        thePlayer = null;
-        theBoard = null;
-
-
-
-        assert theBoard == null;
-        theBoard = new Board(width, height);
+        team = new Team();
+        journal.clear();
+        theBoard = createBoard(width, height);
+    }
 
-        // read the map into the cells
-        for (int y = 0; y < height; y++)
+    /**
+     * Complete loading a world, numbering the players before the monsters
+     * in the undo journal. Postcondition: the invariant holds.
+     */
+    private void finishWorld()
+    {
+        final int players = team.size();
+        for (int i = 0; i < players; i++)
         {
-            assert map[y].length() == width
-                : "all lines in map should be of equal length.";
-            for (int x = 0; x < width; x++)
-            {
-                addGuestFromCode(map[y].charAt(x), x, y);
-            }
+            team.get(i).setMoverId(i);
         }
+        for (int i = 0; i < monsters.size(); i++)
+        {
+            monsters.get(i).setMoverId(players + i);
+        }
+        theBoard.setTrackChanges(trackChanges);
+        generation++;
         assert invariant();
     }
 
+    /**
+     * Create an empty board of the requested kind.
+     * @param width Width of the board
+     * @param height Height of the board
+     * @return A new board.
+     */
+    private Board createBoard(int width, int height)
+    {
+        if (compactBoard)
+        {
+            return new CompactBoard(width, height);
+        }
+        return new Board(width, height);
+    }
+
     /**
      * Move the player to offsets (x+dx,y+dy). If the move is not possible
      * (wall, beyond borders), the move is not carried out. Precondition:
      * initialized and game isn't over yet. Postcondition: if the move is
      * possible, it has been carried out, and the game has been updated to
      * reflect the new situation.
+     * <p>
+     * Moves that change nothing (into a wall, for example) are rejected
+     * up front: they only turn the player, without creating a move or
+     * taking a place in the undo journal.
      *
      * @param dx
      *            Horizontal movement
      * @param dy
      *            Vertical movement
-     * @return Returns the PlayerMove.
+     * @return Returns the PlayerMove, or null if the move was rejected.
      */
     protected PlayerMove movePlayer(int dx, int dy)
     {
-        assert invariant();
+        return movePlayer(getPlayer(), dx, dy);
+    }
+
+    /**
+     * Move one of the players, in the same way as movePlayer(dx, dy)
+     * moves the first. Precondition: initialized, game isn't over yet,
+     * and the player is still alive.
+     *
+     * @param player
+     *            The player to move
+     * @param dx
+     *            Horizontal movement
+     * @param dy
+     *            Vertical movement
+     * @return Returns the PlayerMove, or null if the move was rejected.
+     */
+    protected PlayerMove movePlayer(Player player, int dx, int dy)
+    {
         assert !gameOver() : "can only move when game isn't over";
+        assert player.living() : "dead players can't move";
         Cell targetCell =
-            getPlayer().getLocation().cellAtOffset(dx, dy);
-        PlayerMove playerMove = new PlayerMove(getPlayer(), targetCell);
-        applyMove(playerMove);
-        getPlayer().setLastDirection(dx, dy);
-        assert invariant();
-        
-        moves.push(playerMove);
-        
+            player.getLocation().cellAtOffset(dx, dy);
+        PlayerMove playerMove = null;
+        final byte mask = targetCell.guestMask();
+        if (!MoveResolver.covers(mask)
+                || !MoveResolver.rejects(MoveResolver.playerOutcome(mask)))
+        {
+            playerMove = new PlayerMove(player, targetCell);
+            applyMove(playerMove);
+        }
+        player.setLastDirection(dx, dy);
+        // the player's looks depend on its direction.
+        Cell location = player.getLocation();
+        theBoard.cellChanged(location.getX(), location.getY());
+
+        if (playerMove != null)
+        {
+            int points = 0;
+            if (playerMove.moveDone())
+            {
+                points = playerMove.getFoodEaten();
+            }
+            record(playerMove, points);
+        }
+        checkInvariants();
+
         return playerMove;
     }
 
@@ -321,6 +679,11 @@ public class Game
      * initialized and game isn't over yet. Postcondition: if the move is
      * possible, it has been carried out, and the game has been updated to
      * reflect the new situation.
+     * <p>
+     * Moves that change nothing, such as into a wall or into a dead
+     * player, are rejected up front, without creating a move or taking a
+     * place in the undo journal. Like all moves, they are counted for the
+     * sampled invariant checks.
      *
      * @param monster
      *            The monster to move
@@ -328,24 +691,168 @@ public class Game
      *            Horizontal movement
      * @param dy
      *            Vertical movement
-     * @return Returns the MonsterMove.
+     * @return Returns the MonsterMove, or null if the move was rejected.
      */
     protected MonsterMove moveMonster(Monster monster, int dx, int dy)
     {
-        assert invariant();
         assert !gameOver() : "can only move when game isn't over";
         Cell targetCell =
             monster.getLocation().cellAtOffset(dx, dy);
+        final byte mask = targetCell.guestMask();
+        if (MoveResolver.covers(mask)
+                && MoveResolver.rejects(MoveResolver.monsterOutcome(mask))
+                || deadPlayerIn(targetCell, mask))
+        {
+            checkInvariants();
+            return null;
+        }
         MonsterMove monsterMove = new MonsterMove(monster, targetCell);
         applyMove(monsterMove);
-        assert invariant();
-        
-        moves.push(monsterMove);
-        
+        record(monsterMove, 0);
+        checkInvariants();
+
         return monsterMove;
     }
     
     
+    /**
+     * Move the player, with the same effect as movePlayer, but without
+     * creating a move object: the outcome is looked up in the
+     * MoveResolver's table. Intended for headless simulations. Cells with
+     * guest types unknown to the resolver are left to movePlayer.
+     * Precondition: initialized and game isn't over yet.
+     *
+     * @param dx
+     *            Horizontal movement
+     * @param dy
+     *            Vertical movement
+     * @return True iff the player actually moved.
+     */
+    boolean stepPlayer(int dx, int dy)
+    {
+        return stepPlayer(getPlayer(), dx, dy);
+    }
+
+    /**
+     * Move one of the players, in the same way as stepPlayer(dx, dy)
+     * moves the first: with the same effect as movePlayer, without
+     * creating a move object. Precondition: initialized, game isn't over
+     * yet, and the player is still alive.
+     *
+     * @param player
+     *            The player to move
+     * @param dx
+     *            Horizontal movement
+     * @param dy
+     *            Vertical movement
+     * @return True iff the player actually moved.
+     */
+    boolean stepPlayer(Player player, int dx, int dy)
+    {
+        assert !gameOver() : "can only move when game isn't over";
+        assert player.living() : "dead players can't move";
+        final Cell from = player.getLocation();
+        final Cell to = from.cellAtOffset(dx, dy);
+        final byte mask = to.guestMask();
+        if (!MoveResolver.covers(mask))
+        {
+            final PlayerMove move = movePlayer(player, dx, dy);
+            return move != null && move.moveDone();
+        }
+        final int outcome = MoveResolver.playerOutcome(mask);
+        final boolean possible = (outcome & MoveResolver.POSSIBLE) != 0;
+        final boolean died = (outcome & MoveResolver.DIES) != 0;
+        int points = 0;
+        if (possible)
+        {
+            if ((outcome & MoveResolver.EATS) != 0)
+            {
+                Food food = (Food) to.findGuest(Guest.FOOD_BIT);
+                points = food.getPoints();
+                food.deoccupy();
+            }
+            player.deoccupy();
+            player.occupy(to);
+            player.eat(points);
+        } else if (died)
+        {
+            player.die();
+        }
+        player.setLastDirection(dx, dy);
+        // the player's looks depend on its direction.
+        final Cell location = player.getLocation();
+        theBoard.cellChanged(location.getX(), location.getY());
+        if (!MoveResolver.rejects(outcome))
+        {
+            journal.record(from.getPosition(), to.getPosition(),
+                    player.getMoverId(), possible, died, points);
+        }
+        checkInvariants();
+        return possible;
+    }
+
+    /**
+     * Move a monster, with the same effect as moveMonster, but without
+     * creating a move object: the outcome is looked up in the
+     * MoveResolver's table. Intended for headless simulations. Cells with
+     * guest types unknown to the resolver are left to moveMonster.
+     * Precondition: initialized and game isn't over yet.
+     *
+     * @param monster
+     *            The monster to move
+     * @param dx
+     *            Horizontal movement
+     * @param dy
+     *            Vertical movement
+     * @return True iff the monster actually moved.
+     */
+    boolean stepMonster(Monster monster, int dx, int dy)
+    {
+        assert !gameOver() : "can only move when game isn't over";
+        final Cell from = monster.getLocation();
+        final Cell to = from.cellAtOffset(dx, dy);
+        final byte mask = to.guestMask();
+        if (!MoveResolver.covers(mask))
+        {
+            final MonsterMove move = moveMonster(monster, dx, dy);
+            return move != null && move.moveDone();
+        }
+        final int outcome = MoveResolver.monsterOutcome(mask);
+        if (MoveResolver.rejects(outcome) || deadPlayerIn(to, mask))
+        {
+            checkInvariants();
+            return false;
+        }
+        final boolean possible = (outcome & MoveResolver.POSSIBLE) != 0;
+        if (possible)
+        {
+            monster.deoccupy();
+            monster.occupy(to);
+        } else
+        {
+            ((Player) to.findGuest(Guest.PLAYER_BIT)).die();
+        }
+        final boolean died = !possible;
+        journal.record(from.getPosition(), to.getPosition(),
+                monster.getMoverId(), possible, died, 0);
+        checkInvariants();
+        return possible;
+    }
+
+    /**
+     * Dead players just stand in the way of monsters: moving into their
+     * cell changes nothing.
+     *
+     * @param cell The target cell of a monster move.
+     * @param mask The guest mask of the cell.
+     * @return True iff a dead player is in the cell.
+     */
+    private static boolean deadPlayerIn(Cell cell, byte mask)
+    {
+        return (mask & Guest.PLAYER_BIT) != 0
+            && !((Player) cell.findGuest(Guest.PLAYER_BIT)).living();
+    }
+
     /**
      * Actually apply the given move, if it is possible.
      * @param move The move to be made.
@@ -353,7 +860,6 @@ public class Game
     private void applyMove(Move move)
     {
         assert move != null;
-        assert invariant();
         assert !gameOver();
         if (move.movePossible())
         {
@@ -365,11 +871,65 @@ public class Game
             if (move.playerWillDie())
             {
                 assert !playerWon() : "you can't win by dying";
-                getPlayer().die();
-                assert playerDied();
+                victimOf(move).die();
             }
         }
-        assert invariant();
+    }
+
+    /**
+     * @param move A move in which a player dies.
+     * @return The player dying: the mover of a player move, or the player
+     *         in the target cell of a monster move.
+     */
+    private Player victimOf(Move move)
+    {
+        if (move.getMovingGuest() instanceof Player)
+        {
+            return (Player) move.getMovingGuest();
+        }
+        return (Player) move.getArrivalCell().findGuest(Guest.PLAYER_BIT);
+    }
+
+    /**
+     * Add a move that has just been made to the undo journal,
+     * unless it changed nothing.
+     * @param move The move made.
+     * @param points The points of the food eaten by the move.
+     */
+    private void record(Move move, int points)
+    {
+        final boolean applied = move.moveDone();
+        final boolean died = !applied && move.playerWillDie();
+        if (!applied && !died)
+        {
+            return;
+        }
+        int to = UndoJournal.NO_CELL;
+        if (move.getArrivalCell() != null)
+        {
+            to = position(move.getArrivalCell());
+        }
+        journal.record(position(move.getDepartureCell()), to,
+                move.getMovingGuest().getMoverId(), applied, died, points);
+    }
+
+    /**
+     * @param cell A cell on the board.
+     * @return The cell's position as recorded in the undo journal.
+     */
+    private int position(Cell cell)
+    {
+        return cell.getPosition();
+    }
+
+    /**
+     * @param position A position as recorded in the undo journal.
+     * @return The cell at that position.
+     */
+    private Cell cellAtPosition(int position)
+    {
+        final int width = theBoard.getWidth();
+        return theBoard.getCell(position % width, position / width);
     }
 
     /**
@@ -378,38 +938,76 @@ public class Game
      */
     public void undoLastMove()
     {
-        assert invariant();
-
         if (canUndo())
         {
-            Move m = moves.pop();
-            m.undo();
+            journal.pop();
+            final int id = journal.poppedMoverId();
+            final int players = team.size();
+            if (journal.poppedApplied())
+            {
+                MovingGuest mover;
+                if (id < players)
+                {
+                    mover = team.get(id);
+                } else
+                {
+                    mover = monsters.get(id - players);
+                }
+                Cell to = cellAtPosition(journal.poppedTo());
+                assert to.equals(mover.getLocation())
+                    : "journal out of step with the board";
+                mover.deoccupy();
+                mover.occupy(cellAtPosition(journal.poppedFrom()));
+                final int points = journal.poppedFood();
+                if (points > 0)
+                {
+                    // food has been eaten by this move, so restore it.
+                    new Food(points).occupy(to);
+                    ((Player) mover).eat(-points);
+                }
+            }
+            if (journal.poppedDied())
+            {
+                Player victim;
+                if (id < players)
+                {
+                    victim = team.get(id);
+                } else
+                {
+                    victim = (Player) cellAtPosition(journal.poppedTo())
+                        .findGuest(Guest.PLAYER_BIT);
+                }
+                if (!victim.living())
+                {
+                    victim.reanimate();
+                }
+            }
+            checkInvariants();
         }
-        
-        assert invariant();
     }
     
     /**
-     * Check if the player has died. Precondition: initialization completed.
+     * Check if the players have died, all of them.
+     * Precondition: initialization completed.
      *
-     * @return True iff the player is dead.
+     * @return True iff no player is alive anymore.
      */
     public boolean playerDied()
     {
         assert initialized();
-        return !getPlayer().living();
+        return team.countLiving() == 0;
     }
 
     /**
-     * Check if the player has eaten all food. Precondition: initialization
-     * completed.
+     * Check if the players have eaten all food together. Precondition:
+     * initialization completed.
      *
-     * @return True iff the player has won.
+     * @return True iff the players have won.
      */
     public boolean playerWon()
     {
         assert initialized();
-        return getPlayer().getPointsEaten() >= totalPoints;
+        return team.getPointsEaten() >= totalPoints;
     }
 
     /**
@@ -480,6 +1078,6 @@ public class Game
      */
     public boolean canUndo()
     {
-        return moves.size() != 0;
+        return !journal.isEmpty();
     }
 }
@@ -1,9 +1,12 @@
 package jpacman.model;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -47,6 +50,27 @@ public class GameLoader
         "WWWWWWWWWWWWWWWWWWWW"
     };
 
+    /**
+     * Obtain the world from the file specified in the default property
+     * file. Files starting with the magic number of a BinaryLevel are
+     * loaded as such, without parsing text; other files are read as
+     * text maps.
+     * @return The world in the file.
+     * @throws GameLoadException If the files can't be opened.
+     */
+    WorldSource obtainWorld() throws GameLoadException
+    {
+        loadProperties(PROPERTY_FILE);
+        String mapFile = getMapFileName(MAP_FILE_PROPERTY);
+        byte[] content = getContent(mapFile);
+        if (BinaryLevel.isBinary(ByteBuffer.wrap(content)))
+        {
+            return new BinaryLevel(content);
+        }
+        return new TextWorld(readMap(new ByteArrayInputStream(content),
+                mapFile));
+    }
+
     /**
      * Actually obtain a map from a file specified in the 
      * default property file.
@@ -135,13 +159,26 @@ public class GameLoader
     String[] getMap(String fileName) throws GameLoadException
     {
         assert fileName != null;
+        return readMap(getResourceStream(fileName), fileName);
+    }
+
+    /**
+     * Read a map from a stream, which is closed afterwards.
+     * @param in The stream containing the map.
+     * @param fileName Name of the file the stream belongs to.
+     * @return The map as a series of strings.
+     * @throws GameLoadException If reading the map fails.
+     */
+    private String[] readMap(InputStream in, String fileName)
+        throws GameLoadException
+    {
         List<String> mapList = new ArrayList<String>();
         String[] mapString = null;
 
         try
         {
             BufferedReader br = 
-                new BufferedReader(new InputStreamReader(getResourceStream(fileName)));
+                new BufferedReader(new InputStreamReader(in));
             while (br.ready())
             {
                 mapList.add(br.readLine());
@@ -155,6 +192,38 @@ public class GameLoader
         }
         return mapString;
     }
+
+    /**
+     * Read the raw content of a file on the class path.
+     * @param fileName Resource on classpath
+     * @return The bytes in the file.
+     * @throws GameLoadException If reading the file fails.
+     */
+    private byte[] getContent(String fileName) throws GameLoadException
+    {
+        assert fileName != null;
+        final int bufferSize = 8192;
+        InputStream in = getResourceStream(fileName);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buf = new byte[bufferSize];
+        try
+        {
+            try
+            {
+                for (int n = in.read(buf); n >= 0; n = in.read(buf))
+                {
+                    content.write(buf, 0, n);
+                }
+            } finally
+            {
+                in.close();
+            }
+        } catch (IOException e)
+        {
+            throw new GameLoadException("Problem reading file " + fileName, e);
+        }
+        return content.toByteArray();
+    }
     
     /**
      * Provide a stream for a file that lives on the class path.
@@ -230,7 +299,7 @@ public class GameLoader
      * @return true iff c is a valid char.
      */
     @SuppressWarnings("PMD.MissingBreakInSwitch")
-    private static boolean permittedChar(char c)
+    static boolean permittedChar(char c)
     {
         switch(c)
         {
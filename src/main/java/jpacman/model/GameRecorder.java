@@ -0,0 +1,249 @@
+package jpacman.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes every change applied through an Engine to a compact binary
+ * stream, so that the game can be replayed exactly by a GameReplay.
+ * <p>
+ * A recording starts with a header: the magic number, the format version,
+ * the engine's seed as a long, and the length of the level followed by the
+ * level itself, as a BinaryLevel holding the board at the start of the
+ * recording. Every change then takes one tick, written as an operation
+ * byte, followed for monster moves by the monster's mover id, for moves
+ * of players other than the first by the player's index, and for all
+ * moves by the horizontal and vertical offsets. Ids and offsets are
+ * written as zigzag varints, so a
+ * player move takes three bytes and a monster move usually four. The
+ * recording simply ends where the stream ends, so that recordings of
+ * sessions that were cut short can still be replayed.
+ * <p>
+ * The recorder is invoked by the engine while holding its update lock,
+ * so changes are written in the order in which they were applied.
+ *
+ * @version $Id$
+ */
+class GameRecorder
+{
+
+    /**
+     * The first four bytes of every recording: "JPRC".
+     */
+    static final int MAGIC = 0x4A505243;
+
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Operation: the game was (re)started or resumed.
+     */
+    static final byte START = 1;
+
+    /**
+     * Operation: the game was halted.
+     */
+    static final byte QUIT = 2;
+
+    /**
+     * Operation: the last move was undone.
+     */
+    static final byte UNDO = 3;
+
+    /**
+     * Operation: the player was moved.
+     */
+    static final byte PLAYER_MOVE = 4;
+
+    /**
+     * Operation: a monster was moved.
+     */
+    static final byte MONSTER_MOVE = 5;
+
+    /**
+     * Operation: a player other than the first was moved.
+     */
+    static final byte INDEXED_PLAYER_MOVE = 6;
+
+    /**
+     * Number of payload bits in a varint byte.
+     */
+    static final int VARINT_BITS = 7;
+
+    /**
+     * Mask selecting the payload bits of a varint byte.
+     */
+    static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Flag set in varint bytes that are followed by more bytes.
+     */
+    static final int VARINT_MORE = 0x80;
+
+    /**
+     * The stream the recording is written to.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * The first problem writing the recording, if any, after which
+     * nothing more is written.
+     */
+    private IOException failure = null;
+
+    /**
+     * Start a recording, writing its header. The level is encoded
+     * straight into the recording.
+     * @param stream The stream to write to, which is buffered here.
+     * @param seed The seed of the engine recorded.
+     * @param level The encoder of the level at the start of the recording.
+     * @throws IOException If the header can't be written.
+     * @throws GameLoadException If the level can't be read anymore.
+     */
+    GameRecorder(OutputStream stream, long seed, BinaryLevel.Encoder level)
+        throws IOException, GameLoadException
+    {
+        assert stream != null;
+        assert level != null;
+        if (level.size() > Integer.MAX_VALUE)
+        {
+            throw new IOException("Level too large to be recorded");
+        }
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(seed);
+        out.writeInt((int) level.size());
+        level.writeTo(out);
+    }
+
+    /**
+     * Record that the game was (re)started or resumed.
+     */
+    void started()
+    {
+        write(START, 0, 0, 0);
+    }
+
+    /**
+     * Record that the game was halted.
+     */
+    void halted()
+    {
+        write(QUIT, 0, 0, 0);
+    }
+
+    /**
+     * Record that the last move was undone.
+     */
+    void undone()
+    {
+        write(UNDO, 0, 0, 0);
+    }
+
+    /**
+     * Record a player move.
+     * @param index The index of the player moved.
+     * @param dx Horizontal offset.
+     * @param dy Vertical offset.
+     */
+    void playerMoved(int index, int dx, int dy)
+    {
+        if (index == 0)
+        {
+            write(PLAYER_MOVE, 0, dx, dy);
+        } else
+        {
+            write(INDEXED_PLAYER_MOVE, index, dx, dy);
+        }
+    }
+
+    /**
+     * Record a monster move.
+     * @param monster The monster moved.
+     * @param dx Horizontal offset.
+     * @param dy Vertical offset.
+     */
+    void monsterMoved(Monster monster, int dx, int dy)
+    {
+        write(MONSTER_MOVE, monster.getMoverId(), dx, dy);
+    }
+
+    /**
+     * Write everything recorded so far. The underlying stream is
+     * flushed, but not closed.
+     * @throws IOException If anything couldn't be written.
+     */
+    void finish() throws IOException
+    {
+        if (failure == null)
+        {
+            try
+            {
+                out.flush();
+            } catch (IOException e)
+            {
+                failure = e;
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write a tick, unless writing failed before.
+     * @param op The operation.
+     * @param id The id of the mover, for monster moves, or the index
+     *            of the player, for indexed player moves.
+     * @param dx Horizontal offset, for moves.
+     * @param dy Vertical offset, for moves.
+     */
+    private void write(byte op, int id, int dx, int dy)
+    {
+        if (failure != null)
+        {
+            return;
+        }
+        try
+        {
+            out.writeByte(op);
+            if (op == MONSTER_MOVE || op == INDEXED_PLAYER_MOVE)
+            {
+                writeVarint(id);
+            }
+            if (op == PLAYER_MOVE || op == MONSTER_MOVE
+                    || op == INDEXED_PLAYER_MOVE)
+            {
+                writeVarint(dx);
+                writeVarint(dy);
+            }
+        } catch (IOException e)
+        {
+            // reported when the recording is finished, so as not to
+            // disturb the game.
+            failure = e;
+        }
+    }
+
+    /**
+     * Write a signed value as a zigzag varint.
+     * @param value The value.
+     * @throws IOException If writing fails.
+     */
+    private void writeVarint(int value) throws IOException
+    {
+        int rest = (value << 1) ^ (value >> (Integer.SIZE - 1));
+        while ((rest & ~VARINT_MASK) != 0)
+        {
+            out.writeByte((rest & VARINT_MASK) | VARINT_MORE);
+            rest >>>= VARINT_BITS;
+        }
+        out.writeByte(rest);
+    }
+}
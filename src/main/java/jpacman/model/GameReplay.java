@@ -0,0 +1,444 @@
+package jpacman.model;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a game recorded by an Engine, without user interface and as
+ * fast as possible. The replay can be moved to any tick of the recording,
+ * so that problems observed in recorded sessions can be reproduced and
+ * inspected step by step.
+ * <p>
+ * The recording is decoded once, up front, into arrays of operations.
+ * The replayed game runs on an engine with the recorded seed, whose
+ * state at tick t is the state of the recorded game after its first t
+ * changes. Moving back in the recording replays the game from its start.
+ *
+ * @see Engine#startRecording(java.io.OutputStream)
+ * @version $Id$
+ */
+public class GameReplay
+{
+
+    /**
+     * Number of bytes in a recording before its level.
+     */
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * Initial number of ticks for which room is made.
+     */
+    private static final int INITIAL_TICKS = 1 << 10;
+
+    /**
+     * The seed of the recorded game.
+     */
+    private final long seed;
+
+    /**
+     * The engine running the replayed game.
+     */
+    private final Engine engine;
+
+    /**
+     * The operation of every tick.
+     */
+    private byte[] ops = new byte[INITIAL_TICKS];
+
+    /**
+     * The id of the mover of every tick, for monster moves, or the index
+     * of the player, for indexed player moves.
+     */
+    private int[] movers = new int[INITIAL_TICKS];
+
+    /**
+     * The horizontal offset of every tick, for moves.
+     */
+    private int[] dxs = new int[INITIAL_TICKS];
+
+    /**
+     * The vertical offset of every tick, for moves.
+     */
+    private int[] dys = new int[INITIAL_TICKS];
+
+    /**
+     * The number of ticks in the recording.
+     */
+    private int length = 0;
+
+    /**
+     * The number of ticks replayed so far.
+     */
+    private int tick = 0;
+
+    /**
+     * The monsters of the replayed game, in the order of their ids.
+     */
+    private List<Monster> monsters;
+
+    /**
+     * The number of players of the replayed game, whose ids precede
+     * those of the monsters.
+     */
+    private int players;
+
+    /**
+     * Decode a recording, and load its game, ready to replay the first
+     * tick.
+     *
+     * @param recording The recording, as written by an Engine.
+     * @throws GameLoadException If the recording is incorrect.
+     */
+    public GameReplay(byte[] recording) throws GameLoadException
+    {
+        assert recording != null;
+        ByteBuffer buf = ByteBuffer.wrap(recording);
+        try
+        {
+            if (buf.remaining() < HEADER_SIZE
+                    || buf.getInt() != GameRecorder.MAGIC)
+            {
+                throw new GameLoadException("Not a recording.");
+            }
+            final int version = buf.getInt();
+            if (version != GameRecorder.VERSION)
+            {
+                throw new GameLoadException(
+                        "Unsupported recording version: " + version);
+            }
+            seed = buf.getLong();
+            final int levelSize = buf.getInt();
+            if (levelSize < 0 || levelSize > buf.remaining())
+            {
+                throw new GameLoadException("Truncated recording.");
+            }
+            byte[] level = new byte[levelSize];
+            buf.get(level);
+            decodeTicks(buf);
+            engine = new Engine(new Game(new BinaryLevel(level)), seed);
+        } catch (BufferUnderflowException e)
+        {
+            throw new GameLoadException("Truncated recording.", e);
+        }
+        engine.initialize();
+        monsters = engine.getMonsters();
+        players = engine.getPlayerCount();
+        checkMovers();
+    }
+
+    /**
+     * Read a recording from a file.
+     *
+     * @param file The file containing the recording.
+     * @return A replay of the recording.
+     * @throws IOException If the file can't be read.
+     * @throws GameLoadException If the recording is incorrect.
+     */
+    public static GameReplay read(File file)
+        throws IOException, GameLoadException
+    {
+        assert file != null;
+        byte[] recording = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            in.readFully(recording);
+        } finally
+        {
+            in.close();
+        }
+        return new GameReplay(recording);
+    }
+
+    /**
+     * Decode the ticks following the header. A tick cut off by the end
+     * of the recording, as happens if the recorded session ended abruptly,
+     * is ignored.
+     * @param buf Buffer positioned at the first tick.
+     * @throws GameLoadException If a tick is incorrect.
+     */
+    private void decodeTicks(ByteBuffer buf) throws GameLoadException
+    {
+        try
+        {
+            while (buf.hasRemaining())
+            {
+                decodeTick(buf);
+                length++;
+            }
+        } catch (BufferUnderflowException e)
+        {
+            // the last tick was cut off.
+            assert !buf.hasRemaining();
+        }
+    }
+
+    /**
+     * Decode a single tick, and store it after the ticks decoded so far.
+     * @param buf Buffer positioned at the tick.
+     * @throws GameLoadException If the tick is incorrect.
+     */
+    private void decodeTick(ByteBuffer buf) throws GameLoadException
+    {
+        if (length == ops.length)
+        {
+            grow();
+        }
+        final byte op = buf.get();
+        switch (op)
+        {
+        case GameRecorder.MONSTER_MOVE:
+        case GameRecorder.INDEXED_PLAYER_MOVE:
+            movers[length] = readVarint(buf);
+            dxs[length] = readVarint(buf);
+            dys[length] = readVarint(buf);
+            break;
+        case GameRecorder.PLAYER_MOVE:
+            dxs[length] = readVarint(buf);
+            dys[length] = readVarint(buf);
+            break;
+        case GameRecorder.START:
+        case GameRecorder.QUIT:
+        case GameRecorder.UNDO:
+            break;
+        default:
+            throw new GameLoadException("Incorrect operation "
+                    + op + " at tick " + length);
+        }
+        ops[length] = op;
+    }
+
+    /**
+     * Make room for twice as many ticks.
+     */
+    private void grow()
+    {
+        final int size = ops.length * 2;
+        byte[] newOps = new byte[size];
+        System.arraycopy(ops, 0, newOps, 0, length);
+        ops = newOps;
+        movers = copyOf(movers, size);
+        dxs = copyOf(dxs, size);
+        dys = copyOf(dys, size);
+    }
+
+    /**
+     * @param values Values of the ticks decoded so far.
+     * @param size The new size.
+     * @return A copy of the values with room for more ticks.
+     */
+    private int[] copyOf(int[] values, int size)
+    {
+        int[] result = new int[size];
+        System.arraycopy(values, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Read a zigzag varint.
+     * @param buf The buffer to read from.
+     * @return The signed value read.
+     * @throws GameLoadException If the value is too long.
+     * @throws BufferUnderflowException If the value is cut off.
+     */
+    private static int readVarint(ByteBuffer buf) throws GameLoadException
+    {
+        int raw = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            if (shift >= Integer.SIZE)
+            {
+                throw new GameLoadException("Incorrect value in recording.");
+            }
+            b = buf.get();
+            raw |= (b & GameRecorder.VARINT_MASK) << shift;
+            shift += GameRecorder.VARINT_BITS;
+        } while ((b & GameRecorder.VARINT_MORE) != 0);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Check that every monster and player moved exists in the level.
+     * @throws GameLoadException If a monster or player doesn't exist.
+     */
+    private void checkMovers() throws GameLoadException
+    {
+        for (int t = 0; t < length; t++)
+        {
+            if (ops[t] == GameRecorder.MONSTER_MOVE
+                    && (movers[t] < players
+                        || movers[t] >= players + monsters.size()))
+            {
+                throw new GameLoadException("Unknown monster " + movers[t]
+                        + " at tick " + t);
+            }
+            if (ops[t] == GameRecorder.INDEXED_PLAYER_MOVE
+                    && (movers[t] < 1 || movers[t] >= players))
+            {
+                throw new GameLoadException("Unknown player " + movers[t]
+                        + " at tick " + t);
+            }
+        }
+    }
+
+    /**
+     * @return The seed of the recorded game.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The engine running the replayed game, which can be
+     *         inspected and observed, but should not be changed.
+     */
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * @return The number of ticks in the recording.
+     */
+    public int length()
+    {
+        return length;
+    }
+
+    /**
+     * @return The number of ticks replayed so far.
+     */
+    public int getTick()
+    {
+        return tick;
+    }
+
+    /**
+     * Replay the next tick, if any.
+     * @return True iff a tick was replayed.
+     */
+    public boolean step()
+    {
+        if (tick == length)
+        {
+            return false;
+        }
+        replay(tick);
+        tick++;
+        return true;
+    }
+
+    /**
+     * Move the replay to the given tick: forward by replaying the ticks in
+     * between, or backward by replaying the game from its start.
+     *
+     * @param target The tick to move to, between 0 and length().
+     */
+    public void seek(int target)
+    {
+        assert target >= 0 && target <= length;
+        if (target < tick)
+        {
+            engine.reset();
+            monsters = engine.getMonsters();
+            tick = 0;
+        }
+        while (tick < target)
+        {
+            step();
+        }
+    }
+
+    /**
+     * Replay the remaining ticks.
+     */
+    public void playToEnd()
+    {
+        seek(length);
+    }
+
+    /**
+     * Apply the change of a tick to the engine.
+     * @param t The tick.
+     */
+    private void replay(int t)
+    {
+        switch (ops[t])
+        {
+        case GameRecorder.START:
+            final boolean restart = engine.inGameOverState();
+            engine.start();
+            if (restart)
+            {
+                // the world was reloaded, with new monsters.
+                monsters = engine.getMonsters();
+            }
+            break;
+        case GameRecorder.QUIT:
+            engine.quit();
+            break;
+        case GameRecorder.UNDO:
+            engine.undoLastMove();
+            break;
+        case GameRecorder.PLAYER_MOVE:
+            engine.movePlayer(dxs[t], dys[t]);
+            break;
+        case GameRecorder.INDEXED_PLAYER_MOVE:
+            engine.movePlayer(movers[t], dxs[t], dys[t]);
+            break;
+        case GameRecorder.MONSTER_MOVE:
+            engine.moveMonster(monsters.get(movers[t] - players),
+                    dxs[t], dys[t]);
+            break;
+        default:
+            assert false : "checked when decoding";
+            break;
+        }
+    }
+
+    /**
+     * Replay a recording headlessly, at maximum speed, and report the
+     * time taken and the final state.
+     *
+     * @param args The file with the recording, and optionally the tick
+     *            at which to stop.
+     * @throws IOException If the recording can't be read.
+     * @throws GameLoadException If the recording is incorrect.
+     */
+    public static void main(String[] args)
+        throws IOException, GameLoadException
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println(// NOPMD
+                    "Usage: GameReplay <recording> [tick]");
+            return;
+        }
+        GameReplay replay = read(new File(args[0]));
+        int target = replay.length();
+        if (args.length > 1)
+        {
+            target = Math.min(target, Integer.parseInt(args[1]));
+        }
+        final long start = System.nanoTime();
+        replay.seek(target);
+        final long micros =
+            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        Engine e = replay.getEngine();
+        System.out.println(// NOPMD
+                "Replayed " + replay.getTick() + " of " + replay.length()
+                + " ticks (seed " + replay.getSeed() + ") in " + micros
+                + " us; food eaten " + e.getFoodEaten()
+                + (e.inDiedState() ? ", died" : "")
+                + (e.inWonState() ? ", won" : ""));
+    }
+}
@@ -39,6 +39,26 @@ public abstract class Guest
      */
     public static final char EMPTY_TYPE = '0';
 
+    /**
+     * The bit representing the wall guest type in board snapshots.
+     */
+    public static final byte WALL_BIT = 1;
+
+    /**
+     * The bit representing the food guest type in board snapshots.
+     */
+    public static final byte FOOD_BIT = 2;
+
+    /**
+     * The bit representing the player guest type in board snapshots.
+     */
+    public static final byte PLAYER_BIT = 4;
+
+    /**
+     * The bit representing the monster guest type in board snapshots.
+     */
+    public static final byte MONSTER_BIT = 8;
+
     /**
      * Create a new Guest satisfying the class invariant.
      */
@@ -158,4 +178,12 @@ public abstract class Guest
      */
     public abstract char guestType();
 
+    /**
+     * Return the bit representing the type of guest in board snapshots,
+     * in which the guests of a cell are combined into a single mask.
+     *
+     * @return Type bit for this guest.
+     */
+    public abstract byte guestBit();
+
 }
@@ -0,0 +1,162 @@
+package jpacman.model;
+
+import java.util.Locale;
+
+/**
+ * How often the model checks the invariants of a game while it is being
+ * played. A full check walks every cell of the board, which makes playing
+ * on large boards unusably slow if done after every move, so games can be
+ * fully checked after every move, sampled once every so many moves, or
+ * not checked at all. A sample checks the game, the player's cell, and
+ * the next slice of at most CELLS_PER_SAMPLE cells, so that its cost
+ * doesn't grow with the board or the number of monsters. The hot getters
+ * of cells and boards don't check invariants themselves.
+ * <p>
+ * The mode is taken from the system property jpacman.invariants (off,
+ * sampled or full), and the number of moves between sampled checks from
+ * jpacman.invariants.period. Without the property, games are fully
+ * checked if assertions are enabled for the model, as they were before
+ * checks could be sampled, and not checked at all otherwise. A failing check throws an AssertionError, also when
+ * assertions are disabled, so that sampled checking keeps a bounded
+ * amount of safety in production.
+ *
+ * @version $Id$
+ */
+public final class Invariants
+{
+
+    /**
+     * How often games are checked.
+     */
+    public enum Mode
+    {
+        /** Never check games while they are played. */
+        OFF,
+        /** Check a sample of a game once every period moves. */
+        SAMPLED,
+        /** Check a game after every move. */
+        FULL
+    }
+
+    /**
+     * System property holding the mode: off, sampled or full.
+     */
+    public static final String MODE_PROPERTY = "jpacman.invariants";
+
+    /**
+     * System property holding the number of moves between sampled checks.
+     */
+    public static final String PERIOD_PROPERTY = "jpacman.invariants.period";
+
+    /**
+     * Number of moves between sampled checks if not configured.
+     */
+    public static final int DEFAULT_PERIOD = 1000;
+
+    /**
+     * Maximum number of cells checked by a sample.
+     */
+    public static final int CELLS_PER_SAMPLE = 1024;
+
+    /**
+     * The current mode.
+     */
+    private static volatile Mode mode = configuredMode();
+
+    /**
+     * The number of moves between sampled checks.
+     */
+    private static volatile int period =
+        Math.max(1, Integer.getInteger(PERIOD_PROPERTY, DEFAULT_PERIOD));
+
+    /**
+     * Utility class, no instances.
+     */
+    private Invariants()
+    { }
+
+    /**
+     * @return The mode given by the system property, or the default mode
+     *         if it isn't set or not understood.
+     */
+    private static Mode configuredMode()
+    {
+        Mode result = Mode.OFF;
+        if (Invariants.class.desiredAssertionStatus())
+        {
+            result = Mode.FULL;
+        }
+        final String value = System.getProperty(MODE_PROPERTY);
+        if (value != null)
+        {
+            try
+            {
+                result = Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException iae)
+            {
+                System.err.println(// NOPMD
+                    "Unknown " + MODE_PROPERTY + " '" + value
+                    + "': proceeding with " + result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Change how often games are checked, for all games from now on.
+     *
+     * @param newMode The mode to be used.
+     * @param movesPerCheck Number of moves between sampled checks,
+     *            at least 1.
+     */
+    public static void configure(Mode newMode, int movesPerCheck)
+    {
+        assert newMode != null;
+        assert movesPerCheck >= 1;
+        period = movesPerCheck;
+        mode = newMode;
+    }
+
+    /**
+     * @return How often games are checked.
+     */
+    public static Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * @return The number of moves between sampled checks.
+     */
+    public static int getPeriod()
+    {
+        return period;
+    }
+
+    /**
+     * @param moves The number of moves made in a game so far, including
+     *            the one just made.
+     * @return True iff the game should be checked after the move.
+     */
+    static boolean due(long moves)
+    {
+        final Mode current = mode;
+        return current == Mode.FULL
+            || current == Mode.SAMPLED && moves % period == 0;
+    }
+
+    /**
+     * Fail if an invariant doesn't hold, whether or not assertions
+     * are enabled.
+     *
+     * @param holds The outcome of checking the invariant.
+     * @param what Description of what was checked.
+     */
+    static void check(boolean holds, String what)
+    {
+        if (!holds)
+        {
+            throw new AssertionError("Invariant violated: " + what);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package jpacman.model;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The listeners subscribed to an engine, with the kinds of changes each of
+ * them wants to hear about. The subscriptions are kept in an immutable
+ * snapshot, replaced by compare-and-set when listeners come and go, so
+ * that the engine can find out whether anyone wants a kind of change, and
+ * call back the listeners, without taking a lock or copying anything.
+ *
+ * @version $Id$
+ */
+final class ListenerRegistry
+{
+
+    /**
+     * An immutable set of subscriptions.
+     */
+    private static final class Subscriptions
+    {
+        /**
+         * The listeners subscribed.
+         */
+        private final EngineListener[] listeners;
+
+        /**
+         * The kinds of changes each listener subscribed to.
+         */
+        private final int[] kinds;
+
+        /**
+         * The kinds of changes any listener subscribed to.
+         */
+        private final int wanted;
+
+        /**
+         * @param subscribers The listeners subscribed.
+         * @param subscribed The kinds each listener subscribed to.
+         */
+        Subscriptions(EngineListener[] subscribers, int[] subscribed)
+        {
+            assert subscribers.length == subscribed.length;
+            listeners = subscribers;
+            kinds = subscribed;
+            int all = 0;
+            for (int k : subscribed)
+            {
+                all |= k;
+            }
+            wanted = all;
+        }
+    }
+
+    /**
+     * The current subscriptions.
+     */
+    private final AtomicReference<Subscriptions> current =
+        new AtomicReference<Subscriptions>(
+                new Subscriptions(new EngineListener[0], new int[0]));
+
+    /**
+     * Subscribe a listener to the given kinds of changes. A listener
+     * subscribed already gets the new kinds instead.
+     * @param listener The listener to be added.
+     * @param kinds Mask of EngineListener kinds.
+     */
+    void add(EngineListener listener, int kinds)
+    {
+        assert listener != null;
+        assert kinds != 0 && (kinds & ~EngineListener.ALL) == 0;
+        Subscriptions before;
+        Subscriptions after;
+        do
+        {
+            before = current.get();
+            final int n = before.listeners.length;
+            int index = indexOf(before, listener);
+            EngineListener[] listeners;
+            int[] kindsOf;
+            if (index < 0)
+            {
+                index = n;
+                listeners = new EngineListener[n + 1];
+                kindsOf = new int[n + 1];
+            } else
+            {
+                listeners = new EngineListener[n];
+                kindsOf = new int[n];
+            }
+            System.arraycopy(before.listeners, 0, listeners, 0, n);
+            System.arraycopy(before.kinds, 0, kindsOf, 0, n);
+            listeners[index] = listener;
+            kindsOf[index] = kinds;
+            after = new Subscriptions(listeners, kindsOf);
+        } while (!current.compareAndSet(before, after));
+    }
+
+    /**
+     * Unsubscribe a listener.
+     * @param listener The listener to be removed.
+     * @return True iff the listener was subscribed.
+     */
+    boolean remove(EngineListener listener)
+    {
+        Subscriptions before;
+        Subscriptions after;
+        do
+        {
+            before = current.get();
+            final int index = indexOf(before, listener);
+            if (index < 0)
+            {
+                return false;
+            }
+            final int n = before.listeners.length - 1;
+            EngineListener[] listeners = new EngineListener[n];
+            int[] kindsOf = new int[n];
+            System.arraycopy(before.listeners, 0, listeners, 0, index);
+            System.arraycopy(before.kinds, 0, kindsOf, 0, index);
+            System.arraycopy(before.listeners, index + 1,
+                    listeners, index, n - index);
+            System.arraycopy(before.kinds, index + 1,
+                    kindsOf, index, n - index);
+            after = new Subscriptions(listeners, kindsOf);
+        } while (!current.compareAndSet(before, after));
+        return true;
+    }
+
+    /**
+     * @param subscriptions A set of subscriptions.
+     * @param listener A listener.
+     * @return The index of the listener's subscription, or -1.
+     */
+    private static int indexOf(Subscriptions subscriptions,
+            EngineListener listener)
+    {
+        for (int i = 0; i < subscriptions.listeners.length; i++)
+        {
+            if (subscriptions.listeners[i] == listener)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param kinds Mask of EngineListener kinds.
+     * @return True iff some listener subscribed to one of these kinds.
+     */
+    boolean wants(int kinds)
+    {
+        return (current.get().wanted & kinds) != 0;
+    }
+
+    /**
+     * @return The number of listeners subscribed.
+     */
+    int size()
+    {
+        return current.get().listeners.length;
+    }
+
+    /**
+     * Call back every listener for the changes it subscribed to: first
+     * for the logged changes, then with the summary.
+     * @param log The detailed changes, or null if none were logged.
+     * @param event The summary of the changes.
+     */
+    void dispatch(EventLog log, ChangeEvent event)
+    {
+        assert event != null;
+        final Subscriptions subscriptions = current.get();
+        for (int i = 0; i < subscriptions.listeners.length; i++)
+        {
+            final EngineListener listener = subscriptions.listeners[i];
+            final int kinds = subscriptions.kinds[i];
+            if (log != null)
+            {
+                log.replay(listener, kinds);
+            }
+            if ((kinds & EngineListener.CHANGES) != 0)
+            {
+                listener.onChanges(event);
+            }
+        }
+    }
+}
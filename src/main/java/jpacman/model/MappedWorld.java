@@ -0,0 +1,291 @@
+package jpacman.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A world map stored in a file, one character per cell and one line per
+ * row, just like the maps read by the GameLoader.
+ * <p>
+ * Rather than reading the map into strings first, the file is memory mapped
+ * and its characters are handed to a WorldBuilder as they are checked, in a
+ * single pass. The map thus never has to fit in memory as Java strings,
+ * which matters for very large levels. Files larger than what a single
+ * buffer can hold are mapped in consecutive chunks.
+ * <p>
+ * Lines may end in "\n" or "\r\n"; the last line may lack its line end.
+ * Files starting with the magic number of a BinaryLevel are decoded
+ * as such instead, straight from the mapped file.
+ * A map with errors is reported with the same messages as
+ * GameLoader.checkSanity, but only after the builder has received the
+ * part of the map before the error.
+ *
+ * @version $Id$
+ */
+class MappedWorld implements WorldSource
+{
+
+    /**
+     * Default maximum number of bytes mapped at once.
+     */
+    static final int CHUNK_SIZE = 1 << 28;
+
+    /**
+     * Mask turning a byte into an unsigned character code.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The file containing the map.
+     */
+    private final File file;
+
+    /**
+     * Maximum number of bytes mapped at once.
+     */
+    private final int chunkSize;
+
+    /**
+     * Create a world for the map in the given file.
+     * The file is only read when the world is loaded.
+     * @param mapFile The file containing the map.
+     */
+    MappedWorld(File mapFile)
+    {
+        this(mapFile, CHUNK_SIZE);
+    }
+
+    /**
+     * Create a world for the map in the given file, mapped
+     * in chunks of the given size.
+     * @param mapFile The file containing the map.
+     * @param chunk Maximum number of bytes mapped at once.
+     */
+    MappedWorld(File mapFile, int chunk)
+    {
+        assert mapFile != null;
+        assert chunk > 0;
+        file = mapFile;
+        chunkSize = chunk;
+    }
+
+    /**
+     * Read the map, and pass its dimensions and cells to the builder.
+     *
+     * @param builder Receiver of the world's content.
+     * @throws GameLoadException If the file can't be read or contains
+     *             an incorrect map.
+     * @see jpacman.model.WorldSource#load(WorldBuilder)
+     */
+    public void load(WorldBuilder builder) throws GameLoadException
+    {
+        assert builder != null;
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                load(raf.getChannel(), builder);
+            } finally
+            {
+                raf.close();
+            }
+        } catch (IOException e)
+        {
+            throw new GameLoadException("Problem reading file " + file, e);
+        }
+    }
+
+    /**
+     * Read the map from an open channel.
+     *
+     * @param channel The channel of the map file.
+     * @param builder Receiver of the world's content.
+     * @throws IOException If the file can't be read.
+     * @throws GameLoadException If the file contains an incorrect map.
+     */
+    private void load(FileChannel channel, WorldBuilder builder)
+        throws IOException, GameLoadException
+    {
+        final long size = channel.size();
+        if (size == 0)
+        {
+            throw new GameLoadException("Empty board not allowed");
+        }
+        if (size < Integer.MAX_VALUE
+                && BinaryLevel.isBinary(channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0,
+                        Math.min(size, BinaryLevel.HEADER_SIZE))))
+        {
+            // binary levels are compact, so they fit in a single buffer.
+            BinaryLevel.decode(channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, size), builder);
+            return;
+        }
+
+        // the first line determines the width and the kind of line ends.
+        final long firstEol = firstLineEnd(channel, size);
+        int eolLength = 0;
+        long firstWidth = firstEol;
+        if (firstEol < size)
+        {
+            eolLength = 1;
+            if (firstEol > 0 && byteAt(channel, firstEol - 1) == '\r')
+            {
+                firstWidth--;
+                eolLength = 2;
+            }
+        }
+        if (firstWidth > Integer.MAX_VALUE)
+        {
+            throw new GameLoadException("Lines too long in " + file);
+        }
+        final int width = (int) firstWidth;
+        if (width == 0)
+        {
+            throw new GameLoadException("Empty rows not permitted.");
+        }
+
+        // all lines are equally long, so the size tells the height.
+        final long lineLength = width + eolLength;
+        long rows = size / lineLength;
+        if (size % lineLength == width)
+        {
+            rows++; // the last line lacks its line end.
+        } else if (size % lineLength != 0)
+        {
+            throw new GameLoadException(
+                    "all lines in map should be of equal length.");
+        }
+        if (rows > Integer.MAX_VALUE / width)
+        {
+            throw new GameLoadException("Map too large in " + file);
+        }
+        final int height = (int) rows;
+
+        builder.startWorld(width, height);
+        MappedByteBuffer buf = map(channel, 0, size);
+        boolean playerEncountered = false;
+        long offset = 0;
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                final char ch = (char) (buf.get() & BYTE_MASK);
+                if (ch == '\n' || ch == '\r')
+                {
+                    throw new GameLoadException(
+                            "all lines in map should be of equal length.");
+                }
+                if (!GameLoader.permittedChar(ch))
+                {
+                    throw new GameLoadException(
+                            "Incorrect game character: " + ch);
+                }
+                if (ch == Guest.PLAYER_TYPE)
+                {
+                    playerEncountered = true;
+                }
+                builder.addGuest(ch, x, y);
+                offset++;
+                if (!buf.hasRemaining() && offset < size)
+                {
+                    buf = map(channel, offset, size);
+                }
+            }
+            if (offset < size)
+            {
+                // the line end, which may straddle two chunks.
+                for (int i = 0; i < eolLength; i++)
+                {
+                    if (!buf.hasRemaining())
+                    {
+                        buf = map(channel, offset, size);
+                    }
+                    final byte expected = i + 1 == eolLength ? (byte) '\n'
+                        : (byte) '\r';
+                    if (buf.get() != expected)
+                    {
+                        throw new GameLoadException(
+                            "all lines in map should be of equal length.");
+                    }
+                    offset++;
+                }
+                if (!buf.hasRemaining() && offset < size)
+                {
+                    buf = map(channel, offset, size);
+                }
+            }
+        }
+        assert offset == size;
+        if (!playerEncountered)
+        {
+            throw new GameLoadException("No player defined.");
+        }
+        builder.finishWorld();
+    }
+
+    /**
+     * Find the end of the first line.
+     * @param channel The channel of the map file.
+     * @param size Size of the file.
+     * @return Offset of the first newline, or size if there is none.
+     * @throws IOException If the file can't be mapped.
+     */
+    private long firstLineEnd(FileChannel channel, long size)
+        throws IOException
+    {
+        long offset = 0;
+        while (offset < size)
+        {
+            MappedByteBuffer buf = map(channel, offset, size);
+            while (buf.hasRemaining())
+            {
+                if (buf.get() == '\n')
+                {
+                    return offset;
+                }
+                offset++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param channel The channel of the map file.
+     * @param offset Position of a byte in the file.
+     * @return The byte at that position.
+     * @throws IOException If the file can't be read.
+     */
+    private static byte byteAt(FileChannel channel, long offset)
+        throws IOException
+    {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        if (channel.read(one, offset) != 1)
+        {
+            throw new EOFException("Unexpected end of map file");
+        }
+        return one.get(0);
+    }
+
+    /**
+     * Map the next chunk of the file.
+     * @param channel The channel of the map file.
+     * @param offset Position of the chunk in the file.
+     * @param size Size of the file.
+     * @return A buffer with the chunk.
+     * @throws IOException If the file can't be mapped.
+     */
+    private MappedByteBuffer map(FileChannel channel, long offset,
+            long size) throws IOException
+    {
+        assert offset < size;
+        final long length = Math.min(chunkSize, size - offset);
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+}
@@ -65,5 +65,15 @@ public class Monster extends MovingGuest
         return Guest.MONSTER_TYPE;
     }
 
+    /**
+     * @see jpacman.model.Guest#guestBit()
+     * @return Snapshot bit for monsters.
+     */
+    @Override
+    public byte guestBit()
+    {
+        return Guest.MONSTER_BIT;
+    }
+
 
 }
@@ -24,12 +24,31 @@ public class MonsterMove extends Move
      * @see jpacman.model.Move
      */
     public MonsterMove(Monster monster, Cell newCell)
+    {
+        this(monster, newCell, true);
+    }
+
+    /**
+     * Create a move for the given monster to a given target cell, possibly
+     * leaving its effects to be computed.
+     *
+     * @param monster
+     *            the monster to be moved
+     * @param newCell
+     *            the target location.
+     * @param precompute
+     *            true iff the effects should be computed right away.
+     */
+    private MonsterMove(Monster monster, Cell newCell, boolean precompute)
     {
         // preconditions checked in super method,
         // and cannot be repeated here ("super(...)" must be 1st stat.).
         super(monster, newCell);
         theMonster = monster;
-        precomputeEffects();
+        if (precompute)
+        {
+            precomputeEffects();
+        }
         assert invariant();
     }
 
@@ -44,6 +63,16 @@ public class MonsterMove extends Move
         && getMovingGuest().equals(theMonster);
     }
 
+    /**
+     * @see jpacman.model.Move#probe()
+     * @return A fresh move of the same monster to the same cell.
+     */
+    @Override
+    protected Move probe()
+    {
+        return new MonsterMove(theMonster, getArrivalCell(), false);
+    }
+
     /**
      * Attempt to move the monster towards a target guest.
      * @param targetGuest The guest that the monster will meet.
@@ -59,6 +88,28 @@ public class MonsterMove extends Move
         return targetGuest.meetMonster(this);
     }
 
+    /**
+     * Move the monster to a cell with guests of the given types: a living
+     * player gets killed, walls, monsters and dead players stand in the
+     * way, and food is simply shared.
+     * @param mask The guest mask of the target cell.
+     * @return true if the move is possible, false otherwise.
+     * @see jpacman.model.Move#tryMoveToOccupants(byte)
+     */
+    @Override
+    protected boolean tryMoveToOccupants(byte mask)
+    {
+        assert mask != 0;
+        final int outcome = MoveResolver.monsterOutcome(mask);
+        if ((outcome & MoveResolver.DIES) != 0
+                && ((Player) getArrivalCell().findGuest(Guest.PLAYER_BIT))
+                    .living())
+        {
+            die();
+        }
+        return (outcome & MoveResolver.POSSIBLE) != 0;
+    }
+
     /**
      * Return the monster initiating this move.
      *
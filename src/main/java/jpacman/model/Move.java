@@ -19,6 +19,14 @@ import java.util.ArrayList;
 public abstract class Move
 {
 
+    /**
+     * The guest bits of the guest types whose effect on moves is known to
+     * the MoveResolver. Cells with other guests are checked by meeting
+     * each guest.
+     */
+    static final int KNOWN_BITS = Guest.WALL_BIT | Guest.FOOD_BIT
+        | Guest.PLAYER_BIT | Guest.MONSTER_BIT;
+
     /**
      * The guest who initiated the move.
      */
@@ -101,12 +109,15 @@ public abstract class Move
         if (withinBorder())
         {
             assert to != null;
-
-            ArrayList<Guest> targetGuests = to.getGuests();
-            for (Guest g : targetGuests)
+            final byte mask = to.guestMask();
+            if (MoveResolver.covers(mask))
+            {
+                // decided by the types of guests present, in constant time.
+                cellAvailable = mask == 0 || tryMoveToOccupants(mask);
+                assert meetsGuestsAlike(cellAvailable);
+            } else
             {
-                if (!tryMoveToGuest(g))
-                    cellAvailable = false;
+                cellAvailable = tryMoveToGuests();
             }
         }
         this.targetCellOK = cellAvailable;
@@ -115,6 +126,78 @@ public abstract class Move
         assert moveInvariant();
     }
 
+    /**
+     * Try to move to the target cell by meeting each of its guests.
+     * Precondition: within borders and still initializing.
+     *
+     * @return true iff none of the guests objects to the move.
+     */
+    private boolean tryMoveToGuests()
+    {
+        boolean cellAvailable = true;
+        ArrayList<Guest> targetGuests = to.getGuests();
+        for (Guest g : targetGuests)
+        {
+            if (!tryMoveToGuest(g))
+                cellAvailable = false;
+        }
+        return cellAvailable;
+    }
+
+    /**
+     * Check the effects found by the MoveResolver against meeting each
+     * guest of the target cell. The guests are met by a fresh probe, so
+     * that this move is resolved in the same way whether or not
+     * assertions are enabled. Precondition: within borders, and the
+     * effects just found by the MoveResolver.
+     *
+     * @param cellAvailable The availability found by the MoveResolver.
+     * @return true iff meeting each guest has the same effects.
+     */
+    private boolean meetsGuestsAlike(boolean cellAvailable)
+    {
+        final Move probe = probe();
+        assert probe != this && !probe.isInitialized();
+        return probe.tryMoveToGuests() == cellAvailable
+            && sameEffects(probe);
+    }
+
+    /**
+     * Create a fresh move of the same kind, for the same mover and target
+     * cell, whose effects are not computed yet, for checking the effects
+     * of this move.
+     *
+     * @return The uninitialized probe.
+     */
+    protected abstract Move probe();
+
+    /**
+     * Compare the effects of this move with those of its probe.
+     * Subclasses with effects of their own extend the comparison.
+     *
+     * @param probe A probe of this move, created by probe().
+     * @return true iff both moves have the same effects.
+     */
+    protected boolean sameEffects(Move probe)
+    {
+        return playerDies == probe.playerDies;
+    }
+
+    /**
+     * Try to move to a cell occupied by guests of the types in the given
+     * mask, without visiting the guests themselves, using the outcomes of
+     * the MoveResolver. This has the same effect as meeting each guest
+     * through tryMoveToGuest, which is checked on a probe when assertions
+     * are enabled.
+     * Precondition: the mask is not empty and covered by the MoveResolver,
+     * and still initializing.
+     *
+     * @param mask
+     *            The guest mask of the target cell.
+     * @return true iff the move is possible.
+     */
+    protected abstract boolean tryMoveToOccupants(byte mask);
+
     /**
      * Try to move to an occupied cell.
      * Precondition: targetGuest != null and still initializing
@@ -261,6 +344,14 @@ public abstract class Move
 
     
     
+    /**
+     * @return the cell from which the move departs.
+     */
+    Cell getDepartureCell()
+    {
+        return from;
+    }
+
     /**
      * @return the cell at which the move arrives.
      */
@@ -0,0 +1,134 @@
+package jpacman.model;
+
+/**
+ * Table of move outcomes, indexed by the type of the mover and the guest
+ * mask of the target cell. The table captures the rules implemented by the
+ * meetPlayer and meetMonster methods of the guest types known to moves, so
+ * that the outcome of a move can be looked up, rather than computed by
+ * meeting each guest in the target cell.
+ * <p>
+ * An outcome combines the POSSIBLE, DIES and EATS flags. Masks containing
+ * guest types that aren't known to moves have no outcome in the table.
+ *
+ * @version $Id$
+ */
+final class MoveResolver
+{
+
+    /**
+     * Outcome flag: the mover can go to the target cell.
+     */
+    static final int POSSIBLE = 1;
+
+    /**
+     * Outcome flag: the player dies, so the move isn't possible. For
+     * monster moves, this depends on the player in the target cell being
+     * alive still, which the mask doesn't tell: dead players just stand
+     * in the way.
+     */
+    static final int DIES = 2;
+
+    /**
+     * Outcome flag: the target cell contains food, to be eaten if the
+     * player moves there.
+     */
+    static final int EATS = 4;
+
+    /**
+     * Number of distinct guest masks of the known guest types.
+     */
+    private static final int MASKS = Move.KNOWN_BITS + 1;
+
+    /**
+     * Outcomes of player moves, by guest mask of the target cell.
+     */
+    private static final byte[] PLAYER_OUTCOMES = new byte[MASKS];
+
+    /**
+     * Outcomes of monster moves, by guest mask of the target cell.
+     */
+    private static final byte[] MONSTER_OUTCOMES = new byte[MASKS];
+
+    static
+    {
+        for (int mask = 0; mask < MASKS; mask++)
+        {
+            // the player eats food, gets killed by monsters,
+            // and is stopped by walls and by players, itself included.
+            int player = 0;
+            if ((mask & Guest.FOOD_BIT) != 0)
+            {
+                player |= EATS;
+            }
+            if ((mask & Guest.MONSTER_BIT) != 0)
+            {
+                player |= DIES;
+            }
+            if ((mask & (Guest.MONSTER_BIT | Guest.WALL_BIT
+                    | Guest.PLAYER_BIT)) == 0)
+            {
+                player |= POSSIBLE;
+            }
+            PLAYER_OUTCOMES[mask] = (byte) player;
+
+            // monsters kill a player, are stopped by walls and
+            // by monsters, and leave food alone.
+            int monster = 0;
+            if ((mask & Guest.PLAYER_BIT) != 0)
+            {
+                monster |= DIES;
+            }
+            if ((mask & (Guest.PLAYER_BIT | Guest.WALL_BIT
+                    | Guest.MONSTER_BIT)) == 0)
+            {
+                monster |= POSSIBLE;
+            }
+            MONSTER_OUTCOMES[mask] = (byte) monster;
+        }
+    }
+
+    /**
+     * Utility class, no instances.
+     */
+    private MoveResolver()
+    { }
+
+    /**
+     * @param mask The guest mask of a target cell.
+     * @return True iff the table has an outcome for the mask.
+     */
+    static boolean covers(byte mask)
+    {
+        return (mask & ~Move.KNOWN_BITS) == 0;
+    }
+
+    /**
+     * @param outcome An outcome from the table.
+     * @return True iff a move with that outcome changes nothing: the
+     *         mover can't go, and the player doesn't die.
+     */
+    static boolean rejects(int outcome)
+    {
+        return (outcome & (POSSIBLE | DIES)) == 0;
+    }
+
+    /**
+     * @param mask The guest mask of the target cell, which must be covered.
+     * @return The outcome of a player move to that cell.
+     */
+    static int playerOutcome(byte mask)
+    {
+        assert covers(mask);
+        return PLAYER_OUTCOMES[mask];
+    }
+
+    /**
+     * @param mask The guest mask of the target cell, which must be covered.
+     * @return The outcome of a monster move to that cell.
+     */
+    static int monsterOutcome(byte mask)
+    {
+        assert covers(mask);
+        return MONSTER_OUTCOMES[mask];
+    }
+}
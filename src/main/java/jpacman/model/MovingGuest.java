@@ -10,6 +10,13 @@ package jpacman.model;
 public abstract class MovingGuest extends Guest
 {
 
+    /**
+     * Number identifying this guest in the undo journal: i for the i-th
+     * player of the game, and the number of players plus i for the i-th
+     * monster.
+     */
+    private int moverId = 0;
+
     /**
      * Constructs a new moving guest.
      */ 
@@ -17,4 +24,21 @@ public abstract class MovingGuest extends Guest
     {
         // Deferred to subclasses.
     }
+
+    /**
+     * @return The number identifying this guest in the undo journal.
+     */
+    int getMoverId()
+    {
+        return moverId;
+    }
+
+    /**
+     * @param id The number identifying this guest in the undo journal.
+     */
+    void setMoverId(int id)
+    {
+        assert id >= 0;
+        moverId = id;
+    }
 }
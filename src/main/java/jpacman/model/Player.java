@@ -2,7 +2,8 @@ package jpacman.model;
 
 /**
  * The player which can walk around on the board, eat food, and die when meeting
- * a monster.
+ * a monster. A game can have several players, who keep their own score, and
+ * report what they eat and whether they live to the team of the game.
  *
  * @author Arie van Deursen; Jul 28, 2003
  * @version $Id: Player.java 4250 2011-01-27 20:51:40Z arievandeursen $
@@ -25,6 +26,11 @@ public class Player extends MovingGuest
      */
     private int lastDx, lastDy;
 
+    /**
+     * The team of the game this player takes part in, if any.
+     */
+    private Team team = null;
+
 
     /**
      * Create a new player.
@@ -45,6 +51,19 @@ public class Player extends MovingGuest
         return guestInvariant() && pointsEaten >= 0;
     }
 
+    /**
+     * Take part in a game as a member of the given team, which is from
+     * now on told about the player's eating and dying.
+     * Precondition: not in a team yet.
+     *
+     * @param theTeam The team of the game.
+     */
+    void join(Team theTeam)
+    {
+        assert team == null : "Player in a team already";
+        team = theTeam;
+    }
+
     /**
      * Is the player still alive?
      *
@@ -77,6 +96,10 @@ public class Player extends MovingGuest
         assert playerInvariant();
         assert living();
         pointsEaten += foodPoints;
+        if (team != null)
+        {
+            team.ate(foodPoints);
+        }
         assert living();
         assert playerInvariant();
     }
@@ -90,6 +113,10 @@ public class Player extends MovingGuest
         assert playerInvariant();
         assert !living();
         alive = true;
+        if (team != null)
+        {
+            team.reanimated();
+        }
         assert living();
         assert playerInvariant();
     }
@@ -103,15 +130,19 @@ public class Player extends MovingGuest
         assert playerInvariant();
         assert living();
         alive = false;
+        if (team != null)
+        {
+            team.died();
+        }
         assert playerInvariant();
         assert !living();
     }
 
 
     /**
-     * Another player wants to occupy this player's state. With one player
-     * active this will be impossible, but with multiple players this may
-     * happen. In any case, the move itself will not be possible.
+     * Another player wants to occupy this player's cell. Players stand
+     * in each other's way, whether they are alive or not, so the move
+     * itself will not be possible.
      *
      * @param theMove
      *            move object representing intended move and its effects.
@@ -125,14 +156,13 @@ public class Player extends MovingGuest
         assert playerInvariant();
         assert theMove != null;
         assert !theMove.isInitialized();
-        assert this.equals(theMove.getPlayer())
-            : "Move: only one player supported";
         return false;
     }
 
     /**
      * The monster decided to bumb into this player. Modify the move's state
-     * reflecting the fact that this will cause the player to die.
+     * reflecting the fact that this will cause the player to die, unless
+     * the player died already, in which case it just stands in the way.
      *
      * @param theMove
      *            move object representing intended move and its effects.
@@ -146,7 +176,10 @@ public class Player extends MovingGuest
         assert playerInvariant();
         assert theMove != null;
         assert !theMove.isInitialized();
-        theMove.die();
+        if (living())
+        {
+            theMove.die();
+        }
         return false;
     }
     
@@ -161,6 +194,16 @@ public class Player extends MovingGuest
         return Guest.PLAYER_TYPE;
     }
 
+    /**
+     * @see jpacman.model.Guest#guestBit()
+     * @return Snapshot bit for the player.
+     */
+    @Override
+    public byte guestBit()
+    {
+        return Guest.PLAYER_BIT;
+    }
+
     /**
      * @return The player's most recent advancement in the x-direction.
      */
@@ -29,12 +29,31 @@ public class PlayerMove extends Move
      * @see jpacman.model.Move
      */
     public PlayerMove(Player player, Cell newCell)
+    {
+        this(player, newCell, true);
+    }
+
+    /**
+     * Create a move for the given player to a given target cell, possibly
+     * leaving its effects to be computed.
+     *
+     * @param player
+     *            the player to be moved
+     * @param newCell
+     *            the target location.
+     * @param precompute
+     *            true iff the effects should be computed right away.
+     */
+    private PlayerMove(Player player, Cell newCell, boolean precompute)
     {
         // preconditions checked in super method,
         // and cannot be repeated here ("super(...)" must be 1st stat.).
         super(player, newCell);
         thePlayer = player;
-        precomputeEffects();
+        if (precompute)
+        {
+            precomputeEffects();
+        }
         assert invariant();
     }
 
@@ -50,6 +69,30 @@ public class PlayerMove extends Move
         && getMovingGuest().equals(thePlayer);
     }
 
+    /**
+     * @see jpacman.model.Move#probe()
+     * @return A fresh move of the same player to the same cell.
+     */
+    @Override
+    protected Move probe()
+    {
+        return new PlayerMove(thePlayer, getArrivalCell(), false);
+    }
+
+    /**
+     * Also compare the food eaten.
+     *
+     * @see jpacman.model.Move#sameEffects(jpacman.model.Move)
+     * @param probe A probe of this move.
+     * @return true iff both moves have the same effects.
+     */
+    @Override
+    protected boolean sameEffects(Move probe)
+    {
+        return super.sameEffects(probe)
+            && food == ((PlayerMove) probe).food;
+    }
+
     /**
      * Attempt to move the player towards a target guest.
      * @param targetGuest The guest that the player will meet.
@@ -64,6 +107,30 @@ public class PlayerMove extends Move
         return targetGuest.meetPlayer(this);
     }
 
+    /**
+     * Move the player to a cell with guests of the given types: food is
+     * eaten, monsters kill the player, and walls and the player itself
+     * stand in the way.
+     * @param mask The guest mask of the target cell.
+     * @return true if the move is possible, false otherwise.
+     * @see jpacman.model.Move#tryMoveToOccupants(byte)
+     */
+    @Override
+    protected boolean tryMoveToOccupants(byte mask)
+    {
+        assert mask != 0;
+        final int outcome = MoveResolver.playerOutcome(mask);
+        if ((outcome & MoveResolver.EATS) != 0)
+        {
+            setFoodEaten((Food) getArrivalCell().findGuest(Guest.FOOD_BIT));
+        }
+        if ((outcome & MoveResolver.DIES) != 0)
+        {
+            die();
+        }
+        return (outcome & MoveResolver.POSSIBLE) != 0;
+    }
+
     /**
      * Return the player initiating this move.
      *
@@ -0,0 +1,256 @@
+package jpacman.model;
+
+import java.util.List;
+
+/**
+ * A headless alternative to the Engine, intended for running large numbers
+ * of games without a user interface, for example by bots. It steps the
+ * underlying game directly: there are no listeners to be called back, no
+ * locking, and no separate halted or starting states. A simulation
+ * engine should therefore be used from a single thread only.
+ * <p>
+ * Moves are resolved by looking up their outcome in the MoveResolver's
+ * table, rather than through move objects, so that rejected moves don't
+ * allocate anything.
+ * <p>
+ * Games with several players are stepped with stepPlayers, moving all
+ * players in one step.
+ * <p>
+ * Besides stepping the game, the simulation engine keeps track of the
+ * number of steps taken, and the throughput in steps per second.
+ *
+ * @version $Id$
+ */
+public class SimulationEngine
+{
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The underlying game that is being simulated.
+     */
+    private final Game theGame;
+
+    /**
+     * The monsters in the game, in the order used by step().
+     */
+    private List<Monster> monsters = null;
+
+    /**
+     * The number of steps taken since the last reset.
+     */
+    private long steps = 0;
+
+    /**
+     * Time at which the first step after the last reset was taken.
+     */
+    private long startNanos = 0;
+
+    /**
+     * Create a simulation engine for a game using the default map.
+     */
+    public SimulationEngine()
+    {
+        this(new Game());
+    }
+
+    /**
+     * Create a simulation engine for a specific game.
+     *
+     * @param game The game to be simulated.
+     */
+    public SimulationEngine(Game game)
+    {
+        assert game != null;
+        theGame = game;
+    }
+
+    /**
+     * Initialize the game, if that hasn't been done already.
+     * @throws GameLoadException If the game can't be loaded.
+     */
+    public void initialize() throws GameLoadException
+    {
+        if (!theGame.initialized())
+        {
+            theGame.initialize();
+        }
+        monsters = theGame.getMonsters();
+        resetCounters();
+    }
+
+    /**
+     * Reload the game's world, so that a new game can be simulated.
+     */
+    public void reset()
+    {
+        assert monsters != null : "initialize first";
+        theGame.reInitialize();
+        monsters = theGame.getMonsters();
+        resetCounters();
+    }
+
+    /**
+     * Take one step in the game: first the player moves, then each of the
+     * monsters, in the order given by getMonsters(). Moves that are not
+     * possible are ignored, and nothing is done once the game is over.
+     *
+     * @param playerDir
+     *            Direction the (first) player moves in, or null to stand
+     *            still.
+     * @param monsterDirs
+     *            For each monster the direction it moves in, or null to
+     *            stand still. The array may be shorter than the number of
+     *            monsters, or null to keep all monsters in place.
+     * @return True iff the game is still on after this step.
+     */
+    public boolean step(Direction playerDir, Direction[] monsterDirs)
+    {
+        assert monsters != null : "initialize first";
+        if (theGame.gameOver())
+        {
+            return false;
+        }
+        startStep();
+        movePlayer(0, playerDir);
+        moveMonsters(monsterDirs);
+        return !theGame.gameOver();
+    }
+
+    /**
+     * Take one step in a game with several players: first each of the
+     * players moves, in the order of their indexes, then each of the
+     * monsters. Players that died already stay in place, moves that are
+     * not possible are ignored, and nothing is done once the game is over.
+     *
+     * @param playerDirs
+     *            For each player the direction it moves in, or null to
+     *            stand still. The array may be shorter than the number of
+     *            players, or null to keep all players in place.
+     * @param monsterDirs
+     *            For each monster the direction it moves in, as for step().
+     * @return True iff the game is still on after this step.
+     */
+    public boolean stepPlayers(Direction[] playerDirs, Direction[] monsterDirs)
+    {
+        assert monsters != null : "initialize first";
+        assert playerDirs == null
+            || playerDirs.length <= theGame.playerCount();
+        if (theGame.gameOver())
+        {
+            return false;
+        }
+        startStep();
+        if (playerDirs != null)
+        {
+            for (int i = 0; i < playerDirs.length && !theGame.gameOver(); i++)
+            {
+                movePlayer(i, playerDirs[i]);
+            }
+        }
+        moveMonsters(monsterDirs);
+        return !theGame.gameOver();
+    }
+
+    /**
+     * Count a step, starting the clock at the first.
+     */
+    private void startStep()
+    {
+        if (steps == 0)
+        {
+            startNanos = System.nanoTime();
+        }
+        steps++;
+    }
+
+    /**
+     * Move a player, if alive. Precondition: the game isn't over.
+     * @param index The index of the player.
+     * @param dir Direction to move in, or null to stand still.
+     */
+    private void movePlayer(int index, Direction dir)
+    {
+        final Player player = theGame.getPlayer(index);
+        if (dir != null && player.living())
+        {
+            theGame.stepPlayer(player, dir.getDx(), dir.getDy());
+        }
+    }
+
+    /**
+     * Move the monsters, until the game is over.
+     * @param monsterDirs For each monster the direction it moves in,
+     *            or null to stand still; the array itself may be null.
+     */
+    private void moveMonsters(Direction[] monsterDirs)
+    {
+        assert monsterDirs == null || monsterDirs.length <= monsters.size();
+        if (monsterDirs != null)
+        {
+            for (int i = 0; i < monsterDirs.length && !theGame.gameOver(); i++)
+            {
+                final Direction dir = monsterDirs[i];
+                if (dir != null)
+                {
+                    theGame.stepMonster(monsters.get(i),
+                            dir.getDx(), dir.getDy());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The monsters in the order used by step().
+     */
+    public List<Monster> getMonsters()
+    {
+        assert monsters != null : "initialize first";
+        return monsters;
+    }
+
+    /**
+     * @return The game being simulated.
+     */
+    public Game getGame()
+    {
+        return theGame;
+    }
+
+    /**
+     * @return The number of steps taken since the last reset.
+     */
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * The average throughput, measured from the first step after the last
+     * reset until now.
+     *
+     * @return Steps per second, or 0 if no steps have been taken yet.
+     */
+    public double stepsPerSecond()
+    {
+        double result = 0;
+        if (steps > 0)
+        {
+            final long elapsed = System.nanoTime() - startNanos;
+            result = steps * NANOS_PER_SECOND / Math.max(1, elapsed);
+        }
+        return result;
+    }
+
+    /**
+     * Start counting steps and time anew.
+     */
+    private void resetCounters()
+    {
+        steps = 0;
+        startNanos = 0;
+    }
+}
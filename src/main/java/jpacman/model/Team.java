@@ -0,0 +1,137 @@
+package jpacman.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The players of a game, together with the points they ate and the
+ * number of them still alive. Players report eating, dying and coming
+ * back to life to their team, so that whether the game is won or lost
+ * can be told in constant time, however many players there are.
+ *
+ * @version $Id$
+ */
+final class Team
+{
+
+    /**
+     * The players, in the order in which they were added.
+     */
+    private final List<Player> players = new ArrayList<Player>();
+
+    /**
+     * The points eaten by all players together.
+     */
+    private int pointsEaten = 0;
+
+    /**
+     * The number of players still alive.
+     */
+    private int living = 0;
+
+    /**
+     * Add a player to the team. Precondition: the player is in no team.
+     * @param player The player to be added.
+     */
+    void add(Player player)
+    {
+        assert player != null;
+        players.add(player);
+        player.join(this);
+        pointsEaten += player.getPointsEaten();
+        if (player.living())
+        {
+            living++;
+        }
+    }
+
+    /**
+     * @param index The index of a player, in the order of adding.
+     * @return The player.
+     */
+    Player get(int index)
+    {
+        return players.get(index);
+    }
+
+    /**
+     * @return The number of players.
+     */
+    int size()
+    {
+        return players.size();
+    }
+
+    /**
+     * @return A fresh list of the players, in the order of adding.
+     */
+    List<Player> getPlayers()
+    {
+        return new ArrayList<Player>(players);
+    }
+
+    /**
+     * @return The points eaten by all players together.
+     */
+    int getPointsEaten()
+    {
+        return pointsEaten;
+    }
+
+    /**
+     * @return The number of players still alive.
+     */
+    int countLiving()
+    {
+        return living;
+    }
+
+    /**
+     * A player ate (or, if negative, gave back) food.
+     * @param points The points of the food.
+     */
+    void ate(int points)
+    {
+        pointsEaten += points;
+    }
+
+    /**
+     * A player died.
+     */
+    void died()
+    {
+        assert living > 0;
+        living--;
+    }
+
+    /**
+     * A player came back to life.
+     */
+    void reanimated()
+    {
+        assert living < players.size();
+        living++;
+    }
+
+    /**
+     * Check the totals against the players themselves, which takes time
+     * proportional to the number of players.
+     *
+     * @return True iff the points eaten and the number of living players
+     *         add up.
+     */
+    boolean invariant()
+    {
+        int points = 0;
+        int alive = 0;
+        for (Player p : players)
+        {
+            points += p.getPointsEaten();
+            if (p.living())
+            {
+                alive++;
+            }
+        }
+        return points == pointsEaten && alive == living;
+    }
+}
@@ -0,0 +1,52 @@
+package jpacman.model;
+
+/**
+ * A world given as a map in memory, one string per row and one
+ * character per cell.
+ *
+ * @version $Id$
+ */
+class TextWorld implements WorldSource
+{
+
+    /**
+     * The rows of the map.
+     */
+    private final String[] map;
+
+    /**
+     * Create a world from a map.
+     * @param theMap The rows of the map, which are copied.
+     */
+    TextWorld(String[] theMap)
+    {
+        assert theMap != null;
+        map = theMap.clone();
+    }
+
+    /**
+     * Check the map, and pass its cells to the builder.
+     * @param builder Receiver of the world's content.
+     * @throws GameLoadException If the map is incorrect.
+     * @see jpacman.model.WorldSource#load(WorldBuilder)
+     */
+    public void load(WorldBuilder builder) throws GameLoadException
+    {
+        String msg = GameLoader.checkSanity(map);
+        if (msg != null)
+        {
+            throw new GameLoadException(msg);
+        }
+        int height = map.length;
+        int width = map[0].length();
+        builder.startWorld(width, height);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                builder.addGuest(map[y].charAt(x), x, y);
+            }
+        }
+        builder.finishWorld();
+    }
+}
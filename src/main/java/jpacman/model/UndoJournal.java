@@ -0,0 +1,488 @@
+package jpacman.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bounded history of the moves done in a game, used for undoing them.
+ * <p>
+ * Instead of keeping Move objects (with references to their mover, cells
+ * and food) around forever, each move is packed into a fixed size record
+ * of primitives, kept in a ring buffer of a given capacity. Once the ring
+ * is full, the oldest record is either forgotten, or, if a spill file is
+ * given, written to that file, from which it is read back once the newer
+ * moves have been undone. Memory use is thus bounded by the capacity,
+ * regardless of how long a game is played. Records are spilled and read
+ * back in chunks of half the capacity, each through a single write or
+ * read of the file, so that recording and undoing only touch the disk
+ * once every so many moves.
+ * <p>
+ * Cells are recorded by their position (y * width + x) on the board,
+ * movers by their mover id (players first, then the monsters), and a
+ * death by the mover if a player moved, or else by the player on the
+ * target cell.
+ * <p>
+ * Journals are not thread safe; the game using them is expected to be
+ * guarded by its engine.
+ *
+ * @version $Id$
+ */
+public class UndoJournal
+{
+
+    /**
+     * Default number of moves kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * Number of bytes of a record in the spill file.
+     */
+    static final int RECORD_SIZE = 16;
+
+    /**
+     * Position used for cells beyond the borders of the board.
+     */
+    static final int NO_CELL = -1;
+
+    /**
+     * Flag set if the move was actually carried out.
+     */
+    private static final int APPLIED = 1;
+
+    /**
+     * Flag set if a player died because of the move.
+     */
+    private static final int DIED = 2;
+
+    /**
+     * Number of flag bits below the mover id.
+     */
+    private static final int FLAG_BITS = 2;
+
+    /**
+     * Number of bits to shift the departure position.
+     */
+    private static final int CELL_SHIFT = 32;
+
+    /**
+     * Mask selecting the arrival position.
+     */
+    private static final long CELL_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Departure and arrival positions of each move, packed as from << 32 | to.
+     */
+    private final long[] cells;
+
+    /**
+     * Mover id and flags of each move, packed as id << 2 | flags.
+     */
+    private final int[] movers;
+
+    /**
+     * Points of the food eaten by each move.
+     */
+    private final int[] food;
+
+    /**
+     * Index of the slot the next record will be written to.
+     */
+    private int head = 0;
+
+    /**
+     * Number of records in the ring.
+     */
+    private int count = 0;
+
+    /**
+     * File to which records pushed out of the ring are written,
+     * or null if they are simply forgotten.
+     */
+    private RandomAccessFile spill;
+
+    /**
+     * The channel of the spill file, or null if there is none.
+     */
+    private FileChannel channel;
+
+    /**
+     * Number of records spilled or read back at once.
+     */
+    private final int chunk;
+
+    /**
+     * Buffer holding a chunk of records on their way to or from the
+     * spill file, or null if there is none.
+     */
+    private ByteBuffer chunkBuffer = null;
+
+    /**
+     * Number of records in the spill file.
+     */
+    private long spilled = 0;
+
+    /**
+     * The problem that caused spilling to be given up, if any.
+     */
+    private IOException spillError = null;
+
+    /**
+     * The most recently popped record.
+     */
+    private long poppedCells;
+
+    /**
+     * The mover and flags of the most recently popped record.
+     */
+    private int poppedMover;
+
+    /**
+     * The food of the most recently popped record.
+     */
+    private int poppedFood;
+
+    /**
+     * Create a journal keeping at most the given number of moves,
+     * forgetting older ones.
+     *
+     * @param capacity Maximum number of moves that can be undone.
+     */
+    public UndoJournal(int capacity)
+    {
+        assert capacity > 0;
+        cells = new long[capacity];
+        movers = new int[capacity];
+        food = new int[capacity];
+        chunk = Math.max(1, capacity / 2);
+        assert invariant();
+    }
+
+    /**
+     * Create a journal keeping the given number of moves in memory,
+     * and writing older ones to the given file. The file is overwritten.
+     *
+     * @param capacity Number of moves kept in memory.
+     * @param spillFile File for older moves.
+     * @throws IOException If the file can't be opened.
+     */
+    public UndoJournal(int capacity, File spillFile) throws IOException
+    {
+        this(capacity);
+        assert spillFile != null;
+        spill = new RandomAccessFile(spillFile, "rw");
+        spill.setLength(0);
+        channel = spill.getChannel();
+        chunkBuffer = ByteBuffer.allocate(chunk * RECORD_SIZE);
+    }
+
+    /**
+     * @return True iff the number of records is within the capacity.
+     */
+    private boolean invariant()
+    {
+        return count >= 0 && count <= cells.length
+            && head >= 0 && head < cells.length
+            && spilled >= 0;
+    }
+
+    /**
+     * @return Maximum number of moves kept in memory.
+     */
+    public int capacity()
+    {
+        return cells.length;
+    }
+
+    /**
+     * @return Number of moves that can be undone.
+     */
+    public long size()
+    {
+        return count + spilled;
+    }
+
+    /**
+     * @return True iff there is nothing to undo.
+     */
+    public boolean isEmpty()
+    {
+        return count == 0 && spilled == 0;
+    }
+
+    /**
+     * @return The problem that made the journal stop spilling moves
+     *         to disk, or null if there was none.
+     */
+    public IOException getSpillError()
+    {
+        return spillError;
+    }
+
+    /**
+     * Record a move.
+     *
+     * @param from Position the mover departed from.
+     * @param to Position of the target cell, or NO_CELL.
+     * @param moverId Id of the moving guest.
+     * @param applied Whether the mover actually moved.
+     * @param died Whether a player died.
+     * @param points Points of the food eaten by the move.
+     */
+    void record(int from, int to, int moverId, boolean applied,
+            boolean died, int points)
+    {
+        assert moverId >= 0;
+        assert points >= 0;
+        if (count == cells.length)
+        {
+            evictOldest();
+        }
+        int flags = 0;
+        if (applied)
+        {
+            flags |= APPLIED;
+        }
+        if (died)
+        {
+            flags |= DIED;
+        }
+        cells[head] = ((long) from << CELL_SHIFT) | (to & CELL_MASK);
+        movers[head] = (moverId << FLAG_BITS) | flags;
+        food[head] = points;
+        head = next(head);
+        count++;
+        assert invariant();
+    }
+
+    /**
+     * Remove the most recent record, making it available through the
+     * popped... accessors. Precondition: the journal isn't empty.
+     */
+    void pop()
+    {
+        assert !isEmpty();
+        if (count == 0)
+        {
+            unspill();
+        } else
+        {
+            head = previous(head);
+            count--;
+            poppedCells = cells[head];
+            poppedMover = movers[head];
+            poppedFood = food[head];
+        }
+        assert invariant();
+    }
+
+    /**
+     * Forget all records.
+     */
+    void clear()
+    {
+        head = 0;
+        count = 0;
+        spilled = 0;
+        if (spill != null)
+        {
+            try
+            {
+                spill.setLength(0);
+            } catch (IOException e)
+            {
+                giveUpSpilling(e);
+            }
+        }
+        assert isEmpty();
+    }
+
+    /**
+     * Close the spill file, if any. Moves older than the capacity
+     * are forgotten from now on.
+     */
+    public void close()
+    {
+        if (spill != null)
+        {
+            try
+            {
+                spill.close();
+            } catch (IOException e)
+            {
+                if (spillError == null)
+                {
+                    spillError = e;
+                }
+            }
+            spill = null;
+            channel = null;
+            chunkBuffer = null;
+            spilled = 0;
+        }
+    }
+
+    /**
+     * @return Departure position of the popped move.
+     */
+    int poppedFrom()
+    {
+        return (int) (poppedCells >>> CELL_SHIFT);
+    }
+
+    /**
+     * @return Target position of the popped move, or NO_CELL.
+     */
+    int poppedTo()
+    {
+        return (int) poppedCells;
+    }
+
+    /**
+     * @return Mover id of the popped move.
+     */
+    int poppedMoverId()
+    {
+        return poppedMover >>> FLAG_BITS;
+    }
+
+    /**
+     * @return True iff the popped move was actually carried out.
+     */
+    boolean poppedApplied()
+    {
+        return (poppedMover & APPLIED) != 0;
+    }
+
+    /**
+     * @return True iff a player died because of the popped move.
+     */
+    boolean poppedDied()
+    {
+        return (poppedMover & DIED) != 0;
+    }
+
+    /**
+     * @return Points of the food eaten by the popped move.
+     */
+    int poppedFood()
+    {
+        return poppedFood;
+    }
+
+    /**
+     * Make room in the full ring by writing its oldest chunk of records
+     * to the spill file, or by forgetting the oldest record.
+     */
+    private void evictOldest()
+    {
+        assert count == cells.length;
+        if (spill == null)
+        {
+            count--;
+            return;
+        }
+        // the ring is full, so the oldest record is at head.
+        chunkBuffer.clear();
+        int slot = head;
+        for (int i = 0; i < chunk; i++)
+        {
+            chunkBuffer.putLong(cells[slot]);
+            chunkBuffer.putInt(movers[slot]);
+            chunkBuffer.putInt(food[slot]);
+            slot = next(slot);
+        }
+        chunkBuffer.flip();
+        try
+        {
+            long position = spilled * RECORD_SIZE;
+            while (chunkBuffer.hasRemaining())
+            {
+                position += channel.write(chunkBuffer, position);
+            }
+            spilled += chunk;
+        } catch (IOException e)
+        {
+            giveUpSpilling(e);
+        }
+        count -= chunk;
+    }
+
+    /**
+     * Read the most recently spilled chunk of records back into the
+     * empty ring, and pop the newest of them.
+     */
+    private void unspill()
+    {
+        assert count == 0 && spilled > 0;
+        final int n = (int) Math.min(chunk, spilled);
+        chunkBuffer.clear();
+        chunkBuffer.limit(n * RECORD_SIZE);
+        try
+        {
+            long position = (spilled - n) * RECORD_SIZE;
+            while (chunkBuffer.hasRemaining())
+            {
+                final int read = channel.read(chunkBuffer, position);
+                if (read < 0)
+                {
+                    throw new EOFException("Spill file truncated.");
+                }
+                position += read;
+            }
+        } catch (IOException e)
+        {
+            giveUpSpilling(e);
+            // nothing sensible can be undone.
+            poppedCells = ((long) NO_CELL << CELL_SHIFT) | CELL_MASK;
+            poppedMover = 0;
+            poppedFood = 0;
+            return;
+        }
+        chunkBuffer.flip();
+        // the ring is empty: refill it from its first slot, oldest first.
+        for (int i = 0; i < n; i++)
+        {
+            cells[i] = chunkBuffer.getLong();
+            movers[i] = chunkBuffer.getInt();
+            food[i] = chunkBuffer.getInt();
+        }
+        spilled -= n;
+        count = n;
+        head = n == cells.length ? 0 : n;
+        pop();
+    }
+
+    /**
+     * Stop using the spill file after a problem with it,
+     * forgetting the moves written to it.
+     * @param e The problem encountered.
+     */
+    private void giveUpSpilling(IOException e)
+    {
+        spillError = e;
+        close();
+    }
+
+    /**
+     * @param i Index of a slot in the ring.
+     * @return Index of the next slot.
+     */
+    private int next(int i)
+    {
+        return i + 1 == cells.length ? 0 : i + 1;
+    }
+
+    /**
+     * @param i Index of a slot in the ring.
+     * @return Index of the previous slot.
+     */
+    private int previous(int i)
+    {
+        return i == 0 ? cells.length - 1 : i - 1;
+    }
+}
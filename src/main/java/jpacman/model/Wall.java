@@ -60,4 +60,14 @@ public class Wall extends Guest
         return Guest.WALL_TYPE;
     }
 
+    /**
+     * @see jpacman.model.Guest#guestBit()
+     * @return Snapshot bit for the wall.
+     */
+    @Override
+    public byte guestBit()
+    {
+        return Guest.WALL_BIT;
+    }
+
 }
@@ -0,0 +1,34 @@
+package jpacman.model;
+
+/**
+ * Receiver of the content of a world as it is being read, so that a board
+ * can be built while its map is read, without keeping the map in memory.
+ *
+ * @version $Id$
+ */
+interface WorldBuilder
+{
+
+    /**
+     * Start building a new, empty world.
+     * @param width Width of the world
+     * @param height Height of the world
+     */
+    void startWorld(int width, int height);
+
+    /**
+     * Add a guest to the world. Precondition: the code is valid.
+     * There can be any number of players, numbered in the order in
+     * which they are added.
+     * @param code The guest's type code.
+     * @param x Horizontal position
+     * @param y Vertical position
+     */
+    void addGuest(char code, int x, int y);
+
+    /**
+     * Complete the world. Precondition: at least one player has been
+     * added.
+     */
+    void finishWorld();
+}
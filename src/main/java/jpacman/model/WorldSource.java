@@ -0,0 +1,20 @@
+package jpacman.model;
+
+/**
+ * Something a world can be loaded from, such as a map in memory,
+ * or a text or binary level file.
+ *
+ * @version $Id$
+ */
+interface WorldSource
+{
+
+    /**
+     * Read the world, passing its dimensions and guests to the builder.
+     * A source can be loaded repeatedly, for example to restart a game.
+     *
+     * @param builder Receiver of the world's content.
+     * @throws GameLoadException If the world can't be read or is incorrect.
+     */
+    void load(WorldBuilder builder) throws GameLoadException;
+}
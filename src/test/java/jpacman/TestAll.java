@@ -4,7 +4,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import jpacman.controller.BatchRunnerTest;
+import jpacman.controller.GameLoopTest;
 import jpacman.controller.ImageFactoryTest;
+import jpacman.controller.PathFindingMonsterMoverTest;
+import jpacman.controller.ViewportTest;
 
 import jpacman.model.*;
 
@@ -29,16 +33,31 @@ import jpacman.model.*;
 @SuiteClasses({
     PacmanTest.class,
     BoardTest.class,
+    CompactBoardTest.class,
     CellTest.class,
     GameTest.class,
     EngineTest.class,
+    EngineConcurrencyTest.class,
+    CommandQueueTest.class,
+    SimulationEngineTest.class,
     ObserverTest.class,
     PlayerMoveTest.class,
     MonsterMoveTest.class,
     UndoTest.class,
+    UndoJournalTest.class,
     ImageFactoryTest.class,
+    BatchRunnerTest.class,
+    GameLoopTest.class,
+    PathFindingMonsterMoverTest.class,
+    ViewportTest.class,
     GuestTest.class,
-    GameLoaderTest.class
+    GameLoaderTest.class,
+    MappedWorldTest.class,
+    BinaryLevelTest.class,
+    GameReplayTest.class,
+    MoveResolverTest.class,
+    InvariantsTest.class,
+    MultiPlayerTest.class
 })
 
 public final class TestAll 
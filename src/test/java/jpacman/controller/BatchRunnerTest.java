@@ -0,0 +1,125 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import jpacman.model.Engine;
+import jpacman.model.GameLoadException;
+import jpacman.model.GameTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for playing batches of games without user interface.
+ *
+ * @version $Id$
+ */
+public class BatchRunnerTest
+{
+
+    /**
+     * Number of games played per batch.
+     */
+    private static final int GAMES = 50;
+
+    /**
+     * Maximum number of steps per game.
+     */
+    private static final int MAX_STEPS = 100;
+
+    /**
+     * Seed used for all batches.
+     */
+    private static final long SEED = 42L;
+
+    /**
+     * Factory for random monster movers.
+     */
+    private BatchRunner.ControllerFactory factory;
+
+    /**
+     * Create the monster controller factory.
+     */
+    @Before public void setUp()
+    {
+        factory = new BatchRunner.ControllerFactory() {
+            public IMonsterController create(Engine e, Random r)
+            {
+                return new RandomMonsterMover(e, r);
+            }
+        };
+    }
+
+    /**
+     * Is every game accounted for exactly once?
+     * @throws GameLoadException if the map can't be loaded.
+     * @throws InterruptedException if interrupted while playing.
+     */
+    @Test public void testAllGamesCounted()
+        throws GameLoadException, InterruptedException
+    {
+        BatchResult result = new BatchRunner(GameTestCase.SIMPLE_MAP,
+                factory, MAX_STEPS).run(GAMES, SEED);
+        assertEquals(GAMES, result.getGames());
+        assertEquals(GAMES, result.getWins() + result.getDeaths()
+                + result.getUnfinished());
+        assertTrue(result.getPlayerMoves() >= GAMES);
+        assertTrue(result.getPlayerMoves() <= GAMES * MAX_STEPS);
+        assertTrue(result.getMonsterMoves() <= result.getPlayerMoves());
+    }
+
+    /**
+     * Does the same seed yield the same results,
+     * independent of the number of threads?
+     * @throws GameLoadException if the map can't be loaded.
+     * @throws InterruptedException if interrupted while playing.
+     */
+    @Test public void testReproducible()
+        throws GameLoadException, InterruptedException
+    {
+        final int manyThreads = 4;
+        BatchResult one = new BatchRunner(GameTestCase.SIMPLE_MAP,
+                factory, MAX_STEPS, 1).run(GAMES, SEED);
+        BatchResult many = new BatchRunner(GameTestCase.SIMPLE_MAP,
+                factory, MAX_STEPS, manyThreads).run(GAMES, SEED);
+        assertEquals(one.toString(), many.toString());
+    }
+
+    /**
+     * Is each game's engine seeded by the batch, with the controllers
+     * using the engine's randomizer?
+     * @throws GameLoadException if the map can't be loaded.
+     * @throws InterruptedException if interrupted while playing.
+     */
+    @Test public void testEngineSeeded()
+        throws GameLoadException, InterruptedException
+    {
+        final Set<Long> seeds =
+            Collections.synchronizedSet(new HashSet<Long>());
+        BatchRunner.ControllerFactory checking =
+            new BatchRunner.ControllerFactory() {
+            public IMonsterController create(Engine e, Random r)
+            {
+                assertSame(e.getRandomizer(), r);
+                seeds.add(e.getSeed());
+                return factory.create(e, r);
+            }
+        };
+        final BatchRunner runner = new BatchRunner(GameTestCase.SIMPLE_MAP,
+                checking, MAX_STEPS, 1);
+        runner.run(GAMES, SEED);
+        final Set<Long> expected = new HashSet<Long>();
+        for (int gameNr = 0; gameNr < GAMES; gameNr++)
+        {
+            expected.add(BatchRunner.gameSeed(SEED, gameNr));
+        }
+        assertEquals(expected, seeds);
+    }
+}
@@ -0,0 +1,340 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jpacman.model.ChangeEvent;
+import jpacman.model.Engine;
+import jpacman.model.EngineAdapter;
+import jpacman.model.EngineListener;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases for the fixed timestep loop driving the game.
+ *
+ * @version $Id$
+ */
+public class GameLoopTest
+{
+
+    /**
+     * Duration of a tick in the loops under test, in milliseconds.
+     */
+    private static final int TICK = 2;
+
+    /**
+     * How long to wait for the loop to get somewhere, in milliseconds.
+     */
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * The loop under test.
+     */
+    private GameLoop loop;
+
+    /**
+     * Stop the loop, if any.
+     * @throws InterruptedException If interrupted while stopping.
+     */
+    @After public void tearDown() throws InterruptedException
+    {
+        if (loop != null)
+        {
+            loop.stop();
+        }
+    }
+
+    /**
+     * @param counter Counter to be incremented.
+     * @param done Latch counted down on every run.
+     * @return A task incrementing the counter.
+     */
+    private static Runnable counting(final AtomicInteger counter,
+            final CountDownLatch done)
+    {
+        return new Runnable() {
+            public void run()
+            {
+                counter.incrementAndGet();
+                done.countDown();
+            }
+        };
+    }
+
+    /**
+     * Are tasks run every given number of ticks, and no longer
+     * once cancelled or stopped?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testPeriods() throws InterruptedException
+    {
+        final int runs = 10;
+        loop = new GameLoop(TICK, GameLoop.DEFAULT_MAX_CATCH_UP);
+        AtomicInteger every = new AtomicInteger();
+        AtomicInteger third = new AtomicInteger();
+        CountDownLatch thirdDone = new CountDownLatch(runs);
+        loop.schedule(counting(every, new CountDownLatch(0)), 1);
+        Runnable thirdTask = counting(third, thirdDone);
+        loop.schedule(thirdTask, 3);
+        loop.start();
+        assertTrue(thirdDone.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        loop.stop();
+
+        final int thirds = third.get();
+        final int all = every.get();
+        assertTrue(all >= 3 * thirds);
+        assertTrue(all < 3 * (thirds + 1));
+        assertEquals(all, loop.getTicks());
+        Thread.sleep(TICK * 3);
+        assertEquals(all, every.get());
+
+        loop.cancel(thirdTask);
+        loop.start();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (every.get() < all + 2 * 3
+                && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(TICK);
+        }
+        loop.stop();
+        assertTrue(every.get() >= all + 2 * 3);
+        assertEquals(thirds, third.get());
+    }
+
+    /**
+     * Are ticks missed during a long task caught up with, up to the
+     * maximum, and skipped beyond that?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testCatchUpAndSkip() throws InterruptedException
+    {
+        final int catchUp = 2;
+        final int stall = 50 * TICK;
+        loop = new GameLoop(TICK, catchUp);
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final AtomicInteger after = new AtomicInteger();
+        final CountDownLatch afterDone = new CountDownLatch(catchUp + 1);
+        loop.schedule(new Runnable() {
+            public void run()
+            {
+                if (stalled.getCount() > 0)
+                {
+                    try
+                    {
+                        Thread.sleep(stall);
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    stalled.countDown();
+                } else
+                {
+                    after.incrementAndGet();
+                    afterDone.countDown();
+                }
+            }
+        }, 1);
+        loop.start();
+        assertTrue(afterDone.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        loop.stop();
+        assertTrue(loop.getSkippedTicks() > 0);
+        assertTrue(loop.getSkippedTicks() < stall / TICK);
+        assertTrue(loop.getMaxTickNanos()
+            >= TimeUnit.MILLISECONDS.toNanos(stall));
+        assertTrue(loop.getMaxLatencyNanos() >= loop.getMeanLatencyNanos());
+        assertTrue(loop.getMaxTickNanos() >= loop.getMeanTickNanos());
+    }
+
+    /**
+     * If the loop is started again while stopping, before its thread
+     * completed its tick, does the new thread wait for the old one, so
+     * that tasks never run on two threads at once?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testRestartWhileStopping() throws InterruptedException
+    {
+        loop = new GameLoop(TICK, 0);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger runs = new AtomicInteger();
+        final Set<Thread> threads =
+            Collections.synchronizedSet(new HashSet<Thread>());
+        loop.schedule(new Runnable() {
+            public void run()
+            {
+                threads.add(Thread.currentThread());
+                if (inside.incrementAndGet() > 1)
+                {
+                    overlaps.incrementAndGet();
+                }
+                if (runs.incrementAndGet() == 1)
+                {
+                    entered.countDown();
+                    try
+                    {
+                        release.await();
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                inside.decrementAndGet();
+            }
+        }, 1);
+        loop.start();
+        assertTrue(entered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // stop on another thread, which waits for the blocked tick.
+        Thread stopper = new Thread(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    loop.stop();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        stopper.start();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (stopper.getState() != Thread.State.WAITING
+                && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        loop.start();
+        final int ticksWhileBlocked = 5;
+        Thread.sleep(TICK * ticksWhileBlocked);
+        assertEquals(1, runs.get());
+
+        release.countDown();
+        stopper.join(TIMEOUT);
+        final int later = 3;
+        while (runs.get() < later && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(TICK);
+        }
+        loop.stop();
+        assertTrue(runs.get() >= later);
+        assertEquals(0, overlaps.get());
+        assertEquals(2, threads.size());
+    }
+
+    /**
+     * Does a failing task leave the loop and the other tasks running?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testFailingTask() throws InterruptedException
+    {
+        loop = new GameLoop(TICK, GameLoop.DEFAULT_MAX_CATCH_UP);
+        final AtomicInteger failures = new AtomicInteger();
+        loop.schedule(new Runnable() {
+            public void run()
+            {
+                Thread.currentThread().setUncaughtExceptionHandler(
+                        new Thread.UncaughtExceptionHandler() {
+                            public void uncaughtException(Thread t,
+                                    Throwable e)
+                            {
+                                failures.incrementAndGet();
+                            }
+                        });
+                throw new IllegalStateException("failing on purpose");
+            }
+        }, 1);
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(2);
+        loop.schedule(counting(counter, done), 1);
+        loop.start();
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(failures.get() > 0);
+    }
+
+    /**
+     * Does a monster controller on the loop move the monsters?
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Test public void testMonstersOnLoop()
+        throws InterruptedException, GameLoadException
+    {
+        Engine engine = new Engine(new Game());
+        engine.initialize();
+        engine.start();
+        loop = new GameLoop(TICK, GameLoop.DEFAULT_MAX_CATCH_UP);
+        IMonsterController mover = new RandomMonsterMover(engine, loop);
+        final long before = engine.getVersion();
+        mover.start();
+        loop.start();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (engine.getVersion() == before
+                && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(TICK);
+        }
+        mover.stop();
+        assertTrue(engine.getVersion() > before);
+    }
+
+    /**
+     * Are observers notified at most once per tick, of all changes made
+     * during that tick?
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Test public void testChangesPerTick()
+        throws InterruptedException, GameLoadException
+    {
+        final Engine engine = new Engine(new Game());
+        engine.initialize();
+        engine.setNotifyPerTick(true);
+        final AtomicInteger events = new AtomicInteger();
+        final AtomicLong changes = new AtomicLong();
+        engine.addListener(new EngineAdapter() {
+            public void onChanges(ChangeEvent event)
+            {
+                events.incrementAndGet();
+                changes.addAndGet(event.getChangeCount());
+            }
+        }, EngineListener.CHANGES);
+        final long before = engine.getVersion();
+        engine.start();
+        loop = new GameLoop(TICK, GameLoop.DEFAULT_MAX_CATCH_UP);
+        loop.runAfterEachTick(new Runnable() {
+            public void run()
+            {
+                engine.endTick();
+            }
+        });
+        IMonsterController mover = new RandomMonsterMover(engine, loop);
+        mover.start();
+        loop.start();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (events.get() < 3 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(TICK);
+        }
+        mover.stop();
+        loop.stop();
+        engine.endTick();
+        assertTrue(events.get() >= 3);
+        assertTrue(events.get() <= loop.getTicks() + 1);
+        assertEquals(engine.getVersion() - before, changes.get());
+    }
+}
@@ -2,8 +2,12 @@ package jpacman.controller;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import org.junit.Before;
@@ -50,5 +54,56 @@ public class ImageFactoryTest
         Image m2 = imf.monster(0);
         assertEquals(m1, m2);
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * Is a single atlas built per cell size, and are images of a sized
+     * factory pre-scaled to that size?
+     * @throws IOException if images can't be found.
+     */
+    @Test public void testAtlas() throws IOException
+    {
+        final int size = 20;
+        ImageFactory sized = new ImageFactory(size, size);
+        sized.loadImages();
+        BufferedImage atlas = sized.atlas(size, size);
+        assertSame(atlas, sized.atlas(size, size));
+        assertNotSame(atlas, sized.atlas(size * 2, size * 2));
+        assertEquals(2 * atlas.getWidth(),
+                sized.atlas(size * 2, size).getWidth());
+
+        Image player = sized.player(1, 0, 1);
+        assertEquals(size, player.getWidth(null));
+        assertEquals(size, player.getHeight(null));
+        assertNotSame(sized.monster(0), sized.scaredMonster(0));
+    }
+
+    /**
+     * Does drawing a sprite copy it from the atlas?
+     * @throws IOException if images can't be found.
+     */
+    @Test public void testDrawSprite() throws IOException
+    {
+        final int size = 16;
+        BufferedImage target =
+            new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics g = target.getGraphics();
+        final int sprite = imf.monsterSprite(1);
+        imf.drawSprite(g, sprite, 0, 0, size, size);
+        g.dispose();
+        BufferedImage atlas = imf.atlas(size, size);
+        final int columns = atlas.getWidth() / size;
+        final int sx = sprite % columns * size;
+        final int sy = sprite / columns * size;
+        boolean drawn = false;
+        for (int x = 0; x < size; x++)
+        {
+            for (int y = 0; y < size; y++)
+            {
+                assertEquals(atlas.getRGB(sx + x, sy + y),
+                        target.getRGB(x, y));
+                drawn = drawn || target.getRGB(x, y) != 0;
+            }
+        }
+        assertTrue(drawn);
+    }
+}
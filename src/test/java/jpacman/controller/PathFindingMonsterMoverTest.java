@@ -0,0 +1,205 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import jpacman.model.Board;
+import jpacman.model.Direction;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.Monster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the path finding monster mover and its distance field.
+ *
+ * @version $Id$
+ */
+public class PathFindingMonsterMoverTest
+{
+
+    /**
+     * Map in which the monster must go through the tunnel at the
+     * left and right borders to reach the player.
+     */
+    private static final String[] MAP = new String[] {
+        "000000",
+        "0WWWW0",
+        "0MWP00",
+        "FWWWW0",
+        "WWWWWW"
+    };
+
+    /**
+     * Map in which the player is walled in.
+     */
+    private static final String[] WALLED_IN = new String[] {
+        "000000",
+        "0WWWW0",
+        "0MWP0W",
+        "FWWWW0",
+        "WWWWWW"
+    };
+
+    /**
+     * Map with two players in a corridor, and a monster right next to
+     * player 0.
+     */
+    private static final String[] TWO_PLAYERS = new String[] {
+        "WWWWWWWW",
+        "WPM0F0PW",
+        "WWWWWWWW"
+    };
+
+    /**
+     * The engine of the game played.
+     */
+    private Engine engine;
+
+    /**
+     * The board of the game played.
+     */
+    private Board board;
+
+    /**
+     * Create and start a game on the map.
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    @Before public void setUp() throws GameLoadException
+    {
+        startGame(MAP);
+    }
+
+    /**
+     * Create and start a game.
+     * @param map The map of the game.
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    private void startGame(String[] map) throws GameLoadException
+    {
+        Game game = new Game(map);
+        engine = new Engine(game);
+        engine.initialize();
+        engine.start();
+        board = engine.getPlayer().getLocation().getBoard();
+    }
+
+    /**
+     * Are distances shortest paths around walls and through tunnels?
+     */
+    @Test public void testDistances()
+    {
+        DistanceField field = new DistanceField(board);
+        field.setSource(board.position(3, 2));
+        assertEquals(0, field.distance(board.position(3, 2)));
+        final int upRight = 3;
+        assertEquals(upRight, field.distance(board.position(5, 1)));
+        // via the tunnel from (5,2) to (0,2).
+        final int throughTunnel = 4;
+        assertEquals(throughTunnel, field.distance(board.position(1, 2)));
+        assertEquals(DistanceField.UNREACHABLE,
+                field.distance(board.position(2, 2)));
+    }
+
+    /**
+     * Are distances measured afresh when the source moves, also for
+     * positions the previous search didn't get to?
+     */
+    @Test public void testMovingSource()
+    {
+        DistanceField field = new DistanceField(board);
+        field.setSource(board.position(3, 2));
+        assertEquals(1, field.distance(board.position(4, 2)));
+        field.setSource(board.position(4, 2));
+        assertEquals(0, field.distance(board.position(4, 2)));
+        final int throughTunnel = 3;
+        assertEquals(throughTunnel, field.distance(board.position(1, 2)));
+        field.setSource(board.position(3, 2));
+        assertEquals(throughTunnel + 1,
+                field.distance(board.position(1, 2)));
+        assertEquals(1, field.distance(board.position(4, 2)));
+        assertTrue(field.isWall(board.position(2, 2)));
+    }
+
+    /**
+     * Are distances measured to the nearest of several sources?
+     */
+    @Test public void testSeveralSources()
+    {
+        DistanceField field = new DistanceField(board);
+        field.setSources(new int[] {board.position(3, 2),
+                board.position(0, 0)}, 2);
+        assertEquals(0, field.distance(board.position(0, 0)));
+        assertEquals(1, field.distance(board.position(0, 1)));
+        assertEquals(1, field.distance(board.position(4, 2)));
+        // from (0,0) rather than through the tunnel from (3,2).
+        final int fromCorner = 3;
+        assertEquals(fromCorner, field.distance(board.position(1, 2)));
+        field.setSources(new int[0], 0);
+        assertEquals(DistanceField.UNREACHABLE,
+                field.distance(board.position(0, 0)));
+    }
+
+    /**
+     * Once player 0 has been caught, do monsters go after the player
+     * still alive rather than the one that died?
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    @Test public void testChaseLivingPlayer() throws GameLoadException
+    {
+        startGame(TWO_PLAYERS);
+        Monster monster = engine.getMonsters().get(0);
+        PathFindingMonsterMover mover =
+            new PathFindingMonsterMover(engine, new Random(1));
+        assertEquals(Direction.LEFT, mover.nextStep(monster));
+
+        engine.moveMonster(monster, -1, 0);
+        assertFalse(engine.getPlayer(0).living());
+        assertTrue(engine.inPlayingState());
+        assertEquals(Direction.RIGHT, mover.nextStep(monster));
+        mover.start();
+        final int maxTicks = 4;
+        for (int i = 0; i < maxTicks && engine.inPlayingState(); i++)
+        {
+            mover.doTick();
+        }
+        assertTrue(engine.inDiedState());
+    }
+
+    /**
+     * Does a monster find the player?
+     */
+    @Test public void testCatchPlayer()
+    {
+        PathFindingMonsterMover mover =
+            new PathFindingMonsterMover(engine, new Random(1));
+        mover.start();
+        final int maxTicks = 6;
+        for (int i = 0; i < maxTicks && engine.inPlayingState(); i++)
+        {
+            mover.doTick();
+        }
+        assertTrue(engine.inDiedState());
+    }
+
+    /**
+     * Is a monster that can't reach the player left where it is?
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    @Test public void testUnreachable() throws GameLoadException
+    {
+        startGame(WALLED_IN);
+        DistanceField field = new DistanceField(board);
+        field.setSource(board.position(3, 2));
+        Direction dir = field.stepTowardsSource(board.position(1, 2),
+                new Random(1));
+        assertNull(dir);
+    }
+}
@@ -0,0 +1,114 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the viewport following the player on large boards.
+ *
+ * @version $Id$
+ */
+public class ViewportTest
+{
+
+    /**
+     * Size of the (square) board used, in cells.
+     */
+    private static final int BOARD = 1000;
+
+    /**
+     * Distance between two cells, in pixels.
+     */
+    private static final int PITCH = 10;
+
+    /**
+     * Size of the (square) window used, in pixels.
+     */
+    private static final int WINDOW = 205;
+
+    /**
+     * The viewport under test.
+     */
+    private Viewport viewport;
+
+    /**
+     * Create a viewport on a large board.
+     */
+    @Before public void setUp()
+    {
+        viewport = new Viewport();
+        assertTrue(viewport.resize(WINDOW, WINDOW, PITCH, BOARD, BOARD));
+    }
+
+    /**
+     * Are partially visible cells part of the viewport,
+     * and is a small board shown completely?
+     */
+    @Test public void testResize()
+    {
+        final int visible = 21;
+        assertEquals(visible, viewport.getColumns());
+        assertEquals(visible, viewport.getRows());
+        assertFalse(viewport.resize(WINDOW, WINDOW, PITCH, BOARD, BOARD));
+
+        final int small = 5;
+        assertTrue(viewport.resize(WINDOW, WINDOW, PITCH, small, small));
+        assertEquals(small, viewport.getColumns());
+        assertFalse(viewport.follow(small - 1, small - 1));
+        assertEquals(0, viewport.getLeft());
+    }
+
+    /**
+     * Does the viewport only scroll once the followed cell gets within
+     * the margin, and does it then center that cell?
+     */
+    @Test public void testFollow()
+    {
+        assertFalse(viewport.follow(Viewport.MARGIN, Viewport.MARGIN));
+        final int columns = viewport.getColumns();
+        final int last = columns - Viewport.MARGIN - 1;
+        assertFalse(viewport.follow(last, 0));
+        assertEquals(0, viewport.getLeft());
+
+        assertTrue(viewport.follow(last + 1, 0));
+        assertEquals(last + 1 - columns / 2, viewport.getLeft());
+        assertEquals(0, viewport.getTop());
+        assertTrue(viewport.contains(last + 1, 0));
+        assertFalse(viewport.contains(0, 0));
+    }
+
+    /**
+     * Does the viewport stay within the board, for example when the
+     * player tunnels to the opposite side?
+     */
+    @Test public void testBorders()
+    {
+        assertTrue(viewport.follow(BOARD - 1, BOARD - 1));
+        assertEquals(BOARD - viewport.getColumns(), viewport.getLeft());
+        assertEquals(BOARD - viewport.getRows(), viewport.getTop());
+        assertTrue(viewport.follow(0, BOARD - 1));
+        assertEquals(0, viewport.getLeft());
+    }
+
+    /**
+     * Does zooming change the cell size, within the available levels?
+     */
+    @Test public void testZoom()
+    {
+        final int size = viewport.cellSize();
+        assertTrue(viewport.zoomIn());
+        assertTrue(viewport.cellSize() > size);
+        while (viewport.zoomOut())
+        {
+            assertTrue(viewport.cellSize() > 0);
+        }
+        assertEquals(0, viewport.getZoom());
+        assertFalse(viewport.zoomOut());
+        assertTrue(viewport.resize(WINDOW, WINDOW,
+                viewport.cellSize() + 1, BOARD, BOARD));
+    }
+}
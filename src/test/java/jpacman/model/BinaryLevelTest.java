@@ -0,0 +1,276 @@
+package jpacman.model;
+
+import static jpacman.model.GameTestCase.assertWorld;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases for encoding and loading binary levels.
+ *
+ * @version $Id$
+ */
+public class BinaryLevelTest
+{
+
+    /**
+     * A map with tunnels, food and monsters.
+     */
+    private static final String[] MAP = {
+        "WW0WWW",
+        "WFPFMW",
+        "0F0FF0",
+        "WW0WWW"
+    };
+
+    /**
+     * The level file used by the tests, if any.
+     */
+    private File levelFile = null;
+
+    /**
+     * The text map file used by the tests, if any.
+     */
+    private File mapFile = null;
+
+    /**
+     * Remove the level and map files, if they were created.
+     */
+    @After public void tearDown()
+    {
+        if (levelFile != null)
+        {
+            assertTrue(levelFile.delete());
+        }
+        if (mapFile != null)
+        {
+            assertTrue(mapFile.delete());
+        }
+    }
+
+    /**
+     * Load a game from a binary level.
+     * @param level The encoded level.
+     * @return The game.
+     * @throws GameLoadException If the level is rejected.
+     */
+    private static Game load(byte[] level) throws GameLoadException
+    {
+        Game game = new Game(new BinaryLevel(level));
+        game.initialize();
+        return game;
+    }
+
+    /**
+     * Does a level decode to the map it was encoded from?
+     * @throws GameLoadException If the level is rejected.
+     */
+    @Test public void testRoundTrip() throws GameLoadException
+    {
+        byte[] level = BinaryLevel.encode(MAP);
+        assertTrue(BinaryLevel.isBinary(ByteBuffer.wrap(level)));
+        assertWorld(MAP, load(level));
+    }
+
+    /**
+     * Are long runs stored compactly, and decoded correctly?
+     * @throws GameLoadException If the level is rejected.
+     */
+    @Test public void testLongRuns() throws GameLoadException
+    {
+        final int width = 1000;
+        char[] walls = new char[width];
+        Arrays.fill(walls, Guest.WALL_TYPE);
+        char[] middle = new char[width];
+        Arrays.fill(middle, Guest.FOOD_TYPE);
+        middle[width / 2] = Guest.PLAYER_TYPE;
+        String[] map = {new String(walls), new String(middle),
+            new String(walls)};
+        byte[] level = BinaryLevel.encode(map);
+        final int maxSize = 64;
+        assertTrue(level.length < maxSize);
+        assertWorld(map, load(level));
+    }
+
+    /**
+     * Are damaged levels rejected before anything is built?
+     */
+    @Test public void testChecksum()
+    {
+        byte[] level = BinaryLevel.encode(MAP);
+        level[BinaryLevel.HEADER_SIZE]++;
+        assertRejected(level, "Checksum mismatch in binary level.");
+    }
+
+    /**
+     * Are levels whose header doesn't match the cells rejected?
+     */
+    @Test public void testCounts()
+    {
+        byte[] level = BinaryLevel.encode(MAP);
+        // the number of monsters is the sixth int of the header.
+        final int monsters = 5 * 4 + 3;
+        level[monsters]++;
+        fixChecksum(level);
+        assertRejected(level, "Guest counts don't match binary level header.");
+    }
+
+    /**
+     * Are levels of a later version rejected?
+     */
+    @Test public void testVersion()
+    {
+        byte[] level = BinaryLevel.encode(MAP);
+        final int version = 4 + 3;
+        level[version]++;
+        fixChecksum(level);
+        assertRejected(level, "Unsupported binary level version: 2");
+    }
+
+    /**
+     * Is a binary level file recognized and loaded by Game(File)?
+     * @throws IOException If the file can't be written.
+     * @throws GameLoadException If the level is rejected.
+     */
+    @Test public void testLevelFile() throws IOException, GameLoadException
+    {
+        levelFile = File.createTempFile("jpacman", ".lvl");
+        FileOutputStream out = new FileOutputStream(levelFile);
+        try
+        {
+            out.write(BinaryLevel.encode(MAP));
+        } finally
+        {
+            out.close();
+        }
+        Game game = new Game(levelFile);
+        game.initialize();
+        assertWorld(MAP, game);
+        game.reInitialize();
+        assertWorld(MAP, game);
+    }
+
+    /**
+     * Does the converter stream a text map file into the same level as
+     * encoding the map in memory?
+     * @throws IOException If the files can't be written or read.
+     * @throws GameLoadException If the level is rejected.
+     */
+    @Test public void testConvert() throws IOException, GameLoadException
+    {
+        mapFile = File.createTempFile("jpacman", ".txt");
+        FileWriter text = new FileWriter(mapFile);
+        try
+        {
+            for (String row : MAP)
+            {
+                text.write(row + "\n");
+            }
+        } finally
+        {
+            text.close();
+        }
+        levelFile = File.createTempFile("jpacman", ".lvl");
+        BinaryLevel.main(new String[] {mapFile.getPath(),
+                levelFile.getPath()});
+
+        byte[] level = new byte[(int) levelFile.length()];
+        DataInputStream in =
+            new DataInputStream(new FileInputStream(levelFile));
+        try
+        {
+            in.readFully(level);
+        } finally
+        {
+            in.close();
+        }
+        assertArrayEquals(BinaryLevel.encode(MAP), level);
+        BinaryLevel.Encoder encoder =
+            new BinaryLevel.Encoder(new MappedWorld(mapFile));
+        assertEquals(level.length, encoder.size());
+        assertWorld(MAP, load(level));
+    }
+
+    /**
+     * Is a world loaded from a binary level recorded as it is, and one
+     * loaded from a text map encoded into the same bytes?
+     * @throws IOException If the recording can't be written.
+     * @throws GameLoadException If the level is rejected.
+     */
+    @Test public void testRecordLevel() throws IOException, GameLoadException
+    {
+        byte[] level = BinaryLevel.encode(MAP);
+        Game binary = new Game(new BinaryLevel(level));
+        assertArrayEquals(level, recordedLevel(binary));
+        assertArrayEquals(level, recordedLevel(new Game(MAP)));
+    }
+
+    /**
+     * Start recording a game, and take the level from the recording.
+     * @param game The game, not initialized yet.
+     * @return The level at the start of the recording.
+     * @throws IOException If the recording can't be written.
+     * @throws GameLoadException If the game's world can't be loaded.
+     */
+    private static byte[] recordedLevel(Game game)
+        throws IOException, GameLoadException
+    {
+        Engine engine = new Engine(game);
+        engine.initialize();
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        engine.startRecording(recording);
+        engine.stopRecording();
+        ByteBuffer buf = ByteBuffer.wrap(recording.toByteArray());
+        // skip the magic number, version and seed.
+        final int levelLength = 4 + 4 + 8;
+        byte[] level = new byte[buf.getInt(levelLength)];
+        buf.position(levelLength + 4);
+        buf.get(level);
+        assertEquals(0, buf.remaining());
+        return level;
+    }
+
+    /**
+     * Recompute the checksum of a modified level.
+     * @param level The level.
+     */
+    private static void fixChecksum(byte[] level)
+    {
+        CRC32 crc = new CRC32();
+        final int end = level.length - BinaryLevel.CHECKSUM_SIZE;
+        crc.update(level, 0, end);
+        ByteBuffer.wrap(level).putInt(end, (int) crc.getValue());
+    }
+
+    /**
+     * Check that a level is rejected with the given message.
+     * @param level The encoded level.
+     * @param message The expected error message.
+     */
+    private static void assertRejected(byte[] level, String message)
+    {
+        try
+        {
+            load(level);
+            fail("Incorrect level accepted");
+        } catch (GameLoadException e)
+        {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
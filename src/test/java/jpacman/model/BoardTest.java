@@ -138,4 +138,31 @@ public class BoardTest
         //outside of the board
         assertFalse(theBoard.withinBorders(5, 10));
     }
+
+    /**
+     * Do the neighbour table of a board and the computed neighbours
+     * of a compact board agree, wrapping around the borders?
+     */
+    @Test
+    public void testNeighbours()
+    {
+        Board compact = new CompactBoard(WIDTH, HEIGHT);
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                final int pos = theBoard.position(x, y);
+                for (Direction d : Direction.values())
+                {
+                    final int expected = theBoard.position(
+                            (x + d.getDx() + WIDTH) % WIDTH,
+                            (y + d.getDy() + HEIGHT) % HEIGHT);
+                    assertEquals(expected, theBoard.neighbour(pos, d));
+                    assertEquals(expected, compact.neighbour(pos, d));
+                    assertEquals(expected, theBoard.getCell(x, y)
+                            .cellAtOffset(d.getDx(), d.getDy()).getPosition());
+                }
+            }
+        }
+    }
 }
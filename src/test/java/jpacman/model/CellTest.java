@@ -109,4 +109,37 @@ public class CellTest
         assertEquals(aBoard.getCell(0, 0), 
                 aBoard.getCell(0, HEIGHT - 1).cellAtOffset(0, 1));
     }
+
+    /**
+     * Are the guest mask and the counts per guest type kept up to date
+     * as guests come and go?
+     */
+    @Test
+    public void testOccupancy()
+    {
+        assertEquals(0, centerCell.guestMask());
+        Food food = new Food();
+        Food moreFood = new Food();
+        Monster monster = new Monster();
+        food.occupy(centerCell);
+        moreFood.occupy(centerCell);
+        monster.occupy(centerCell);
+        assertEquals(Guest.FOOD_BIT | Guest.MONSTER_BIT,
+                centerCell.guestMask());
+        assertEquals(2, centerCell.guestCount(Guest.FOOD_BIT));
+        assertEquals(1, centerCell.guestCount(Guest.MONSTER_BIT));
+        assertEquals(0, centerCell.guestCount(Guest.WALL_BIT));
+        assertEquals(moreFood, centerCell.findGuest(Guest.FOOD_BIT));
+
+        food.deoccupy();
+        assertEquals(Guest.FOOD_BIT | Guest.MONSTER_BIT,
+                centerCell.guestMask());
+        assertEquals(1, centerCell.guestCount(Guest.FOOD_BIT));
+        moreFood.deoccupy();
+        assertEquals(Guest.MONSTER_BIT, centerCell.guestMask());
+        assertEquals(null, centerCell.findGuest(Guest.FOOD_BIT));
+        monster.deoccupy();
+        assertEquals(0, centerCell.guestMask());
+        assertEquals(0, centerCell.guestCount(Guest.MONSTER_BIT));
+    }
 }
@@ -0,0 +1,262 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for applying all changes of an engine on a single
+ * game thread, through its command queue.
+ *
+ * @version $Id$
+ */
+public class CommandQueueTest extends GameTestCase
+{
+
+    /**
+     * A map in which the player is walled in, so that every move
+     * is attempted but none of them changes the board.
+     */
+    private static final String[] WALLED_IN = {
+        "WWWWW",
+        "WPWFW",
+        "WWWWW"
+    };
+
+    /**
+     * Milliseconds after which a test waiting for a failing game thread
+     * is considered hanging.
+     */
+    private static final long FAILING_TIMEOUT = 5000;
+
+    /**
+     * The engine under test.
+     */
+    private Engine engine;
+
+    /**
+     * Number of notifications received by the observer.
+     */
+    private final AtomicInteger notifications = new AtomicInteger();
+
+    /**
+     * The thread on which the observer was last notified.
+     */
+    private volatile Thread notifiedOn = null;
+
+    /**
+     * Create a started engine on the simple map, using a command queue,
+     * and observe it.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Before public void setUp() throws GameLoadException
+    {
+        engine = new Engine(getTheGame());
+        engine.initialize();
+        engine.start();
+        engine.startCommandQueue();
+        engine.addListener(new EngineAdapter() {
+            public void onChanges(ChangeEvent event)
+            {
+                notifications.incrementAndGet();
+                notifiedOn = Thread.currentThread();
+            }
+        }, EngineListener.CHANGES);
+    }
+
+    /**
+     * Stop the command queue, if still running.
+     * @throws InterruptedException If interrupted while stopping.
+     */
+    @After public void tearDown() throws InterruptedException
+    {
+        if (engine.hasCommandQueue())
+        {
+            engine.stopCommandQueue();
+        }
+    }
+
+    /**
+     * Are moves applied on the game thread, in the order submitted,
+     * with the observers notified there too?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testMovesInOrder() throws InterruptedException
+    {
+        Cell start = getThePlayer().getLocation();
+        engine.movePlayer(1, 0);
+        engine.movePlayer(0, -1);
+        engine.awaitIdle();
+        assertEquals(start.cellAtOffset(1, -1), getThePlayer().getLocation());
+        assertTrue(notifications.get() > 0);
+        assertNotSame(Thread.currentThread(), notifiedOn);
+    }
+
+    /**
+     * Are undos applied after the quit submitted before them?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testQuitAndUndo() throws InterruptedException
+    {
+        Cell start = getThePlayer().getLocation();
+        engine.movePlayer(1, 0);
+        engine.quit();
+        engine.undoLastMove();
+        engine.awaitIdle();
+        assertTrue(engine.inHaltedState());
+        assertEquals(start, getThePlayer().getLocation());
+    }
+
+    /**
+     * Are moves from many threads all applied, with the observers
+     * notified once per batch rather than once per move?
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Test public void testConcurrentSubmitters()
+        throws InterruptedException, GameLoadException
+    {
+        engine.stopCommandQueue();
+        engine = new Engine(new Game(WALLED_IN));
+        engine.initialize();
+        engine.start();
+        engine.startCommandQueue();
+        notifications.set(0);
+        engine.addListener(new EngineAdapter() {
+            public void onChanges(ChangeEvent event)
+            {
+                notifications.incrementAndGet();
+            }
+        }, EngineListener.CHANGES);
+
+        // hold up the game thread, so that all moves pile up.
+        final CountDownLatch release = new CountDownLatch(1);
+        engine.submit(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final long before = engine.getVersion();
+        final int threads = 4;
+        final int moves = 250;
+        Thread[] submitters = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            submitters[t] = new Thread(new Runnable() {
+                public void run()
+                {
+                    for (int i = 0; i < moves; i++)
+                    {
+                        engine.movePlayer(1, 0);
+                    }
+                }
+            });
+            submitters[t].start();
+        }
+        for (Thread t : submitters)
+        {
+            t.join();
+        }
+        release.countDown();
+        engine.awaitIdle();
+
+        final int commands = threads * moves + 1;
+        final int batches = (commands + CommandQueue.MAX_BATCH - 1)
+            / CommandQueue.MAX_BATCH;
+        assertEquals(before + threads * moves, engine.getVersion());
+        assertTrue(notifications.get() > 0);
+        assertTrue(notifications.get() <= batches);
+    }
+
+    /**
+     * Do problems in a command show up when waiting, without
+     * stopping later commands from being applied?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testFailingCommand() throws InterruptedException
+    {
+        Cell start = getThePlayer().getLocation();
+        engine.submit(new Runnable() {
+            public void run()
+            {
+                throw new IllegalArgumentException("failing on purpose");
+            }
+        });
+        engine.movePlayer(1, 0);
+        try
+        {
+            engine.awaitIdle();
+            fail("Failing command not reported");
+        } catch (IllegalStateException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(start.cellAtOffset(1, 0), getThePlayer().getLocation());
+    }
+
+    /**
+     * Do problems in a listener show up when waiting, without stopping
+     * the game thread from applying later commands?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test(timeout = FAILING_TIMEOUT)
+    public void testFailingListener() throws InterruptedException
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        engine.addListener(new EngineAdapter() {
+            public void onChanges(ChangeEvent event)
+            {
+                if (calls.getAndIncrement() == 0)
+                {
+                    throw new IllegalArgumentException("failing on purpose");
+                }
+            }
+        }, EngineListener.CHANGES);
+        Cell start = getThePlayer().getLocation();
+        engine.movePlayer(1, 0);
+        try
+        {
+            engine.awaitIdle();
+            fail("Failing listener not reported");
+        } catch (IllegalStateException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        engine.movePlayer(-1, 0);
+        engine.awaitIdle();
+        assertEquals(start, getThePlayer().getLocation());
+        assertEquals(2, calls.get());
+    }
+
+    /**
+     * Are changes still queued applied when the queue is stopped,
+     * and are changes applied directly afterwards?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testStop() throws InterruptedException
+    {
+        Cell start = getThePlayer().getLocation();
+        engine.movePlayer(1, 0);
+        engine.stopCommandQueue();
+        assertFalse(engine.hasCommandQueue());
+        assertEquals(start.cellAtOffset(1, 0), getThePlayer().getLocation());
+        engine.movePlayer(-1, 0);
+        assertEquals(start, getThePlayer().getLocation());
+    }
+}
@@ -0,0 +1,144 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the compact board, which only creates cells
+ * for positions that are actually in use.
+ *
+ * @version $Id$
+ */
+public class CompactBoardTest
+{
+
+    /**
+     * The width & height of the board to be used.
+     */
+    private static final int WIDTH = 5, HEIGHT = 10;
+
+    /**
+     * The board to be used in the tests.
+     */
+    private CompactBoard theBoard;
+
+    /**
+     * Create a fresh compact board for each test case.
+     */
+    @Before
+    public void setUp()
+    {
+        theBoard = new CompactBoard(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Cells obtained should have the right coordinates,
+     * and be the same upon a second request.
+     */
+    @Test
+    public void testGettingCells()
+    {
+        assertEquals(0, theBoard.cellsInUse());
+        Cell aCell = theBoard.getCell(WIDTH - 1, HEIGHT - 1);
+        assertEquals(WIDTH - 1, aCell.getX());
+        assertEquals(HEIGHT - 1, aCell.getY());
+        assertSame(aCell, theBoard.getCell(WIDTH - 1, HEIGHT - 1));
+        assertEquals(1, theBoard.cellsInUse());
+        assertTrue(theBoard.consistentBoardCellAssociation());
+    }
+
+    /**
+     * Static content can be inspected without creating cells,
+     * and is turned into guests once a cell is needed.
+     */
+    @Test
+    public void testStaticContent()
+    {
+        assertTrue(theBoard.placeStatic(Guest.WALL_TYPE, 0, 0));
+        assertTrue(theBoard.placeStatic(Guest.FOOD_TYPE, 1, 0));
+        assertEquals(Guest.WALL_TYPE, theBoard.guestCodes(0, 0)[0]);
+        assertEquals(Guest.FOOD_TYPE, theBoard.guestCodes(1, 0)[0]);
+        assertEquals(Guest.EMPTY_TYPE, theBoard.guestCodes(2, 0)[0]);
+        assertEquals(0, theBoard.cellsInUse());
+
+        assertTrue(theBoard.getGuests(1, 0).get(0) instanceof Food);
+        assertTrue(theBoard.getCell(0, 0).getGuests().get(0) instanceof Wall);
+        assertEquals(Guest.FOOD_TYPE, theBoard.guestCodes(1, 0)[0]);
+        assertFalse(theBoard.placeStatic(Guest.WALL_TYPE, 1, 0));
+        assertTrue(theBoard.consistentBoardCellAssociation());
+    }
+
+    /**
+     * Snapshots should not create cells.
+     */
+    @Test
+    public void testSnapshot()
+    {
+        assertTrue(theBoard.placeStatic(Guest.WALL_TYPE, 0, 0));
+        assertTrue(theBoard.placeStatic(Guest.FOOD_TYPE, 1, 0));
+        new Player().occupy(theBoard.getCell(2, 0));
+        byte[] buffer = new byte[WIDTH];
+        theBoard.snapshot(buffer, 0, 0, WIDTH, 1);
+        assertEquals(Guest.WALL_BIT, buffer[0]);
+        assertEquals(Guest.FOOD_BIT, buffer[1]);
+        assertEquals(Guest.PLAYER_BIT, buffer[2]);
+        assertEquals(0, buffer[WIDTH - 1]);
+        assertEquals(1, theBoard.cellsInUse());
+    }
+
+    /**
+     * The index of created cells should survive growing.
+     */
+    @Test
+    public void testManyCells()
+    {
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                theBoard.getCell(x, y);
+            }
+        }
+        assertEquals(WIDTH * HEIGHT, theBoard.cellsInUse());
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                assertEquals(x, theBoard.getCell(x, y).getX());
+                assertEquals(y, theBoard.getCell(x, y).getY());
+            }
+        }
+        assertEquals(WIDTH * HEIGHT, theBoard.cellsInUse());
+    }
+
+    /**
+     * A game played on a compact board should behave
+     * just like a game on a regular board.
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    @Test
+    public void testGameOnCompactBoard() throws GameLoadException
+    {
+        Game game = new Game(GameTestCase.SIMPLE_MAP);
+        game.setCompactBoard(true);
+        game.initialize();
+        assertTrue(game.getBoard() instanceof CompactBoard);
+        assertEquals(Guest.WALL_TYPE, game.getBoard().guestCodes(1, 0)[0]);
+
+        // eat both food elements on the left.
+        game.movePlayer(-1, 0);
+        assertEquals(Food.DEFAULT_POINTS, game.getPlayer().getPointsEaten());
+        assertFalse(game.playerWon());
+        game.movePlayer(0, 1);
+        assertTrue(game.playerWon());
+
+        game.undoLastMove();
+        assertFalse(game.playerWon());
+        assertEquals(Guest.FOOD_TYPE, game.getBoard().guestCodes(0, 2)[0]);
+    }
+}
@@ -0,0 +1,241 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress test for the engine: viewers reading the board while the player
+ * and the monsters are moved around from other threads. Every change must
+ * be seen either completely or not at all, and readers must keep making
+ * progress under the move traffic.
+ *
+ * @version $Id$
+ */
+public class EngineConcurrencyTest
+{
+
+    /**
+     * How long readers and writers run, in milliseconds.
+     */
+    private static final long DURATION = 300;
+
+    /**
+     * Number of reading threads.
+     */
+    private static final int READERS = 3;
+
+    /**
+     * The engine under stress.
+     */
+    private Engine engine;
+
+    /**
+     * The number of monsters in the game.
+     */
+    private int monsters;
+
+    /**
+     * Set when the readers and writers should stop.
+     */
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    /**
+     * The first problem encountered by any of the threads.
+     */
+    private final AtomicReference<Throwable> failure =
+        new AtomicReference<Throwable>();
+
+    /**
+     * Number of snapshots taken by all readers together.
+     */
+    private final AtomicLong reads = new AtomicLong();
+
+    /**
+     * Number of moves done by all writers together.
+     */
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Create a started engine on the default world.
+     * @throws GameLoadException If the world can't be loaded.
+     */
+    @Before public void setUp() throws GameLoadException
+    {
+        engine = new Engine(new Game(GameLoader.DEFAULT_WORLD_MAP));
+        engine.initialize();
+        engine.start();
+        monsters = engine.getMonsters().size();
+        assertTrue(monsters > 0);
+    }
+
+    /**
+     * Take full snapshots of the board, and check that each contains
+     * a single player and all monsters.
+     */
+    private void read()
+    {
+        final int w = engine.boardWidth();
+        final int h = engine.boardHeight();
+        byte[] masks = new byte[w * h];
+        while (!done.get())
+        {
+            engine.snapshot(masks, 0, 0, w, h);
+            int players = 0;
+            int monstersSeen = 0;
+            for (byte mask : masks)
+            {
+                if ((mask & Guest.PLAYER_BIT) != 0)
+                {
+                    players++;
+                }
+                if ((mask & Guest.MONSTER_BIT) != 0)
+                {
+                    monstersSeen++;
+                }
+            }
+            assertEquals(1, players);
+            assertEquals(monsters, monstersSeen);
+            reads.incrementAndGet();
+        }
+    }
+
+    /**
+     * Move the player or the monsters around at random,
+     * restarting the game whenever it is over.
+     * @param seed Seed for the random moves.
+     * @param player True iff the player should be moved.
+     */
+    private void write(long seed, boolean player)
+    {
+        Random random = new Random(seed);
+        Direction[] dirs = Direction.values();
+        while (!done.get())
+        {
+            Direction d = dirs[random.nextInt(dirs.length)];
+            if (player)
+            {
+                engine.movePlayer(d.getDx(), d.getDy());
+            } else
+            {
+                // the game may be restarted between choosing and moving.
+                engine.updateLock().lock();
+                try
+                {
+                    List<Monster> all = engine.getMonsters();
+                    engine.moveMonster(all.get(random.nextInt(all.size())),
+                            d.getDx(), d.getDy());
+                } finally
+                {
+                    engine.updateLock().unlock();
+                }
+            }
+            writes.incrementAndGet();
+            engine.updateLock().lock();
+            try
+            {
+                if (engine.inGameOverState())
+                {
+                    engine.start(); // to starting
+                    engine.start(); // to playing
+                }
+            } finally
+            {
+                engine.updateLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Start a thread, recording the first problem it runs into.
+     * @param task What the thread should do.
+     * @return The started thread.
+     */
+    private Thread spawn(final Runnable task)
+    {
+        Thread t = new Thread(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                } catch (Throwable e)
+                {
+                    failure.compareAndSet(null, e);
+                    done.set(true);
+                }
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    /**
+     * Do readers only ever see complete moves, and do they keep making
+     * progress while the player and monsters are moved concurrently?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test public void testReadersUnderMoveTraffic()
+        throws InterruptedException
+    {
+        Thread[] threads = new Thread[READERS + 2];
+        for (int i = 0; i < READERS; i++)
+        {
+            threads[i] = spawn(new Runnable() {
+                public void run()
+                {
+                    read();
+                }
+            });
+        }
+        threads[READERS] = spawn(new Runnable() {
+            public void run()
+            {
+                write(1, true);
+            }
+        });
+        threads[READERS + 1] = spawn(new Runnable() {
+            public void run()
+            {
+                write(2, false);
+            }
+        });
+        Thread.sleep(DURATION);
+        done.set(true);
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+        if (failure.get() != null)
+        {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(reads.get() > 0);
+        assertTrue(writes.get() > 0);
+    }
+
+    /**
+     * Does the version reflect every change, and only changes?
+     */
+    @Test public void testVersion()
+    {
+        final long start = engine.getVersion();
+        engine.boardWidth();
+        engine.getFoodEaten();
+        assertEquals(start, engine.getVersion());
+        engine.quit();
+        assertEquals(start + 1, engine.getVersion());
+        engine.movePlayer(1, 0); // ignored while halted.
+        assertEquals(start + 1, engine.getVersion());
+        engine.start();
+        assertEquals(start + 2, engine.getVersion());
+    }
+}
@@ -3,6 +3,10 @@ package jpacman.model;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +30,11 @@ public class EngineTest extends GameTestCase
      */
     private Engine theEngine;
 
+    /**
+     * Milliseconds after which reading the state is considered blocked.
+     */
+    private static final long LOCK_TIMEOUT = 5000;
+
 
     /**
      * Set up an Engine, making use of the Game object
@@ -52,6 +61,100 @@ public class EngineTest extends GameTestCase
         assertTrue(theEngine.inPlayingState());    
     }
 
+    /**
+     * Does a frame hand out the changed cells, the player's position and
+     * snapshots of the board, all of the same version?
+     */
+    @Test
+    public void testReadFrame()
+    {
+        theEngine.setTrackChanges(true);
+        theEngine.start();
+        final int from = getThePlayer().getLocation().getPosition();
+        movePlayerToCell(getEmptyCell());
+        final int to = getEmptyCell().getPosition();
+        final Frame[] read = new Frame[1];
+        theEngine.readFrame(new FrameReader() {
+            public void readFrame(Frame frame)
+            {
+                read[0] = frame;
+                assertEquals(theEngine.boardWidth(), frame.getWidth());
+                assertEquals(theEngine.boardHeight(), frame.getHeight());
+                assertEquals(to, frame.getPlayerPosition());
+                assertEquals(theEngine.getPlayerLastDx(),
+                        frame.getPlayerLastDx());
+                int[] changes = frame.getChangedCells().clone();
+                Arrays.sort(changes);
+                assertEquals(2, changes.length);
+                assertEquals(Math.min(from, to), changes[0]);
+                assertEquals(Math.max(from, to), changes[1]);
+                byte[] masks = new byte[2];
+                frame.snapshot(new int[] {from, to}, 2, masks);
+                assertEquals(0, masks[0] & Guest.PLAYER_BIT);
+                assertTrue((masks[1] & Guest.PLAYER_BIT) != 0);
+            }
+        });
+        assertEquals(0, theEngine.takeChangedCells().length);
+
+        // the frame can only be used while it is being read.
+        assumeTrue(Frame.class.desiredAssertionStatus());
+        boolean assertionFailed = false;
+        try
+        {
+            read[0].getGeneration();
+        }
+        catch (AssertionError ae)
+        {
+            assertionFailed = true;
+        }
+        assertTrue(assertionFailed);
+    }
+
+    /**
+     * Can the state be read while another thread holds the update lock,
+     * and does it follow the transitions?
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Test(timeout = LOCK_TIMEOUT)
+    public void testStateWithoutLock() throws InterruptedException
+    {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            public void run()
+            {
+                theEngine.updateLock().lock();
+                try
+                {
+                    locked.countDown();
+                    release.await();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                } finally
+                {
+                    theEngine.updateLock().unlock();
+                }
+            }
+        });
+        holder.start();
+        locked.await();
+        assertEquals(Engine.State.STARTING, theEngine.getState());
+        assertTrue(theEngine.inStartingState());
+        assertFalse(theEngine.inGameOverState());
+        release.countDown();
+        holder.join();
+
+        theEngine.start();
+        assertEquals(Engine.State.PLAYING, theEngine.getState());
+        theEngine.quit();
+        assertEquals(Engine.State.HALTED, theEngine.getState());
+        theEngine.start();
+        killPlayerByPlayerMove();
+        assertEquals(Engine.State.DIED, theEngine.getState());
+        assertTrue(theEngine.inGameOverState());
+    }
+
     /**
      * Example test case -- other test cases to be added by yourself!
      */
@@ -251,6 +354,9 @@ public class EngineTest extends GameTestCase
     @Test
     public void testStateTransitions3()
     {
+        // undo's preconditions are only checked if assertion
+        // checking is enabled:
+        assumeTrue(Engine.class.desiredAssertionStatus());
         //Undo from starting state
         boolean assertionFailed = false;
         try
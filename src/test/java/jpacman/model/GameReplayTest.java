@@ -0,0 +1,262 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for recording games, and replaying them.
+ *
+ * @version $Id$
+ */
+public class GameReplayTest
+{
+
+    /**
+     * Seed of the recorded game.
+     */
+    private static final long SEED = 42L;
+
+    /**
+     * Number of changes attempted in the recorded game.
+     */
+    private static final int STEPS = 2000;
+
+    /**
+     * The engine whose game is recorded.
+     */
+    private Engine engine;
+
+    /**
+     * The recording.
+     */
+    private final ByteArrayOutputStream recording =
+        new ByteArrayOutputStream();
+
+    /**
+     * Snapshots of the recorded board, by tick.
+     */
+    private final Map<Integer, byte[]> boards = new HashMap<Integer, byte[]>();
+
+    /**
+     * Food eaten in the recorded game, by tick.
+     */
+    private final Map<Integer, Integer> food = new HashMap<Integer, Integer>();
+
+    /**
+     * Version of the engine when the recording started.
+     */
+    private long firstVersion;
+
+    /**
+     * Create an engine on the default world, and start recording it.
+     * @throws GameLoadException If the world can't be loaded.
+     * @throws IOException If the recording can't be started.
+     */
+    @Before public void setUp() throws GameLoadException, IOException
+    {
+        engine = new Engine(new Game(GameLoader.DEFAULT_WORLD_MAP), SEED);
+        engine.initialize();
+        engine.startRecording(recording);
+        firstVersion = engine.getVersion();
+        snapshot();
+    }
+
+    /**
+     * Remember the board and the food eaten at the current tick,
+     * which is the number of changes since the recording started.
+     */
+    private void snapshot()
+    {
+        byte[] board = new byte[engine.boardWidth() * engine.boardHeight()];
+        engine.snapshot(board, 0, 0, engine.boardWidth(),
+                engine.boardHeight());
+        final int tick = (int) (engine.getVersion() - firstVersion);
+        boards.put(tick, board);
+        food.put(tick, engine.getFoodEaten());
+    }
+
+    /**
+     * Play a game at random, with the engine's randomizer, halting,
+     * undoing and restarting every now and then.
+     * @return The recording.
+     * @throws IOException If the recording can't be written.
+     */
+    private byte[] playAndRecord() throws IOException
+    {
+        Random random = engine.getRandomizer();
+        Direction[] dirs = Direction.values();
+        engine.start();
+        snapshot();
+        for (int i = 0; i < STEPS; i++)
+        {
+            Direction d = dirs[random.nextInt(dirs.length)];
+            final int choice = random.nextInt(100);
+            if (engine.inStartingState())
+            {
+                engine.start();
+            } else if (engine.inGameOverState() || engine.inHaltedState())
+            {
+                if (choice < 30)
+                {
+                    engine.undoLastMove();
+                } else
+                {
+                    engine.start();
+                }
+            } else if (choice < 40)
+            {
+                engine.movePlayer(d.getDx(), d.getDy());
+            } else if (choice < 98)
+            {
+                List<Monster> monsters = engine.getMonsters();
+                engine.moveMonster(
+                        monsters.get(random.nextInt(monsters.size())),
+                        d.getDx(), d.getDy());
+            } else
+            {
+                engine.quit();
+            }
+            snapshot();
+        }
+        engine.stopRecording();
+        assertFalse(engine.isRecording());
+        return recording.toByteArray();
+    }
+
+    /**
+     * Does replaying the whole recording end where the game ended?
+     * @throws IOException If the recording can't be written.
+     * @throws GameLoadException If the recording can't be read.
+     */
+    @Test public void testReplayToEnd() throws IOException, GameLoadException
+    {
+        GameReplay replay = new GameReplay(playAndRecord());
+        final int ticks = (int) (engine.getVersion() - firstVersion);
+        assertEquals(SEED, replay.getSeed());
+        assertEquals(ticks, replay.length());
+        assertEquals(0, replay.getTick());
+        assertTrue(replay.getEngine().inStartingState());
+
+        replay.playToEnd();
+        assertEquals(ticks, replay.getTick());
+        assertFalse(replay.step());
+        assertBoard(ticks, replay.getEngine());
+        assertEquals(engine.inDiedState(), replay.getEngine().inDiedState());
+        assertEquals(engine.inHaltedState(),
+                replay.getEngine().inHaltedState());
+    }
+
+    /**
+     * Can the replay be moved back and forth to any tick?
+     * @throws IOException If the recording can't be written.
+     * @throws GameLoadException If the recording can't be read.
+     */
+    @Test public void testSeek() throws IOException, GameLoadException
+    {
+        GameReplay replay = new GameReplay(playAndRecord());
+        List<Integer> ticks = new ArrayList<Integer>(boards.keySet());
+        Collections.shuffle(ticks, new Random(SEED));
+        for (int tick : ticks.subList(0, Math.min(ticks.size(), 50)))
+        {
+            replay.seek(tick);
+            assertEquals(tick, replay.getTick());
+            assertBoard(tick, replay.getEngine());
+        }
+        replay.seek(0);
+        assertTrue(replay.getEngine().inStartingState());
+        assertBoard(0, replay.getEngine());
+    }
+
+    /**
+     * Is a tick cut off by the end of the recording ignored?
+     * @throws IOException If the recording can't be written.
+     * @throws GameLoadException If the recording can't be read.
+     */
+    @Test public void testCutOff() throws IOException, GameLoadException
+    {
+        engine.start();
+        engine.movePlayer(1, 0);
+        engine.stopRecording();
+        byte[] whole = recording.toByteArray();
+        assertEquals(2, new GameReplay(whole).length());
+        byte[] cut = Arrays.copyOf(whole, whole.length - 1);
+        assertEquals(1, new GameReplay(cut).length());
+    }
+
+    /**
+     * Are incorrect recordings rejected?
+     * @throws IOException If the recording can't be written.
+     */
+    @Test public void testIncorrectRecording() throws IOException
+    {
+        engine.start();
+        engine.stopRecording();
+        byte[] good = recording.toByteArray();
+
+        byte[] noMagic = good.clone();
+        noMagic[0]++;
+        assertRejected(noMagic);
+
+        byte[] badOp = Arrays.copyOf(good, good.length + 1);
+        badOp[good.length] = Byte.MAX_VALUE;
+        assertRejected(badOp);
+
+        assertRejected(Arrays.copyOf(good, good.length / 2));
+    }
+
+    /**
+     * Do engines with the same seed take the same random decisions?
+     * @throws GameLoadException If the world can't be loaded.
+     */
+    @Test public void testSeed() throws GameLoadException
+    {
+        Engine other = new Engine(new Game(GameLoader.DEFAULT_WORLD_MAP),
+                SEED);
+        assertEquals(SEED, other.getSeed());
+        assertEquals(engine.getRandomizer().nextLong(),
+                other.getRandomizer().nextLong());
+    }
+
+    /**
+     * @param tick A tick of the recorded game.
+     * @param e The engine to be compared with the recorded game.
+     */
+    private void assertBoard(int tick, Engine e)
+    {
+        byte[] board = new byte[e.boardWidth() * e.boardHeight()];
+        e.snapshot(board, 0, 0, e.boardWidth(), e.boardHeight());
+        assertArrayEquals("Board at tick " + tick, boards.get(tick), board);
+        assertEquals(food.get(tick).intValue(), e.getFoodEaten());
+    }
+
+    /**
+     * @param data An incorrect recording.
+     */
+    private void assertRejected(byte[] data)
+    {
+        try
+        {
+            new GameReplay(data);
+            fail("Incorrect recording accepted");
+        } catch (GameLoadException e)
+        {
+            assertTrue(e.getMessage().length() > 0);
+        }
+    }
+}
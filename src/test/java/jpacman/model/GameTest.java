@@ -5,6 +5,7 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -114,4 +115,64 @@ public class GameTest extends GameTestCase
         getTheGame().movePlayer(1, 0);
         assertTrue(getTheGame().canUndo());
     }
+
+    /**
+     * Are the cells changed by moves reported exactly once,
+     * and does reloading the world start a new generation?
+     */
+    @Test
+    public void testChangedCells()
+    {
+        final int width = getTheGame().boardWidth();
+        getTheGame().setTrackChanges(true);
+        assertEquals(0, getTheGame().takeChangedCells().length);
+
+        // move right to the empty cell, and back again.
+        getTheGame().movePlayer(1, 0);
+        getTheGame().movePlayer(-1, 0);
+        int[] changes = getTheGame().takeChangedCells();
+        Arrays.sort(changes);
+        final int playerPos = getPlayerCell().getY() * width
+            + getPlayerCell().getX();
+        assertEquals(2, changes.length);
+        assertEquals(playerPos, changes[0]);
+        assertEquals(playerPos + 1, changes[1]);
+        assertEquals(0, getTheGame().takeChangedCells().length);
+
+        // bumping into a wall only changes the player's direction.
+        getTheGame().movePlayer(0, -1);
+        changes = getTheGame().takeChangedCells();
+        assertEquals(1, changes.length);
+        assertEquals(playerPos, changes[0]);
+
+        final int generation = getTheGame().getGeneration();
+        getTheGame().reInitialize();
+        assertEquals(generation + 1, getTheGame().getGeneration());
+        assertEquals(0, getTheGame().takeChangedCells().length);
+    }
+
+    /**
+     * Does a snapshot contain the guest masks of the requested cells?
+     */
+    @Test
+    public void testSnapshot()
+    {
+        final Board board = getTheGame().getBoard();
+        final int w = 2, h = 3;
+        byte[] buffer = new byte[w * h];
+        board.snapshot(buffer, 1, 1, w, h);
+        assertEquals(Guest.PLAYER_BIT, buffer[0]);
+        assertEquals(0, buffer[1]);
+        assertEquals(Guest.MONSTER_BIT, buffer[2]);
+        assertEquals(0, buffer[3]);
+        assertEquals(Guest.WALL_BIT, buffer[4]);
+        assertEquals(Guest.MONSTER_BIT, buffer[w + w + 1]);
+
+        final int width = board.getWidth();
+        int[] positions = {getPlayerCell().getY() * width + 1, 0, width};
+        board.snapshot(positions, positions.length, buffer);
+        assertEquals(Guest.PLAYER_BIT, buffer[0]);
+        assertEquals(0, buffer[1]);
+        assertEquals(Guest.FOOD_BIT, buffer[2]);
+    }
 }
@@ -1,7 +1,9 @@
 package jpacman.model;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Before;
 
@@ -214,4 +216,39 @@ public class GameTestCase
     {
         return emptyCell;
     }
+
+    /**
+     * Check that a game contains exactly the given map, with the players
+     * in the same places, whatever the map was loaded from.
+     * @param map The expected map.
+     * @param game The game to be checked.
+     */
+    static void assertWorld(String[] map, Game game)
+    {
+        Game expected = new Game(map);
+        try
+        {
+            expected.initialize();
+        } catch (GameLoadException e)
+        {
+            fail("Incorrect expected map " + e);
+        }
+        assertEquals(map.length, game.boardHeight());
+        assertEquals(map[0].length(), game.boardWidth());
+        for (int y = 0; y < map.length; y++)
+        {
+            for (int x = 0; x < map[0].length(); x++)
+            {
+                assertArrayEquals(expected.getGuestCodes(x, y),
+                        game.getGuestCodes(x, y));
+            }
+        }
+        assertEquals(expected.getMonsters().size(), game.getMonsters().size());
+        assertEquals(expected.playerCount(), game.playerCount());
+        for (int i = 0; i < expected.playerCount(); i++)
+        {
+            assertEquals(expected.getPlayer(i).getLocation().getPosition(),
+                    game.getPlayer(i).getLocation().getPosition());
+        }
+    }
 }
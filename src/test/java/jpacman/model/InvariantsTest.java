@@ -0,0 +1,158 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for checking the invariants of games while they are played,
+ * after every move, once every so many moves, or never.
+ *
+ * @version $Id$
+ */
+public class InvariantsTest extends GameTestCase
+{
+
+    /**
+     * Number of moves between sampled checks in these tests.
+     */
+    private static final int PERIOD = 4;
+
+    /**
+     * The mode configured before the test.
+     */
+    private Invariants.Mode savedMode;
+
+    /**
+     * The period configured before the test.
+     */
+    private int savedPeriod;
+
+    /**
+     * Remember the configuration, to be restored after the test.
+     */
+    @Before public void saveConfiguration()
+    {
+        savedMode = Invariants.getMode();
+        savedPeriod = Invariants.getPeriod();
+    }
+
+    /**
+     * Restore the configuration.
+     */
+    @After public void restoreConfiguration()
+    {
+        Invariants.configure(savedMode, savedPeriod);
+    }
+
+    /**
+     * Break the invariant of a cell the player doesn't visit, by putting
+     * a guest in it that doesn't know it is there.
+     */
+    private void corruptBoard()
+    {
+        getTheGame().getBoard().getCell(0, 0).getGuests().add(new Food());
+        assertFalse(getTheGame().fullInvariant());
+    }
+
+    /**
+     * Move the player back and forth between its cell and the empty cell.
+     * @param moves The number of moves to be made.
+     */
+    private void moveBackAndForth(int moves)
+    {
+        for (int i = 0; i < moves; i++)
+        {
+            final int dx = i % 2 == 0 ? 1 : -1;
+            getTheGame().movePlayer(dx, 0);
+        }
+    }
+
+    /**
+     * Does the full invariant hold for a fresh game?
+     */
+    @Test public void testFreshGame()
+    {
+        assertTrue(getTheGame().fullInvariant());
+        Invariants.configure(Invariants.Mode.FULL, 1);
+        moveBackAndForth(PERIOD);
+        getTheGame().undoLastMove();
+    }
+
+    /**
+     * Is a broken game detected right after the next move if checks
+     * are full?
+     */
+    @Test public void testFull()
+    {
+        Invariants.configure(Invariants.Mode.FULL, PERIOD);
+        corruptBoard();
+        try
+        {
+            moveBackAndForth(1);
+            fail("broken board not detected");
+        } catch (AssertionError ae)
+        {
+            assertTrue(ae.getMessage().startsWith("Invariant violated"));
+        }
+    }
+
+    /**
+     * Is a broken game only detected once a sampled check is due?
+     */
+    @Test public void testSampled()
+    {
+        Invariants.configure(Invariants.Mode.SAMPLED, PERIOD);
+        assertEquals(PERIOD, Invariants.getPeriod());
+        corruptBoard();
+        moveBackAndForth(PERIOD - 1);
+        try
+        {
+            moveBackAndForth(1);
+            fail("broken board not detected");
+        } catch (AssertionError ae)
+        {
+            assertTrue(ae.getMessage().startsWith("Invariant violated"));
+        }
+    }
+
+    /**
+     * Do rejected monster moves count for sampled checks, just like
+     * rejected player moves?
+     */
+    @Test public void testSampledRejectedMoves()
+    {
+        Invariants.configure(Invariants.Mode.SAMPLED, PERIOD);
+        corruptBoard();
+        final Monster monster = getTheMonster();
+        // the monster can't go down, into the wall.
+        getTheGame().movePlayer(0, -1);
+        assertNull(getTheGame().moveMonster(monster, 0, 1));
+        assertFalse(getTheGame().stepMonster(monster, 0, 1));
+        try
+        {
+            getTheGame().movePlayer(0, -1);
+            fail("broken board not detected");
+        } catch (AssertionError ae)
+        {
+            assertTrue(ae.getMessage().startsWith("Invariant violated"));
+        }
+    }
+
+    /**
+     * Are games left alone if checks are off?
+     */
+    @Test public void testOff()
+    {
+        Invariants.configure(Invariants.Mode.OFF, PERIOD);
+        assertEquals(Invariants.Mode.OFF, Invariants.getMode());
+        corruptBoard();
+        moveBackAndForth(2 * PERIOD);
+    }
+}
@@ -0,0 +1,246 @@
+package jpacman.model;
+
+import static jpacman.model.GameTestCase.assertWorld;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases for reading worlds from memory mapped map files.
+ *
+ * @version $Id$
+ */
+public class MappedWorldTest
+{
+
+    /**
+     * A map with tunnels, food and monsters.
+     */
+    private static final String[] MAP = {
+        "WW0WWW",
+        "WFPFMW",
+        "0F0FF0",
+        "WW0WWW"
+    };
+
+    /**
+     * The map file used by the tests, if any.
+     */
+    private File mapFile = null;
+
+    /**
+     * Remove the map file, if it was created.
+     */
+    @After public void tearDown()
+    {
+        if (mapFile != null)
+        {
+            assertTrue(mapFile.delete());
+        }
+    }
+
+    /**
+     * Write a map file.
+     * @param content The content of the file.
+     * @return The file written.
+     * @throws IOException If the file can't be written.
+     */
+    private File writeMap(String content) throws IOException
+    {
+        mapFile = File.createTempFile("jpacman", ".txt");
+        FileOutputStream out = new FileOutputStream(mapFile);
+        try
+        {
+            out.write(content.getBytes("US-ASCII"));
+        } finally
+        {
+            out.close();
+        }
+        return mapFile;
+    }
+
+    /**
+     * @param lines The lines of a map.
+     * @param eol The line end to be used.
+     * @return The lines, each followed by the line end.
+     */
+    private static String join(String[] lines, String eol)
+    {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines)
+        {
+            result.append(line).append(eol);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Load a game from the given file content.
+     * @param content The content of the map file.
+     * @return The initialized game.
+     * @throws IOException If the file can't be written.
+     * @throws GameLoadException If the map is incorrect.
+     */
+    private Game load(String content) throws IOException, GameLoadException
+    {
+        Game game = new Game(writeMap(content));
+        game.initialize();
+        return game;
+    }
+
+    /**
+     * Are maps with Unix line ends read correctly?
+     * @throws IOException If the map file can't be written.
+     * @throws GameLoadException If the map is rejected.
+     */
+    @Test public void testNewlines() throws IOException, GameLoadException
+    {
+        assertWorld(MAP, load(join(MAP, "\n")));
+    }
+
+    /**
+     * Are maps with Windows line ends, and without a final line end,
+     * read correctly?
+     * @throws IOException If the map file can't be written.
+     * @throws GameLoadException If the map is rejected.
+     */
+    @Test public void testCarriageReturns()
+        throws IOException, GameLoadException
+    {
+        String content = join(MAP, "\r\n");
+        assertWorld(MAP, load(content.substring(0, content.length() - 2)));
+    }
+
+    /**
+     * Do chunks of the file that end halfway rows or line ends
+     * make a difference?
+     * @throws IOException If the map file can't be written.
+     * @throws GameLoadException If the map is rejected.
+     */
+    @Test public void testSmallChunks() throws IOException, GameLoadException
+    {
+        writeMap(join(MAP, "\r\n"));
+        final int maxChunk = 9;
+        for (int chunk = 1; chunk <= maxChunk; chunk++)
+        {
+            final StringBuilder read = new StringBuilder();
+            new MappedWorld(mapFile, chunk).load(new WorldBuilder() {
+                public void startWorld(int width, int height)
+                {
+                    assertEquals(MAP[0].length(), width);
+                    assertEquals(MAP.length, height);
+                }
+
+                public void addGuest(char code, int x, int y)
+                {
+                    assertEquals(MAP[y].charAt(x), code);
+                    read.append(code);
+                }
+
+                public void finishWorld()
+                {
+                    read.append('.');
+                }
+            });
+            assertEquals(join(MAP, "") + ".", read.toString());
+        }
+    }
+
+    /**
+     * Is a map with lines of different lengths rejected, leaving
+     * the game with the default world?
+     * @throws IOException If the map file can't be written.
+     */
+    @Test public void testUnequalLines() throws IOException
+    {
+        assertRejected("WPW\nF0\nWFW\n",
+                "all lines in map should be of equal length.");
+    }
+
+    /**
+     * Is a map with an unknown character rejected?
+     * @throws IOException If the map file can't be written.
+     */
+    @Test public void testIncorrectCharacter() throws IOException
+    {
+        assertRejected("WPW\nWXW\n", "Incorrect game character: X");
+    }
+
+    /**
+     * Is a map without player rejected?
+     * @throws IOException If the map file can't be written.
+     */
+    @Test public void testNoPlayer() throws IOException
+    {
+        assertRejected("WFW\nW0W\n", "No player defined.");
+    }
+
+    /**
+     * Are empty maps rejected?
+     * @throws IOException If the map file can't be written.
+     */
+    @Test public void testEmpty() throws IOException
+    {
+        assertRejected("", "Empty board not allowed");
+        assertTrue(mapFile.delete());
+        assertRejected("\nP\n", "Empty rows not permitted.");
+    }
+
+    /**
+     * Is a missing map file reported as a load problem?
+     */
+    @Test public void testMissingFile()
+    {
+        Game game = new Game(new File("thismapfiledoesnotexist"));
+        try
+        {
+            game.initialize();
+            fail("Missing map file not detected");
+        } catch (GameLoadException e)
+        {
+            assertTrue(game.initialized());
+        }
+    }
+
+    /**
+     * Does restarting a game read its map file again?
+     * @throws IOException If the map file can't be written.
+     * @throws GameLoadException If the map is rejected.
+     */
+    @Test public void testReInitialize() throws IOException, GameLoadException
+    {
+        Game game = load(join(MAP, "\n"));
+        game.movePlayer(1, 0);
+        game.reInitialize();
+        assertWorld(MAP, game);
+    }
+
+    /**
+     * Check that a map is rejected with the given message, and that the
+     * game falls back to the default world.
+     * @param content The content of the map file.
+     * @param message The expected error message.
+     * @throws IOException If the map file can't be written.
+     */
+    private void assertRejected(String content, String message)
+        throws IOException
+    {
+        Game game = new Game(writeMap(content));
+        try
+        {
+            game.initialize();
+            fail("Incorrect map accepted: " + content);
+        } catch (GameLoadException e)
+        {
+            assertEquals(message, e.getMessage());
+            assertTrue(game.initialized());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test cases for resolving moves through the table of outcomes,
+ * rather than by meeting the guests of the target cell.
+ *
+ * @version $Id$
+ */
+public class MoveResolverTest
+{
+
+    /**
+     * Number of moves attempted when comparing both ways of moving.
+     */
+    private static final int MOVES = 5000;
+
+    /**
+     * Fill a cell with a guest of each type in the mask.
+     * @param cell The cell to be filled.
+     * @param mask The guest bits of the guests to be created.
+     */
+    private void fill(Cell cell, int mask)
+    {
+        if ((mask & Guest.WALL_BIT) != 0)
+        {
+            new Wall().occupy(cell);
+        }
+        if ((mask & Guest.FOOD_BIT) != 0)
+        {
+            new Food().occupy(cell);
+        }
+        if ((mask & Guest.PLAYER_BIT) != 0)
+        {
+            new Player().occupy(cell);
+        }
+        if ((mask & Guest.MONSTER_BIT) != 0)
+        {
+            new Monster().occupy(cell);
+        }
+    }
+
+    /**
+     * @param outcome An outcome from the table.
+     * @param flag One of the outcome flags.
+     * @return True iff the flag is set.
+     */
+    private boolean has(int outcome, int flag)
+    {
+        return (outcome & flag) != 0;
+    }
+
+    /**
+     * Do the outcomes of player moves in the table agree with the
+     * meetPlayer methods of the guests?
+     */
+    @Test
+    public void testPlayerOutcomes()
+    {
+        for (int mask = 0; mask <= Move.KNOWN_BITS; mask++)
+        {
+            if ((mask & Guest.PLAYER_BIT) != 0)
+            {
+                continue; // there's only one player.
+            }
+            Board board = new Board(2, 1);
+            Player player = new Player();
+            player.occupy(board.getCell(0, 0));
+            fill(board.getCell(1, 0), mask);
+            PlayerMove move = new PlayerMove(player, board.getCell(1, 0));
+            final int outcome = MoveResolver.playerOutcome((byte) mask);
+            final String msg = "mask " + mask;
+            assertEquals(msg, move.movePossible(),
+                    has(outcome, MoveResolver.POSSIBLE));
+            assertEquals(msg, move.playerWillDie(),
+                    has(outcome, MoveResolver.DIES));
+            assertEquals(msg, move.getFoodEaten() > 0,
+                    has(outcome, MoveResolver.EATS));
+        }
+    }
+
+    /**
+     * Do the outcomes of monster moves in the table agree with the
+     * meetMonster methods of the guests?
+     */
+    @Test
+    public void testMonsterOutcomes()
+    {
+        for (int mask = 0; mask <= Move.KNOWN_BITS; mask++)
+        {
+            Board board = new Board(2, 1);
+            Monster monster = new Monster();
+            monster.occupy(board.getCell(0, 0));
+            fill(board.getCell(1, 0), mask);
+            MonsterMove move = new MonsterMove(monster, board.getCell(1, 0));
+            final int outcome = MoveResolver.monsterOutcome((byte) mask);
+            final String msg = "mask " + mask;
+            assertEquals(msg, move.movePossible(),
+                    has(outcome, MoveResolver.POSSIBLE));
+            assertEquals(msg, move.playerWillDie(),
+                    has(outcome, MoveResolver.DIES));
+        }
+    }
+
+    /**
+     * Does stepping a game through the table have exactly the same effect
+     * as moving through move objects, including what can be undone?
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Test
+    public void testStepsMatchMoves() throws GameLoadException
+    {
+        Game moved = new Game(GameLoader.DEFAULT_WORLD_MAP);
+        Game stepped = new Game(GameLoader.DEFAULT_WORLD_MAP);
+        moved.initialize();
+        stepped.initialize();
+        List<Monster> movedMonsters = moved.getMonsters();
+        List<Monster> steppedMonsters = stepped.getMonsters();
+        Random random = new Random(1);
+        Direction[] dirs = Direction.values();
+        int moves = 0;
+        while (moves < MOVES && !moved.gameOver())
+        {
+            Direction d = dirs[random.nextInt(dirs.length)];
+            final int who = random.nextInt(movedMonsters.size() + 1);
+            if (who == 0)
+            {
+                assertEquals(moved(moved.movePlayer(d.getDx(), d.getDy())),
+                        stepped.stepPlayer(d.getDx(), d.getDy()));
+            } else
+            {
+                Monster monster = movedMonsters.get(who - 1);
+                assertEquals(moved(moved.moveMonster(monster,
+                        d.getDx(), d.getDy())),
+                        stepped.stepMonster(steppedMonsters.get(who - 1),
+                        d.getDx(), d.getDy()));
+            }
+            moves++;
+            assertSameState(moved, stepped);
+        }
+        while (moved.canUndo())
+        {
+            moved.undoLastMove();
+            stepped.undoLastMove();
+            assertSameState(moved, stepped);
+        }
+        assertEquals(moved.canUndo(), stepped.canUndo());
+    }
+
+    /**
+     * @param move A move made, or null if it was rejected.
+     * @return True iff the mover actually moved.
+     */
+    private boolean moved(Move move)
+    {
+        return move != null && move.moveDone();
+    }
+
+    /**
+     * @param expected A game moved through move objects.
+     * @param actual A game stepped through the table.
+     */
+    private void assertSameState(Game expected, Game actual)
+    {
+        final int w = expected.boardWidth();
+        final int h = expected.boardHeight();
+        byte[] expectedBoard = new byte[w * h];
+        byte[] actualBoard = new byte[w * h];
+        expected.getBoard().snapshot(expectedBoard, 0, 0, w, h);
+        actual.getBoard().snapshot(actualBoard, 0, 0, w, h);
+        assertArrayEquals(expectedBoard, actualBoard);
+        assertEquals(expected.getPlayer().getPointsEaten(),
+                actual.getPlayer().getPointsEaten());
+        assertEquals(expected.playerDied(), actual.playerDied());
+        assertEquals(expected.getPlayerLastDx(), actual.getPlayerLastDx());
+        assertEquals(expected.getPlayerLastDy(), actual.getPlayerLastDy());
+    }
+}
@@ -0,0 +1,291 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for games with several players on one board, who keep
+ * their own score, stand in each other's way, and win or lose together.
+ *
+ * @version $Id$
+ */
+public class MultiPlayerTest
+{
+
+    /**
+     * Map with three players: 0 at (0,0), 1 at (2,0), and 2 at (3,2),
+     * a monster at (2,1) right below player 1, and three food items.
+     */
+    public static final String[] THREE_PLAYER_MAP =
+        new String[]{
+        "P0PF",
+        "0WMF",
+        "F00P"
+    };
+
+    /**
+     * The engine running the game.
+     */
+    private Engine theEngine;
+
+    /**
+     * The game with three players.
+     */
+    private Game theGame;
+
+    /**
+     * The monster of the game.
+     */
+    private Monster theMonster;
+
+    /**
+     * Load the game with three players, ready to be started.
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Before public void setUp() throws GameLoadException
+    {
+        theGame = new Game(THREE_PLAYER_MAP);
+        theEngine = new Engine(theGame);
+        theEngine.initialize();
+        theMonster = theGame.getMonsters().get(0);
+    }
+
+    /**
+     * @param x Horizontal position.
+     * @param y Vertical position.
+     * @return The cell at that position.
+     */
+    private Cell cell(int x, int y)
+    {
+        return theGame.getBoard().getCell(x, y);
+    }
+
+    /**
+     * @param index Index of a player.
+     * @return That player.
+     */
+    private Player player(int index)
+    {
+        return theGame.getPlayer(index);
+    }
+
+    /**
+     * Are the players read in map order, and numbered before the monsters?
+     */
+    @Test public void testPlayers()
+    {
+        assertEquals(3, theGame.playerCount());
+        assertEquals(3, theEngine.getPlayerCount());
+        assertSame(theGame.getPlayer(), player(0));
+        assertEquals(cell(0, 0), player(0).getLocation());
+        assertEquals(cell(2, 0), player(1).getLocation());
+        assertEquals(cell(3, 2), player(2).getLocation());
+        for (int i = 0; i < theGame.playerCount(); i++)
+        {
+            assertEquals(i, player(i).getMoverId());
+        }
+        assertEquals(theGame.playerCount(), theMonster.getMoverId());
+        assertTrue(theGame.fullInvariant());
+    }
+
+    /**
+     * Do players stand in each other's way?
+     */
+    @Test public void testBlockedByPlayer()
+    {
+        theGame.movePlayer(player(0), 1, 0);
+        assertEquals(cell(1, 0), player(0).getLocation());
+        assertNull(theGame.movePlayer(player(0), 1, 0));
+        assertFalse(theGame.stepPlayer(player(0), 1, 0));
+        assertEquals(cell(1, 0), player(0).getLocation());
+        assertEquals(cell(2, 0), player(1).getLocation());
+    }
+
+    /**
+     * Does every player keep its own score, also when undoing?
+     */
+    @Test public void testScores()
+    {
+        theGame.movePlayer(player(1), 1, 0);
+        assertTrue(theGame.stepPlayer(player(2), 0, -1));
+        assertEquals(0, player(0).getPointsEaten());
+        assertEquals(Food.DEFAULT_POINTS, player(1).getPointsEaten());
+        assertEquals(Food.DEFAULT_POINTS, player(2).getPointsEaten());
+        assertEquals(2 * Food.DEFAULT_POINTS, theGame.getPointsEaten());
+
+        theGame.undoLastMove();
+        assertEquals(cell(3, 2), player(2).getLocation());
+        assertEquals(0, player(2).getPointsEaten());
+        assertEquals(Food.DEFAULT_POINTS, theGame.getPointsEaten());
+        assertTrue(theGame.fullInvariant());
+    }
+
+    /**
+     * Does a caught player stay behind, in the way of the others, while
+     * the game goes on, and come back to life when undoing?
+     */
+    @Test public void testOneDies()
+    {
+        theGame.moveMonster(theMonster, 0, -1);
+        assertFalse(player(1).living());
+        assertFalse(theGame.playerDied());
+        assertFalse(theGame.gameOver());
+
+        // monsters and players can't go where the dead player is.
+        assertNull(theGame.moveMonster(theMonster, 0, -1));
+        assertFalse(theGame.stepMonster(theMonster, 0, -1));
+        theGame.movePlayer(player(0), 1, 0);
+        assertNull(theGame.movePlayer(player(0), 1, 0));
+        assertEquals(cell(2, 1), theMonster.getLocation());
+        assertEquals(cell(2, 0), player(1).getLocation());
+        assertTrue(theGame.fullInvariant());
+
+        theGame.undoLastMove();
+        assertEquals(cell(0, 0), player(0).getLocation());
+        theGame.undoLastMove();
+        assertTrue(player(1).living());
+        assertFalse(theGame.canUndo());
+    }
+
+    /**
+     * Is the game lost once all players died, and are moves of dead
+     * players ignored until then?
+     */
+    @Test public void testAllDie()
+    {
+        theEngine.start();
+        theEngine.moveMonster(theMonster, 0, -1);
+        assertTrue(theEngine.inPlayingState());
+        final long version = theEngine.getVersion();
+        theEngine.movePlayer(1, 0, 1);
+        assertEquals(version, theEngine.getVersion());
+
+        theEngine.movePlayer(2, 0, -1);
+        theEngine.movePlayer(2, -1, 0);
+        assertFalse(player(2).living());
+        assertTrue(theEngine.inPlayingState());
+
+        theEngine.movePlayer(0, 1);
+        theEngine.movePlayer(0, 1);
+        theEngine.movePlayer(1, 0);
+        theEngine.movePlayer(1, 0);
+        theEngine.movePlayer(0, -1);
+        assertTrue(theEngine.inDiedState());
+        assertEquals(Food.DEFAULT_POINTS, player(0).getPointsEaten());
+        assertEquals(2 * Food.DEFAULT_POINTS, theEngine.getFoodEaten());
+    }
+
+    /**
+     * Do the players win once they ate all food together?
+     */
+    @Test public void testWinTogether()
+    {
+        theEngine.start();
+        theEngine.movePlayer(1, 1, 0);
+        theEngine.movePlayer(2, 0, -1);
+        theEngine.movePlayer(0, 0, 1);
+        assertTrue(theEngine.inPlayingState());
+        theEngine.movePlayer(0, 0, 1);
+        assertTrue(theEngine.inWonState());
+        for (int i = 0; i < theEngine.getPlayerCount(); i++)
+        {
+            assertEquals(Food.DEFAULT_POINTS,
+                    theEngine.getPlayer(i).getPointsEaten());
+        }
+        assertEquals(3 * Food.DEFAULT_POINTS, theEngine.getFoodEaten());
+    }
+
+    /**
+     * Are the moves of many players made as a single change, reported
+     * to the listeners in one event?
+     */
+    @Test public void testMovePlayers()
+    {
+        final ChangeEvent[] last = new ChangeEvent[1];
+        final int[] events = new int[1];
+        theEngine.addListener(new EngineAdapter() {
+            @Override
+            public void onChanges(ChangeEvent event)
+            {
+                events[0]++;
+                last[0] = event;
+            }
+        }, EngineListener.CHANGES);
+        theEngine.start();
+        events[0] = 0;
+
+        theEngine.movePlayers(new int[] {1, 1, 0}, new int[] {0, 0, -1});
+        assertEquals(1, events[0]);
+        ChangeEvent event = last[0];
+        assertEquals(3, event.getMoveCount());
+        assertEquals(3, event.getMovedPlayerCount());
+        assertTrue(event.playerMoved(1));
+        assertEquals(0, event.getMovedMonsterCount());
+        assertEquals(2 * Food.DEFAULT_POINTS, event.getScore());
+        assertEquals(cell(3, 1), player(2).getLocation());
+
+        theEngine.moveMonster(theMonster, 0, 1);
+        event = last[0];
+        assertTrue(event.monsterMoved(0));
+        assertFalse(event.playerMoved());
+        assertEquals(1, event.getMovedMonsterCount());
+    }
+
+    /**
+     * Does the simulation engine step all players at once?
+     * @throws GameLoadException If the map can't be loaded.
+     */
+    @Test public void testStepPlayers() throws GameLoadException
+    {
+        SimulationEngine simulation = new SimulationEngine(theGame);
+        simulation.initialize();
+        assertTrue(simulation.stepPlayers(
+                new Direction[] {Direction.DOWN, Direction.RIGHT},
+                new Direction[] {Direction.UP}));
+        assertEquals(cell(0, 1), player(0).getLocation());
+        assertEquals(Food.DEFAULT_POINTS, player(1).getPointsEaten());
+        assertEquals(cell(2, 0), theMonster.getLocation());
+        assertFalse(simulation.stepPlayers(
+                new Direction[] {Direction.DOWN, null, Direction.UP},
+                null));
+        assertTrue(theGame.playerWon());
+    }
+
+    /**
+     * Are moves of all players recorded, and replayed alike?
+     * @throws IOException If the recording can't be written.
+     * @throws GameLoadException If the recording can't be read.
+     */
+    @Test public void testReplay() throws IOException, GameLoadException
+    {
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        theEngine.startRecording(recording);
+        theEngine.start();
+        theEngine.movePlayers(new int[] {0, 1}, new int[] {1, 0});
+        theEngine.movePlayer(2, -1, 0);
+        theEngine.moveMonster(theMonster, 0, 1);
+        theEngine.stopRecording();
+
+        GameReplay replay = new GameReplay(recording.toByteArray());
+        replay.playToEnd();
+        Engine replayed = replay.getEngine();
+        for (int i = 0; i < theEngine.getPlayerCount(); i++)
+        {
+            assertEquals(player(i).getLocation().getPosition(),
+                    replayed.getPlayer(i).getLocation().getPosition());
+            assertEquals(player(i).getPointsEaten(),
+                    replayed.getPlayer(i).getPointsEaten());
+        }
+        assertEquals(theMonster.getLocation().getPosition(),
+                replayed.getMonsters().get(0).getLocation().getPosition());
+    }
+}
@@ -1,16 +1,19 @@
 package jpacman.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import java.util.Observable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 
 /**
- * Test that the observer update method
- * is properly called upon changes.
+ * Test that the engine's listeners
+ * are properly called back upon changes.
  *
  * @author Arie van Deursen; Aug 5, 2003
  * @version $Id: ObserverTest.java 4925 2011-10-19 07:43:36Z arievandeursen $
@@ -40,30 +43,115 @@ public class ObserverTest extends GameTestCase
         theEngine.initialize();
         assertTrue(theEngine.inStartingState());
         theObserver = new MockObserver();
-        theEngine.addObserver(theObserver);
+        theEngine.addListener(theObserver, EngineListener.CHANGES);
     }
 
     /**
      * Simple observer for testing purposes,
      * which just counts the number of events it sees.
      */
-    private class MockObserver implements java.util.Observer
+    private class MockObserver extends EngineAdapter
     {
        /**
          * The update counter.
          */
         private int nrOfUpdates = 0;
+        /**
+         * The event passed with the most recent update.
+         */
+        private ChangeEvent lastEvent;
         /**
          * Make an observation, and update the counter.
-         * @param obs The observable (the engine);
-         * @param o remaining info, ignored.
+         * @param event the change event.
          */
-        public void update(Observable obs, Object o)
+        @Override
+        public void onChanges(ChangeEvent event)
         {
             nrOfUpdates++;
+            lastEvent = event;
         }
     }
 
+    /**
+     * Listener writing down every callback it gets.
+     */
+    private static class RecordingListener implements EngineListener
+    {
+        /**
+         * The callbacks received, with their arguments.
+         */
+        private final List<String> calls = new ArrayList<String>();
+
+        /**
+         * @param moverId The guest moved.
+         * @param from Its old position.
+         * @param to Its new position.
+         */
+        public void onMove(int moverId, int from, int to)
+        {
+            calls.add("move " + moverId + " " + from + " " + to);
+        }
+
+        /**
+         * @param position Where the food was.
+         * @param points The food's worth.
+         * @param score The player's points.
+         */
+        public void onFoodEaten(int position, int points, int score)
+        {
+            calls.add("food " + position + " " + points + " " + score);
+        }
+
+        /**
+         * @param previous The old state.
+         * @param state The new state.
+         */
+        public void onStateChange(Engine.State previous, Engine.State state)
+        {
+            calls.add("state " + previous + " " + state);
+        }
+
+        /**
+         * @param moverId The guest moved back.
+         * @param from Its old position.
+         * @param to Its new position.
+         * @param score The player's points.
+         */
+        public void onUndo(int moverId, int from, int to, int score)
+        {
+            calls.add("undo " + moverId + " " + from + " " + to + " "
+                    + score);
+        }
+
+        /**
+         * @param event The summary of the changes.
+         */
+        public void onChanges(ChangeEvent event)
+        {
+            calls.add("changes " + event.getChangeCount());
+        }
+
+        /**
+         * @return The callbacks received since the previous call.
+         */
+        List<String> take()
+        {
+            List<String> result = new ArrayList<String>(calls);
+            calls.clear();
+            return result;
+        }
+    }
+
+    /**
+     * @param x Horizontal position of a cell.
+     * @param y Vertical position of a cell.
+     * @return The cell's position on the board.
+     */
+    private int at(int x, int y)
+    {
+        return getTheGame().getBoard().getCell(x, y).getPosition();
+    }
+
     /**
      * See if update events are triggered at all relevant
      * places in the engine.
@@ -96,4 +184,180 @@ public class ObserverTest extends GameTestCase
          // TODO: test updates for monster moves as well.
 
     }
+
+    /**
+     * Do the events passed to the observers describe the changes?
+     */
+    @Test public void testEvents()
+    {
+        theEngine.start();
+        ChangeEvent event = theObserver.lastEvent;
+        assertEquals(Engine.State.STARTING, event.getPreviousState());
+        assertEquals(Engine.State.PLAYING, event.getState());
+        assertTrue(event.stateChanged());
+        assertFalse(event.boardChanged());
+
+        theEngine.movePlayer(-1, 0);
+        event = theObserver.lastEvent;
+        assertEquals(1, event.getMoveCount());
+        assertTrue(event.playerMoved());
+        assertEquals(1, event.getFoodEaten());
+        assertEquals(Food.DEFAULT_POINTS, event.getScoreDelta());
+        assertEquals(Food.DEFAULT_POINTS, event.getScore());
+        assertFalse(event.stateChanged());
+
+        theEngine.moveMonster(getTheMonster(), 0, 1);
+        event = theObserver.lastEvent;
+        assertEquals(1, event.getMoveCount());
+        assertEquals(0, event.getMovedMonsterCount());
+        assertFalse(event.playerMoved());
+
+        theEngine.quit();
+        theEngine.undoLastMove();
+        event = theObserver.lastEvent;
+        assertEquals(1, event.getUndoCount());
+        assertEquals(-1, event.getFoodEaten());
+        assertEquals(-Food.DEFAULT_POINTS, event.getScoreDelta());
+        assertEquals(Engine.State.HALTED, event.getState());
+    }
+
+    /**
+     * Are all changes made during a tick reported in a single event,
+     * once the tick ends?
+     */
+    @Test public void testNotifyPerTick()
+    {
+        theEngine.setNotifyPerTick(true);
+        theEngine.start();
+        theEngine.movePlayer(1, 0);
+        theEngine.moveMonster(getTheMonster(), 1, 0);
+        assertEquals(0, theObserver.nrOfUpdates);
+
+        theEngine.endTick();
+        assertEquals(1, theObserver.nrOfUpdates);
+        ChangeEvent event = theObserver.lastEvent;
+        assertEquals(3, event.getChangeCount());
+        assertEquals(2, event.getMoveCount());
+        assertTrue(event.playerMoved());
+        assertTrue(event.monsterMoved(
+                getTheGame().getMonsters().indexOf(getTheMonster())));
+        assertEquals(Engine.State.STARTING, event.getPreviousState());
+        assertEquals(Engine.State.PLAYING, event.getState());
+
+        theEngine.endTick();
+        assertEquals(1, theObserver.nrOfUpdates);
+        theEngine.quit();
+        theEngine.setNotifyPerTick(false);
+        assertEquals(2, theObserver.nrOfUpdates);
+        assertEquals(Engine.State.HALTED, theObserver.lastEvent.getState());
+    }
+
+    /**
+     * Are the changes made by an action holding the update lock reported
+     * in a single event, once the lock is released?
+     */
+    @Test public void testSubmittedChanges()
+    {
+        theEngine.start();
+        final int updates = theObserver.nrOfUpdates;
+        theEngine.submit(new Runnable() {
+            public void run()
+            {
+                theEngine.movePlayer(-1, 0);
+                theEngine.moveMonster(getTheMonster(), 0, 1);
+                assertEquals(updates, theObserver.nrOfUpdates);
+            }
+        });
+        assertEquals(updates + 1, theObserver.nrOfUpdates);
+        assertEquals(2, theObserver.lastEvent.getMoveCount());
+    }
+
+    /**
+     * Does merging events combine their changes?
+     */
+    @Test public void testMerge()
+    {
+        theEngine.start();
+        ChangeEvent started = theObserver.lastEvent;
+        theEngine.movePlayer(-1, 0);
+        ChangeEvent merged = started.merge(theObserver.lastEvent);
+        assertEquals(2, merged.getChangeCount());
+        assertEquals(Engine.State.STARTING, merged.getPreviousState());
+        assertEquals(Engine.State.PLAYING, merged.getState());
+        assertTrue(merged.playerMoved());
+        assertEquals(Food.DEFAULT_POINTS, merged.getScoreDelta());
+    }
+
+    /**
+     * Do listeners get a callback for each move, food item, state change
+     * and undo, in order, followed by the summary?
+     */
+    @Test public void testTypedCallbacks()
+    {
+        RecordingListener listener = new RecordingListener();
+        theEngine.addListener(listener, EngineListener.ALL);
+        final int monster = getTheGame().getMonsters()
+            .indexOf(getTheMonster()) + 1;
+
+        theEngine.start();
+        assertEquals(Arrays.asList("state STARTING PLAYING", "changes 1"),
+                listener.take());
+
+        theEngine.movePlayer(-1, 0);
+        assertEquals(Arrays.asList("move 0 " + at(1, 1) + " " + at(0, 1),
+                "food " + at(0, 1) + " " + Food.DEFAULT_POINTS + " "
+                + Food.DEFAULT_POINTS, "changes 1"), listener.take());
+
+        theEngine.moveMonster(getTheMonster(), 0, 1);
+        assertEquals(Arrays.asList("changes 1"), listener.take());
+
+        theEngine.moveMonster(getTheMonster(), 1, 0);
+        theEngine.quit();
+        assertEquals(Arrays.asList(
+                "move " + monster + " " + at(1, 2) + " " + at(2, 2),
+                "changes 1", "state PLAYING HALTED", "changes 1"),
+                listener.take());
+
+        theEngine.undoLastMove();
+        theEngine.undoLastMove();
+        assertEquals(Arrays.asList(
+                "undo " + monster + " " + at(2, 2) + " " + at(1, 2) + " "
+                + Food.DEFAULT_POINTS, "changes 1",
+                "undo 0 " + at(0, 1) + " " + at(1, 1) + " 0", "changes 1"),
+                listener.take());
+    }
+
+    /**
+     * Are listeners only called back for the kinds of changes they
+     * subscribed to, and not anymore once removed?
+     */
+    @Test public void testSubscriptions()
+    {
+        RecordingListener listener = new RecordingListener();
+        theEngine.addListener(listener, EngineListener.FOOD);
+        assertEquals(2, theEngine.countListeners());
+        theEngine.setNotifyPerTick(true);
+        theEngine.start();
+        theEngine.movePlayer(0, -1);
+        theEngine.movePlayer(-1, 0);
+        theEngine.moveMonster(getTheMonster(), 1, 0);
+        theEngine.endTick();
+        assertEquals(Arrays.asList("food " + at(0, 1) + " "
+                + Food.DEFAULT_POINTS + " " + Food.DEFAULT_POINTS),
+                listener.take());
+        assertEquals(1, theObserver.nrOfUpdates);
+
+        theEngine.addListener(listener, EngineListener.STATES);
+        assertEquals(2, theEngine.countListeners());
+        theEngine.quit();
+        theEngine.endTick();
+        assertEquals(Arrays.asList("state PLAYING HALTED"), listener.take());
+
+        assertTrue(theEngine.removeListener(listener));
+        assertFalse(theEngine.removeListener(listener));
+        theEngine.start();
+        theEngine.endTick();
+        assertTrue(listener.take().isEmpty());
+        assertEquals(3, theObserver.nrOfUpdates);
+    }
 }
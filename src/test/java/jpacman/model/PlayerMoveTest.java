@@ -2,6 +2,7 @@ package jpacman.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -73,6 +74,24 @@ public class PlayerMoveTest extends MoveTest
         
         assertTrue(getThePlayer().getPointsEaten() > oldFoodEaten);
     }
+    /**
+     * Is a probe of a move resolved on its own, with the same effects,
+     * leaving the move it checks alone?
+     */
+    @Test
+    public void testProbe()
+    {
+        PlayerMove playerMove = createMove(getFoodCell());
+        PlayerMove probe = (PlayerMove) playerMove.probe();
+        assertNotSame(playerMove, probe);
+        assertFalse(probe.isInitialized());
+        assertEquals(0, probe.getFoodEaten());
+        probe.precomputeEffects();
+        assertTrue(probe.movePossible());
+        assertEquals(Food.DEFAULT_POINTS, probe.getFoodEaten());
+        assertTrue(playerMove.sameEffects(probe));
+    }
+
     /** Test the player colliding with a Monster. */
     @Test
     public void testMonsterCollision()
@@ -87,6 +106,16 @@ public class PlayerMoveTest extends MoveTest
         
         assertFalse(getThePlayer().living());
     }
+    /** Test the player colliding with a Monster sitting on food. */
+    @Test
+    public void testMonsterOnFoodCollision()
+    {
+        new Monster().occupy(getFoodCell());
+        PlayerMove playerMove = createMove(getFoodCell());
+        assertTrue(playerMove.playerWillDie());
+        assertFalse(playerMove.movePossible());
+    }
+
     /** Test the player colliding with another Player. */
     @Test
     public void testPlayerCollision()
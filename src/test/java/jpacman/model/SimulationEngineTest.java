@@ -0,0 +1,72 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for stepping a game through the headless simulation engine,
+ * using the simple map from the GameTestCase.
+ *
+ * @version $Id$
+ */
+public class SimulationEngineTest extends GameTestCase
+{
+
+    /**
+     * The engine under test.
+     */
+    private SimulationEngine theEngine;
+
+    /**
+     * Wrap the game of the superclass in a simulation engine.
+     * @throws GameLoadException if the game can't be loaded.
+     */
+    @Before
+    public void setUp() throws GameLoadException
+    {
+        theEngine = new SimulationEngine(getTheGame());
+        theEngine.initialize();
+    }
+
+    /**
+     * Player and monsters should all move in a single step.
+     */
+    @Test
+    public void testStep()
+    {
+        assertTrue(theEngine.step(Direction.RIGHT,
+                new Direction[] {Direction.UP}));
+        assertEquals(getEmptyCell(), getThePlayer().getLocation());
+        assertEquals(getPlayerCell(), getTheMonster().getLocation());
+        assertEquals(1, theEngine.getSteps());
+        assertTrue(theEngine.stepsPerSecond() > 0);
+    }
+
+    /**
+     * Once the player has been killed, steps have no effect anymore,
+     * until the engine is reset.
+     */
+    @Test
+    public void testStepUntilDeath()
+    {
+        assertTrue(theEngine.step(Direction.RIGHT, null));
+        Direction[] secondMonsterUp = new Direction[] {null, Direction.UP};
+        assertTrue(theEngine.step(null, secondMonsterUp));
+        assertFalse(theEngine.step(null, secondMonsterUp));
+        assertTrue(getTheGame().playerDied());
+        final int stepsTaken = 3;
+        assertEquals(stepsTaken, theEngine.getSteps());
+
+        assertFalse(theEngine.step(Direction.LEFT, null));
+        assertEquals(stepsTaken, theEngine.getSteps());
+
+        theEngine.reset();
+        assertEquals(0, theEngine.getSteps());
+        assertFalse(getTheGame().gameOver());
+        assertEquals(2, theEngine.getMonsters().size());
+    }
+}
@@ -0,0 +1,242 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases for undoing moves through a bounded undo journal.
+ *
+ * @version $Id$
+ */
+public class UndoJournalTest extends GameTestCase
+{
+
+    /**
+     * Spill file used by some of the tests, if any.
+     */
+    private File spillFile = null;
+
+    /**
+     * Remove the spill file, if it was created.
+     */
+    @After public void tearDown()
+    {
+        if (spillFile != null)
+        {
+            assertTrue(spillFile.delete());
+        }
+    }
+
+    /**
+     * Move the player right, up, and back down, which is always possible
+     * on the simple map.
+     */
+    private void moveAround()
+    {
+        getTheGame().movePlayer(1, 0);
+        getTheGame().movePlayer(0, -1);
+        getTheGame().movePlayer(0, 1);
+    }
+
+    /**
+     * Are records spilled and read back in chunks, in the right order,
+     * when recording and undoing cross several chunk boundaries in both
+     * directions?
+     * @throws IOException If the spill file can't be used.
+     */
+    @Test public void testSpillChunks() throws IOException
+    {
+        spillFile = File.createTempFile("undo", ".journal");
+        final int capacity = 8;
+        final UndoJournal journal = new UndoJournal(capacity, spillFile);
+        final int recorded = 50;
+        final int undone = 30;
+        final int rerecorded = 20;
+        for (int i = 0; i < recorded; i++)
+        {
+            journal.record(i, i + 1, i, true, false, 0);
+        }
+        assertEquals(recorded, journal.size());
+        assertTrue(spillFile.length() >= (recorded - capacity)
+                * UndoJournal.RECORD_SIZE);
+        for (int i = recorded - 1; i >= recorded - undone; i--)
+        {
+            journal.pop();
+            assertEquals(i, journal.poppedFrom());
+            assertEquals(i, journal.poppedMoverId());
+        }
+        final int base = recorded - undone;
+        for (int i = 0; i < rerecorded; i++)
+        {
+            journal.record(base + i, base + i + 1, base + i, true, false, 0);
+        }
+        for (int i = base + rerecorded - 1; i >= 0; i--)
+        {
+            journal.pop();
+            assertEquals(i, journal.poppedFrom());
+            assertEquals(i + 1, journal.poppedTo());
+            assertEquals(i, journal.poppedMoverId());
+        }
+        assertTrue(journal.isEmpty());
+        assertNull(journal.getSpillError());
+        journal.close();
+    }
+
+    /**
+     * Are moves beyond the journal's capacity forgotten?
+     */
+    @Test public void testCapacity()
+    {
+        final UndoJournal journal = new UndoJournal(2);
+        getTheGame().setUndoJournal(journal);
+        moveAround();
+        assertEquals(2, journal.size());
+
+        getTheGame().undoLastMove();
+        getTheGame().undoLastMove();
+        assertFalse(getTheGame().canUndo());
+        // the first move right can no longer be undone.
+        assertEquals(getEmptyCell(), getThePlayer().getLocation());
+    }
+
+    /**
+     * Can moves spilled to disk still be undone, in the right order?
+     * @throws IOException if the spill file can't be created.
+     */
+    @Test public void testSpill() throws IOException
+    {
+        spillFile = File.createTempFile("undo", ".journal");
+        final UndoJournal journal = new UndoJournal(1, spillFile);
+        getTheGame().setUndoJournal(journal);
+        moveAround();
+        assertEquals(2 * UndoJournal.RECORD_SIZE, spillFile.length());
+        final int moves = 3;
+        assertEquals(moves, journal.size());
+
+        getTheGame().undoLastMove();
+        assertEquals(getEmptyCell().cellAtOffset(0, -1),
+                getThePlayer().getLocation());
+        getTheGame().undoLastMove();
+        assertEquals(getEmptyCell(), getThePlayer().getLocation());
+        getTheGame().undoLastMove();
+        assertEquals(getPlayerCell(), getThePlayer().getLocation());
+        assertFalse(getTheGame().canUndo());
+        assertNull(journal.getSpillError());
+        journal.close();
+    }
+
+    /**
+     * Is a journal closed once replaced, so that it no longer writes to
+     * its spill file?
+     * @throws IOException if the spill file can't be created.
+     */
+    @Test public void testReplaceSpilling() throws IOException
+    {
+        spillFile = File.createTempFile("undo", ".journal");
+        final UndoJournal journal = new UndoJournal(1, spillFile);
+        getTheGame().setUndoJournal(journal);
+        moveAround();
+        final long spilled = spillFile.length();
+        getTheGame().setUndoJournal(new UndoJournal(2));
+        journal.record(0, 1, 0, true, false, 0);
+        journal.record(1, 2, 0, true, false, 0);
+        assertEquals(spilled, spillFile.length());
+        assertNull(journal.getSpillError());
+    }
+
+    /**
+     * Is eaten food restored by undoing?
+     */
+    @Test public void testUndoFood()
+    {
+        getTheGame().movePlayer(-1, 0);
+        assertEquals(Food.DEFAULT_POINTS, getThePlayer().getPointsEaten());
+        assertEquals(1, getFoodCell().getGuests().size());
+
+        getTheGame().undoLastMove();
+        assertEquals(0, getThePlayer().getPointsEaten());
+        assertEquals(getPlayerCell(), getThePlayer().getLocation());
+        assertEquals(Guest.FOOD_TYPE,
+                getFoodCell().getGuests().get(0).guestType());
+    }
+
+    /**
+     * Is a player killed by a monster brought back to life,
+     * and does undoing a monster move put the monster back?
+     */
+    @Test public void testUndoDeath()
+    {
+        getTheGame().moveMonster(getTheMonster(), 0, -1);
+        assertTrue(getTheGame().playerDied());
+        assertEquals(getMonsterCell(), getTheMonster().getLocation());
+
+        getTheGame().undoLastMove();
+        assertFalse(getTheGame().playerDied());
+        assertEquals(getMonsterCell(), getTheMonster().getLocation());
+
+        getTheGame().moveMonster(getTheMonster(), -1, 0);
+        getTheGame().undoLastMove();
+        assertEquals(getMonsterCell(), getTheMonster().getLocation());
+    }
+
+    /**
+     * Are moves that change nothing rejected, without taking a place in
+     * the journal, so that undoing skips them?
+     */
+    @Test public void testRejectedMoves()
+    {
+        assertNull(getTheGame().movePlayer(0, -1));
+        assertEquals(-1, getTheGame().getPlayerLastDy());
+        assertNull(getTheGame().moveMonster(getTheMonster(), 0, 1));
+        assertFalse(getTheGame().canUndo());
+
+        assertNotNull(getTheGame().movePlayer(1, 0));
+        assertNull(getTheGame().moveMonster(getTheMonster(), 0, 1));
+        getTheGame().undoLastMove();
+        assertEquals(getPlayerCell(), getThePlayer().getLocation());
+        assertFalse(getTheGame().canUndo());
+    }
+
+    /**
+     * Does undoing fail if the journal is out of step with the board,
+     * rather than restoring food and score for a move not undone?
+     */
+    @Test public void testOutOfStep()
+    {
+        assumeTrue(Game.class.desiredAssertionStatus());
+        getTheGame().movePlayer(-1, 0);
+        // move the player back behind the journal's back.
+        getThePlayer().deoccupy();
+        getThePlayer().occupy(getPlayerCell());
+        try
+        {
+            getTheGame().undoLastMove();
+            fail("journal out of step not detected");
+        } catch (AssertionError ae)
+        {
+            assertEquals(Food.DEFAULT_POINTS,
+                    getThePlayer().getPointsEaten());
+        }
+    }
+
+    /**
+     * Does reloading the world forget all moves?
+     */
+    @Test public void testReInitialize()
+    {
+        moveAround();
+        getTheGame().reInitialize();
+        assertFalse(getTheGame().canUndo());
+    }
+}